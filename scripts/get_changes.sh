@@ -0,0 +1,6 @@
+curl \
+-v \
+-H "Accept: application/xml" \
+-G \
+${1:+-d "subscription=$1"} \
+http://localhost:9090/runnerapp/getChanges
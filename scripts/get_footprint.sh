@@ -0,0 +1,6 @@
+curl \
+-v \
+-H "Accept: application/xml" \
+-G \
+-d "runners=${1:-10000000}" \
+http://localhost:9090/runnerapp/footprint
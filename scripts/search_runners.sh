@@ -0,0 +1,7 @@
+curl \
+-v \
+-H "Accept: application/xml" \
+-G \
+-d "name=${1:-Da}" \
+-d "mode=${2:-PREFIX}" \
+http://localhost:9090/runnerapp/searchRunners
@@ -0,0 +1,95 @@
+package com.alborworld.runnerapp.admission;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limit on the number of requests in flight, adapted to the observed latency with additive increase and
+ * multiplicative decrease: every request that completes within the latency threshold while the limit is in use raises
+ * it by {@code 1 / limit}, i.e. by about one per round trip, and a slower request cuts it by a tenth, at most once per
+ * threshold interval so that one burst of slow requests counts as one signal.
+ */
+public class AdaptiveConcurrencyLimit {
+
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+
+    // The limit, as the bits of a double.
+    private final AtomicLong limitBits;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong lastBackoffNanos = new AtomicLong(System.nanoTime());
+
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, long latencyThresholdMillis) {
+        checkArgument(minLimit >= 1 && minLimit <= initialLimit && initialLimit <= maxLimit,
+                "Limits were %s <= %s <= %s but expected 1 <= min <= initial <= max", minLimit, initialLimit, maxLimit);
+        checkArgument(latencyThresholdMillis > 0, "Latency threshold was %s but expected positive",
+                latencyThresholdMillis);
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMillis);
+        this.limitBits = new AtomicLong(Double.doubleToLongBits(initialLimit));
+    }
+
+    /**
+     * Admits a request if fewer than {@code share} of the limit are in flight.
+     *
+     * @return true if admitted, in which case {@link #release(long)} must follow.
+     */
+    public boolean tryAcquire(double share) {
+        int allowed = Math.max(1, (int) (getLimit() * share));
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= allowed) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * Releases an admitted request that took {@code latencyNanos}, or a negative value if its latency doesn't tell
+     * anything about the load.
+     */
+    public void release(long latencyNanos) {
+        int current = inFlight.getAndDecrement();
+        if (latencyNanos < 0) {
+            return;
+        }
+
+        if (latencyNanos > latencyThresholdNanos) {
+            long now = System.nanoTime();
+            long last = lastBackoffNanos.get();
+            if (now - last > latencyThresholdNanos && lastBackoffNanos.compareAndSet(last, now)) {
+                updateLimit(BACKOFF_RATIO, 0);
+            }
+        } else if (current >= getLimit() / 2) {
+            // Only grow a limit that is being used.
+            updateLimit(1, 1 / getLimit());
+        }
+    }
+
+    private void updateLimit(double ratio, double increment) {
+        long currentBits;
+        double updated;
+        do {
+            currentBits = limitBits.get();
+            updated = Double.longBitsToDouble(currentBits) * ratio + increment;
+            updated = Math.max(minLimit, Math.min(maxLimit, updated));
+        } while (!limitBits.compareAndSet(currentBits, Double.doubleToLongBits(updated)));
+    }
+
+    public double getLimit() {
+        return Double.longBitsToDouble(limitBits.get());
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,204 @@
+package com.alborworld.runnerapp.admission;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+/**
+ * Admission control in front of the controller: sheds load before a request body is parsed or a lock is taken.
+ * <p>
+ * A request is admitted only if its client is within its rate, as enforced by a token bucket per client, and if the
+ * {@link AdaptiveConcurrencyLimit} has room for it; a request the limit rejects gets its token back. Bulk list scans
+ * may only use a share of that limit, so that under overload they are shed before the reads and the updates.
+ * Long-polls, which mostly wait, and bulk imports and exports, which take long whatever the load, are only rate
+ * limited.
+ * <p>
+ * The buckets of up to {@code maxTrackedClients} clients are kept, the least recently used dropped first. A bucket
+ * idle long enough to be full again is dropped anyway, as it is then no different from a new one.
+ * <p>
+ * Rejected requests get a 503 with a precomputed body, and no exception is thrown.
+ */
+public class AdmissionInterceptor extends HandlerInterceptorAdapter {
+
+    private static final String START_NANOS_ATTRIBUTE = AdmissionInterceptor.class.getName() + ".startNanos";
+
+    private static final byte[] OVERLOADED_BODY = "Overloaded, retry later\n".getBytes(StandardCharsets.US_ASCII);
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    private static final double DEFAULT_CLIENT_RATE_PER_SECOND = 100;
+    private static final double DEFAULT_CLIENT_BURST = 200;
+    private static final double DEFAULT_SCAN_SHARE = 0.25;
+    private static final int DEFAULT_MAX_TRACKED_CLIENTS = 10000;
+
+    private final AdaptiveConcurrencyLimit limit;
+
+    private volatile LoadingCache<String, TokenBucket> clientBuckets;
+
+    private double clientRatePerSecond = DEFAULT_CLIENT_RATE_PER_SECOND;
+    private double clientBurst = DEFAULT_CLIENT_BURST;
+    private double scanShare = DEFAULT_SCAN_SHARE;
+    private int maxTrackedClients = DEFAULT_MAX_TRACKED_CLIENTS;
+    private boolean trustForwardedFor = false;
+    private Set<String> scanPaths = new HashSet<>(Arrays.asList("/getRunnerList", "/getCountryList"));
+    private Set<String> longPollPaths = new HashSet<>(Arrays.asList("/getChanges", "/import", "/export"));
+
+    private final AtomicLong rateLimitedCount = new AtomicLong();
+    private final AtomicLong overloadedCount = new AtomicLong();
+
+    public AdmissionInterceptor(AdaptiveConcurrencyLimit limit) {
+        this.limit = limit;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws IOException {
+        // The dispatch that completes a long-poll was admitted by the one that started it.
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            return true;
+        }
+
+        long now = System.nanoTime();
+
+        TokenBucket bucket = clientBuckets().getUnchecked(clientOf(request));
+        if (!bucket.tryAcquire(now)) {
+            rateLimitedCount.incrementAndGet();
+            reject(response);
+            return false;
+        }
+
+        String path = (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
+        if (path != null && longPollPaths.contains(path)) {
+            return true;
+        }
+
+        double share = (path != null && scanPaths.contains(path)) ? scanShare : 1.0;
+        if (!limit.tryAcquire(share)) {
+            bucket.refund();
+            overloadedCount.incrementAndGet();
+            reject(response);
+            return false;
+        }
+
+        request.setAttribute(START_NANOS_ATTRIBUTE, now);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+            Exception ex) {
+        Long startNanos = (Long) request.getAttribute(START_NANOS_ATTRIBUTE);
+        if (startNanos != null) {
+            request.removeAttribute(START_NANOS_ATTRIBUTE);
+            limit.release(System.nanoTime() - startNanos);
+        }
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+            Object handler) {
+        Long startNanos = (Long) request.getAttribute(START_NANOS_ATTRIBUTE);
+        if (startNanos != null) {
+            request.removeAttribute(START_NANOS_ATTRIBUTE);
+            limit.release(-1);
+        }
+    }
+
+    private static void reject(HttpServletResponse response) throws IOException {
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setHeader("Retry-After", RETRY_AFTER_SECONDS);
+        response.setContentType("text/plain");
+        response.setContentLength(OVERLOADED_BODY.length);
+        response.getOutputStream().write(OVERLOADED_BODY);
+    }
+
+    private String clientOf(HttpServletRequest request) {
+        if (trustForwardedFor) {
+            String forwardedFor = request.getHeader("X-Forwarded-For");
+            if (forwardedFor != null) {
+                int comma = forwardedFor.indexOf(',');
+                return ((comma < 0) ? forwardedFor : forwardedFor.substring(0, comma)).trim();
+            }
+        }
+        return request.getRemoteAddr();
+    }
+
+    // Built on first use, once the rate, burst and number of clients are set.
+    private LoadingCache<String, TokenBucket> clientBuckets() {
+        LoadingCache<String, TokenBucket> buckets = clientBuckets;
+        if (buckets == null) {
+            synchronized (this) {
+                buckets = clientBuckets;
+                if (buckets == null) {
+                    long refillNanos =
+                            (long) Math.ceil(clientBurst / clientRatePerSecond * TimeUnit.SECONDS.toNanos(1));
+                    buckets =
+                            CacheBuilder.newBuilder().maximumSize(maxTrackedClients)
+                                    .expireAfterAccess(refillNanos, TimeUnit.NANOSECONDS)
+                                    .build(new CacheLoader<String, TokenBucket>() {
+                                        @Override
+                                        public TokenBucket load(String client) {
+                                            return new TokenBucket(clientRatePerSecond, clientBurst, System.nanoTime());
+                                        }
+                                    });
+                    clientBuckets = buckets;
+                }
+            }
+        }
+        return buckets;
+    }
+
+    long getTrackedClientsCount() {
+        return clientBuckets().size();
+    }
+
+    public long getRateLimitedCount() {
+        return rateLimitedCount.get();
+    }
+
+    public long getOverloadedCount() {
+        return overloadedCount.get();
+    }
+
+    public void setClientRatePerSecond(double clientRatePerSecond) {
+        this.clientRatePerSecond = clientRatePerSecond;
+    }
+
+    public void setClientBurst(double clientBurst) {
+        this.clientBurst = clientBurst;
+    }
+
+    public void setScanShare(double scanShare) {
+        this.scanShare = scanShare;
+    }
+
+    public void setMaxTrackedClients(int maxTrackedClients) {
+        this.maxTrackedClients = maxTrackedClients;
+    }
+
+    public void setTrustForwardedFor(boolean trustForwardedFor) {
+        this.trustForwardedFor = trustForwardedFor;
+    }
+
+    public void setScanPaths(Set<String> scanPaths) {
+        this.scanPaths = scanPaths;
+    }
+
+    public void setLongPollPaths(Set<String> longPollPaths) {
+        this.longPollPaths = longPollPaths;
+    }
+}
@@ -0,0 +1,46 @@
+package com.alborworld.runnerapp.admission;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limiter of one client: up to {@code capacity} requests at once, refilled at {@code ratePerSecond}.
+ */
+class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+
+    private double tokens;
+    private long lastRefillNanos;
+
+    TokenBucket(double ratePerSecond, double capacity, long nowNanos) {
+        this.capacity = capacity;
+        this.tokensPerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.tokens = capacity;
+        this.lastRefillNanos = nowNanos;
+    }
+
+    synchronized boolean tryAcquire(long nowNanos) {
+        refill(nowNanos);
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    /**
+     * Gives back a token taken for a request that was not served after all.
+     */
+    synchronized void refund() {
+        tokens = Math.min(capacity, tokens + 1);
+    }
+
+    // Concurrent callers may pass a time older than the last refill, which adds nothing.
+    private void refill(long nowNanos) {
+        if (nowNanos - lastRefillNanos > 0) {
+            tokens = Math.min(capacity, tokens + (nowNanos - lastRefillNanos) * tokensPerNano);
+            lastRefillNanos = nowNanos;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.alborworld.runnerapp.bulk;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alborworld.runnerapp.model.Runner;
+import com.alborworld.runnerapp.model.RunnerModel;
+import com.alborworld.runnerapp.store.RunnerStore;
+
+/**
+ * Streams the totals of every runner or of every country, one record per line, straight from a scan of the store:
+ * nothing is copied, so memory does not grow with the number of runners. Exported runners can be imported as they
+ * are.
+ * <p>
+ * The export is not a snapshot: runners updated while it runs may be exported with their total before or after the
+ * update.
+ */
+public class BulkExporter {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final RunnerModel runnerModel;
+
+    public BulkExporter(RunnerModel runnerModel) {
+        this.runnerModel = runnerModel;
+    }
+
+    /**
+     * @return the number of records written.
+     */
+    public long exportTo(OutputStream out, BulkFormat format, ExportRecords records) throws IOException {
+        long startMillis = System.currentTimeMillis();
+        long count = export(new Scan() {
+            @Override
+            public void runners(RunnerStore.RunnerVisitor visitor) {
+                runnerModel.scanRunners(visitor);
+            }
+
+            @Override
+            public void countries(RunnerStore.CountryVisitor visitor) {
+                runnerModel.scanCountries(visitor);
+            }
+        }, out, format, records);
+
+        logger.info("Exported {} {} in {} ms.", count, records, System.currentTimeMillis() - startMillis);
+        return count;
+    }
+
+    /**
+     * Exports the totals of a store outside of the model, such as one of a past epoch.
+     *
+     * @return the number of records written.
+     */
+    static long exportStore(final RunnerStore store, OutputStream out, BulkFormat format, ExportRecords records)
+            throws IOException {
+        return export(new Scan() {
+            @Override
+            public void runners(RunnerStore.RunnerVisitor visitor) {
+                store.scanRunners(visitor);
+            }
+
+            @Override
+            public void countries(RunnerStore.CountryVisitor visitor) {
+                store.scanCountries(visitor);
+            }
+        }, out, format, records);
+    }
+
+    private static long export(Scan scan, OutputStream out, BulkFormat format, ExportRecords records)
+            throws IOException {
+        RecordVisitor visitor = new RecordVisitor(new BulkWriter(out), format);
+
+        try {
+            if (records == ExportRecords.RUNNERS) {
+                format.writeRunnerHeader(visitor.writer);
+                scan.runners(visitor);
+            } else {
+                format.writeCountryHeader(visitor.writer);
+                scan.countries(visitor);
+            }
+        } catch (WriteFailedException e) {
+            throw e.getCause();
+        }
+        visitor.writer.flush();
+        return visitor.count;
+    }
+
+    private interface Scan {
+
+        void runners(RunnerStore.RunnerVisitor visitor);
+
+        void countries(RunnerStore.CountryVisitor visitor);
+    }
+
+    private static class RecordVisitor implements RunnerStore.RunnerVisitor, RunnerStore.CountryVisitor {
+
+        private final BulkWriter writer;
+        private final BulkFormat format;
+        private long count;
+
+        RecordVisitor(BulkWriter writer, BulkFormat format) {
+            this.writer = writer;
+            this.format = format;
+        }
+
+        @Override
+        public void visit(Runner runner, long totalMetres) {
+            try {
+                format.writeRunner(writer, runner.getName(), runner.getCountry(), totalMetres);
+            } catch (IOException e) {
+                throw new WriteFailedException(e);
+            }
+            count++;
+        }
+
+        @Override
+        public void visit(String country, long totalMetres) {
+            try {
+                format.writeCountry(writer, country, totalMetres);
+            } catch (IOException e) {
+                throw new WriteFailedException(e);
+            }
+            count++;
+        }
+    }
+
+    // Carries an IOException out of a visitor, which cannot throw it.
+    private static class WriteFailedException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        WriteFailedException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.alborworld.runnerapp.bulk;
+
+import java.io.IOException;
+
+import org.springframework.http.MediaType;
+
+/**
+ * The line-oriented formats of bulk imports and exports.
+ */
+public enum BulkFormat {
+
+    NDJSON("application/x-ndjson") {
+        @Override
+        boolean parse(byte[] bytes, int start, int end, ParsedUpdate update) {
+            return NdjsonCodec.parse(bytes, start, end, update);
+        }
+
+        @Override
+        void writeRunnerHeader(BulkWriter writer) {
+        }
+
+        @Override
+        void writeRunner(BulkWriter writer, String name, String country, long metres) throws IOException {
+            NdjsonCodec.writeRunner(writer, name, country, metres);
+        }
+
+        @Override
+        void writeCountryHeader(BulkWriter writer) {
+        }
+
+        @Override
+        void writeCountry(BulkWriter writer, String country, long metres) throws IOException {
+            NdjsonCodec.writeCountry(writer, country, metres);
+        }
+    },
+
+    CSV("text/csv") {
+        @Override
+        boolean parse(byte[] bytes, int start, int end, ParsedUpdate update) {
+            return CsvCodec.parse(bytes, start, end, update);
+        }
+
+        @Override
+        void writeRunnerHeader(BulkWriter writer) throws IOException {
+            CsvCodec.writeRunnerHeader(writer);
+        }
+
+        @Override
+        void writeRunner(BulkWriter writer, String name, String country, long metres) throws IOException {
+            CsvCodec.writeRunner(writer, name, country, metres);
+        }
+
+        @Override
+        void writeCountryHeader(BulkWriter writer) throws IOException {
+            CsvCodec.writeCountryHeader(writer);
+        }
+
+        @Override
+        void writeCountry(BulkWriter writer, String country, long metres) throws IOException {
+            CsvCodec.writeCountry(writer, country, metres);
+        }
+    };
+
+    private final String mediaType;
+
+    private BulkFormat(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * @return the format of a request body of the given content type.
+     */
+    public static BulkFormat forContentType(String contentType) {
+        if (contentType != null) {
+            MediaType type = MediaType.parseMediaType(contentType);
+            for (BulkFormat format : values()) {
+                if (MediaType.parseMediaType(format.mediaType).includes(type)) {
+                    return format;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Content type was " + contentType + " but expected "
+                + NDJSON.mediaType + " or " + CSV.mediaType);
+    }
+
+    /**
+     * Parses the record on one line, excluding its line break.
+     *
+     * @return false if the line holds no record.
+     * @throws IllegalArgumentException if the line is malformed.
+     */
+    abstract boolean parse(byte[] bytes, int start, int end, ParsedUpdate update);
+
+    abstract void writeRunnerHeader(BulkWriter writer) throws IOException;
+
+    abstract void writeRunner(BulkWriter writer, String name, String country, long metres) throws IOException;
+
+    abstract void writeCountryHeader(BulkWriter writer) throws IOException;
+
+    abstract void writeCountry(BulkWriter writer, String country, long metres) throws IOException;
+}
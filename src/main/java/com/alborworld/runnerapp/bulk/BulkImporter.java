@@ -0,0 +1,263 @@
+package com.alborworld.runnerapp.bulk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alborworld.runnerapp.dedup.UpdateDeduplicator;
+import com.alborworld.runnerapp.locking.LockRegistry;
+import com.alborworld.runnerapp.model.RunnerModel;
+import com.alborworld.runnerapp.model.RunnerUpdateValidator;
+import com.alborworld.runnerapp.model.UpdateBatch;
+import com.alborworld.runnerapp.xml.ImportResult;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Imports runner updates from a stream of any size, one record per line.
+ * <p>
+ * The stream is cut into chunks at line breaks, while a pool of threads parses, validates, deduplicates and sums
+ * each chunk per runner and applies it to the model as one batch. Additions commute, so chunks are applied in any
+ * order. At most two chunks per parsing thread are held in memory. Malformed or invalid lines are counted and
+ * skipped.
+ */
+public class BulkImporter {
+
+    private static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final int CHUNKS_PER_THREAD = 2;
+    private static final int UTF8_BOM_LENGTH = 3;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final RunnerModel runnerModel;
+    private final LockRegistry lockRegistry;
+    private final UpdateDeduplicator updateDeduplicator;
+
+    private int parserThreads = Runtime.getRuntime().availableProcessors();
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    private ExecutorService parsers;
+
+    public BulkImporter(RunnerModel runnerModel, LockRegistry lockRegistry, UpdateDeduplicator updateDeduplicator) {
+        this.runnerModel = runnerModel;
+        this.lockRegistry = lockRegistry;
+        this.updateDeduplicator = updateDeduplicator;
+    }
+
+    public void start() {
+        parsers =
+                Executors.newFixedThreadPool(parserThreads, new ThreadFactoryBuilder().setDaemon(true)
+                        .setNameFormat("bulk-parser-%d").build());
+    }
+
+    public void stop() {
+        if (parsers != null) {
+            parsers.shutdownNow();
+        }
+    }
+
+    public ImportResult importFrom(InputStream in, BulkFormat format) throws IOException {
+        long startNanos = System.nanoTime();
+        Deque<Future<ParsedChunk>> pending = new ArrayDeque<>();
+        Progress progress = new Progress();
+
+        try {
+            byte[] buffer = new byte[chunkSize];
+            int filled = 0;
+            boolean first = true;
+            boolean eof = false;
+
+            while (!eof) {
+                int read = in.read(buffer, filled, buffer.length - filled);
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    filled += read;
+                    if (filled < buffer.length) {
+                        continue;
+                    }
+                }
+
+                int end = eof ? filled : lastLineBreak(buffer, filled) + 1;
+                if (end == 0 && !eof) {
+                    // A line longer than the buffer.
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    continue;
+                }
+
+                int start = (first && hasUtf8Bom(buffer, end)) ? UTF8_BOM_LENGTH : 0;
+                first = false;
+                pending.add(parsers.submit(new ChunkParser(format, buffer, start, end)));
+
+                int remaining = filled - end;
+                byte[] next = new byte[Math.max(chunkSize, remaining * 2)];
+                System.arraycopy(buffer, end, next, 0, remaining);
+                buffer = next;
+                filled = remaining;
+
+                while (pending.size() >= parserThreads * CHUNKS_PER_THREAD) {
+                    collect(pending.poll(), progress);
+                }
+            }
+
+            while (!pending.isEmpty()) {
+                collect(pending.poll(), progress);
+            }
+        } finally {
+            for (Future<ParsedChunk> future : pending) {
+                future.cancel(true);
+            }
+        }
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        logger.info("Imported {} updates from {} lines in {} ms, with {} duplicates and {} rejected lines.",
+                progress.imported, progress.lines, millis, progress.duplicates, progress.rejected);
+
+        ImportResult result = new ImportResult();
+        result.setLines(progress.lines);
+        result.setImported(progress.imported);
+        result.setDuplicates(progress.duplicates);
+        result.setRejected(progress.rejected);
+        result.setFirstRejectedLine(progress.firstRejectedLine);
+        result.setFirstRejectionReason(progress.firstRejectionReason);
+        result.setMillis(millis);
+        return result;
+    }
+
+    private static void collect(Future<ParsedChunk> future, Progress progress) throws InterruptedIOException {
+        ParsedChunk chunk;
+        try {
+            chunk = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while importing");
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+
+        if (chunk.firstRejectedLine >= 0 && progress.firstRejectedLine == null) {
+            progress.firstRejectedLine = progress.lines + chunk.firstRejectedLine + 1;
+            progress.firstRejectionReason = chunk.firstRejectionReason;
+        }
+        progress.lines += chunk.lines;
+        progress.imported += chunk.batch.getUpdatesCount();
+        progress.duplicates += chunk.duplicates;
+        progress.rejected += chunk.rejected;
+    }
+
+    private static int lastLineBreak(byte[] buffer, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (buffer[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean hasUtf8Bom(byte[] buffer, int length) {
+        return length >= UTF8_BOM_LENGTH && buffer[0] == (byte) 0xef && buffer[1] == (byte) 0xbb
+                && buffer[2] == (byte) 0xbf;
+    }
+
+    public void setParserThreads(int parserThreads) {
+        this.parserThreads = parserThreads;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    private static class Progress {
+        long lines;
+        long imported;
+        long duplicates;
+        long rejected;
+        Long firstRejectedLine;
+        String firstRejectionReason;
+    }
+
+    private static class ParsedChunk {
+        final UpdateBatch batch = new UpdateBatch();
+        long lines;
+        long duplicates;
+        long rejected;
+        long firstRejectedLine = -1;
+        String firstRejectionReason;
+    }
+
+    private class ChunkParser implements Callable<ParsedChunk> {
+
+        private final BulkFormat format;
+        private final byte[] bytes;
+        private final int start;
+        private final int end;
+
+        ChunkParser(BulkFormat format, byte[] bytes, int start, int end) {
+            this.format = format;
+            this.bytes = bytes;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public ParsedChunk call() {
+            ParsedChunk chunk = new ParsedChunk();
+            boolean applied = false;
+            try {
+                parse(chunk);
+                if (!chunk.batch.isEmpty()) {
+                    runnerModel.updateRunnerStatuses(chunk.batch, lockRegistry);
+                }
+                applied = true;
+            } finally {
+                updateDeduplicator.endDeliveries(chunk.batch.getUpdateIds(), applied);
+            }
+            return chunk;
+        }
+
+        private void parse(ParsedChunk chunk) {
+            ParsedUpdate update = new ParsedUpdate();
+
+            int lineStart = start;
+            while (lineStart < end) {
+                int lineBreak = lineStart;
+                while (lineBreak < end && bytes[lineBreak] != '\n') {
+                    lineBreak++;
+                }
+                int lineEnd = (lineBreak > lineStart && bytes[lineBreak - 1] == '\r') ? lineBreak - 1 : lineBreak;
+
+                update.clear();
+                try {
+                    if (format.parse(bytes, lineStart, lineEnd, update)) {
+                        RunnerUpdateValidator.validate(update.name, update.country, update.metres, update.updateId);
+                        if (update.updateId != null && !updateDeduplicator.claimDelivery(update.updateId)) {
+                            chunk.duplicates++;
+                        } else {
+                            chunk.batch.add(update.name, update.country, update.metres, update.updateId);
+                        }
+                    }
+                } catch (IllegalArgumentException | ArithmeticException e) {
+                    if (chunk.rejected++ == 0) {
+                        chunk.firstRejectedLine = chunk.lines;
+                        chunk.firstRejectionReason = e.getMessage();
+                    }
+                }
+
+                chunk.lines++;
+                lineStart = lineBreak + 1;
+            }
+        }
+    }
+}
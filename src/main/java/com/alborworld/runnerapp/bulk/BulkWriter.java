@@ -0,0 +1,184 @@
+package com.alborworld.runnerapp.bulk;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import com.alborworld.runnerapp.model.Distances;
+
+/**
+ * Buffers UTF-8 encoded records in front of an output stream, without an intermediate {@link String} or encoder.
+ */
+final class BulkWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+
+    BulkWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    BulkWriter writeAscii(String ascii) throws IOException {
+        for (int i = 0; i < ascii.length(); i++) {
+            writeByte(ascii.charAt(i));
+        }
+        return this;
+    }
+
+    BulkWriter writeLong(long value) throws IOException {
+        if (value < 0) {
+            writeByte('-');
+            if (value == Long.MIN_VALUE) {
+                return writeAscii(Long.toString(value).substring(1));
+            }
+            value = -value;
+        }
+        ensureRoom(20);
+        int start = position;
+        do {
+            buffer[position++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        for (int i = start, j = position - 1; i < j; i++, j--) {
+            byte digit = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = digit;
+        }
+        return this;
+    }
+
+    /**
+     * Writes a distance in metres as km, with as many of its three decimals as it needs.
+     */
+    BulkWriter writeKm(long metres) throws IOException {
+        long wholeKm = metres / Distances.METRES_PER_KM;
+        int fraction = (int) Math.abs(metres % Distances.METRES_PER_KM);
+        if (metres < 0 && wholeKm == 0) {
+            writeByte('-');
+        }
+        writeLong(wholeKm);
+        if (fraction != 0) {
+            ensureRoom(4);
+            buffer[position++] = '.';
+            for (int divisor = 100; fraction != 0; divisor /= 10) {
+                buffer[position++] = (byte) ('0' + fraction / divisor);
+                fraction %= divisor;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Writes a JSON string literal, quotes included.
+     */
+    BulkWriter writeJsonString(String value) throws IOException {
+        writeByte('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                writeByte('\\');
+                writeByte(c);
+            } else if (c < 0x20) {
+                ensureRoom(6);
+                buffer[position++] = '\\';
+                buffer[position++] = 'u';
+                buffer[position++] = '0';
+                buffer[position++] = '0';
+                buffer[position++] = HEX[c >> 4];
+                buffer[position++] = HEX[c & 0xf];
+            } else {
+                i = writeChar(value, i);
+            }
+        }
+        writeByte('"');
+        return this;
+    }
+
+    /**
+     * Writes a CSV field, quoted only if it has to be.
+     */
+    BulkWriter writeCsvField(String value) throws IOException {
+        if (!needsQuotes(value)) {
+            for (int i = 0; i < value.length(); i++) {
+                i = writeChar(value, i);
+            }
+            return this;
+        }
+
+        writeByte('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                writeByte('"');
+            }
+            i = writeChar(value, i);
+        }
+        writeByte('"');
+        return this;
+    }
+
+    private static boolean needsQuotes(String value) {
+        if (value.isEmpty()) {
+            return false;
+        }
+        if (value.charAt(0) == ' ' || value.charAt(value.length() - 1) == ' ') {
+            return true;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\r' || c == '\n') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Returns the index of the last char consumed, which is the next one for a surrogate pair.
+    private int writeChar(String value, int i) throws IOException {
+        char c = value.charAt(i);
+        ensureRoom(4);
+        if (c < 0x80) {
+            buffer[position++] = (byte) c;
+        } else if (c < 0x800) {
+            buffer[position++] = (byte) (0xc0 | (c >> 6));
+            buffer[position++] = (byte) (0x80 | (c & 0x3f));
+        } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(i + 1))) {
+            int codePoint = Character.toCodePoint(c, value.charAt(++i));
+            buffer[position++] = (byte) (0xf0 | (codePoint >> 18));
+            buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+            buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+            buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+        } else if (Character.isSurrogate(c)) {
+            buffer[position++] = '?';
+        } else {
+            buffer[position++] = (byte) (0xe0 | (c >> 12));
+            buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            buffer[position++] = (byte) (0x80 | (c & 0x3f));
+        }
+        return i;
+    }
+
+    BulkWriter writeByte(int b) throws IOException {
+        ensureRoom(1);
+        buffer[position++] = (byte) b;
+        return this;
+    }
+
+    private void ensureRoom(int bytes) throws IOException {
+        if (position + bytes > buffer.length) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    void flush() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+        out.flush();
+    }
+}
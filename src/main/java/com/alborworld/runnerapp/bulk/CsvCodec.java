@@ -0,0 +1,120 @@
+package com.alborworld.runnerapp.bulk;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One record per line: {@code name,country,km[,updateId]}, with RFC 4180 quoting but no line breaks within fields, and
+ * km with at most three decimals. A line whose km field reads {@code km} is a header, and is skipped.
+ */
+final class CsvCodec {
+
+    private static final int MAX_FIELDS = 4;
+
+    private CsvCodec() {
+    }
+
+    /**
+     * @return false if the line holds no record.
+     */
+    static boolean parse(byte[] bytes, int start, int end, ParsedUpdate update) {
+        if (start == end) {
+            return false;
+        }
+
+        String[] fields = new String[MAX_FIELDS];
+        int kmStart = -1;
+        int kmEnd = -1;
+        int field = 0;
+        int i = start;
+        while (true) {
+            if (field == MAX_FIELDS) {
+                throw new IllegalArgumentException("Expected at most " + MAX_FIELDS + " fields");
+            }
+
+            int fieldEnd;
+            if (i < end && bytes[i] == '"') {
+                StringBuilder unquoted = null;
+                int segmentStart = ++i;
+                while (true) {
+                    if (i == end) {
+                        throw new IllegalArgumentException("Unterminated quoted field");
+                    }
+                    if (bytes[i] == '"') {
+                        if (i + 1 < end && bytes[i + 1] == '"') {
+                            if (unquoted == null) {
+                                unquoted = new StringBuilder();
+                            }
+                            unquoted.append(decode(bytes, segmentStart, i + 1));
+                            i += 2;
+                            segmentStart = i;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                String last = decode(bytes, segmentStart, i);
+                fields[field] = (unquoted == null) ? last : unquoted.append(last).toString();
+                if (field == 2) {
+                    kmStart = segmentStart;
+                    kmEnd = i;
+                }
+                fieldEnd = ++i;
+                if (fieldEnd < end && bytes[fieldEnd] != ',') {
+                    throw new IllegalArgumentException("Unexpected character after a quoted field");
+                }
+            } else {
+                fieldEnd = i;
+                while (fieldEnd < end && bytes[fieldEnd] != ',') {
+                    fieldEnd++;
+                }
+                if (field == 2) {
+                    kmStart = i;
+                    kmEnd = fieldEnd;
+                } else {
+                    fields[field] = decode(bytes, i, fieldEnd);
+                }
+            }
+
+            field++;
+            if (fieldEnd == end) {
+                break;
+            }
+            i = fieldEnd + 1;
+        }
+
+        if (field < 3) {
+            throw new IllegalArgumentException("Expected at least 3 fields but got " + field);
+        }
+        if (kmEnd - kmStart == 2 && (bytes[kmStart] | 0x20) == 'k' && (bytes[kmStart + 1] | 0x20) == 'm') {
+            return false;
+        }
+
+        update.name = fields[0];
+        update.country = fields[1];
+        update.setKm(bytes, kmStart, kmEnd);
+        update.updateId = (fields[3] == null || fields[3].isEmpty()) ? null : fields[3];
+        return true;
+    }
+
+    private static String decode(byte[] bytes, int start, int end) {
+        return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    static void writeRunnerHeader(BulkWriter writer) throws IOException {
+        writer.writeAscii("name,country,km\n");
+    }
+
+    static void writeRunner(BulkWriter writer, String name, String country, long metres) throws IOException {
+        writer.writeCsvField(name).writeByte(',').writeCsvField(country).writeByte(',').writeKm(metres).writeByte('\n');
+    }
+
+    static void writeCountryHeader(BulkWriter writer) throws IOException {
+        writer.writeAscii("country,km\n");
+    }
+
+    static void writeCountry(BulkWriter writer, String country, long metres) throws IOException {
+        writer.writeCsvField(country).writeByte(',').writeKm(metres).writeByte('\n');
+    }
+}
@@ -0,0 +1,60 @@
+package com.alborworld.runnerapp.bulk;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alborworld.runnerapp.model.EpochArchiver;
+import com.alborworld.runnerapp.store.RunnerStore;
+
+/**
+ * Archives the totals of past epochs as CSV exports in a directory: {@code epoch-N-runners.csv} and
+ * {@code epoch-N-countries.csv}, which can be imported as they are.
+ */
+public class EpochArchive implements EpochArchiver {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final File directory;
+
+    public EpochArchive(String directory) {
+        this.directory = new File(directory);
+    }
+
+    @Override
+    public void archive(long epoch, RunnerStore store) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+
+        long startMillis = System.currentTimeMillis();
+        long runners = write(store, fileOf(epoch, ExportRecords.RUNNERS), ExportRecords.RUNNERS);
+        write(store, fileOf(epoch, ExportRecords.COUNTRIES), ExportRecords.COUNTRIES);
+
+        logger.info("Archived {} runners of epoch {} to {} in {} ms.", runners, epoch, directory,
+                System.currentTimeMillis() - startMillis);
+    }
+
+    File fileOf(long epoch, ExportRecords records) {
+        return new File(directory, "epoch-" + epoch + "-" + records.name().toLowerCase(Locale.ROOT) + ".csv");
+    }
+
+    // Through a temporary file, so that an archive is either complete or absent.
+    private static long write(RunnerStore store, File file, ExportRecords records) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        long count;
+        try (FileOutputStream out = new FileOutputStream(temporary)) {
+            count = BulkExporter.exportStore(store, out, BulkFormat.CSV, records);
+            out.getFD().sync();
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+}
@@ -0,0 +1,8 @@
+package com.alborworld.runnerapp.bulk;
+
+/**
+ * What a bulk export lists.
+ */
+public enum ExportRecords {
+    RUNNERS, COUNTRIES
+}
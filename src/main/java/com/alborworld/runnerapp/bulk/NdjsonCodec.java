@@ -0,0 +1,288 @@
+package com.alborworld.runnerapp.bulk;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One JSON object per line: {@code {"name":"...","country":"...","km":12.5,"updateId":"..."}}, where {@code km} has at
+ * most three decimals and may be given as {@code "metres":12500} instead, {@code updateId} is optional and other
+ * members are ignored.
+ * <p>
+ * The parser works on the UTF-8 bytes, and only builds strings for the values it keeps.
+ */
+final class NdjsonCodec {
+
+    private static final byte[] NAME = key("name");
+    private static final byte[] COUNTRY = key("country");
+    private static final byte[] KM = key("km");
+    private static final byte[] METRES = key("metres");
+    private static final byte[] UPDATE_ID = key("updateId");
+
+    private NdjsonCodec() {
+    }
+
+    private static byte[] key(String key) {
+        return key.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return false if the line holds no record.
+     */
+    static boolean parse(byte[] bytes, int start, int end, ParsedUpdate update) {
+        Cursor cursor = new Cursor(bytes, start, end);
+        cursor.skipWhitespace();
+        if (cursor.position == end) {
+            return false;
+        }
+
+        cursor.expect('{');
+        cursor.skipWhitespace();
+        if (cursor.peek() == '}') {
+            cursor.position++;
+        } else {
+            while (true) {
+                cursor.expect('"');
+                int keyStart = cursor.position;
+                int keyEnd = cursor.skipString();
+                cursor.skipWhitespace();
+                cursor.expect(':');
+                cursor.skipWhitespace();
+
+                if (matches(bytes, keyStart, keyEnd, NAME)) {
+                    update.name = cursor.readString();
+                } else if (matches(bytes, keyStart, keyEnd, COUNTRY)) {
+                    update.country = cursor.readString();
+                } else if (matches(bytes, keyStart, keyEnd, UPDATE_ID)) {
+                    update.updateId = cursor.readNullableString();
+                } else if (matches(bytes, keyStart, keyEnd, KM)) {
+                    int numberStart = cursor.position;
+                    update.setKm(bytes, numberStart, cursor.skipNumber());
+                } else if (matches(bytes, keyStart, keyEnd, METRES)) {
+                    int numberStart = cursor.position;
+                    update.setMetres(bytes, numberStart, cursor.skipNumber());
+                } else {
+                    cursor.skipValue();
+                }
+
+                cursor.skipWhitespace();
+                if (cursor.peek() == ',') {
+                    cursor.position++;
+                    cursor.skipWhitespace();
+                    continue;
+                }
+                cursor.expect('}');
+                break;
+            }
+        }
+
+        cursor.skipWhitespace();
+        if (cursor.position != end) {
+            throw new IllegalArgumentException("Unexpected content after the object");
+        }
+        if (!update.hasDistance) {
+            throw new IllegalArgumentException("Km and metres are null");
+        }
+        return true;
+    }
+
+    private static boolean matches(byte[] bytes, int start, int end, byte[] key) {
+        if (end - start != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (bytes[start + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static void writeRunner(BulkWriter writer, String name, String country, long metres) throws IOException {
+        writer.writeAscii("{\"name\":").writeJsonString(name).writeAscii(",\"country\":").writeJsonString(country)
+                .writeAscii(",\"km\":").writeKm(metres).writeAscii("}\n");
+    }
+
+    static void writeCountry(BulkWriter writer, String country, long metres) throws IOException {
+        writer.writeAscii("{\"country\":").writeJsonString(country).writeAscii(",\"km\":").writeKm(metres)
+                .writeAscii("}\n");
+    }
+
+    private static final class Cursor {
+
+        private final byte[] bytes;
+        private final int end;
+        private int position;
+
+        Cursor(byte[] bytes, int start, int end) {
+            this.bytes = bytes;
+            this.position = start;
+            this.end = end;
+        }
+
+        int peek() {
+            if (position == end) {
+                throw new IllegalArgumentException("Unexpected end of line");
+            }
+            return bytes[position];
+        }
+
+        void expect(char c) {
+            if (peek() != c) {
+                throw new IllegalArgumentException("Expected '" + c + "' at column " + position);
+            }
+            position++;
+        }
+
+        void skipWhitespace() {
+            while (position < end) {
+                byte b = bytes[position];
+                if (b != ' ' && b != '\t' && b != '\r') {
+                    return;
+                }
+                position++;
+            }
+        }
+
+        // Called after the opening quote; returns the end of the string, before the closing quote.
+        int skipString() {
+            while (true) {
+                int b = peek();
+                if (b == '"') {
+                    return position++;
+                }
+                position += (b == '\\') ? 2 : 1;
+            }
+        }
+
+        String readNullableString() {
+            if (peek() == 'n') {
+                skipLiteral("null");
+                return null;
+            }
+            return readString();
+        }
+
+        String readString() {
+            expect('"');
+            int start = position;
+            StringBuilder unescaped = null;
+            int segmentStart = start;
+            while (true) {
+                int b = peek();
+                if (b == '"') {
+                    break;
+                }
+                if (b != '\\') {
+                    position++;
+                    continue;
+                }
+
+                if (unescaped == null) {
+                    unescaped = new StringBuilder();
+                }
+                unescaped.append(new String(bytes, segmentStart, position - segmentStart, StandardCharsets.UTF_8));
+                position++;
+                int escaped = peek();
+                position++;
+                switch (escaped) {
+                case '"':
+                case '\\':
+                case '/':
+                    unescaped.append((char) escaped);
+                    break;
+                case 'b':
+                    unescaped.append('\b');
+                    break;
+                case 'f':
+                    unescaped.append('\f');
+                    break;
+                case 'n':
+                    unescaped.append('\n');
+                    break;
+                case 'r':
+                    unescaped.append('\r');
+                    break;
+                case 't':
+                    unescaped.append('\t');
+                    break;
+                case 'u':
+                    unescaped.append(readHexChar());
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid escape at column " + position);
+                }
+                segmentStart = position;
+            }
+
+            String last = new String(bytes, segmentStart, position - segmentStart, StandardCharsets.UTF_8);
+            position++;
+            return (unescaped == null) ? last : unescaped.append(last).toString();
+        }
+
+        private char readHexChar() {
+            if (end - position < 4) {
+                throw new IllegalArgumentException("Unexpected end of line");
+            }
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                int digit = Character.digit(bytes[position++], 16);
+                if (digit < 0) {
+                    throw new IllegalArgumentException("Invalid escape at column " + position);
+                }
+                value = (value << 4) | digit;
+            }
+            return (char) value;
+        }
+
+        // Returns the end of the number; only plain decimals, without an exponent, are accepted.
+        int skipNumber() {
+            int start = position;
+            while (position < end) {
+                byte b = bytes[position];
+                if (b != '-' && b != '.' && (b < '0' || b > '9')) {
+                    break;
+                }
+                position++;
+            }
+            if (position == start) {
+                throw new IllegalArgumentException("Km is not a decimal number");
+            }
+            return position;
+        }
+
+        void skipValue() {
+            int b = peek();
+            if (b == '"') {
+                position++;
+                skipString();
+            } else if (b == '{' || b == '[') {
+                int depth = 0;
+                do {
+                    b = peek();
+                    if (b == '"') {
+                        position++;
+                        skipString();
+                        continue;
+                    }
+                    if (b == '{' || b == '[') {
+                        depth++;
+                    } else if (b == '}' || b == ']') {
+                        depth--;
+                    }
+                    position++;
+                } while (depth > 0);
+            } else {
+                while (position < end && bytes[position] != ',' && bytes[position] != '}'
+                        && bytes[position] != ' ') {
+                    position++;
+                }
+            }
+        }
+
+        private void skipLiteral(String literal) {
+            for (int i = 0; i < literal.length(); i++) {
+                expect(literal.charAt(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.alborworld.runnerapp.bulk;
+
+/**
+ * The fields of one imported record, reused from one line to the next by a parsing thread.
+ */
+final class ParsedUpdate {
+
+    // Metres are thousandths of km.
+    private static final int KM_DECIMALS = 3;
+
+    String name;
+    String country;
+    long metres;
+    boolean hasDistance;
+    String updateId;
+
+    void clear() {
+        name = null;
+        country = null;
+        metres = 0;
+        hasDistance = false;
+        updateId = null;
+    }
+
+    void setKm(byte[] bytes, int start, int end) {
+        metres = parseKm(bytes, start, end);
+        hasDistance = true;
+    }
+
+    void setMetres(byte[] bytes, int start, int end) {
+        metres = parseMetres(bytes, start, end);
+        hasDistance = true;
+    }
+
+    /**
+     * Parses an optionally signed decimal number of km, with at most three decimals, into metres; anything else, or
+     * an overflow, is an {@link IllegalArgumentException}.
+     */
+    static long parseKm(byte[] bytes, int start, int end) {
+        boolean negative = start < end && bytes[start] == '-';
+        int i = negative ? start + 1 : start;
+        if (i == end) {
+            throw new IllegalArgumentException("Km is missing");
+        }
+
+        long value = 0;
+        int decimals = -1;
+        for (; i < end; i++) {
+            if (bytes[i] == '.' && decimals < 0) {
+                decimals = 0;
+                continue;
+            }
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IllegalArgumentException("Km is not a decimal number");
+            }
+            if (decimals >= 0 && ++decimals > KM_DECIMALS) {
+                throw new IllegalArgumentException("Km has more than " + KM_DECIMALS + " decimals");
+            }
+            value = accumulate(value, digit, "Km");
+        }
+        if (decimals == 0) {
+            throw new IllegalArgumentException("Km is not a decimal number");
+        }
+        for (int scale = Math.max(decimals, 0); scale < KM_DECIMALS; scale++) {
+            value = accumulate(value, 0, "Km");
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses an optionally signed decimal integer of metres; anything else, or an overflow, is an
+     * {@link IllegalArgumentException}.
+     */
+    static long parseMetres(byte[] bytes, int start, int end) {
+        boolean negative = start < end && bytes[start] == '-';
+        int i = negative ? start + 1 : start;
+        if (i == end) {
+            throw new IllegalArgumentException("Metres are missing");
+        }
+
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IllegalArgumentException("Metres are not an integer");
+            }
+            value = accumulate(value, digit, "Metres");
+        }
+        return negative ? -value : value;
+    }
+
+    private static long accumulate(long value, int digit, String field) {
+        if (value > (Long.MAX_VALUE - digit) / 10) {
+            throw new IllegalArgumentException(field + " overflowed " + Long.MAX_VALUE + " metres");
+        }
+        return value * 10 + digit;
+    }
+}
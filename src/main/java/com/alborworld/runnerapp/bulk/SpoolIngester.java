@@ -0,0 +1,423 @@
+package com.alborworld.runnerapp.bulk;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alborworld.runnerapp.dedup.UpdateDeduplicator;
+import com.alborworld.runnerapp.locking.LockRegistry;
+import com.alborworld.runnerapp.model.RunnerModel;
+import com.alborworld.runnerapp.model.RunnerUpdateValidator;
+import com.alborworld.runnerapp.model.UpdateBatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Ingests the update files dropped into a spool directory, in the formats of the bulk import: {@code *.csv} and
+ * {@code *.ndjson}. Files must appear complete, by a rename into the directory; names starting with a dot are left
+ * alone, so that they can be written in place first.
+ * <p>
+ * The directory is polled, and each file is memory-mapped a region at a time and scanned for line breaks in the
+ * mapping. Records are checked and deduplicated like those of a bulk import and applied in batches of
+ * {@code batchRecords} lines, after each of which the file and the offset reached are checkpointed, so that a restart
+ * resumes where the last applied batch ended. Only a crash between applying a batch and checkpointing it can replay
+ * that batch. Ingested files are moved to {@code processed/}, those of an unknown format to {@code rejected/}.
+ * <p>
+ * A started ingester holds a lock on the directory, so that a second one, in this process or another, refuses to
+ * start rather than applying the same files into another model.
+ */
+public class SpoolIngester {
+
+    static final String CHECKPOINT_FILE = ".checkpoint";
+    static final String LOCK_FILE = ".lock";
+    static final String PROCESSED_DIRECTORY = "processed";
+    static final String REJECTED_DIRECTORY = "rejected";
+
+    private static final long DEFAULT_POLL_INTERVAL_MILLIS = 1000;
+    private static final int DEFAULT_BATCH_RECORDS = 64 * 1024;
+    private static final int DEFAULT_REGION_SIZE = 64 * 1024 * 1024;
+    private static final int UTF8_BOM_LENGTH = 3;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final RunnerModel runnerModel;
+    private final LockRegistry lockRegistry;
+    private final UpdateDeduplicator updateDeduplicator;
+    private final File directory;
+    private final File processedDirectory;
+    private final File rejectedDirectory;
+    private final File checkpointFile;
+
+    private long pollIntervalMillis = DEFAULT_POLL_INTERVAL_MILLIS;
+    private int batchRecords = DEFAULT_BATCH_RECORDS;
+    private int regionSize = DEFAULT_REGION_SIZE;
+
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong imported = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private FileChannel lockChannel;
+    // Referenced, as the JVM only tells its own overlapping locks apart while they are reachable.
+    private FileLock directoryLock;
+    private ScheduledExecutorService poller;
+    private volatile boolean stopping;
+
+    public SpoolIngester(RunnerModel runnerModel, LockRegistry lockRegistry, UpdateDeduplicator updateDeduplicator,
+            String directory) throws IOException {
+        this.runnerModel = runnerModel;
+        this.lockRegistry = lockRegistry;
+        this.updateDeduplicator = updateDeduplicator;
+        this.directory = new File(directory);
+        this.processedDirectory = new File(this.directory, PROCESSED_DIRECTORY);
+        this.rejectedDirectory = new File(this.directory, REJECTED_DIRECTORY);
+        this.checkpointFile = new File(this.directory, CHECKPOINT_FILE);
+
+        for (File dir : Arrays.asList(this.directory, processedDirectory, rejectedDirectory)) {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Cannot create " + dir);
+            }
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if another ingester has started on the same directory.
+     */
+    public void start() throws IOException {
+        lockChannel =
+                FileChannel.open(new File(directory, LOCK_FILE).toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE);
+        try {
+            directoryLock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            directoryLock = null;
+        }
+        if (directoryLock == null) {
+            lockChannel.close();
+            throw new IllegalStateException("The spool directory " + directory + " is ingested by another ingester");
+        }
+
+        poller =
+                Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true)
+                        .setNameFormat("spool-ingester-%d").build());
+        poller.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    poll();
+                } catch (IOException | RuntimeException e) {
+                    logger.error("Failed to ingest the spool directory " + directory + ".", e);
+                }
+            }
+        }, 0, pollIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() throws InterruptedException {
+        stopping = true;
+        if (poller != null) {
+            // The file being ingested is left at its last checkpoint.
+            poller.shutdown();
+            poller.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        if (lockChannel != null) {
+            try {
+                lockChannel.close();
+            } catch (IOException e) {
+                logger.warn("Failed to unlock the spool directory " + directory + ".", e);
+            }
+        }
+        logger.info("Ingested {} spooled files: {} updates, {} duplicates and {} rejected lines.", files.get(),
+                imported.get(), duplicates.get(), rejected.get());
+    }
+
+    /**
+     * Ingests every file in the directory, starting with the one of the checkpoint, if any.
+     */
+    void poll() throws IOException {
+        Checkpoint checkpoint = readCheckpoint();
+        for (File file : listSpooled(checkpoint)) {
+            BulkFormat format = formatOf(file.getName());
+            if (format == null) {
+                logger.warn("Rejecting spooled file {} of an unknown format.", file);
+                moveTo(file, rejectedDirectory);
+                continue;
+            }
+
+            long offset = 0;
+            if (checkpoint != null && checkpoint.fileName.equals(file.getName())) {
+                offset = checkpoint.offset;
+                logger.info("Resuming spooled file {} at byte {}.", file, offset);
+            }
+            if (!ingest(file, format, offset)) {
+                return;
+            }
+            moveTo(file, processedDirectory);
+            Files.deleteIfExists(checkpointFile.toPath());
+            checkpoint = null;
+        }
+    }
+
+    private List<File> listSpooled(final Checkpoint checkpoint) {
+        File[] spooled = directory.listFiles();
+        List<File> result = new ArrayList<>();
+        if (spooled != null) {
+            for (File file : spooled) {
+                if (file.isFile() && !file.getName().startsWith(".")) {
+                    result.add(file);
+                }
+            }
+        }
+
+        // The file of the checkpoint first, then the oldest.
+        Collections.sort(result, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                if (checkpoint != null && f1.getName().equals(checkpoint.fileName) != f2.getName().equals(
+                        checkpoint.fileName)) {
+                    return f1.getName().equals(checkpoint.fileName) ? -1 : 1;
+                }
+                int byAge = Long.compare(f1.lastModified(), f2.lastModified());
+                return (byAge != 0) ? byAge : f1.getName().compareTo(f2.getName());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @return false if stopped before the end of the file.
+     */
+    private boolean ingest(File file, BulkFormat format, long offset) throws IOException {
+        long startNanos = System.nanoTime();
+        Progress progress = new Progress();
+        UpdateBatch batch = new UpdateBatch();
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            byte[] line = new byte[256];
+            int batchLines = 0;
+            long position = offset;
+            int mappedSize = regionSize;
+
+            while (position < size) {
+                int length = (int) Math.min(mappedSize, size - position);
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                boolean last = position + length == size;
+
+                int lineStart = (position == 0 && hasUtf8Bom(region, length)) ? UTF8_BOM_LENGTH : 0;
+                while (lineStart < length) {
+                    int lineBreak = lineStart;
+                    while (lineBreak < length && region.get(lineBreak) != '\n') {
+                        lineBreak++;
+                    }
+                    if (lineBreak == length && !last) {
+                        // The rest of the line is in the next region.
+                        break;
+                    }
+
+                    int lineEnd =
+                            (lineBreak > lineStart && region.get(lineBreak - 1) == '\r') ? lineBreak - 1 : lineBreak;
+                    if (line.length < lineEnd - lineStart) {
+                        line = new byte[Math.max(line.length * 2, lineEnd - lineStart)];
+                    }
+                    region.position(lineStart);
+                    region.get(line, 0, lineEnd - lineStart);
+                    parse(format, line, lineEnd - lineStart, batch, progress);
+                    lineStart = lineBreak + 1;
+
+                    if (++batchLines == batchRecords) {
+                        apply(batch, progress);
+                        batch = new UpdateBatch();
+                        writeCheckpoint(file.getName(), position + Math.min(lineStart, length));
+                        batchLines = 0;
+                        if (stopping) {
+                            count(progress);
+                            return false;
+                        }
+                    }
+                }
+
+                int consumed = Math.min(lineStart, length);
+                if (consumed == 0) {
+                    // A line longer than the region.
+                    mappedSize = (int) Math.min(Integer.MAX_VALUE, mappedSize * 2L);
+                    continue;
+                }
+                position += consumed;
+                mappedSize = regionSize;
+            }
+
+            if (batchLines > 0) {
+                apply(batch, progress);
+                batch = new UpdateBatch();
+                writeCheckpoint(file.getName(), size);
+            }
+        } finally {
+            // Releases the updates of a batch a failure left unapplied, to be read again.
+            updateDeduplicator.endDeliveries(batch.getUpdateIds(), false);
+        }
+
+        files.incrementAndGet();
+        count(progress);
+        logger.info("Ingested spooled file {} in {} ms: {} updates, {} duplicates and {} rejected lines.", file,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), progress.imported,
+                progress.duplicates, progress.rejected);
+        return true;
+    }
+
+    private void parse(BulkFormat format, byte[] line, int length, UpdateBatch batch, Progress progress) {
+        ParsedUpdate update = progress.update;
+        update.clear();
+        try {
+            if (format.parse(line, 0, length, update)) {
+                RunnerUpdateValidator.validate(update.name, update.country, update.metres, update.updateId);
+                if (update.updateId != null && !updateDeduplicator.claimDelivery(update.updateId)) {
+                    progress.duplicates++;
+                } else {
+                    batch.add(update.name, update.country, update.metres, update.updateId);
+                }
+            }
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            if (progress.rejected++ == 0) {
+                logger.warn("Rejected a line of a spooled file: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void count(Progress progress) {
+        imported.addAndGet(progress.imported);
+        duplicates.addAndGet(progress.duplicates);
+        rejected.addAndGet(progress.rejected);
+    }
+
+    private void apply(UpdateBatch batch, Progress progress) {
+        boolean applied = false;
+        try {
+            if (!batch.isEmpty()) {
+                runnerModel.updateRunnerStatuses(batch, lockRegistry);
+                progress.imported += batch.getUpdatesCount();
+            }
+            applied = true;
+        } finally {
+            updateDeduplicator.endDeliveries(batch.getUpdateIds(), applied);
+        }
+    }
+
+    void writeCheckpoint(String fileName, long offset) throws IOException {
+        File temporary = new File(directory, CHECKPOINT_FILE + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temporary)) {
+            out.write((fileName + "\n" + offset + "\n").getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        }
+        Files.move(temporary.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Checkpoint readCheckpoint() throws IOException {
+        if (!checkpointFile.isFile()) {
+            return null;
+        }
+        List<String> lines = Files.readAllLines(checkpointFile.toPath(), StandardCharsets.UTF_8);
+        if (lines.size() != 2) {
+            throw new IOException("Corrupted checkpoint " + checkpointFile + ": " + lines);
+        }
+        try {
+            return new Checkpoint(lines.get(0), Long.parseLong(lines.get(1)));
+        } catch (NumberFormatException e) {
+            throw new IOException("Corrupted checkpoint " + checkpointFile + ": " + lines, e);
+        }
+    }
+
+    private static void moveTo(File file, File targetDirectory) throws IOException {
+        Files.move(file.toPath(), new File(targetDirectory, file.getName()).toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static BulkFormat formatOf(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".csv")) {
+            return BulkFormat.CSV;
+        }
+        if (name.endsWith(".ndjson")) {
+            return BulkFormat.NDJSON;
+        }
+        return null;
+    }
+
+    private static boolean hasUtf8Bom(MappedByteBuffer region, int length) {
+        return length >= UTF8_BOM_LENGTH && region.get(0) == (byte) 0xef && region.get(1) == (byte) 0xbb
+                && region.get(2) == (byte) 0xbf;
+    }
+
+    public long getFilesCount() {
+        return files.get();
+    }
+
+    public long getImportedCount() {
+        return imported.get();
+    }
+
+    public long getDuplicatesCount() {
+        return duplicates.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public void setPollIntervalMillis(long pollIntervalMillis) {
+        this.pollIntervalMillis = pollIntervalMillis;
+    }
+
+    /**
+     * @param batchRecords the lines applied at once, and replayed at most after a crash.
+     */
+    public void setBatchRecords(int batchRecords) {
+        this.batchRecords = batchRecords;
+    }
+
+    /**
+     * @param regionSize the bytes of a file mapped at once, grown for longer lines.
+     */
+    public void setRegionSize(int regionSize) {
+        this.regionSize = regionSize;
+    }
+
+    private static class Checkpoint {
+
+        final String fileName;
+        final long offset;
+
+        Checkpoint(String fileName, long offset) {
+            this.fileName = fileName;
+            this.offset = offset;
+        }
+    }
+
+    private static class Progress {
+        final ParsedUpdate update = new ParsedUpdate();
+        long imported;
+        long duplicates;
+        long rejected;
+    }
+}
@@ -0,0 +1,94 @@
+package com.alborworld.runnerapp.capture;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The binary format of a capture: a header of {@link #MAGIC} and {@link #VERSION}, then one record per request made
+ * of its kind as a byte, the microseconds since the previous record as a varint, and the parameters of its kind.
+ * Strings are a varint length and UTF-8 bytes, the update id a varint of its length plus one, 0 standing for none.
+ * An update of a few short names takes about 20 bytes.
+ */
+final class CaptureFormat {
+
+    static final int MAGIC = 0x52414350;
+    static final int VERSION = 3;
+
+    private CaptureFormat() {
+    }
+
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Varint longer than 64 bits");
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        return readBytes(in, readVarLong(in));
+    }
+
+    static void writeOptionalString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            writeVarLong(out, 0);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(out, bytes.length + 1L);
+            out.write(bytes);
+        }
+    }
+
+    static String readOptionalString(DataInput in) throws IOException {
+        long length = readVarLong(in);
+        return (length == 0) ? null : readBytes(in, length - 1);
+    }
+
+    private static String readBytes(DataInput in, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new StreamCorruptedException("String of " + length + " bytes");
+        }
+        byte[] bytes = new byte[(int) length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the kind of the next record, or null at the end of the stream.
+     */
+    static CapturedRequest.Kind readKind(DataInput in) throws IOException {
+        int b;
+        try {
+            b = in.readUnsignedByte();
+        } catch (EOFException e) {
+            return null;
+        }
+        CapturedRequest.Kind[] kinds = CapturedRequest.Kind.values();
+        if (b >= kinds.length) {
+            throw new StreamCorruptedException("Unknown request kind " + b);
+        }
+        return kinds[b];
+    }
+}
@@ -0,0 +1,82 @@
+package com.alborworld.runnerapp.capture;
+
+import java.util.Locale;
+
+import com.alborworld.runnerapp.controller.Order;
+import com.alborworld.runnerapp.controller.SortCriteria;
+
+/**
+ * One request accepted by the controller, as captured by {@link TrafficCapture}: its kind, when it arrived relative
+ * to the start of the capture, and the parameters of its kind.
+ */
+public class CapturedRequest {
+
+    public enum Kind {
+        UPDATE, RUNNER_STATUS, RUNNER_LIST, COUNTRY_LIST;
+    }
+
+    private final Kind kind;
+    private final long offsetMicros;
+    private final String name;
+    private final String country;
+    private final long metres;
+    private final String updateId;
+    private final SortCriteria criteria;
+    private final Order order;
+    private final Locale locale;
+
+    CapturedRequest(Kind kind, long offsetMicros, String name, String country, long metres, String updateId,
+            SortCriteria criteria, Order order, Locale locale) {
+        this.kind = kind;
+        this.offsetMicros = offsetMicros;
+        this.name = name;
+        this.country = country;
+        this.metres = metres;
+        this.updateId = updateId;
+        this.criteria = criteria;
+        this.order = order;
+        this.locale = locale;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the microseconds from the start of the capture to the arrival of the request.
+     */
+    public long getOffsetMicros() {
+        return offsetMicros;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getCountry() {
+        return country;
+    }
+
+    public long getMetres() {
+        return metres;
+    }
+
+    public String getUpdateId() {
+        return updateId;
+    }
+
+    public SortCriteria getCriteria() {
+        return criteria;
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+
+    /**
+     * @return the locale names were sorted in, or null for none.
+     */
+    public Locale getLocale() {
+        return locale;
+    }
+}
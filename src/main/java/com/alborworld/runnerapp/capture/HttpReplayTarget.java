@@ -0,0 +1,101 @@
+package com.alborworld.runnerapp.capture;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+import com.google.common.escape.Escaper;
+import com.google.common.xml.XmlEscapers;
+
+/**
+ * Replays requests against a running server, such as {@link com.alborworld.runnerapp.server.RunnerAppServer}, over
+ * keep-alive HTTP connections. List bodies are asked for gzipped, as browsers do.
+ */
+public class HttpReplayTarget implements ReplayTarget {
+
+    private static final Escaper ESCAPER = XmlEscapers.xmlAttributeEscaper();
+
+    private final String baseUrl;
+
+    /**
+     * @param baseUrl such as {@code http://localhost:9090}, without a trailing slash.
+     */
+    public HttpReplayTarget(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    @Override
+    public void send(CapturedRequest request) throws IOException {
+        switch (request.getKind()) {
+        case UPDATE:
+            StringBuilder body =
+                    new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>")
+                            .append("<runnerUpdate xmlns=\"http://com.alborworld/schema/Runner\" name=\"")
+                            .append(ESCAPER.escape(request.getName())).append("\" country=\"")
+                            .append(ESCAPER.escape(request.getCountry())).append("\" metres=\"")
+                            .append(request.getMetres()).append('"');
+            if (request.getUpdateId() != null) {
+                body.append(" updateId=\"").append(ESCAPER.escape(request.getUpdateId())).append('"');
+            }
+            body.append(" />");
+            post("/sendRunnerStatusUpdate", body.toString());
+            break;
+        case RUNNER_STATUS:
+            get("/getRunnerStatus?name=" + encode(request.getName()) + "&country=" + encode(request.getCountry()));
+            break;
+        case RUNNER_LIST:
+            get("/getRunnerList");
+            break;
+        case COUNTRY_LIST:
+            get("/getCountryList?criteria=" + request.getCriteria() + "&order=" + request.getOrder()
+                    + ((request.getLocale() != null) ? "&locale=" + request.getLocale().toLanguageTag() : ""));
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown request kind " + request.getKind());
+        }
+    }
+
+    private void get(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        complete(connection);
+    }
+
+    private void post(String path, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/xml");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        complete(connection);
+    }
+
+    // Reads the whole response, so that the connection goes back to the keep-alive pool.
+    private static void complete(HttpURLConnection connection) throws IOException {
+        int status = connection.getResponseCode();
+        InputStream in = (status < 400) ? connection.getInputStream() : connection.getErrorStream();
+        if (in != null) {
+            try {
+                byte[] buffer = new byte[8192];
+                while (in.read(buffer) >= 0) {
+                    // Discarded.
+                }
+            } finally {
+                in.close();
+            }
+        }
+        if (status != HttpURLConnection.HTTP_OK) {
+            throw new IOException("HTTP " + status + " from " + connection.getURL());
+        }
+    }
+
+    private static String encode(String value) throws IOException {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+    }
+}
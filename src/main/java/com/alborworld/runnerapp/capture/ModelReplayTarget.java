@@ -0,0 +1,61 @@
+package com.alborworld.runnerapp.capture;
+
+import java.util.concurrent.locks.Lock;
+
+import com.alborworld.runnerapp.locking.LockRegistry;
+import com.alborworld.runnerapp.model.Runner;
+import com.alborworld.runnerapp.model.RunnerModel;
+import com.alborworld.runnerapp.xml.RunnerUpdate;
+
+/**
+ * Replays requests straight into a model, locking as the controller does but without HTTP, XML or the response
+ * caches, to measure the model alone. Update ids are passed on but not deduplicated: a capture only holds updates
+ * that were accepted once.
+ */
+public class ModelReplayTarget implements ReplayTarget {
+
+    private final RunnerModel runnerModel;
+    private final LockRegistry lockRegistry;
+
+    public ModelReplayTarget(RunnerModel runnerModel, LockRegistry lockRegistry) {
+        this.runnerModel = runnerModel;
+        this.lockRegistry = lockRegistry;
+    }
+
+    @Override
+    public void send(CapturedRequest request) {
+        switch (request.getKind()) {
+        case UPDATE:
+            RunnerUpdate runnerUpdate = new RunnerUpdate();
+            runnerUpdate.setName(request.getName());
+            runnerUpdate.setCountry(request.getCountry());
+            runnerUpdate.setMetres(request.getMetres());
+            runnerUpdate.setUpdateId(request.getUpdateId());
+            Lock writeLock = lockRegistry.getWriteLockFor(new Runner(request.getName(), request.getCountry()));
+            writeLock.lock();
+            try {
+                runnerModel.updateRunnerStatus(runnerUpdate);
+            } finally {
+                writeLock.unlock();
+            }
+            break;
+        case RUNNER_STATUS:
+            Lock readLock = lockRegistry.getReadLockFor(new Runner(request.getName(), request.getCountry()));
+            readLock.lock();
+            try {
+                runnerModel.getRunnerStatus(request.getName(), request.getCountry());
+            } finally {
+                readLock.unlock();
+            }
+            break;
+        case RUNNER_LIST:
+            runnerModel.getRunnerList();
+            break;
+        case COUNTRY_LIST:
+            runnerModel.getCountryList(request.getCriteria(), request.getOrder(), request.getLocale());
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown request kind " + request.getKind());
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.alborworld.runnerapp.capture;
+
+/**
+ * Where {@link TrafficReplay} sends the captured requests.
+ */
+public interface ReplayTarget {
+
+    /**
+     * Sends one request and waits for its answer.
+     * 
+     * @throws Exception if the request failed, which the replay counts and goes on.
+     */
+    void send(CapturedRequest request) throws Exception;
+}
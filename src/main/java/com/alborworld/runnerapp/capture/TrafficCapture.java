@@ -0,0 +1,187 @@
+package com.alborworld.runnerapp.capture;
+
+import static com.alborworld.runnerapp.capture.CaptureFormat.*;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alborworld.runnerapp.controller.Order;
+import com.alborworld.runnerapp.controller.SortCriteria;
+import com.alborworld.runnerapp.model.Distances;
+import com.alborworld.runnerapp.xml.RunnerUpdate;
+
+/**
+ * Records the updates accepted and the queries answered by the controller to a compact binary file, for
+ * {@link TrafficReplay} to drive a model or a server with real traffic later.
+ * <p>
+ * Request threads only timestamp a request and offer it to a bounded queue; a background thread encodes and writes
+ * it. When the writer falls behind, requests are dropped and counted rather than slowing down the requests.
+ */
+public class TrafficCapture {
+
+    private static final int DEFAULT_QUEUE_SIZE = 65536;
+    private static final int MAX_DRAIN = 1024;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final String file;
+
+    private final AtomicLong captured = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private int queueSize = DEFAULT_QUEUE_SIZE;
+
+    private BlockingQueue<CapturedRequest> queue;
+    private long startNanos;
+    private volatile boolean running;
+    private Thread writer;
+
+    public TrafficCapture(String file) {
+        this.file = file;
+    }
+
+    public void start() throws IOException {
+        queue = new ArrayBlockingQueue<>(queueSize);
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        startNanos = System.nanoTime();
+        running = true;
+
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write(out);
+            }
+        }, "traffic-capture");
+        writer.setDaemon(true);
+        writer.start();
+        logger.info("Capturing traffic to {}.", file);
+    }
+
+    public void stop() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        writer.join();
+        logger.info("Captured {} requests to {}, dropped {}.", captured.get(), file, dropped.get());
+    }
+
+    public void captureUpdate(RunnerUpdate runnerUpdate) {
+        offer(new CapturedRequest(CapturedRequest.Kind.UPDATE, now(), runnerUpdate.getName(),
+                runnerUpdate.getCountry(), Distances.metresOf(runnerUpdate), runnerUpdate.getUpdateId(), null, null,
+                null));
+    }
+
+    public void captureRunnerStatus(String name, String country) {
+        offer(new CapturedRequest(CapturedRequest.Kind.RUNNER_STATUS, now(), name, country, 0, null, null, null,
+                null));
+    }
+
+    public void captureRunnerList() {
+        offer(new CapturedRequest(CapturedRequest.Kind.RUNNER_LIST, now(), null, null, 0, null, null, null, null));
+    }
+
+    /**
+     * @param locale the names were sorted in, or null.
+     */
+    public void captureCountryList(SortCriteria criteria, Order order, Locale locale) {
+        offer(new CapturedRequest(CapturedRequest.Kind.COUNTRY_LIST, now(), null, null, 0, null, criteria, order,
+                locale));
+    }
+
+    public long getCaptured() {
+        return captured.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    private long now() {
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+    }
+
+    private void offer(CapturedRequest request) {
+        if (!running || !queue.offer(request)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void write(DataOutputStream out) {
+        List<CapturedRequest> drained = new ArrayList<>(MAX_DRAIN);
+        long previousMicros = 0;
+        try {
+            while (running || !queue.isEmpty()) {
+                CapturedRequest first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    out.flush();
+                    continue;
+                }
+                drained.add(first);
+                queue.drainTo(drained, MAX_DRAIN - 1);
+                for (CapturedRequest request : drained) {
+                    // Requests are timestamped before they are queued, so they may be slightly out of order.
+                    long micros = Math.max(previousMicros, request.getOffsetMicros());
+                    writeRecord(out, request, micros - previousMicros);
+                    previousMicros = micros;
+                }
+                captured.addAndGet(drained.size());
+                drained.clear();
+            }
+        } catch (IOException e) {
+            running = false;
+            logger.error("Failed to write the traffic capture to " + file + ", capturing no more.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                out.close();
+            } catch (IOException e) {
+                logger.error("Failed to close the traffic capture " + file + ".", e);
+            }
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, CapturedRequest request, long deltaMicros)
+            throws IOException {
+        out.writeByte(request.getKind().ordinal());
+        writeVarLong(out, deltaMicros);
+        switch (request.getKind()) {
+        case UPDATE:
+            writeString(out, request.getName());
+            writeString(out, request.getCountry());
+            writeVarLong(out, request.getMetres());
+            writeOptionalString(out, request.getUpdateId());
+            break;
+        case RUNNER_STATUS:
+            writeString(out, request.getName());
+            writeString(out, request.getCountry());
+            break;
+        case COUNTRY_LIST:
+            out.writeByte(request.getCriteria().ordinal());
+            out.writeByte(request.getOrder().ordinal());
+            writeOptionalString(out, (request.getLocale() != null) ? request.getLocale().toLanguageTag() : null);
+            break;
+        default:
+            break;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.alborworld.runnerapp.capture;
+
+import static com.alborworld.runnerapp.capture.CaptureFormat.*;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.util.Locale;
+
+import com.alborworld.runnerapp.controller.Order;
+import com.alborworld.runnerapp.controller.SortCriteria;
+
+/**
+ * Reads back the requests written by {@link TrafficCapture}, in order. A capture cut short by a crash ends at its last
+ * complete record.
+ */
+public class TrafficCaptureReader implements Closeable {
+
+    private final DataInputStream in;
+
+    private long offsetMicros;
+
+    public TrafficCaptureReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        if (this.in.readInt() != MAGIC) {
+            throw new StreamCorruptedException("Not a traffic capture");
+        }
+        int version = this.in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new StreamCorruptedException("Capture version was " + version + " but expected " + VERSION);
+        }
+    }
+
+    /**
+     * @return the next request, or null at the end of the capture.
+     */
+    public CapturedRequest next() throws IOException {
+        CapturedRequest.Kind kind = readKind(in);
+        if (kind == null) {
+            return null;
+        }
+
+        try {
+            offsetMicros += readVarLong(in);
+            switch (kind) {
+            case UPDATE:
+                return new CapturedRequest(kind, offsetMicros, readString(in), readString(in), readVarLong(in),
+                        readOptionalString(in), null, null, null);
+            case RUNNER_STATUS:
+                return new CapturedRequest(kind, offsetMicros, readString(in), readString(in), 0, null, null, null,
+                        null);
+            case COUNTRY_LIST:
+                SortCriteria criteria = SortCriteria.values()[in.readUnsignedByte()];
+                Order order = Order.values()[in.readUnsignedByte()];
+                String locale = readOptionalString(in);
+                return new CapturedRequest(kind, offsetMicros, null, null, 0, null, criteria, order,
+                        (locale != null) ? Locale.forLanguageTag(locale) : null);
+            default:
+                return new CapturedRequest(kind, offsetMicros, null, null, 0, null, null, null, null);
+            }
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,156 @@
+package com.alborworld.runnerapp.capture;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alborworld.runnerapp.locking.LockRegistry;
+import com.alborworld.runnerapp.model.RunnerModel;
+import com.alborworld.runnerapp.sketch.LogHistogram;
+
+/**
+ * Replays a capture of {@link TrafficCapture} against a {@link ReplayTarget}, one request at a time, keeping the
+ * original spacing of the requests scaled by a speed-up, or as fast as the target answers.
+ * <p>
+ * When the target cannot keep up, requests are sent late rather than skipped, so the latencies reported are those of
+ * the target and the lag shows how far behind the schedule the replay ended.
+ */
+public class TrafficReplay {
+
+    private static final double LATENCY_ACCURACY = 0.01;
+
+    private static final Logger logger = LoggerFactory.getLogger(TrafficReplay.class);
+
+    /**
+     * What a replay sent and how long the target took, per kind of request.
+     */
+    public static class Result {
+
+        private final Map<CapturedRequest.Kind, LogHistogram> latencies = new EnumMap<>(CapturedRequest.Kind.class);
+        private long requests;
+        private long errors;
+        private long elapsedMicros;
+        private long lagMicros;
+
+        Result() {
+            for (CapturedRequest.Kind kind : CapturedRequest.Kind.values()) {
+                latencies.put(kind, new LogHistogram(LATENCY_ACCURACY));
+            }
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getRequests(CapturedRequest.Kind kind) {
+            return latencies.get(kind).getCount();
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getElapsedMicros() {
+            return elapsedMicros;
+        }
+
+        /**
+         * @return how far behind the schedule of the capture the last request was sent.
+         */
+        public long getLagMicros() {
+            return lagMicros;
+        }
+
+        /**
+         * @return the latency quantile {@code q} of the requests of {@code kind} in microseconds, within 1%.
+         */
+        public long getLatencyMicros(CapturedRequest.Kind kind, double q) {
+            return latencies.get(kind).quantile(q);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder summary =
+                    new StringBuilder().append(requests).append(" requests in ")
+                            .append(TimeUnit.MICROSECONDS.toMillis(elapsedMicros)).append(" ms, ").append(errors)
+                            .append(" errors, ").append(TimeUnit.MICROSECONDS.toMillis(lagMicros))
+                            .append(" ms behind schedule");
+            for (Map.Entry<CapturedRequest.Kind, LogHistogram> entry : latencies.entrySet()) {
+                LogHistogram latency = entry.getValue();
+                if (latency.getCount() > 0) {
+                    summary.append("\n  ").append(entry.getKey()).append(": ").append(latency.getCount())
+                            .append(", p50 ").append(latency.quantile(0.5)).append(" us, p99 ")
+                            .append(latency.quantile(0.99)).append(" us, max ").append(latency.quantile(1))
+                            .append(" us");
+                }
+            }
+            return summary.toString();
+        }
+    }
+
+    private TrafficReplay() {
+    }
+
+    /**
+     * Replays a capture into a new in-memory model, or against the server at the given base URL:
+     * {@code TrafficReplay file [speed [url]]}. The speed defaults to 0, as fast as possible.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: TrafficReplay <capture file> [speed, 0 for as fast as possible] [base url]");
+            System.exit(2);
+        }
+        double speed = (args.length > 1) ? Double.parseDouble(args[1]) : 0;
+        ReplayTarget target =
+                (args.length > 2) ? new HttpReplayTarget(args[2]) : new ModelReplayTarget(new RunnerModel(),
+                        new LockRegistry());
+
+        try (TrafficCaptureReader reader = new TrafficCaptureReader(new FileInputStream(args[0]))) {
+            System.out.println(replay(reader, target, speed));
+        }
+    }
+
+    /**
+     * @param speed how many times faster than captured to send the requests, 1 for the original pace, or 0 for as
+     *            fast as the target answers.
+     */
+    public static Result replay(TrafficCaptureReader reader, ReplayTarget target, double speed) throws IOException,
+            InterruptedException {
+        Result result = new Result();
+        long startNanos = System.nanoTime();
+
+        CapturedRequest request;
+        while ((request = reader.next()) != null) {
+            if (speed > 0) {
+                long dueNanos = startNanos + (long) (TimeUnit.MICROSECONDS.toNanos(request.getOffsetMicros()) / speed);
+                long waitNanos = dueNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                } else {
+                    result.lagMicros = TimeUnit.NANOSECONDS.toMicros(-waitNanos);
+                }
+            }
+
+            long sentNanos = System.nanoTime();
+            try {
+                target.send(request);
+            } catch (Exception e) {
+                if (result.errors++ == 0) {
+                    logger.warn("Replaying a request failed.", e);
+                }
+            }
+            // Rounded up, as the histogram only holds positive values.
+            long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sentNanos);
+            result.latencies.get(request.getKind()).add(Math.max(1, latencyMicros));
+            result.requests++;
+        }
+
+        result.elapsedMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+        return result;
+    }
+}
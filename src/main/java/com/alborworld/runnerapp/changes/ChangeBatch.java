@@ -0,0 +1,33 @@
+package com.alborworld.runnerapp.changes;
+
+import java.util.Map;
+
+import com.alborworld.runnerapp.model.Runner;
+
+/**
+ * The totals, in metres, changed during one coalescing interval. Immutable, and shared by all the subscriptions it is published to.
+ */
+class ChangeBatch {
+
+    private final long sequence;
+    private final Map<Runner, Long> runnerTotals;
+    private final Map<String, Long> countryTotals;
+
+    ChangeBatch(long sequence, Map<Runner, Long> runnerTotals, Map<String, Long> countryTotals) {
+        this.sequence = sequence;
+        this.runnerTotals = runnerTotals;
+        this.countryTotals = countryTotals;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    Map<Runner, Long> getRunnerTotals() {
+        return runnerTotals;
+    }
+
+    Map<String, Long> getCountryTotals() {
+        return countryTotals;
+    }
+}
@@ -0,0 +1,184 @@
+package com.alborworld.runnerapp.changes;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import com.alborworld.runnerapp.model.Runner;
+import com.alborworld.runnerapp.model.RunnerModelListener;
+import com.alborworld.runnerapp.xml.ChangeFeed;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Collects the runner and country totals changed by {@link com.alborworld.runnerapp.model.RunnerModel} and, once
+ * per coalescing interval, publishes them as one batch to every subscription of the long-poll change feed.
+ * <p>
+ * Writers only ever touch the two pending maps, so a slow or absent consumer can never hold up an update.
+ */
+public class ChangeJournal implements RunnerModelListener {
+
+    private static final long DEFAULT_COALESCE_MILLIS = 1000L;
+    private static final int DEFAULT_SUBSCRIPTION_BUFFER_SIZE = 64;
+    private static final long DEFAULT_POLL_TIMEOUT_MILLIS = 30000L;
+    private static final long DEFAULT_SUBSCRIPTION_IDLE_MILLIS = 120000L;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ConcurrentMap<Runner, Long> pendingRunners = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Long> pendingCountries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ChangeSubscription> subscriptions = new ConcurrentHashMap<>();
+
+    private final AtomicLong sequence = new AtomicLong(0);
+
+    private long coalesceMillis = DEFAULT_COALESCE_MILLIS;
+    private int subscriptionBufferSize = DEFAULT_SUBSCRIPTION_BUFFER_SIZE;
+    private long pollTimeoutMillis = DEFAULT_POLL_TIMEOUT_MILLIS;
+    private long subscriptionIdleMillis = DEFAULT_SUBSCRIPTION_IDLE_MILLIS;
+
+    private ScheduledExecutorService scheduler;
+
+    public ChangeJournal() {
+    }
+
+    public void start() {
+        scheduler =
+                Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true)
+                        .setNameFormat("change-journal-%d").build());
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flush();
+                } catch (RuntimeException e) {
+                    logger.error("Failed to publish changes.", e);
+                }
+            }
+        }, coalesceMillis, coalesceMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Override
+    public void onRunnerStatusUpdated(Runner runner, long runnerTotalMetres, long countryTotalMetres) {
+        putIfGreater(pendingRunners, runner, runnerTotalMetres);
+        putIfGreater(pendingCountries, runner.getCountry(), countryTotalMetres);
+    }
+
+    /**
+     * Drops the pending totals of the previous epoch, which would otherwise win over the smaller totals of the new
+     * one, and has every subscription resync.
+     */
+    @Override
+    public synchronized void onReset(long epoch) {
+        pendingRunners.clear();
+        pendingCountries.clear();
+        for (ChangeSubscription subscription : subscriptions.values()) {
+            subscription.resync();
+        }
+    }
+
+    // Totals only grow within an epoch, so when two updates race to record the same key the larger total is the latest one.
+    private static <K> void putIfGreater(ConcurrentMap<K, Long> pending, K key, long total) {
+        Long current = pending.putIfAbsent(key, total);
+        while (current != null && current < total && !pending.replace(key, current, total)) {
+            current = pending.putIfAbsent(key, total);
+        }
+    }
+
+    /**
+     * Long-polls the changes of a subscription. An unknown or expired subscription id, or none at all, starts a new
+     * subscription whose first feed asks for a resync.
+     */
+    public DeferredResult<ChangeFeed> poll(String subscriptionId) {
+        long now = System.currentTimeMillis();
+
+        ChangeSubscription subscription = (subscriptionId == null) ? null : subscriptions.get(subscriptionId);
+        if (subscription == null) {
+            subscription =
+                    new ChangeSubscription(UUID.randomUUID().toString(), subscriptionBufferSize, sequence.get(), now);
+            subscriptions.put(subscription.getId(), subscription);
+        }
+
+        final ChangeSubscription polled = subscription;
+        final DeferredResult<ChangeFeed> result = new DeferredResult<>(pollTimeoutMillis, polled.emptyFeed());
+        result.onTimeout(new Runnable() {
+            @Override
+            public void run() {
+                polled.abandon(result);
+            }
+        });
+
+        polled.poll(result, now);
+        return result;
+    }
+
+    synchronized void flush() {
+        long now = System.currentTimeMillis();
+        expireIdleSubscriptions(now - subscriptionIdleMillis);
+
+        if (pendingRunners.isEmpty() && pendingCountries.isEmpty()) {
+            return;
+        }
+
+        ChangeBatch batch =
+                new ChangeBatch(sequence.incrementAndGet(), drain(pendingRunners), drain(pendingCountries));
+        for (ChangeSubscription subscription : subscriptions.values()) {
+            subscription.publish(batch);
+        }
+    }
+
+    // Entries that change while being drained stay pending and go out with the next batch.
+    private static <K> Map<K, Long> drain(ConcurrentMap<K, Long> pending) {
+        Map<K, Long> drained = new HashMap<>();
+        for (Map.Entry<K, Long> entry : pending.entrySet()) {
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                drained.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return drained;
+    }
+
+    private void expireIdleSubscriptions(long thresholdMillis) {
+        Iterator<ChangeSubscription> iterator = subscriptions.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isIdleSince(thresholdMillis)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public int getSubscriptionsCount() {
+        return subscriptions.size();
+    }
+
+    public void setCoalesceMillis(long coalesceMillis) {
+        this.coalesceMillis = coalesceMillis;
+    }
+
+    public void setSubscriptionBufferSize(int subscriptionBufferSize) {
+        this.subscriptionBufferSize = subscriptionBufferSize;
+    }
+
+    public void setPollTimeoutMillis(long pollTimeoutMillis) {
+        this.pollTimeoutMillis = pollTimeoutMillis;
+    }
+
+    public void setSubscriptionIdleMillis(long subscriptionIdleMillis) {
+        this.subscriptionIdleMillis = subscriptionIdleMillis;
+    }
+}
@@ -0,0 +1,150 @@
+package com.alborworld.runnerapp.changes;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.web.context.request.async.DeferredResult;
+
+import com.alborworld.runnerapp.model.Distances;
+import com.alborworld.runnerapp.model.Runner;
+import com.alborworld.runnerapp.xml.ChangeFeed;
+import com.alborworld.runnerapp.xml.Country;
+import com.alborworld.runnerapp.xml.RunnerStatus;
+
+/**
+ * One consumer of the change feed: a bounded buffer of batches not yet delivered, and at most one parked long-poll.
+ * When the buffer overflows it is dropped, and the next poll tells the consumer to resync from the full lists instead.
+ */
+class ChangeSubscription {
+
+    private final String id;
+    private final BlockingQueue<ChangeBatch> batches;
+
+    // A new subscription has missed everything that happened before it, so it starts with a resync.
+    private final AtomicBoolean resync = new AtomicBoolean(true);
+    private final AtomicReference<DeferredResult<ChangeFeed>> waiting = new AtomicReference<>();
+
+    private volatile long lastSequence;
+    private volatile long lastAccessMillis;
+
+    ChangeSubscription(String id, int bufferSize, long currentSequence, long nowMillis) {
+        this.id = id;
+        this.batches = new ArrayBlockingQueue<>(bufferSize);
+        this.lastSequence = currentSequence;
+        this.lastAccessMillis = nowMillis;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    void publish(ChangeBatch batch) {
+        lastSequence = batch.getSequence();
+
+        if (!batches.offer(batch)) {
+            batches.clear();
+            resync.set(true);
+        }
+
+        DeferredResult<ChangeFeed> poller = waiting.getAndSet(null);
+        if (poller != null) {
+            poller.setResult(drain());
+        }
+    }
+
+    /**
+     * Drops the buffered batches, and tells the consumer to resync from the full lists.
+     */
+    void resync() {
+        batches.clear();
+        resync.set(true);
+
+        DeferredResult<ChangeFeed> poller = waiting.getAndSet(null);
+        if (poller != null) {
+            poller.setResult(drain());
+        }
+    }
+
+    void poll(DeferredResult<ChangeFeed> result, long nowMillis) {
+        lastAccessMillis = nowMillis;
+
+        if (resync.get() || !batches.isEmpty()) {
+            result.setResult(drain());
+            return;
+        }
+
+        DeferredResult<ChangeFeed> previous = waiting.getAndSet(result);
+        if (previous != null) {
+            previous.setResult(emptyFeed());
+        }
+
+        // A batch may have been published between the emptiness check and parking the poll.
+        if (!batches.isEmpty() && waiting.compareAndSet(result, null)) {
+            result.setResult(drain());
+        }
+    }
+
+    void abandon(DeferredResult<ChangeFeed> result) {
+        waiting.compareAndSet(result, null);
+    }
+
+    boolean isIdleSince(long thresholdMillis) {
+        return waiting.get() == null && lastAccessMillis < thresholdMillis;
+    }
+
+    ChangeFeed emptyFeed() {
+        ChangeFeed feed = new ChangeFeed();
+        feed.setSubscription(id);
+        feed.setSequence(lastSequence);
+        return feed;
+    }
+
+    private ChangeFeed drain() {
+        ChangeFeed feed = emptyFeed();
+
+        if (resync.getAndSet(false)) {
+            batches.clear();
+            feed.setResync(true);
+            return feed;
+        }
+
+        List<ChangeBatch> drained = new ArrayList<>();
+        batches.drainTo(drained);
+        if (drained.isEmpty()) {
+            return feed;
+        }
+
+        Map<Runner, Long> runnerTotals = new LinkedHashMap<>();
+        Map<String, Long> countryTotals = new LinkedHashMap<>();
+        for (ChangeBatch batch : drained) {
+            runnerTotals.putAll(batch.getRunnerTotals());
+            countryTotals.putAll(batch.getCountryTotals());
+        }
+
+        for (Map.Entry<Runner, Long> entry : runnerTotals.entrySet()) {
+            RunnerStatus runnerStatus = new RunnerStatus();
+            runnerStatus.setName(entry.getKey().getName());
+            runnerStatus.setCountry(entry.getKey().getCountry());
+            runnerStatus.setTotalKm(Distances.toKm(entry.getValue()));
+            runnerStatus.setTotalMetres(entry.getValue());
+            feed.getRunners().add(runnerStatus);
+        }
+
+        for (Map.Entry<String, Long> entry : countryTotals.entrySet()) {
+            Country country = new Country();
+            country.setName(entry.getKey());
+            country.setTotalKm(Distances.toKm(entry.getValue()));
+            country.setTotalMetres(entry.getValue());
+            feed.getCountries().add(country);
+        }
+
+        feed.setSequence(drained.get(drained.size() - 1).getSequence());
+        return feed;
+    }
+}
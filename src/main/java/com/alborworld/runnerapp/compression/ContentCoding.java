@@ -0,0 +1,107 @@
+package com.alborworld.runnerapp.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The HTTP content codings responses are compressed with, in order of preference.
+ */
+public enum ContentCoding {
+
+    GZIP("gzip") {
+        @Override
+        OutputStream wrap(OutputStream out) throws IOException {
+            return new GZIPOutputStream(out);
+        }
+    },
+
+    DEFLATE("deflate") {
+        @Override
+        OutputStream wrap(OutputStream out) {
+            return new DeflaterOutputStream(out);
+        }
+    },
+
+    IDENTITY("identity") {
+        @Override
+        OutputStream wrap(OutputStream out) {
+            return out;
+        }
+    };
+
+    private final String token;
+
+    private ContentCoding(String token) {
+        this.token = token;
+    }
+
+    /**
+     * @return the value of the {@code Content-Encoding} header.
+     */
+    public String getToken() {
+        return token;
+    }
+
+    abstract OutputStream wrap(OutputStream out) throws IOException;
+
+    byte[] encode(byte[] body) {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (OutputStream out = wrap(encoded)) {
+            out.write(body);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot " + token + " in memory", e);
+        }
+        return encoded.toByteArray();
+    }
+
+    /**
+     * @return the preferred coding among those accepted with the highest quality by an {@code Accept-Encoding}
+     *         header, or {@link #IDENTITY}.
+     */
+    public static ContentCoding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return IDENTITY;
+        }
+
+        ContentCoding best = IDENTITY;
+        double bestQuality = 0;
+        double wildcardQuality = -1;
+        double[] qualities = { -1, -1 };
+
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            String token = parts[0].trim();
+            double quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+
+            if (token.equals("*")) {
+                wildcardQuality = quality;
+            } else if (token.equalsIgnoreCase(GZIP.token) || token.equalsIgnoreCase("x-gzip")) {
+                qualities[GZIP.ordinal()] = Math.max(qualities[GZIP.ordinal()], quality);
+            } else if (token.equalsIgnoreCase(DEFLATE.token)) {
+                qualities[DEFLATE.ordinal()] = Math.max(qualities[DEFLATE.ordinal()], quality);
+            }
+        }
+
+        for (ContentCoding coding : new ContentCoding[] { GZIP, DEFLATE }) {
+            double quality = (qualities[coding.ordinal()] >= 0) ? qualities[coding.ordinal()] : wildcardQuality;
+            if (quality > bestQuality) {
+                best = coding;
+                bestQuality = quality;
+            }
+        }
+        return best;
+    }
+}
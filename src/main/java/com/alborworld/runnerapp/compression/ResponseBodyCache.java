@@ -0,0 +1,225 @@
+package com.alborworld.runnerapp.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.xml.Jaxb2RootElementHttpMessageConverter;
+
+import com.alborworld.runnerapp.footprint.FootprintEstimator;
+import com.alborworld.runnerapp.footprint.FootprintSource;
+import com.alborworld.runnerapp.footprint.ObjectSizes;
+import com.alborworld.runnerapp.jfr.FlightRecorderEvents;
+import com.alborworld.runnerapp.jfr.MarshalEvent;
+import com.alborworld.runnerapp.xml.StructureFootprint;
+
+/**
+ * Serialized, and compressed, response bodies of the list endpoints, so that pollers share the cost of building them.
+ * <p>
+ * A body is built once per version of the model and compressed at most once per content coding. Under a steady
+ * stream of updates, where every poll would see a new version, a body is reused for {@code refreshMillis} anyway.
+ * Bodies are rebuilt after {@code maxAgeMillis} even if the version has not changed, which bounds how long changes
+ * that bypass the model, such as replicated ones, take to show. Bodies shorter than {@code minCompressedSize} are
+ * not worth compressing and are always sent as they are.
+ */
+public class ResponseBodyCache implements FootprintSource {
+
+    private static final long DEFAULT_REFRESH_MILLIS = 1000;
+    private static final long DEFAULT_MAX_AGE_MILLIS = 30000;
+    private static final int DEFAULT_MIN_COMPRESSED_SIZE = 1024;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Jaxb2RootElementHttpMessageConverter converter = new Jaxb2RootElementHttpMessageConverter();
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Object> buildLocks = new ConcurrentHashMap<>();
+
+    private long refreshMillis = DEFAULT_REFRESH_MILLIS;
+    private long maxAgeMillis = DEFAULT_MAX_AGE_MILLIS;
+    private int minCompressedSize = DEFAULT_MIN_COMPRESSED_SIZE;
+
+    /**
+     * Loads the object a body is serialized from.
+     */
+    public interface BodySource {
+        Object load();
+    }
+
+    public static class EncodedBody {
+
+        private final byte[] bytes;
+        private final ContentCoding coding;
+
+        EncodedBody(byte[] bytes, ContentCoding coding) {
+            this.bytes = bytes;
+            this.coding = coding;
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        public ContentCoding getCoding() {
+            return coding;
+        }
+    }
+
+    /**
+     * @return the body under {@code key} for the given version of the model, in the requested coding unless it is too
+     *         short to compress.
+     */
+    public EncodedBody get(String key, long version, ContentCoding coding, BodySource source) {
+        Entry entry = currentEntry(key, version, System.currentTimeMillis());
+        if (entry == null) {
+            Object buildLock = buildLock(key);
+            synchronized (buildLock) {
+                long now = System.currentTimeMillis();
+                entry = currentEntry(key, version, now);
+                if (entry == null) {
+                    entry = new Entry(version, now, serialize(source.load()));
+                    entries.put(key, entry);
+                }
+            }
+        }
+
+        if (coding == ContentCoding.IDENTITY || entry.identity.length < minCompressedSize) {
+            return new EncodedBody(entry.identity, ContentCoding.IDENTITY);
+        }
+        return new EncodedBody(entry.encoded(coding), coding);
+    }
+
+    private Entry currentEntry(String key, long version, long now) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        long age = now - entry.createdMillis;
+        boolean current = (entry.version == version) ? age < maxAgeMillis : age < refreshMillis;
+        return current ? entry : null;
+    }
+
+    private Object buildLock(String key) {
+        Object lock = buildLocks.get(key);
+        if (lock == null) {
+            Object newLock = new Object();
+            lock = buildLocks.putIfAbsent(key, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+        return lock;
+    }
+
+    private byte[] serialize(Object body) {
+        MarshalEvent event = null;
+        if (FlightRecorderEvents.AVAILABLE) {
+            event = new MarshalEvent();
+            event.begin();
+        }
+
+        BufferedOutputMessage message = new BufferedOutputMessage();
+        try {
+            converter.write(body, MediaType.APPLICATION_XML, message);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot serialize " + body.getClass() + " in memory", e);
+        }
+        byte[] bytes = message.body.toByteArray();
+
+        if (event != null) {
+            event.endAndCommit(body.getClass().getSimpleName(), bytes.length);
+        }
+        return bytes;
+    }
+
+    @Override
+    public void addFootprints(List<StructureFootprint> structures) {
+        long bytes = ObjectSizes.hashTable(entries.size()) + ObjectSizes.hashTable(buildLocks.size());
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            bytes += ObjectSizes.string(entry.getKey().length()) + entry.getValue().estimatedBytes();
+        }
+        bytes += buildLocks.size() * ObjectSizes.object(0, 0);
+        structures.add(FootprintEstimator.structure("responseBodyCache", entries.size(), bytes, true));
+    }
+
+    public void setRefreshMillis(long refreshMillis) {
+        this.refreshMillis = refreshMillis;
+    }
+
+    public void setMaxAgeMillis(long maxAgeMillis) {
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    public void setMinCompressedSize(int minCompressedSize) {
+        this.minCompressedSize = minCompressedSize;
+    }
+
+    private class Entry {
+
+        final long version;
+        final long createdMillis;
+        final byte[] identity;
+        final AtomicReferenceArray<byte[]> encoded = new AtomicReferenceArray<>(ContentCoding.values().length);
+
+        Entry(long version, long createdMillis, byte[] identity) {
+            this.version = version;
+            this.createdMillis = createdMillis;
+            this.identity = identity;
+        }
+
+        long estimatedBytes() {
+            long bytes =
+                    ObjectSizes.object(16, 3) + ObjectSizes.array(identity.length, 1)
+                            + ObjectSizes.object(0, 1) + ObjectSizes.referenceArray(encoded.length());
+            for (int i = 0; i < encoded.length(); i++) {
+                byte[] bytesOfCoding = encoded.get(i);
+                if (bytesOfCoding != null) {
+                    bytes += ObjectSizes.array(bytesOfCoding.length, 1);
+                }
+            }
+            return bytes;
+        }
+
+        byte[] encoded(ContentCoding coding) {
+            byte[] bytes = encoded.get(coding.ordinal());
+            if (bytes == null) {
+                synchronized (this) {
+                    bytes = encoded.get(coding.ordinal());
+                    if (bytes == null) {
+                        bytes = coding.encode(identity);
+                        encoded.set(coding.ordinal(), bytes);
+                        logger.debug("Compressed a body of {} bytes to {} bytes with {}.", identity.length,
+                                bytes.length, coding.getToken());
+                    }
+                }
+            }
+            return bytes;
+        }
+    }
+
+    private static class BufferedOutputMessage implements HttpOutputMessage {
+
+        private final HttpHeaders headers = new HttpHeaders();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public OutputStream getBody() {
+            return body;
+        }
+    }
+}
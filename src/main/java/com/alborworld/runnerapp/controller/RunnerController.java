@@ -3,25 +3,53 @@ package com.alborworld.runnerapp.controller;
 import static com.google.common.base.Preconditions.*;
 import static org.springframework.util.StringUtils.*;
 
+import java.io.IOException;
+import java.util.Locale;
 import java.util.concurrent.locks.Lock;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.async.DeferredResult;
 
+import com.alborworld.runnerapp.bulk.BulkExporter;
+import com.alborworld.runnerapp.bulk.BulkFormat;
+import com.alborworld.runnerapp.bulk.BulkImporter;
+import com.alborworld.runnerapp.bulk.ExportRecords;
+import com.alborworld.runnerapp.capture.TrafficCapture;
+import com.alborworld.runnerapp.changes.ChangeJournal;
+import com.alborworld.runnerapp.compression.ContentCoding;
+import com.alborworld.runnerapp.compression.ResponseBodyCache;
+import com.alborworld.runnerapp.compression.ResponseBodyCache.EncodedBody;
+import com.alborworld.runnerapp.dedup.UpdateDeduplicator;
+import com.alborworld.runnerapp.footprint.FootprintEstimator;
+import com.alborworld.runnerapp.jfr.FlightRecorderEvents;
+import com.alborworld.runnerapp.jfr.LockWaitEvent;
 import com.alborworld.runnerapp.locking.LockRegistry;
+import com.alborworld.runnerapp.model.CollationKeys;
 import com.alborworld.runnerapp.model.Runner;
 import com.alborworld.runnerapp.model.RunnerModel;
-import com.alborworld.runnerapp.xml.CountryList;
+import com.alborworld.runnerapp.model.RunnerUpdateValidator;
+import com.alborworld.runnerapp.startup.Warmup;
+import com.alborworld.runnerapp.xml.ChangeFeed;
+import com.alborworld.runnerapp.xml.Footprint;
+import com.alborworld.runnerapp.xml.ImportResult;
 import com.alborworld.runnerapp.xml.RunnerList;
 import com.alborworld.runnerapp.xml.RunnerStatus;
 import com.alborworld.runnerapp.xml.RunnerUpdate;
@@ -29,7 +57,10 @@ import com.alborworld.runnerapp.xml.RunnerUpdate;
 @Controller
 public class RunnerController {
 
-    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private static final int MAX_SEARCH_EDITS = 2;
+    private static final int MAX_SEARCH_LIMIT = 1000;
+
+    private Logger logger = LoggerFactory.getLogger(getClass());
 
     @Autowired
     @Qualifier("runnerModel")
@@ -39,6 +70,42 @@ public class RunnerController {
     @Qualifier("lockRegistry")
     private LockRegistry lockRegistry;
 
+    @Autowired
+    @Qualifier("updateDeduplicator")
+    private UpdateDeduplicator updateDeduplicator;
+
+    @Autowired
+    @Qualifier("changeJournal")
+    private ChangeJournal changeJournal;
+
+    @Autowired
+    @Qualifier("bulkImporter")
+    private BulkImporter bulkImporter;
+
+    @Autowired
+    @Qualifier("bulkExporter")
+    private BulkExporter bulkExporter;
+
+    @Autowired
+    @Qualifier("responseBodyCache")
+    private ResponseBodyCache responseBodyCache;
+
+    @Autowired
+    @Qualifier("footprintEstimator")
+    private FootprintEstimator footprintEstimator;
+
+    @Autowired(required = false)
+    @Qualifier("warmup")
+    private Warmup warmup;
+
+    @Autowired(required = false)
+    @Qualifier("trafficCapture")
+    private TrafficCapture trafficCapture;
+
+    // Resetting wipes every total, so it is refused unless enabled for the deployment.
+    @Value("${runnerapp.reset.enabled:false}")
+    private boolean resetEnabled;
+
     public RunnerController() {
     }
 
@@ -47,27 +114,34 @@ public class RunnerController {
     @ResponseBody
     public ResponseEntity<Void> updateRunnerStatus(final @RequestBody RunnerUpdate runnerUpdate) {
 
-        validate(runnerUpdate);
+        RunnerUpdateValidator.validate(runnerUpdate);
 
         Runner runner = new Runner(runnerUpdate.getName(), runnerUpdate.getCountry());
         Lock lock = lockRegistry.getWriteLockFor(runner);
-        lock.lock();
+        lock(lock, runner, true);
 
+        // Redeliveries share the lock of the runner, and the id is only recorded once applied, so that the retry of an
+        // update that failed is applied rather than taken for a redelivery.
+        String updateId = runnerUpdate.getUpdateId();
         try {
+            if (updateId != null && updateDeduplicator.isRedelivery(updateId)) {
+                logger.info("Ignoring redelivered update \"{}\" of runner \"{}\" in {}.", updateId,
+                        runnerUpdate.getName(), runnerUpdate.getCountry());
+                return new ResponseEntity<>(HttpStatus.OK);
+            }
             runnerModel.updateRunnerStatus(runnerUpdate);
+            if (updateId != null) {
+                updateDeduplicator.recordDelivery(updateId);
+            }
         } finally {
             lock.unlock();
         }
 
-        return new ResponseEntity<>(HttpStatus.OK);
-    }
+        if (trafficCapture != null) {
+            trafficCapture.captureUpdate(runnerUpdate);
+        }
 
-    private void validate(RunnerUpdate runnerUpdate) {
-        checkNotNull(runnerUpdate, "ClientUpdate is null");
-        checkArgument(hasLength(runnerUpdate.getName()), "Runner name is null or empty");
-        checkArgument(hasLength(runnerUpdate.getCountry()), "Country name is null or empty");
-        checkNotNull(runnerUpdate.getKm(), "Km is null");
-        checkArgument(runnerUpdate.getKm().longValue() >= 0, "Km was %s but expected nonnegative", runnerUpdate.getKm());
+        return new ResponseEntity<>(HttpStatus.OK);
     }
 
     @RequestMapping(value = "/getRunnerStatus", method = RequestMethod.GET)
@@ -78,8 +152,9 @@ public class RunnerController {
 
         validate(name, country);
 
-        Lock lock = lockRegistry.getReadLockFor(new Runner(name, country));
-        lock.lock();
+        Runner runner = new Runner(name, country);
+        Lock lock = lockRegistry.getReadLockFor(runner);
+        lock(lock, runner, false);
 
         RunnerStatus result = null;
 
@@ -89,9 +164,25 @@ public class RunnerController {
             lock.unlock();
         }
 
+        if (trafficCapture != null) {
+            trafficCapture.captureRunnerStatus(name, country);
+        }
+
         return new ResponseEntity<>(result, HttpStatus.OK);
     }
 
+    private static void lock(Lock lock, Runner runner, boolean exclusive) {
+        if (!FlightRecorderEvents.AVAILABLE) {
+            lock.lock();
+            return;
+        }
+
+        LockWaitEvent event = new LockWaitEvent();
+        event.begin();
+        lock.lock();
+        event.endAndCommit(runner.getName(), runner.getCountry(), exclusive);
+    }
+
     private void validate(String name, String country) {
         checkArgument(hasLength(name), "Runner name is null or empty");
         checkArgument(hasLength(country), "Country name is null or empty");
@@ -99,22 +190,183 @@ public class RunnerController {
 
     @RequestMapping(value = "/getRunnerList", method = RequestMethod.GET)
     @ResponseBody
-    public ResponseEntity<RunnerList> getRunnerList() {
+    public ResponseEntity<byte[]> getRunnerList(
+            final @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+
+        EncodedBody body =
+                responseBodyCache.get("runners", runnerModel.getVersion(),
+                        ContentCoding.negotiate(acceptEncoding), new ResponseBodyCache.BodySource() {
+                            @Override
+                            public Object load() {
+                                return runnerModel.getRunnerList();
+                            }
+                        });
+
+        if (trafficCapture != null) {
+            trafficCapture.captureRunnerList();
+        }
+
+        return encoded(body);
+    }
+
+    @RequestMapping(value = "/searchRunners", method = RequestMethod.GET)
+    @ResponseBody
+    public ResponseEntity<RunnerList> searchRunners(final @RequestParam("name") String name,
+            final @RequestParam(value = "mode", required = false, defaultValue = "PREFIX") SearchMode mode,
+            final @RequestParam(value = "country", required = false) String country,
+            final @RequestParam(value = "maxEdits", required = false, defaultValue = "1") int maxEdits,
+            final @RequestParam(value = "limit", required = false, defaultValue = "20") int limit) {
 
-        RunnerList runnerList = runnerModel.getRunnerList();
+        checkArgument(mode == SearchMode.PREFIX || hasLength(name), "Runner name is null or empty");
+        checkArgument(maxEdits >= 0 && maxEdits <= MAX_SEARCH_EDITS, "Max edits was %s but expected 0 to %s",
+                maxEdits, MAX_SEARCH_EDITS);
+        checkArgument(limit >= 1 && limit <= MAX_SEARCH_LIMIT, "Limit was %s but expected 1 to %s", limit,
+                MAX_SEARCH_LIMIT);
+
+        RunnerList runnerList;
+        try {
+            runnerList = runnerModel.searchRunners(name, mode, country, maxEdits, limit);
+        } catch (UnsupportedOperationException e) {
+            logger.warn("Cannot search runners: {}", e.getMessage());
+            return new ResponseEntity<>(HttpStatus.NOT_IMPLEMENTED);
+        }
 
         return new ResponseEntity<>(runnerList, HttpStatus.OK);
     }
 
     @RequestMapping(value = "/getCountryList", method = RequestMethod.GET)
     @ResponseBody
-    public ResponseEntity<CountryList> getCountryList(final @RequestParam(value = "criteria", required = false,
+    public ResponseEntity<byte[]> getCountryList(final @RequestParam(value = "criteria", required = false,
             defaultValue = "SORT_BY_DISTANCE") SortCriteria criteria, final @RequestParam(value = "order",
-            required = false, defaultValue = "DESCENDING") Order order) {
+            required = false, defaultValue = "DESCENDING") Order order, final @RequestParam(value = "locale",
+            required = false) String locale, final @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING,
+            required = false) String acceptEncoding) {
 
-        CountryList runnerList = runnerModel.getCountryList(criteria, order);
+        // Names are sorted in the order of a language only when asked to, so that the others share one body.
+        Locale supportedLocale = (locale != null) ? CollationKeys.supportedLocale(locale) : null;
+        final Locale collationLocale = SortCriteria.SORT_BY_NAME.equals(criteria) ? supportedLocale : null;
+        String key =
+                "countries/" + criteria + "/" + order
+                        + ((collationLocale != null) ? "/" + collationLocale.toLanguageTag() : "");
 
-        return new ResponseEntity<>(runnerList, HttpStatus.OK);
+        EncodedBody body =
+                responseBodyCache.get(key, runnerModel.getVersion(), ContentCoding.negotiate(acceptEncoding),
+                        new ResponseBodyCache.BodySource() {
+                            @Override
+                            public Object load() {
+                                return (collationLocale != null) ? runnerModel.getCountryList(criteria, order,
+                                        collationLocale) : runnerModel.getCountryList(criteria, order);
+                            }
+                        });
+
+        if (trafficCapture != null) {
+            trafficCapture.captureCountryList(criteria, order, collationLocale);
+        }
+
+        return encoded(body);
+    }
+
+    @RequestMapping(value = "/getRegionList", method = RequestMethod.GET)
+    @ResponseBody
+    public ResponseEntity<byte[]> getRegionList(final @RequestParam(value = "criteria", required = false,
+            defaultValue = "SORT_BY_DISTANCE") SortCriteria criteria, final @RequestParam(value = "order",
+            required = false, defaultValue = "DESCENDING") Order order, final @RequestHeader(
+            value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+
+        EncodedBody body =
+                responseBodyCache.get("regions/" + criteria + "/" + order, runnerModel.getVersion(),
+                        ContentCoding.negotiate(acceptEncoding), new ResponseBodyCache.BodySource() {
+                            @Override
+                            public Object load() {
+                                return runnerModel.getRegionList(criteria, order);
+                            }
+                        });
+
+        return encoded(body);
+    }
+
+    private static ResponseEntity<byte[]> encoded(EncodedBody body) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_XML);
+        headers.set(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (body.getCoding() != ContentCoding.IDENTITY) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, body.getCoding().getToken());
+        }
+
+        return new ResponseEntity<>(body.getBytes(), headers, HttpStatus.OK);
+    }
+
+    @RequestMapping(value = "/getChanges", method = RequestMethod.GET)
+    @ResponseBody
+    public DeferredResult<ChangeFeed> getChanges(
+            final @RequestParam(value = "subscription", required = false) String subscription) {
+
+        return changeJournal.poll(subscription);
+    }
+
+    @RequestMapping(value = "/import", method = RequestMethod.POST)
+    @ResponseBody
+    public ResponseEntity<ImportResult> importUpdates(
+            final @RequestParam(value = "format", required = false) BulkFormat format,
+            final HttpServletRequest request) throws IOException {
+
+        BulkFormat bulkFormat = (format != null) ? format : BulkFormat.forContentType(request.getContentType());
+        ImportResult result = bulkImporter.importFrom(request.getInputStream(), bulkFormat);
+
+        return new ResponseEntity<>(result, HttpStatus.OK);
+    }
+
+    @RequestMapping(value = "/export", method = RequestMethod.GET)
+    public void export(final @RequestParam(value = "format", required = false, defaultValue = "NDJSON") BulkFormat format,
+            final @RequestParam(value = "records", required = false, defaultValue = "RUNNERS") ExportRecords records,
+            final HttpServletResponse response) throws IOException {
+
+        response.setContentType(format.getMediaType() + ";charset=UTF-8");
+        bulkExporter.exportTo(response.getOutputStream(), format, records);
+    }
+
+    /**
+     * Starts a new epoch, in which every total starts again from zero. Answers 403 unless resetting is enabled, and
+     * 501 if the store cannot be reset.
+     */
+    @RequestMapping(value = "/reset", method = RequestMethod.POST)
+    @ResponseBody
+    public ResponseEntity<Void> reset() {
+        if (!resetEnabled) {
+            logger.warn("Refused a reset: runnerapp.reset.enabled is not set");
+            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+        }
+
+        try {
+            runnerModel.reset();
+        } catch (UnsupportedOperationException e) {
+            logger.warn("Cannot reset: {}", e.getMessage());
+            return new ResponseEntity<>(HttpStatus.NOT_IMPLEMENTED);
+        }
+
+        return new ResponseEntity<>(HttpStatus.OK);
+    }
+
+    @RequestMapping(value = "/footprint", method = RequestMethod.GET)
+    @ResponseBody
+    public ResponseEntity<Footprint> getFootprint(
+            final @RequestParam(value = "runners", required = false) Long projectedRunners) {
+
+        checkArgument(projectedRunners == null || projectedRunners >= 0, "Runners was %s but expected at least 0",
+                projectedRunners);
+
+        Footprint footprint = footprintEstimator.estimate(projectedRunners);
+
+        return new ResponseEntity<>(footprint, HttpStatus.OK);
+    }
+
+    @RequestMapping(value = "/ready", method = RequestMethod.GET)
+    @ResponseBody
+    public ResponseEntity<Void> ready() {
+
+        boolean ready = (warmup == null) || warmup.isReady();
+
+        return new ResponseEntity<>(ready ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE);
     }
 
     public void setRunnerModel(RunnerModel runnerModel) {
@@ -124,4 +376,47 @@ public class RunnerController {
     public void setLockRegistry(LockRegistry lockRegistry) {
         this.lockRegistry = lockRegistry;
     }
-}
\ No newline at end of file
+
+    public void setUpdateDeduplicator(UpdateDeduplicator updateDeduplicator) {
+        this.updateDeduplicator = updateDeduplicator;
+    }
+
+    public void setChangeJournal(ChangeJournal changeJournal) {
+        this.changeJournal = changeJournal;
+    }
+
+    public void setBulkImporter(BulkImporter bulkImporter) {
+        this.bulkImporter = bulkImporter;
+    }
+
+    public void setBulkExporter(BulkExporter bulkExporter) {
+        this.bulkExporter = bulkExporter;
+    }
+
+    public void setResponseBodyCache(ResponseBodyCache responseBodyCache) {
+        this.responseBodyCache = responseBodyCache;
+    }
+
+    public void setFootprintEstimator(FootprintEstimator footprintEstimator) {
+        this.footprintEstimator = footprintEstimator;
+    }
+
+    public void setWarmup(Warmup warmup) {
+        this.warmup = warmup;
+    }
+
+    public void setTrafficCapture(TrafficCapture trafficCapture) {
+        this.trafficCapture = trafficCapture;
+    }
+
+    public void setResetEnabled(boolean resetEnabled) {
+        this.resetEnabled = resetEnabled;
+    }
+
+    /**
+     * Replaces the logger, such as with a quiet one for a scratch instance.
+     */
+    public void setLogger(Logger logger) {
+        this.logger = logger;
+    }
+}
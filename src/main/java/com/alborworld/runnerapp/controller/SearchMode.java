@@ -0,0 +1,5 @@
+package com.alborworld.runnerapp.controller;
+
+public enum SearchMode {
+    PREFIX, FUZZY;
+}
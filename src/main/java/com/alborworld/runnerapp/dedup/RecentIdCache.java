@@ -0,0 +1,56 @@
+package com.alborworld.runnerapp.dedup;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Exact set of the most recently seen ids, evicted in insertion order once {@code capacity} is exceeded.
+ */
+public class RecentIdCache {
+
+    private final int capacity;
+
+    private final ConcurrentHashMap<String, Boolean> ids = new ConcurrentHashMap<>();
+    private final Queue<String> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger(0);
+
+    public RecentIdCache(int capacity) {
+        checkArgument(capacity > 0, "Capacity was %s but expected positive", capacity);
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return true if the id was not in the cache and has now been added to it.
+     */
+    public boolean add(String id) {
+        if (ids.putIfAbsent(id, Boolean.TRUE) != null) {
+            return false;
+        }
+
+        insertionOrder.offer(id);
+        if (size.incrementAndGet() > capacity) {
+            evictOldest();
+        }
+        return true;
+    }
+
+    public boolean contains(String id) {
+        return ids.containsKey(id);
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    private void evictOldest() {
+        String oldest = insertionOrder.poll();
+        if (oldest != null) {
+            ids.remove(oldest);
+            size.decrementAndGet();
+        }
+    }
+}
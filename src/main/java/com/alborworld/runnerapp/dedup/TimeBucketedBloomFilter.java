@@ -0,0 +1,113 @@
+package com.alborworld.runnerapp.dedup;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free Bloom filter split into a ring of time buckets. Ids are always added to the bucket of the current time
+ * slot; a bucket is wiped and reused as soon as the ring wraps around, so memory stays bounded by
+ * {@code buckets * bitsPerBucket} no matter how many ids are seen.
+ */
+public class TimeBucketedBloomFilter {
+
+    private final int buckets;
+    private final long bucketMillis;
+    private final int bitsPerBucket;
+    private final int hashFunctions;
+
+    private final AtomicLongArray[] bits;
+    private final AtomicLongArray slots;
+
+    public TimeBucketedBloomFilter(int buckets, long bucketMillis, int expectedInsertionsPerBucket,
+            double falsePositiveProbability) {
+        checkArgument(buckets > 0, "Buckets was %s but expected positive", buckets);
+        checkArgument(bucketMillis > 0, "Bucket millis was %s but expected positive", bucketMillis);
+        checkArgument(expectedInsertionsPerBucket > 0, "Expected insertions was %s but expected positive",
+                expectedInsertionsPerBucket);
+        checkArgument(falsePositiveProbability > 0 && falsePositiveProbability < 1,
+                "False positive probability was %s but expected in (0, 1)", falsePositiveProbability);
+
+        this.buckets = buckets;
+        this.bucketMillis = bucketMillis;
+
+        long optimalBits =
+                (long) (-expectedInsertionsPerBucket * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+        this.bitsPerBucket = (int) Math.min(Integer.MAX_VALUE - 63, Math.max(64, optimalBits));
+        this.hashFunctions =
+                Math.max(1, (int) Math.round((double) bitsPerBucket / expectedInsertionsPerBucket * Math.log(2)));
+
+        this.bits = new AtomicLongArray[buckets];
+        for (int i = 0; i < buckets; i++) {
+            bits[i] = new AtomicLongArray((bitsPerBucket + 63) / 64);
+        }
+        this.slots = new AtomicLongArray(buckets);
+        for (int i = 0; i < buckets; i++) {
+            slots.set(i, Long.MIN_VALUE);
+        }
+    }
+
+    public boolean mightContain(long hash1, long hash2, long nowMillis) {
+        long currentSlot = nowMillis / bucketMillis;
+
+        for (int i = 0; i < buckets; i++) {
+            long slot = slots.get(i);
+            if (slot > currentSlot - buckets && slot <= currentSlot && containsIn(bits[i], hash1, hash2)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public void put(long hash1, long hash2, long nowMillis) {
+        long currentSlot = nowMillis / bucketMillis;
+        int index = (int) (currentSlot % buckets);
+
+        long slot = slots.get(index);
+        if (slot < currentSlot && slots.compareAndSet(index, slot, currentSlot)) {
+            // We won the rotation: recycle the bucket. Writers racing with the wipe may lose their bits, which
+            // only weakens deduplication of ids that the exact cache still remembers anyway.
+            AtomicLongArray bucket = bits[index];
+            for (int i = 0; i < bucket.length(); i++) {
+                bucket.set(i, 0L);
+            }
+        }
+
+        AtomicLongArray bucket = bits[index];
+        long combined = hash1;
+        for (int i = 0; i < hashFunctions; i++) {
+            int bit = (int) ((combined & Long.MAX_VALUE) % bitsPerBucket);
+            setBit(bucket, bit);
+            combined += hash2;
+        }
+    }
+
+    private boolean containsIn(AtomicLongArray bucket, long hash1, long hash2) {
+        long combined = hash1;
+        for (int i = 0; i < hashFunctions; i++) {
+            int bit = (int) ((combined & Long.MAX_VALUE) % bitsPerBucket);
+            if ((bucket.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+            combined += hash2;
+        }
+        return true;
+    }
+
+    private static void setBit(AtomicLongArray bucket, int bit) {
+        int word = bit >>> 6;
+        long mask = 1L << bit;
+        long current;
+        do {
+            current = bucket.get(word);
+            if ((current & mask) != 0) {
+                return;
+            }
+        } while (!bucket.compareAndSet(word, current, current | mask));
+    }
+
+    public long getMemoryBits() {
+        return (long) buckets * bitsPerBucket;
+    }
+}
@@ -0,0 +1,116 @@
+package com.alborworld.runnerapp.dedup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Detects redelivered runner updates by their client supplied update id.
+ * <p>
+ * The exact cache answers for the most recent ids; ids that have already been evicted from it are still recognized by
+ * the time-bucketed Bloom filter for the rest of its window, at the price of its (configurable) false positive rate.
+ * Neither structure takes a lock, and memory stays bounded by their configured sizes.
+ * <p>
+ * An id is only recorded once its update has been applied, so that an update that failed to apply is taken as a first
+ * delivery when retried. Batches, applied outside the locks of their runners, claim the ids of their updates until
+ * then, so that a delivery racing with one of them in another batch is still a redelivery.
+ */
+public class UpdateDeduplicator {
+
+    private static final int DEFAULT_EXACT_CAPACITY = 100000;
+    private static final int DEFAULT_BUCKETS = 6;
+    private static final long DEFAULT_BUCKET_MILLIS = 10 * 60 * 1000L;
+    private static final int DEFAULT_EXPECTED_INSERTIONS_PER_BUCKET = 100000;
+    private static final double DEFAULT_FALSE_POSITIVE_PROBABILITY = 1e-6;
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final RecentIdCache recentIds;
+    private final TimeBucketedBloomFilter olderIds;
+    private final Set<String> claimedIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    public UpdateDeduplicator() {
+        this(DEFAULT_EXACT_CAPACITY, DEFAULT_BUCKETS, DEFAULT_BUCKET_MILLIS, DEFAULT_EXPECTED_INSERTIONS_PER_BUCKET,
+                DEFAULT_FALSE_POSITIVE_PROBABILITY);
+    }
+
+    public UpdateDeduplicator(int exactCapacity, int buckets, long bucketMillis, int expectedInsertionsPerBucket,
+            double falsePositiveProbability) {
+        this.recentIds = new RecentIdCache(exactCapacity);
+        this.olderIds =
+                new TimeBucketedBloomFilter(buckets, bucketMillis, expectedInsertionsPerBucket,
+                        falsePositiveProbability);
+    }
+
+    /**
+     * @return true if an update id has already been recorded by {@link #recordDelivery(String)}. It records nothing,
+     *         so that an update that fails to apply can be delivered again; callers must then keep redeliveries apart
+     *         while they apply it, such as under the lock of its runner, or use {@link #claimDelivery(String)}.
+     */
+    public boolean isRedelivery(String updateId) {
+        return isRedelivery(updateId, System.currentTimeMillis());
+    }
+
+    boolean isRedelivery(String updateId, long nowMillis) {
+        if (recentIds.contains(updateId)) {
+            return true;
+        }
+
+        ByteBuffer hash = ByteBuffer.wrap(HASH_FUNCTION.hashString(updateId, StandardCharsets.UTF_8).asBytes());
+        return olderIds.mightContain(hash.getLong(), hash.getLong(), nowMillis);
+    }
+
+    /**
+     * Records an update id once its update has been applied.
+     */
+    public void recordDelivery(String updateId) {
+        recordDelivery(updateId, System.currentTimeMillis());
+    }
+
+    /**
+     * Claims an update id for a delivery to be applied in a batch, until {@link #endDeliveries} is called.
+     *
+     * @return false for a redelivery: an id already recorded, or claimed by a batch not yet ended.
+     */
+    public boolean claimDelivery(String updateId) {
+        if (!claimedIds.add(updateId)) {
+            return false;
+        }
+        // Checked once claimed, since a batch records its ids before releasing them.
+        if (isRedelivery(updateId)) {
+            claimedIds.remove(updateId);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Ends the claimed deliveries of a batch: their ids are recorded if the batch was applied, and released either
+     * way, so that the updates of a batch that failed can be delivered again.
+     */
+    public void endDeliveries(Iterable<String> updateIds, boolean applied) {
+        long nowMillis = System.currentTimeMillis();
+        for (String updateId : updateIds) {
+            if (applied) {
+                recordDelivery(updateId, nowMillis);
+            }
+            claimedIds.remove(updateId);
+        }
+    }
+
+    void recordDelivery(String updateId, long nowMillis) {
+        recentIds.add(updateId);
+
+        ByteBuffer hash = ByteBuffer.wrap(HASH_FUNCTION.hashString(updateId, StandardCharsets.UTF_8).asBytes());
+        olderIds.put(hash.getLong(), hash.getLong(), nowMillis);
+    }
+
+    public int getRecentIdsCount() {
+        return recentIds.size();
+    }
+}
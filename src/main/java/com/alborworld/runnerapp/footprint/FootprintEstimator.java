@@ -0,0 +1,76 @@
+package com.alborworld.runnerapp.footprint;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.alborworld.runnerapp.model.RunnerModel;
+import com.alborworld.runnerapp.xml.Footprint;
+import com.alborworld.runnerapp.xml.StructureFootprint;
+
+/**
+ * Estimates the heap retained by the model and by the other registered structures, and projects it to a number of
+ * runners: structures that grow with the runners are scaled by the bytes they take per runner, the others are taken
+ * as they are.
+ */
+public class FootprintEstimator {
+
+    private final RunnerModel runnerModel;
+
+    private final List<FootprintSource> sources = new CopyOnWriteArrayList<>();
+
+    public FootprintEstimator(RunnerModel runnerModel) {
+        this.runnerModel = runnerModel;
+    }
+
+    public static StructureFootprint structure(String name, long entries, long estimatedBytes,
+            boolean scalesWithRunners) {
+        StructureFootprint structure = new StructureFootprint();
+        structure.setName(name);
+        structure.setEntries(entries);
+        structure.setEstimatedBytes(estimatedBytes);
+        structure.setScalesWithRunners(scalesWithRunners);
+        return structure;
+    }
+
+    /**
+     * @param projectedRunners the number of runners to project the footprint to, or null for none.
+     */
+    public Footprint estimate(Long projectedRunners) {
+        List<StructureFootprint> structures = new ArrayList<>();
+        runnerModel.addFootprints(structures);
+        for (FootprintSource source : sources) {
+            source.addFootprints(structures);
+        }
+
+        long runners = runnerModel.getRunnerCount();
+        long estimatedBytes = 0;
+        long scalingBytes = 0;
+        for (StructureFootprint structure : structures) {
+            estimatedBytes += structure.getEstimatedBytes();
+            if (structure.isScalesWithRunners()) {
+                scalingBytes += structure.getEstimatedBytes();
+            }
+        }
+        long bytesPerRunner = (runners > 0) ? scalingBytes / runners : 0;
+
+        Runtime runtime = Runtime.getRuntime();
+        Footprint footprint = new Footprint();
+        footprint.getStructures().addAll(structures);
+        footprint.setRunners(runners);
+        footprint.setEstimatedBytes(estimatedBytes);
+        footprint.setBytesPerRunner(bytesPerRunner);
+        footprint.setHeapUsedBytes(runtime.totalMemory() - runtime.freeMemory());
+        footprint.setHeapMaxBytes(runtime.maxMemory());
+        if (projectedRunners != null) {
+            footprint.setProjectedRunners(projectedRunners);
+            footprint.setProjectedBytes(estimatedBytes - scalingBytes + bytesPerRunner * projectedRunners);
+        }
+        return footprint;
+    }
+
+    public void setSources(List<FootprintSource> sources) {
+        this.sources.clear();
+        this.sources.addAll(sources);
+    }
+}
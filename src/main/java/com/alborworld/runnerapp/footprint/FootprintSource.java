@@ -0,0 +1,17 @@
+package com.alborworld.runnerapp.footprint;
+
+import java.util.List;
+
+import com.alborworld.runnerapp.xml.StructureFootprint;
+
+/**
+ * A component that can estimate the heap retained by its structures, from counters it maintains and from a small
+ * sample of its entries at most.
+ */
+public interface FootprintSource {
+
+    /**
+     * Adds the estimated footprint of each of its structures to {@code structures}.
+     */
+    void addFootprints(List<StructureFootprint> structures);
+}
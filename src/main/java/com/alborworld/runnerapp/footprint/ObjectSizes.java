@@ -0,0 +1,59 @@
+package com.alborworld.runnerapp.footprint;
+
+/**
+ * Shallow sizes of objects on a HotSpot heap, worked out from their fields rather than measured, so that footprints
+ * can be estimated from counters alone. References are assumed compressed on 64-bit JVMs with less than 32 GB of heap,
+ * as they are by default.
+ */
+public final class ObjectSizes {
+
+    private static final boolean IS_64_BIT = !"32".equals(System.getProperty("sun.arch.data.model"));
+    private static final boolean COMPRESSED_REFERENCES = !IS_64_BIT || Runtime.getRuntime().maxMemory() < (32L << 30);
+
+    public static final int REFERENCE = (IS_64_BIT && !COMPRESSED_REFERENCES) ? 8 : 4;
+
+    private static final int OBJECT_HEADER = IS_64_BIT ? (COMPRESSED_REFERENCES ? 12 : 16) : 8;
+    private static final int ARRAY_HEADER = OBJECT_HEADER + 4;
+    private static final int ALIGNMENT = 8;
+
+    private static final float HASH_TABLE_LOAD_FACTOR = 0.75f;
+
+    private ObjectSizes() {
+    }
+
+    /**
+     * @return the size of an object with {@code primitiveBytes} of primitive fields and {@code references} reference
+     *         fields.
+     */
+    public static long object(int primitiveBytes, int references) {
+        return align(OBJECT_HEADER + primitiveBytes + (long) references * REFERENCE);
+    }
+
+    public static long array(long length, int elementBytes) {
+        return align(ARRAY_HEADER + length * elementBytes);
+    }
+
+    public static long referenceArray(long length) {
+        return array(length, REFERENCE);
+    }
+
+    /**
+     * @return the size of a string of {@code length} characters, with its array.
+     */
+    public static long string(long length) {
+        return object(4, 1) + array(length, 2);
+    }
+
+    /**
+     * @return the size of the table and of the nodes of a {@link java.util.concurrent.ConcurrentHashMap} of
+     *         {@code entries} entries, without the keys and values.
+     */
+    public static long hashTable(long entries) {
+        long slots = Long.highestOneBit(Math.max(1, (long) (entries / HASH_TABLE_LOAD_FACTOR)) * 2 - 1);
+        return referenceArray(slots) + entries * object(4, 3);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+}
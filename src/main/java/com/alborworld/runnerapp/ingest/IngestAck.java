@@ -0,0 +1,51 @@
+package com.alborworld.runnerapp.ingest;
+
+/**
+ * The answer to one batch sent to the ingestion listener, once its accepted updates have been applied.
+ */
+public class IngestAck {
+
+    private final long batchId;
+    private final int applied;
+    private final int duplicates;
+    private final int rejected;
+    private final int firstRejectedIndex;
+
+    IngestAck(long batchId, int applied, int duplicates, int rejected, int firstRejectedIndex) {
+        this.batchId = batchId;
+        this.applied = applied;
+        this.duplicates = duplicates;
+        this.rejected = rejected;
+        this.firstRejectedIndex = firstRejectedIndex;
+    }
+
+    public long getBatchId() {
+        return batchId;
+    }
+
+    public int getApplied() {
+        return applied;
+    }
+
+    /**
+     * @return the updates skipped as redeliveries of an update id already applied.
+     */
+    public int getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * @return the updates skipped as invalid, by the checks of
+     *         {@link com.alborworld.runnerapp.model.RunnerUpdateValidator}.
+     */
+    public int getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return the index in its batch of the first rejected update, or -1.
+     */
+    public int getFirstRejectedIndex() {
+        return firstRejectedIndex;
+    }
+}
@@ -0,0 +1,66 @@
+package com.alborworld.runnerapp.ingest;
+
+import static com.alborworld.runnerapp.ingest.IngestProtocol.*;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.Socket;
+import java.util.List;
+
+import com.alborworld.runnerapp.model.Distances;
+import com.alborworld.runnerapp.xml.RunnerUpdate;
+
+/**
+ * A blocking client of the {@link IngestListener}, sending one batch at a time over a single connection.
+ */
+public class IngestClient implements Closeable {
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final ByteArrayOutputStream frame = new ByteArrayOutputStream();
+    private final DataOutputStream frameOut = new DataOutputStream(frame);
+
+    public IngestClient(String host, int port) throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(socket.getInputStream());
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /**
+     * Sends a batch and waits for its ack. Updates are sent as they are, to be checked by the listener.
+     */
+    public IngestAck send(long batchId, List<RunnerUpdate> updates) throws IOException {
+        frame.reset();
+        frameOut.writeLong(batchId);
+        frameOut.writeInt(updates.size());
+        for (RunnerUpdate update : updates) {
+            writeString(frameOut, update.getName());
+            writeString(frameOut, update.getCountry());
+            frameOut.writeLong(Distances.metresOf(update));
+            writeString(frameOut, update.getUpdateId());
+        }
+        frameOut.flush();
+
+        out.writeInt(frame.size());
+        frame.writeTo(out);
+        out.flush();
+
+        long ackedBatchId = in.readLong();
+        if (ackedBatchId != batchId) {
+            throw new StreamCorruptedException("Ack of batch " + ackedBatchId + " but expected " + batchId);
+        }
+        return new IngestAck(ackedBatchId, in.readInt(), in.readInt(), in.readInt(), in.readInt());
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
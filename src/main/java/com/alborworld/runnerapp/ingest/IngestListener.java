@@ -0,0 +1,419 @@
+package com.alborworld.runnerapp.ingest;
+
+import static com.alborworld.runnerapp.ingest.IngestProtocol.*;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alborworld.runnerapp.dedup.UpdateDeduplicator;
+import com.alborworld.runnerapp.locking.LockRegistry;
+import com.alborworld.runnerapp.model.RunnerModel;
+import com.alborworld.runnerapp.model.RunnerUpdateValidator;
+import com.alborworld.runnerapp.model.UpdateBatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Ingests runner updates from a binary stream of batches on persistent TCP connections, for feeds too fast for one
+ * HTTP request per update. See {@link IngestProtocol} for the format, and {@link IngestClient} for a client.
+ * <p>
+ * One selector thread reads every connection into a pooled direct buffer, and decodes each batch from it as soon as it
+ * is complete. Updates are checked like those of {@code /sendRunnerStatusUpdate}, deduplicated by their update ids,
+ * and applied by a worker as one {@link UpdateBatch}; the ack follows once they are in the model. A connection has at
+ * most one batch being applied, and is not read from meanwhile, so a client that sends faster than the model applies
+ * is held back by TCP flow control. A malformed frame closes its connection, as does a batch that fails to apply.
+ */
+public class IngestListener {
+
+    private static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+    private static final int DEFAULT_MAX_POOLED_BUFFERS = 64;
+    private static final int DEFAULT_WORKERS = 2;
+    private static final long STOP_TIMEOUT_MILLIS = 10000;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final RunnerModel runnerModel;
+    private final LockRegistry lockRegistry;
+    private final UpdateDeduplicator updateDeduplicator;
+    private final int port;
+
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private int maxPooledBuffers = DEFAULT_MAX_POOLED_BUFFERS;
+    private int workers = DEFAULT_WORKERS;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong applied = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final Queue<Connection> completed = new ConcurrentLinkedQueue<>();
+
+    // Strings are decoded through it, on the selector thread only.
+    private final byte[] scratch = new byte[MAX_STRING_BYTES];
+
+    private DirectBufferPool bufferPool;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private ExecutorService executor;
+    private Thread selectorThread;
+    private volatile boolean running;
+
+    /**
+     * @param port the port to listen on, or 0 for any free one.
+     */
+    public IngestListener(RunnerModel runnerModel, LockRegistry lockRegistry, UpdateDeduplicator updateDeduplicator,
+            int port) {
+        this.runnerModel = runnerModel;
+        this.lockRegistry = lockRegistry;
+        this.updateDeduplicator = updateDeduplicator;
+        this.port = port;
+    }
+
+    public void start() throws IOException {
+        bufferPool = new DirectBufferPool(bufferSize, maxPooledBuffers);
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        executor =
+                Executors.newFixedThreadPool(workers, new ThreadFactoryBuilder().setDaemon(true)
+                        .setNameFormat("ingest-worker-%d").build());
+        running = true;
+        selectorThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                select();
+            }
+        }, "ingest-selector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        logger.info("Ingesting runner updates on port {}.", getPort());
+    }
+
+    public void stop() throws IOException, InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        selectorThread.join();
+        executor.shutdown();
+        executor.awaitTermination(STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection) {
+                ((Connection) key.attachment()).close();
+            }
+        }
+        selector.close();
+        serverChannel.close();
+        logger.info("Ingested {} batches: {} updates applied, {} duplicates, {} rejected.", batches.get(),
+                applied.get(), duplicates.get(), rejected.get());
+    }
+
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    private void select() {
+        while (running) {
+            try {
+                selector.select();
+
+                Connection connection;
+                while ((connection = completed.poll()) != null) {
+                    connection.onApplied();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid() && key.isAcceptable()) {
+                        accept();
+                    } else if (key.isValid()) {
+                        ((Connection) key.attachment()).onReady(key);
+                    }
+                }
+            } catch (IOException e) {
+                logger.error("Failed to select ingestion connections.", e);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Connection connection = new Connection(channel, bufferPool.acquire());
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        logger.debug("Accepted an ingestion connection from {}.", channel.getRemoteAddress());
+    }
+
+    private void apply(final Connection connection, final DecodedBatch batch) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean batchApplied = false;
+                try {
+                    if (!batch.updates.isEmpty()) {
+                        runnerModel.updateRunnerStatuses(batch.updates, lockRegistry);
+                    }
+                    batchApplied = true;
+                    connection.ack =
+                            new IngestAck(batch.batchId, (int) batch.updates.getUpdatesCount(), batch.duplicates,
+                                    batch.rejected, batch.firstRejectedIndex);
+                    batches.incrementAndGet();
+                    applied.addAndGet(batch.updates.getUpdatesCount());
+                    duplicates.addAndGet(batch.duplicates);
+                    rejected.addAndGet(batch.rejected);
+                } catch (RuntimeException e) {
+                    logger.error("Failed to apply ingested batch " + batch.batchId + ".", e);
+                    connection.ack = null;
+                } finally {
+                    // Before the ack, so that the next batch of the client sees the ids recorded.
+                    updateDeduplicator.endDeliveries(batch.updates.getUpdateIds(), batchApplied);
+                }
+                completed.add(connection);
+                selector.wakeup();
+            }
+        });
+    }
+
+    private DecodedBatch decode(ByteBuffer in, int frameEnd) throws StreamCorruptedException {
+        DecodedBatch batch = new DecodedBatch(in.getLong());
+        int count = in.getInt();
+        if (count < 0) {
+            throw new StreamCorruptedException("Batch of " + count + " updates");
+        }
+
+        try {
+            for (int i = 0; i < count; i++) {
+                String name = readString(in, frameEnd);
+                String country = readString(in, frameEnd);
+                checkRoom(in, frameEnd, 8);
+                long metres = in.getLong();
+                String updateId = readString(in, frameEnd);
+
+                try {
+                    RunnerUpdateValidator.validate(name, country, metres, updateId);
+                    if (updateId != null && !updateDeduplicator.claimDelivery(updateId)) {
+                        batch.duplicates++;
+                    } else {
+                        batch.updates.add(name, country, metres, updateId);
+                    }
+                } catch (IllegalArgumentException | ArithmeticException e) {
+                    if (batch.rejected++ == 0) {
+                        batch.firstRejectedIndex = i;
+                        logger.debug("Rejected update {} of ingested batch {}: {}", i, batch.batchId, e.getMessage());
+                    }
+                }
+            }
+
+            if (in.position() != frameEnd) {
+                throw new StreamCorruptedException("Batch " + batch.batchId + " ends " + (frameEnd - in.position())
+                        + " bytes before its frame");
+            }
+        } catch (StreamCorruptedException e) {
+            // The connection is closed, so the updates claimed so far may be delivered again.
+            updateDeduplicator.endDeliveries(batch.updates.getUpdateIds(), false);
+            throw e;
+        }
+        return batch;
+    }
+
+    private String readString(ByteBuffer in, int frameEnd) throws StreamCorruptedException {
+        checkRoom(in, frameEnd, 2);
+        short length = in.getShort();
+        if (length == NO_STRING) {
+            return null;
+        }
+        if (length < 0) {
+            throw new StreamCorruptedException("String of " + length + " bytes");
+        }
+        checkRoom(in, frameEnd, length);
+        in.get(scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static void checkRoom(ByteBuffer in, int frameEnd, int bytes) throws StreamCorruptedException {
+        if (frameEnd - in.position() < bytes) {
+            throw new StreamCorruptedException("Update runs past the end of its frame");
+        }
+    }
+
+    public long getBatchesCount() {
+        return batches.get();
+    }
+
+    public long getAppliedCount() {
+        return applied.get();
+    }
+
+    public long getDuplicatesCount() {
+        return duplicates.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * @param bufferSize the size of the read buffer of a connection, which bounds the size of a frame.
+     */
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public void setMaxPooledBuffers(int maxPooledBuffers) {
+        this.maxPooledBuffers = maxPooledBuffers;
+    }
+
+    /**
+     * @param workers threads applying batches to the model, each from a different connection.
+     */
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    private static final class DecodedBatch {
+
+        final long batchId;
+        final UpdateBatch updates = new UpdateBatch();
+        int duplicates;
+        int rejected;
+        int firstRejectedIndex = -1;
+
+        DecodedBatch(long batchId) {
+            this.batchId = batchId;
+        }
+    }
+
+    // Only touched by the selector thread, but for the ack handed over by a worker through the completed queue.
+    private final class Connection {
+
+        private final SocketChannel channel;
+        private final ByteBuffer in;
+        private final ByteBuffer out = ByteBuffer.allocate(ACK_SIZE);
+        private SelectionKey key;
+        private volatile IngestAck ack;
+        private boolean closed;
+
+        Connection(SocketChannel channel, ByteBuffer in) {
+            this.channel = channel;
+            this.in = in;
+        }
+
+        void onReady(SelectionKey readyKey) {
+            try {
+                if (readyKey.isReadable()) {
+                    if (channel.read(in) < 0) {
+                        close();
+                        return;
+                    }
+                    processFrame();
+                } else if (readyKey.isWritable()) {
+                    writeAck();
+                }
+            } catch (IOException e) {
+                logger.warn("Dropping ingestion connection: {}", e.toString());
+                close();
+            }
+        }
+
+        void onApplied() {
+            if (closed) {
+                return;
+            }
+            IngestAck applied = ack;
+            if (applied == null) {
+                close();
+                return;
+            }
+
+            out.clear();
+            out.putLong(applied.getBatchId()).putInt(applied.getApplied()).putInt(applied.getDuplicates())
+                    .putInt(applied.getRejected()).putInt(applied.getFirstRejectedIndex());
+            out.flip();
+            try {
+                writeAck();
+            } catch (IOException e) {
+                logger.warn("Dropping ingestion connection: {}", e.toString());
+                close();
+            }
+        }
+
+        private void writeAck() throws IOException {
+            channel.write(out);
+            if (out.hasRemaining()) {
+                key.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+            key.interestOps(SelectionKey.OP_READ);
+            // The next batch may have been read along with the previous one.
+            processFrame();
+        }
+
+        // Submits the first complete frame of the buffer, if any, and stops reading until it has been acked.
+        private void processFrame() throws IOException {
+            in.flip();
+            try {
+                if (in.remaining() < LENGTH_SIZE) {
+                    return;
+                }
+                int length = in.getInt(in.position());
+                if (length < MIN_BATCH_SIZE || length > in.capacity() - LENGTH_SIZE) {
+                    throw new StreamCorruptedException("Frame of " + length + " bytes");
+                }
+                if (in.remaining() < LENGTH_SIZE + length) {
+                    return;
+                }
+
+                int frameEnd = in.position() + LENGTH_SIZE + length;
+                in.position(in.position() + LENGTH_SIZE);
+                DecodedBatch batch = decode(in, frameEnd);
+                key.interestOps(0);
+                apply(this, batch);
+            } finally {
+                in.compact();
+            }
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing left to do with it.
+            }
+            bufferPool.release(in);
+        }
+    }
+}
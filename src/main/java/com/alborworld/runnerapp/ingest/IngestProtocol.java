@@ -0,0 +1,38 @@
+package com.alborworld.runnerapp.ingest;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The binary protocol of the ingestion listener. Clients send frames of an {@code int} length followed by a batch: a
+ * {@code long} batch id, an {@code int} count of updates, and for each update its name, its country, its
+ * {@code long} metres and its update id. Strings are a {@code short} length and UTF-8 bytes, a length of -1 standing
+ * for none. Every batch is answered by an ack of {@link #ACK_SIZE} bytes once it has been applied. All numbers are big
+ * endian.
+ */
+final class IngestProtocol {
+
+    static final int LENGTH_SIZE = 4;
+    static final int MIN_BATCH_SIZE = 12;
+    static final int ACK_SIZE = 24;
+    static final int MAX_STRING_BYTES = Short.MAX_VALUE;
+    static final short NO_STRING = -1;
+
+    private IngestProtocol() {
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeShort(NO_STRING);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("String of " + bytes.length + " bytes but expected at most "
+                    + MAX_STRING_BYTES);
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,37 @@
+package com.alborworld.runnerapp.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("com.alborworld.runnerapp.ListBuilt")
+@Label("List Built")
+@Category("RunnerApp")
+@Description("Time the RunnerModel took to scan, build and sort the runner or country list")
+@Threshold("10 ms")
+@StackTrace(false)
+public class ListBuiltEvent extends jdk.jfr.Event {
+
+    @Label("List")
+    @Description("runners or countries")
+    public String list;
+
+    @Label("Size")
+    public int size;
+
+    @Label("Sort Criteria")
+    public String sortCriteria;
+
+    public void endAndCommit(String list, int size, String sortCriteria) {
+        end();
+        if (shouldCommit()) {
+            this.list = list;
+            this.size = size;
+            this.sortCriteria = sortCriteria;
+            commit();
+        }
+    }
+}
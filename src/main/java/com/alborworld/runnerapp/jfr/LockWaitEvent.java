@@ -0,0 +1,37 @@
+package com.alborworld.runnerapp.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("com.alborworld.runnerapp.LockWait")
+@Label("Runner Lock Wait")
+@Category("RunnerApp")
+@Description("Time a request waited for the lock of a runner in the LockRegistry")
+@Threshold("1 ms")
+@StackTrace(false)
+public class LockWaitEvent extends jdk.jfr.Event {
+
+    @Label("Runner")
+    public String runnerName;
+
+    @Label("Country")
+    public String runnerCountry;
+
+    @Label("Exclusive")
+    @Description("Whether the write lock was waited for, rather than the read lock")
+    public boolean exclusive;
+
+    public void endAndCommit(String runnerName, String runnerCountry, boolean exclusive) {
+        end();
+        if (shouldCommit()) {
+            this.runnerName = runnerName;
+            this.runnerCountry = runnerCountry;
+            this.exclusive = exclusive;
+            commit();
+        }
+    }
+}
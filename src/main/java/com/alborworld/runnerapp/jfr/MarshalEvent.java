@@ -0,0 +1,34 @@
+package com.alborworld.runnerapp.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("com.alborworld.runnerapp.Marshal")
+@Label("Response Marshalled")
+@Category("RunnerApp")
+@Description("Time JAXB took to marshal a response body to XML")
+@Threshold("10 ms")
+@StackTrace(false)
+public class MarshalEvent extends jdk.jfr.Event {
+
+    @Label("Type")
+    public String type;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    public void endAndCommit(String type, long bytes) {
+        end();
+        if (shouldCommit()) {
+            this.type = type;
+            this.bytes = bytes;
+            commit();
+        }
+    }
+}
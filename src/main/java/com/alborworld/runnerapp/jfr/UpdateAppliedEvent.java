@@ -0,0 +1,41 @@
+package com.alborworld.runnerapp.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("com.alborworld.runnerapp.UpdateApplied")
+@Label("Update Applied")
+@Category("RunnerApp")
+@Description("Time the RunnerModel took to apply one update, or one batch of them, to the store, the indexes and the listeners")
+@Threshold("1 ms")
+@StackTrace(false)
+public class UpdateAppliedEvent extends jdk.jfr.Event {
+
+    @Label("Runner")
+    @Description("The runner updated, or null for a batch")
+    public String runnerName;
+
+    @Label("Country")
+    public String runnerCountry;
+
+    @Label("Updates")
+    public long updates;
+
+    @Label("Runners")
+    public long runners;
+
+    public void endAndCommit(String runnerName, String runnerCountry, long updates, long runners) {
+        end();
+        if (shouldCommit()) {
+            this.runnerName = runnerName;
+            this.runnerCountry = runnerCountry;
+            this.updates = updates;
+            this.runners = runners;
+            commit();
+        }
+    }
+}
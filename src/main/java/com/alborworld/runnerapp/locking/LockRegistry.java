@@ -1,26 +1,123 @@
 package com.alborworld.runnerapp.locking;
 
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import com.alborworld.runnerapp.footprint.FootprintEstimator;
+import com.alborworld.runnerapp.footprint.FootprintSource;
+import com.alborworld.runnerapp.footprint.ObjectSizes;
 import com.alborworld.runnerapp.model.Runner;
+import com.alborworld.runnerapp.xml.StructureFootprint;
+import com.google.common.collect.MapMaker;
 
-public class LockRegistry {
+/**
+ * One read/write lock per runner. Locks are kept forever by default; with weak locks, a lock is dropped once no thread
+ * holds or waits for it, so that the registry follows the runners in use rather than every runner ever seen, at the
+ * cost of a weak reference per lock.
+ */
+public class LockRegistry implements FootprintSource {
 
-    private final ConcurrentHashMap<Runner, ReadWriteLock> locks = new ConcurrentHashMap<>();
+    // The lock, its sync with the fields of AbstractQueuedSynchronizer, its hold counter and its two views.
+    private static final long BYTES_PER_LOCK = ObjectSizes.object(0, 3) + ObjectSizes.object(8, 6)
+            + ObjectSizes.object(4, 0) + 2 * ObjectSizes.object(0, 1);
+
+    // The weak reference and the fields of the entry it replaces.
+    private static final long BYTES_PER_WEAK_REFERENCE = ObjectSizes.object(0, 4);
+
+    private final ConcurrentMap<Runner, ReadWriteLock> locks;
+    private final boolean weakLocks;
+
+    public LockRegistry() {
+        this(false);
+    }
+
+    public LockRegistry(boolean weakLocks) {
+        this.weakLocks = weakLocks;
+        this.locks =
+                weakLocks ? new MapMaker().weakValues().<Runner, ReadWriteLock> makeMap()
+                        : new ConcurrentHashMap<Runner, ReadWriteLock>();
+    }
 
     public Lock getWriteLockFor(Runner runner) {
-        return getLockFor(runner).writeLock();
+        ReadWriteLock lock = getLockFor(runner);
+        return weakLocks ? new OwnedLock(lock.writeLock(), lock) : lock.writeLock();
     }
 
     public Lock getReadLockFor(Runner runner) {
-        return getLockFor(runner).readLock();
+        ReadWriteLock lock = getLockFor(runner);
+        return weakLocks ? new OwnedLock(lock.readLock(), lock) : lock.readLock();
+    }
+
+    /**
+     * Unless weak, locks are never removed, so more locks than runners point at lookups of runners that do not exist.
+     */
+    @Override
+    public void addFootprints(List<StructureFootprint> structures) {
+        long entries = locks.size();
+        long bytesPerEntry = ObjectSizes.object(0, 2) + BYTES_PER_LOCK + (weakLocks ? BYTES_PER_WEAK_REFERENCE : 0);
+        long bytes = ObjectSizes.hashTable(entries) + entries * bytesPerEntry;
+        structures.add(FootprintEstimator.structure("lockRegistry", entries, bytes, !weakLocks));
     }
 
     private ReadWriteLock getLockFor(Runner runner) {
-        locks.putIfAbsent(runner, new ReentrantReadWriteLock());
-        return locks.get(runner);
+        ReadWriteLock lock = locks.get(runner);
+        if (lock == null) {
+            ReadWriteLock newLock = new ReentrantReadWriteLock();
+            lock = locks.putIfAbsent(runner, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+        return lock;
+    }
+
+    // The views of a ReentrantReadWriteLock only reference its sync, so they would not keep a weak lock alive while
+    // it is held or waited for.
+    private static class OwnedLock implements Lock {
+
+        private final Lock view;
+        @SuppressWarnings("unused")
+        private final ReadWriteLock owner;
+
+        OwnedLock(Lock view, ReadWriteLock owner) {
+            this.view = view;
+            this.owner = owner;
+        }
+
+        @Override
+        public void lock() {
+            view.lock();
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            view.lockInterruptibly();
+        }
+
+        @Override
+        public boolean tryLock() {
+            return view.tryLock();
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            return view.tryLock(time, unit);
+        }
+
+        @Override
+        public void unlock() {
+            view.unlock();
+        }
+
+        @Override
+        public Condition newCondition() {
+            return view.newCondition();
+        }
     }
-}
\ No newline at end of file
+}
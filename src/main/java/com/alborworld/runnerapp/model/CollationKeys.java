@@ -0,0 +1,99 @@
+package com.alborworld.runnerapp.model;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.alborworld.runnerapp.controller.Order;
+import com.alborworld.runnerapp.store.RunnerKeys;
+import com.alborworld.runnerapp.xml.Country;
+
+/**
+ * Collation keys of country names, computed once per name and locale and then kept, so that sorting by name in the
+ * order of a language compares bytes rather than running a {@link Collator} on every comparison.
+ * <p>
+ * Only locales with a collator of their own are accepted, which bounds the cache to a few hundred countries times a
+ * few hundred locales.
+ */
+public class CollationKeys {
+
+    private static final Set<Locale> AVAILABLE_LOCALES = new HashSet<>(Arrays.asList(Collator.getAvailableLocales()));
+
+    private final ConcurrentMap<Locale, ConcurrentMap<String, byte[]>> keysByLocale = new ConcurrentHashMap<>();
+
+    /**
+     * A country with the collation key of its name.
+     */
+    static class Keyed {
+
+        final Country country;
+        final byte[] key;
+
+        Keyed(Country country, byte[] key) {
+            this.country = country;
+            this.key = key;
+        }
+    }
+
+    /**
+     * @return the locale of {@code languageTag}, such as {@code sv-SE}, or of its language alone if only that has a
+     *         collator.
+     * @throws IllegalArgumentException if neither has a collator.
+     */
+    public static Locale supportedLocale(String languageTag) {
+        Locale locale = Locale.forLanguageTag(languageTag);
+        if (AVAILABLE_LOCALES.contains(locale)) {
+            return locale;
+        }
+        Locale language = new Locale(locale.getLanguage());
+        checkArgument(AVAILABLE_LOCALES.contains(language), "Locale was %s but expected one with a collator",
+                languageTag);
+        return language;
+    }
+
+    Keyed keyed(Country country, Locale locale) {
+        return new Keyed(country, key(country.getName(), locale));
+    }
+
+    byte[] key(String name, Locale locale) {
+        ConcurrentMap<String, byte[]> keys = keysByLocale.get(locale);
+        if (keys == null) {
+            ConcurrentMap<String, byte[]> newKeys = new ConcurrentHashMap<>();
+            keys = keysByLocale.putIfAbsent(locale, newKeys);
+            if (keys == null) {
+                keys = newKeys;
+            }
+        }
+
+        byte[] key = keys.get(name);
+        if (key == null) {
+            // A collator is not thread safe, and getInstance returns a copy.
+            key = Collator.getInstance(locale).getCollationKey(name).toByteArray();
+            keys.putIfAbsent(name, key);
+        }
+        return key;
+    }
+
+    /**
+     * @return a comparator of the collation keys, then of the names for those that collate the same.
+     */
+    static Comparator<Keyed> comparator(final Order order) {
+        return new Comparator<Keyed>() {
+            @Override
+            public int compare(Keyed k1, Keyed k2) {
+                int cmp = RunnerKeys.ORDER.compare(k1.key, k2.key);
+                if (cmp == 0) {
+                    cmp = k1.country.getName().compareTo(k2.country.getName());
+                }
+                return Order.DESCENDING.equals(order) ? -cmp : cmp;
+            }
+        };
+    }
+}
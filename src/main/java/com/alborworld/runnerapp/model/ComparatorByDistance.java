@@ -15,9 +15,7 @@ public class ComparatorByDistance implements Comparator<Country> {
 
     @Override
     public int compare(Country c1, Country c2) {
-        int cmp = 0;
-
-        cmp = c1.getTotalKm().compareTo(c2.getTotalKm());
+        int cmp = Long.compare(c1.getTotalMetres(), c2.getTotalMetres());
         if (Order.DESCENDING.equals(order)) {
             cmp *= -1;
         }
@@ -0,0 +1,60 @@
+package com.alborworld.runnerapp.model;
+
+import java.math.BigInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.alborworld.runnerapp.xml.RunnerUpdate;
+import com.google.common.math.LongMath;
+
+/**
+ * Distances are fixed-point: a {@code long} number of metres everywhere below the XML documents, which still carry
+ * whole km for the clients that predate metres.
+ */
+public final class Distances {
+
+    public static final long METRES_PER_KM = 1000;
+
+    private static final long MAX_KM = Long.MAX_VALUE / METRES_PER_KM;
+
+    private Distances() {
+    }
+
+    /**
+     * @return the distance of an update, given either in metres or in whole km.
+     * @throws IllegalArgumentException if it does not fit in a {@code long} number of metres.
+     */
+    public static long metresOf(RunnerUpdate runnerUpdate) {
+        Long metres = runnerUpdate.getMetres();
+        if (metres != null) {
+            return metres;
+        }
+
+        BigInteger km = runnerUpdate.getKm();
+        if (km.bitLength() >= Long.SIZE || Math.abs(km.longValue()) > MAX_KM) {
+            throw new IllegalArgumentException("Km was " + km + " but expected at most " + MAX_KM);
+        }
+        return km.longValue() * METRES_PER_KM;
+    }
+
+    /**
+     * Adds {@code metres} to {@code total} atomically, like {@link AtomicLong#addAndGet(long)}.
+     *
+     * @throws ArithmeticException if the sum overflows a {@code long}, leaving the total as it was.
+     */
+    public static long addAndGet(AtomicLong total, long metres) {
+        while (true) {
+            long current = total.get();
+            long updated = LongMath.checkedAdd(current, metres);
+            if (total.compareAndSet(current, updated)) {
+                return updated;
+            }
+        }
+    }
+
+    /**
+     * @return the whole km of a distance, rounded down.
+     */
+    public static BigInteger toKm(long metres) {
+        return BigInteger.valueOf(metres / METRES_PER_KM);
+    }
+}
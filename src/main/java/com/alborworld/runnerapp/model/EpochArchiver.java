@@ -0,0 +1,14 @@
+package com.alborworld.runnerapp.model;
+
+import java.io.IOException;
+
+import com.alborworld.runnerapp.store.RunnerStore;
+
+/**
+ * Keeps the totals of an epoch left behind by {@link RunnerModel#reset()}. Called from a background thread, once the
+ * calls that were using the epoch have had time to finish, and before its store is closed.
+ */
+public interface EpochArchiver {
+
+    void archive(long epoch, RunnerStore store) throws IOException;
+}
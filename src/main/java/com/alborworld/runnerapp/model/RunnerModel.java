@@ -1,72 +1,228 @@
 package com.alborworld.runnerapp.model;
 
-import java.math.BigInteger;
-import java.util.Collection;
-import java.util.Collections;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.alborworld.runnerapp.controller.Order;
+import com.alborworld.runnerapp.controller.SearchMode;
 import com.alborworld.runnerapp.controller.SortCriteria;
+import com.alborworld.runnerapp.footprint.FootprintEstimator;
+import com.alborworld.runnerapp.footprint.FootprintSource;
+import com.alborworld.runnerapp.footprint.ObjectSizes;
+import com.alborworld.runnerapp.jfr.FlightRecorderEvents;
+import com.alborworld.runnerapp.jfr.ListBuiltEvent;
+import com.alborworld.runnerapp.jfr.UpdateAppliedEvent;
+import com.alborworld.runnerapp.locking.LockRegistry;
+import com.alborworld.runnerapp.parallel.ParallelLists;
+import com.alborworld.runnerapp.rank.RunnerRanks;
+import com.alborworld.runnerapp.region.RegionHierarchy;
+import com.alborworld.runnerapp.region.RegionRollups;
+import com.alborworld.runnerapp.search.RunnerNameIndex;
+import com.alborworld.runnerapp.sketch.CountryStatistics;
+import com.alborworld.runnerapp.store.InMemoryRunnerStore;
+import com.alborworld.runnerapp.store.MergingRunnerStore;
+import com.alborworld.runnerapp.store.RunnerStore;
 import com.alborworld.runnerapp.xml.Country;
 import com.alborworld.runnerapp.xml.CountryList;
+import com.alborworld.runnerapp.xml.RegionList;
 import com.alborworld.runnerapp.xml.RunnerList;
 import com.alborworld.runnerapp.xml.RunnerStatus;
 import com.alborworld.runnerapp.xml.RunnerUpdate;
-import com.google.common.collect.Lists;
+import com.alborworld.runnerapp.xml.StructureFootprint;
+import com.google.common.math.LongMath;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
-public class RunnerModel {
+public class RunnerModel implements FootprintSource {
 
-    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private Logger logger = LoggerFactory.getLogger(getClass());
 
-    private final Map<Runner, BigInteger> runnerDistanceMap = new HashMap<>();
-    private final Map<String, BigInteger> countryDistanceMap = new HashMap<>();
+    private static final long DEFAULT_ARCHIVE_GRACE_MILLIS = 5000;
 
     private final AtomicLong updatesCount = new AtomicLong(0);
 
+    private final List<RunnerModelListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final CollationKeys collationKeys = new CollationKeys();
+
+    private RegionHierarchy regionHierarchy = new RegionHierarchy();
+
+    // Every call reads it once, and sees the same epoch throughout even if a reset replaces it meanwhile.
+    private volatile Epoch epoch;
+
+    private EpochArchiver epochArchiver;
+
+    private long archiveGraceMillis = DEFAULT_ARCHIVE_GRACE_MILLIS;
+
+    private ExecutorService archiveExecutor;
+
+    private ParallelLists parallelLists = new ParallelLists();
+
     public RunnerModel() {
+        this(new InMemoryRunnerStore());
+    }
+
+    public RunnerModel(RunnerStore store) {
+        long startNanos = System.nanoTime();
+        epoch = new Epoch(0, store, regionHierarchy);
+        if (epoch.getRunnerCount() > 0) {
+            logger.info("Derived the indexes and statistics of the {} runners already in the store in {} ms.",
+                    epoch.getRunnerCount(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        }
+        if (store instanceof MergingRunnerStore) {
+            ((MergingRunnerStore) store).setMergeListener(new Merges());
+        }
     }
 
     public void updateRunnerStatus(RunnerUpdate runnerUpdate) {
+        UpdateAppliedEvent event = null;
+        if (FlightRecorderEvents.AVAILABLE) {
+            event = new UpdateAppliedEvent();
+            event.begin();
+        }
+
         String name = runnerUpdate.getName();
-        BigInteger km = runnerUpdate.getKm();
         String country = runnerUpdate.getCountry();
 
-        BigInteger totalDistance = updateRunnerDistance(new Runner(name, country), km);
-        updateCountryDistance(country, km);
+        Runner runner = new Runner(name, country);
+        long metres = Distances.metresOf(runnerUpdate);
+        Epoch current = epoch;
+        // A store refusing the country refuses the update before anything is added to the runner, which a retry
+        // would add again.
+        current.reserveCountry(country);
+        long runnerTotal = current.store.addRunnerDistance(runner, metres);
+        current.getCountryStatistics(country).onRunnerUpdated(name, runnerTotal - metres, runnerTotal);
+        current.updateRanks(country, runnerTotal - metres, runnerTotal);
+        current.addToNameIndex(runner);
+        long countryTotal = current.store.addCountryDistance(country, metres);
+        current.regionRollups.add(country, metres);
 
-        logger.info("Runner \"{}\" in {} has just run {} km, for a total of {} km.", name, country, km, totalDistance);
+        logger.info("Runner \"{}\" in {} has just run {} m, for a total of {} m.", name, country, metres, runnerTotal);
 
         updatesCount.incrementAndGet();
-    }
 
-    private BigInteger updateRunnerDistance(Runner runner, BigInteger km) {
-        BigInteger totalDistance = runnerDistanceMap.get(runner);
-        totalDistance = (totalDistance == null) ? km : totalDistance.add(km);
-        runnerDistanceMap.put(runner, totalDistance);
-        return totalDistance;
+        for (RunnerModelListener listener : listeners) {
+            listener.onRunnerStatusUpdated(runner, runnerTotal, countryTotal);
+        }
+
+        if (event != null) {
+            event.endAndCommit(name, country, 1, 1);
+        }
     }
 
-    private void updateCountryDistance(String country, BigInteger km) {
-        BigInteger countryDistance = countryDistanceMap.get(country);
-        countryDistance = (countryDistance == null) ? km : countryDistance.add(km);
-        countryDistanceMap.put(country, countryDistance);
+    /**
+     * Applies a batch of updates, holding the write lock of each runner while adding to it. Every country is added to
+     * once, and listeners are notified once per runner, with the totals after the whole batch.
+     */
+    public void updateRunnerStatuses(UpdateBatch batch, LockRegistry lockRegistry) {
+        UpdateAppliedEvent event = null;
+        if (FlightRecorderEvents.AVAILABLE) {
+            event = new UpdateAppliedEvent();
+            event.begin();
+        }
+
+        Epoch current = epoch;
+        Map<String, long[]> metresByCountry = new HashMap<>();
+        List<Runner> runners = new ArrayList<>(batch.getMetresByRunner().size());
+        long[] runnerTotals = new long[batch.getMetresByRunner().size()];
+        for (Runner runner : batch.getMetresByRunner().keySet()) {
+            current.reserveCountry(runner.getCountry());
+        }
+
+        for (Map.Entry<Runner, long[]> entry : batch.getMetresByRunner().entrySet()) {
+            Runner runner = entry.getKey();
+            long metres = entry.getValue()[0];
+
+            Lock lock = lockRegistry.getWriteLockFor(runner);
+            lock.lock();
+            try {
+                long runnerTotal = current.store.addRunnerDistance(runner, metres);
+                current.getCountryStatistics(runner.getCountry()).onRunnerUpdated(runner.getName(),
+                        runnerTotal - metres, runnerTotal);
+                current.updateRanks(runner.getCountry(), runnerTotal - metres, runnerTotal);
+                current.addToNameIndex(runner);
+                runnerTotals[runners.size()] = runnerTotal;
+            } finally {
+                lock.unlock();
+            }
+            runners.add(runner);
+
+            long[] countryMetres = metresByCountry.get(runner.getCountry());
+            if (countryMetres == null) {
+                metresByCountry.put(runner.getCountry(), new long[] { metres });
+            } else {
+                countryMetres[0] = LongMath.checkedAdd(countryMetres[0], metres);
+            }
+        }
+
+        // Reuses the arrays of the sums for the totals they are added to.
+        Map<String, long[]> countryTotals = metresByCountry;
+        for (Map.Entry<String, long[]> entry : countryTotals.entrySet()) {
+            current.regionRollups.add(entry.getKey(), entry.getValue()[0]);
+            entry.getValue()[0] = current.store.addCountryDistance(entry.getKey(), entry.getValue()[0]);
+        }
+
+        logger.info("Applied a batch of {} updates to {} runners in {} countries.", batch.getUpdatesCount(),
+                runners.size(), countryTotals.size());
+
+        updatesCount.addAndGet(batch.getUpdatesCount());
+
+        for (int i = 0; i < runners.size(); i++) {
+            Runner runner = runners.get(i);
+            long runnerTotal = runnerTotals[i];
+            long countryTotal = countryTotals.get(runner.getCountry())[0];
+            for (RunnerModelListener listener : listeners) {
+                listener.onRunnerStatusUpdated(runner, runnerTotal, countryTotal);
+            }
+        }
+
+        if (event != null) {
+            event.endAndCommit(null, null, batch.getUpdatesCount(), runners.size());
+        }
     }
 
+    /**
+     * @return the status of a runner, with its rank in its country and among all runners once it has run some
+     *         distance, unless the store keeps the runners off the heap, and so no ranks.
+     */
     public RunnerStatus getRunnerStatus(String name, String country) {
         RunnerStatus runnerStatus = new RunnerStatus();
 
-        Runner runner = new Runner(name, country);
-        if (runnerDistanceMap.containsKey(runner)) {
+        Epoch current = epoch;
+        long totalDistance = current.store.getRunnerDistance(new Runner(name, country));
+        if (totalDistance != RunnerStore.ABSENT) {
             runnerStatus.setName(name);
             runnerStatus.setCountry(country);
-            runnerStatus.setTotalKm(runnerDistanceMap.get(runner));
+            runnerStatus.setTotalKm(Distances.toKm(totalDistance));
+            runnerStatus.setTotalMetres(totalDistance);
+
+            if (current.ranks != null) {
+                RunnerRanks.Rank countryRank = current.ranks.getCountryRank(country, totalDistance);
+                if (countryRank != null) {
+                    runnerStatus.setCountryRank(countryRank.getPosition());
+                    runnerStatus.setCountryRunners(countryRank.getRunners());
+                }
+                RunnerRanks.Rank globalRank = current.ranks.getGlobalRank(totalDistance);
+                if (globalRank != null) {
+                    runnerStatus.setGlobalRank(globalRank.getPosition());
+                    runnerStatus.setGlobalRunners(globalRank.getRunners());
+                }
+            }
         } else {
             runnerStatus.setName("N/A");
         }
@@ -75,46 +231,467 @@ public class RunnerModel {
     }
 
     public RunnerList getRunnerList() {
-        Collection<Runner> runners = runnerDistanceMap.keySet();
+        ListBuiltEvent event = null;
+        if (FlightRecorderEvents.AVAILABLE) {
+            event = new ListBuiltEvent();
+            event.begin();
+        }
+
+        final Snapshot<Runner> runners = new Snapshot<>();
+        epoch.store.scanRunners(new RunnerStore.RunnerVisitor() {
+            @Override
+            public void visit(Runner runner, long totalMetres) {
+                runners.add(runner, totalMetres);
+            }
+        });
+
+        final RunnerStatus[] statuses = new RunnerStatus[runners.size];
+        parallelLists.forEachRange(runners.size, new ParallelLists.RangeTask() {
+            @Override
+            public void run(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    statuses[i] = toRunnerStatus(runners.key(i), runners.totals[i]);
+                }
+            }
+        });
+
         RunnerList result = new RunnerList();
+        result.getRunners().addAll(Arrays.asList(statuses));
+
+        if (event != null) {
+            event.endAndCommit("runners", statuses.length, SortCriteria.NO_SORT.name());
+        }
+        return result;
+    }
+
+    private static RunnerStatus toRunnerStatus(Runner runner, long totalMetres) {
+        RunnerStatus runnerStatus = new RunnerStatus();
+        runnerStatus.setName(runner.getName());
+        runnerStatus.setCountry(runner.getCountry());
+        runnerStatus.setTotalKm(Distances.toKm(totalMetres));
+        runnerStatus.setTotalMetres(totalMetres);
+        return runnerStatus;
+    }
 
-        for (Runner runner : runners) {
-            RunnerStatus runnerStatus = new RunnerStatus();
-            runnerStatus.setName(runner.getName());
-            runnerStatus.setCountry(runner.getCountry());
-            runnerStatus.setTotalKm(runnerDistanceMap.get(runner));
-            result.getRunners().add(runnerStatus);
+    /**
+     * @return up to {@code limit} runners whose name starts with, or is within {@code maxEdits} edits of,
+     *         {@code name}, ignoring case, closest first and then by name, optionally only those of {@code country}.
+     * @throws UnsupportedOperationException if the store keeps the runners off the heap, and so no name index.
+     */
+    public RunnerList searchRunners(String name, SearchMode mode, String country, int maxEdits, int limit) {
+        Epoch current = epoch;
+        if (current.nameIndex == null) {
+            throw new UnsupportedOperationException("Runners are not indexed by name when kept off the heap");
         }
+        List<RunnerNameIndex.Match> matches =
+                (mode == SearchMode.PREFIX) ? current.nameIndex.findByPrefix(name, country, limit)
+                        : current.nameIndex.findSimilar(name, country, maxEdits, limit);
 
+        RunnerList result = new RunnerList();
+        for (RunnerNameIndex.Match match : matches) {
+            Runner runner = match.getRunner();
+            long totalMetres = current.store.getRunnerDistance(runner);
+            if (totalMetres != RunnerStore.ABSENT) {
+                result.getRunners().add(toRunnerStatus(runner, totalMetres));
+            }
+        }
         return result;
     }
 
     public CountryList getCountryList(final SortCriteria sortCriteria, final Order order) {
-        Set<String> countryNames = countryDistanceMap.keySet();
-
-        List<Country> countries = Lists.newArrayList();
+        return getCountryList(sortCriteria, order, null);
+    }
 
-        for (String countryName : countryNames) {
-            Country country = new Country();
-            country.setName(countryName);
-            country.setTotalKm(countryDistanceMap.get(countryName));
-            countries.add(country);
+    /**
+     * @param locale whose order names are sorted in, or null for the order of their UTF-16 code units.
+     */
+    public CountryList getCountryList(final SortCriteria sortCriteria, final Order order, final Locale locale) {
+        ListBuiltEvent event = null;
+        if (FlightRecorderEvents.AVAILABLE) {
+            event = new ListBuiltEvent();
+            event.begin();
         }
 
+        final Epoch current = epoch;
+        final Snapshot<String> countryNames = new Snapshot<>();
+        current.store.scanCountries(new RunnerStore.CountryVisitor() {
+            @Override
+            public void visit(String countryName, long totalMetres) {
+                countryNames.add(countryName, totalMetres);
+            }
+        });
+
+        final Country[] countries = new Country[countryNames.size];
+        parallelLists.forEachRange(countryNames.size, new ParallelLists.RangeTask() {
+            @Override
+            public void run(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    countries[i] = toCountry(current, countryNames.key(i), countryNames.totals[i]);
+                }
+            }
+        });
+
         if (sortCriteria != SortCriteria.NO_SORT) {
-            if (SortCriteria.SORT_BY_NAME.equals(sortCriteria)) {
-                Collections.sort(countries, new ComparatorByName(order));
+            if (SortCriteria.SORT_BY_NAME.equals(sortCriteria) && locale != null) {
+                sortByCollationKey(countries, order, locale);
+            } else if (SortCriteria.SORT_BY_NAME.equals(sortCriteria)) {
+                parallelLists.sort(countries, new ComparatorByName(order));
             } else {
-                Collections.sort(countries, new ComparatorByDistance(order));
+                parallelLists.sort(countries, new ComparatorByDistance(order));
             }
         }
 
         CountryList countryList = new CountryList();
-        countryList.getCountries().addAll(countries);
+        countryList.getCountries().addAll(Arrays.asList(countries));
+
+        if (event != null) {
+            event.endAndCommit("countries", countries.length, sortCriteria.name());
+        }
         return countryList;
     }
 
+    private void sortByCollationKey(final Country[] countries, Order order, final Locale locale) {
+        final CollationKeys.Keyed[] keyed = new CollationKeys.Keyed[countries.length];
+        parallelLists.forEachRange(countries.length, new ParallelLists.RangeTask() {
+            @Override
+            public void run(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    keyed[i] = collationKeys.keyed(countries[i], locale);
+                }
+            }
+        });
+
+        parallelLists.sort(keyed, CollationKeys.comparator(order));
+        for (int i = 0; i < keyed.length; i++) {
+            countries[i] = keyed[i].country;
+        }
+    }
+
+    /**
+     * @return the totals of the regions and continents, in O(regions).
+     */
+    public RegionList getRegionList(SortCriteria sortCriteria, Order order) {
+        return epoch.regionRollups.getRegionList(sortCriteria, order);
+    }
+
+    private static Country toCountry(Epoch current, String countryName, long totalMetres) {
+        Country country = new Country();
+        country.setName(countryName);
+        country.setTotalKm(Distances.toKm(totalMetres));
+        country.setTotalMetres(totalMetres);
+        CountryStatistics statistics = current.countryStatistics.get(countryName);
+        if (statistics != null) {
+            country.setRunnerCount(statistics.getRunnerCount());
+            long medianMetres = statistics.getMedianMetres();
+            long p90Metres = statistics.getP90Metres();
+            long p99Metres = statistics.getP99Metres();
+            country.setMedianKm(medianMetres / Distances.METRES_PER_KM);
+            country.setP90Km(p90Metres / Distances.METRES_PER_KM);
+            country.setP99Km(p99Metres / Distances.METRES_PER_KM);
+            country.setMedianMetres(medianMetres);
+            country.setP90Metres(p90Metres);
+            country.setP99Metres(p99Metres);
+        }
+        return country;
+    }
+
+    /**
+     * Visits every runner without copying them, in no particular order.
+     */
+    public void scanRunners(RunnerStore.RunnerVisitor visitor) {
+        epoch.store.scanRunners(visitor);
+    }
+
+    /**
+     * Visits every country without copying them, in no particular order.
+     */
+    public void scanCountries(RunnerStore.CountryVisitor visitor) {
+        epoch.store.scanCountries(visitor);
+    }
+
+    /**
+     * @return the updates applied in every epoch, counting each runner raised by a merge as one.
+     */
     public long getUpdatesCount() {
         return updatesCount.get();
     }
+
+    public long getEpoch() {
+        return epoch.number;
+    }
+
+    /**
+     * @return a number that grows with every update and every reset, for caches of what is derived from the totals.
+     */
+    public long getVersion() {
+        return updatesCount.get() + epoch.number;
+    }
+
+    /**
+     * @return the number of runners of the current epoch, without scanning them: exact if they are indexed by name,
+     *         estimated by the country statistics otherwise.
+     */
+    public long getRunnerCount() {
+        return epoch.getRunnerCount();
+    }
+
+    /**
+     * Starts a new epoch, such as a new season, in which every total starts again from zero, in O(1) whatever the
+     * number of runners: the totals move to a new, empty store, while calls already under way finish against the old
+     * one. After a grace period for those calls, the old epoch is handed to the {@link EpochArchiver}, if any, and its
+     * store closed, in the background.
+     *
+     * @return the number of the new epoch.
+     * @throws UnsupportedOperationException if the store cannot be reset.
+     */
+    public synchronized long reset() {
+        Epoch previous = epoch;
+        epoch = new Epoch(previous.number + 1, previous.store.newEmptyStore(), regionHierarchy);
+
+        logger.info("Started epoch {}, leaving {} runners in epoch {}.", epoch.number, previous.getRunnerCount(),
+                previous.number);
+
+        for (RunnerModelListener listener : listeners) {
+            listener.onReset(epoch.number);
+        }
+        retire(previous);
+        return epoch.number;
+    }
+
+    private void retire(final Epoch previous) {
+        if (archiveExecutor == null) {
+            archiveExecutor =
+                    Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setDaemon(true)
+                            .setNameFormat("epoch-archiver-%d").build());
+        }
+        archiveExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(archiveGraceMillis);
+                    if (epochArchiver != null) {
+                        epochArchiver.archive(previous.number, previous.store);
+                    }
+                    previous.store.close();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (IOException | RuntimeException e) {
+                    logger.error("Failed to archive epoch " + previous.number + ".", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Adds the footprint of the store, if it keeps its totals on the heap, and of the indexes and statistics kept
+     * next to it.
+     */
+    @Override
+    public void addFootprints(List<StructureFootprint> structures) {
+        Epoch current = epoch;
+        if (current.store instanceof FootprintSource) {
+            ((FootprintSource) current.store).addFootprints(structures);
+        }
+        if (current.nameIndex != null) {
+            current.nameIndex.addFootprints(structures);
+        }
+        if (current.ranks != null) {
+            current.ranks.addFootprints(structures);
+        }
+        current.regionRollups.addFootprints(structures);
+
+        long statisticsBytes = ObjectSizes.hashTable(current.countryStatistics.size());
+        for (CountryStatistics statistics : current.countryStatistics.values()) {
+            statisticsBytes += statistics.estimatedBytes();
+        }
+        structures.add(FootprintEstimator.structure("countryStatistics", current.countryStatistics.size(),
+                statisticsBytes, false));
+    }
+
+    public void addListener(RunnerModelListener listener) {
+        listeners.add(listener);
+    }
+
+    public void setListeners(List<RunnerModelListener> listeners) {
+        this.listeners.clear();
+        this.listeners.addAll(listeners);
+    }
+
+    /**
+     * Rolls the countries up into the regions and continents of {@code regionHierarchy}, starting from the totals
+     * already in the store. Meant to be set once, before any update.
+     */
+    public void setRegionHierarchy(RegionHierarchy regionHierarchy) {
+        this.regionHierarchy = regionHierarchy;
+        epoch.regionRollups = Epoch.rollUp(epoch.store, regionHierarchy);
+    }
+
+    /**
+     * @param epochArchiver keeps the totals of the epochs left behind by resets; without one, they are dropped.
+     */
+    public void setEpochArchiver(EpochArchiver epochArchiver) {
+        this.epochArchiver = epochArchiver;
+    }
+
+    /**
+     * @param archiveGraceMillis how long after a reset the old epoch is archived, for the calls still using it.
+     */
+    public void setArchiveGraceMillis(long archiveGraceMillis) {
+        this.archiveGraceMillis = archiveGraceMillis;
+    }
+
+    /**
+     * @param parallelLists builds the lists; unless started, on the calling thread.
+     */
+    public void setParallelLists(ParallelLists parallelLists) {
+        this.parallelLists = parallelLists;
+    }
+
+    /**
+     * Replaces the logger, such as with a quiet one for a scratch model.
+     */
+    public void setLogger(Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Brings what is derived from the totals up to date with those a {@link MergingRunnerStore} has raised by itself,
+     * as if they had been updated here.
+     */
+    private final class Merges implements MergingRunnerStore.MergeListener {
+
+        @Override
+        public void onRunnerMerged(Runner runner, long metres, long totalMetres) {
+            Epoch current = epoch;
+            current.getCountryStatistics(runner.getCountry()).onRunnerUpdated(runner.getName(),
+                    totalMetres - metres, totalMetres);
+            current.updateRanks(runner.getCountry(), totalMetres - metres, totalMetres);
+            current.addToNameIndex(runner);
+
+            updatesCount.incrementAndGet();
+
+            long countryTotal = current.store.getCountryDistance(runner.getCountry());
+            for (RunnerModelListener listener : listeners) {
+                listener.onRunnerStatusUpdated(runner, totalMetres, countryTotal);
+            }
+        }
+
+        @Override
+        public void onCountryMerged(String country, long metres, long totalMetres) {
+            epoch.regionRollups.add(country, metres);
+        }
+    }
+
+    /**
+     * The totals of one epoch, and everything derived from them.
+     */
+    private static final class Epoch {
+
+        final long number;
+        final RunnerStore store;
+        final ConcurrentMap<String, CountryStatistics> countryStatistics = new ConcurrentHashMap<>();
+        // Only next to a store that keeps the runners on the heap anyway.
+        final RunnerNameIndex nameIndex;
+        final RunnerRanks ranks;
+        RegionRollups regionRollups;
+
+        Epoch(long number, RunnerStore store, RegionHierarchy regionHierarchy) {
+            this.number = number;
+            this.store = store;
+            nameIndex = store.keepsRunnersOnHeap() ? new RunnerNameIndex() : null;
+            ranks = store.keepsRunnersOnHeap() ? new RunnerRanks() : null;
+
+            // A persistent or mapped store may already have runners. Off the heap, only the fixed-size statistics of
+            // each country are derived from them: the scan reads every total once, but copies none onto the heap.
+            store.scanRunners(new RunnerStore.RunnerVisitor() {
+                @Override
+                public void visit(Runner runner, long totalMetres) {
+                    getCountryStatistics(runner.getCountry()).onRunnerUpdated(runner.getName(), 0, totalMetres);
+                    updateRanks(runner.getCountry(), 0, totalMetres);
+                    addToNameIndex(runner);
+                }
+            });
+            regionRollups = rollUp(store, regionHierarchy);
+        }
+
+        void addToNameIndex(Runner runner) {
+            if (nameIndex != null) {
+                nameIndex.add(runner);
+            }
+        }
+
+        void updateRanks(String country, long previousTotalMetres, long totalMetres) {
+            if (ranks != null) {
+                ranks.onRunnerUpdated(country, previousTotalMetres, totalMetres);
+            }
+        }
+
+        long getRunnerCount() {
+            if (nameIndex != null) {
+                return nameIndex.size();
+            }
+            long runners = 0;
+            for (CountryStatistics statistics : countryStatistics.values()) {
+                runners += statistics.getRunnerCount();
+            }
+            return runners;
+        }
+
+        /**
+         * Adds a country unknown to this epoch to the store, with no distance yet.
+         */
+        void reserveCountry(String country) {
+            if (!countryStatistics.containsKey(country)) {
+                store.addCountryDistance(country, 0);
+            }
+        }
+
+        CountryStatistics getCountryStatistics(String country) {
+            CountryStatistics statistics = countryStatistics.get(country);
+            if (statistics == null) {
+                CountryStatistics newStatistics = new CountryStatistics();
+                statistics = countryStatistics.putIfAbsent(country, newStatistics);
+                if (statistics == null) {
+                    statistics = newStatistics;
+                }
+            }
+            return statistics;
+        }
+
+        static RegionRollups rollUp(RunnerStore store, RegionHierarchy regionHierarchy) {
+            final RegionRollups rollups = new RegionRollups(regionHierarchy);
+            store.scanCountries(new RunnerStore.CountryVisitor() {
+                @Override
+                public void visit(String country, long totalMetres) {
+                    rollups.add(country, totalMetres);
+                }
+            });
+            return rollups;
+        }
+    }
+
+    /**
+     * The keys and totals visited by a scan, in the order of the scan.
+     */
+    private static class Snapshot<K> {
+
+        Object[] keys = new Object[64];
+        long[] totals = new long[64];
+        int size;
+
+        void add(K key, long total) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                totals = Arrays.copyOf(totals, size * 2);
+            }
+            keys[size] = key;
+            totals[size] = total;
+            size++;
+        }
+
+        @SuppressWarnings("unchecked")
+        K key(int index) {
+            return (K) keys[index];
+        }
+    }
 }
\ No newline at end of file
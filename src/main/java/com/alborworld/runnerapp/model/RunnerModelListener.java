@@ -0,0 +1,16 @@
+package com.alborworld.runnerapp.model;
+
+/**
+ * Notified by {@link RunnerModel} after every applied update, on the thread that applied it. Implementations must
+ * return quickly and must never block, since the caller still holds the lock of the runner.
+ * Totals are in metres.
+ */
+public interface RunnerModelListener {
+
+    void onRunnerStatusUpdated(Runner runner, long runnerTotalMetres, long countryTotalMetres);
+
+    /**
+     * Notified once {@link RunnerModel#reset()} has started a new epoch, in which every total starts from zero again.
+     */
+    void onReset(long epoch);
+}
@@ -0,0 +1,52 @@
+package com.alborworld.runnerapp.model;
+
+import static com.google.common.base.Preconditions.*;
+import static org.springframework.util.StringUtils.*;
+
+import com.alborworld.runnerapp.xml.RunnerUpdate;
+
+/**
+ * The checks every runner update goes through, whether it arrives alone or in a bulk import.
+ */
+public final class RunnerUpdateValidator {
+
+    /**
+     * The longest country name accepted, in chars, so that stores with a fixed-size country table can size it.
+     */
+    public static final int MAX_COUNTRY_LENGTH = 64;
+
+    private RunnerUpdateValidator() {
+    }
+
+    public static void validate(RunnerUpdate runnerUpdate) {
+        checkNotNull(runnerUpdate, "ClientUpdate is null");
+        validateNames(runnerUpdate.getName(), runnerUpdate.getCountry());
+        if (runnerUpdate.getMetres() == null) {
+            checkNotNull(runnerUpdate.getKm(), "Km is null");
+            checkArgument(runnerUpdate.getKm().signum() >= 0, "Km was %s but expected nonnegative",
+                    runnerUpdate.getKm());
+        } else {
+            checkArgument(runnerUpdate.getKm() == null, "Expected either km or metres but got both");
+            checkArgument(runnerUpdate.getMetres() >= 0, "Metres were %s but expected nonnegative",
+                    runnerUpdate.getMetres());
+        }
+        validateUpdateId(runnerUpdate.getUpdateId());
+    }
+
+    public static void validate(String name, String country, long metres, String updateId) {
+        validateNames(name, country);
+        checkArgument(metres >= 0, "Metres were %s but expected nonnegative", metres);
+        validateUpdateId(updateId);
+    }
+
+    private static void validateNames(String name, String country) {
+        checkArgument(hasLength(name), "Runner name is null or empty");
+        checkArgument(hasLength(country), "Country name is null or empty");
+        checkArgument(country.length() <= MAX_COUNTRY_LENGTH,
+                "Country name has %s characters but at most %s are allowed", country.length(), MAX_COUNTRY_LENGTH);
+    }
+
+    private static void validateUpdateId(String updateId) {
+        checkArgument(updateId == null || hasLength(updateId), "Update id is empty");
+    }
+}
@@ -0,0 +1,65 @@
+package com.alborworld.runnerapp.model;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.math.LongMath;
+
+/**
+ * Runner updates summed per runner, to be applied with {@link RunnerModel#updateRunnerStatuses} at the cost of one
+ * addition per distinct runner and country, with the ids of the updates that have one. Not safe for concurrent use.
+ */
+public class UpdateBatch {
+
+    private final Map<Runner, long[]> metresByRunner = new HashMap<>();
+    private final Set<String> updateIds = new HashSet<>();
+
+    private long updatesCount = 0;
+
+    public void add(String name, String country, long metres) {
+        add(name, country, metres, null);
+    }
+
+    /**
+     * Adds an update, keeping its id even if its distance overflows the total of its runner, as its delivery was
+     * claimed.
+     */
+    public void add(String name, String country, long metres, String updateId) {
+        if (updateId != null) {
+            updateIds.add(updateId);
+        }
+        Runner runner = new Runner(name, country);
+        long[] total = metresByRunner.get(runner);
+        if (total == null) {
+            metresByRunner.put(runner, new long[] { metres });
+        } else {
+            total[0] = LongMath.checkedAdd(total[0], metres);
+        }
+        updatesCount++;
+    }
+
+    /**
+     * @return the ids of the updates added, whose deliveries end with the batch.
+     */
+    public Set<String> getUpdateIds() {
+        return Collections.unmodifiableSet(updateIds);
+    }
+
+    /**
+     * @return the number of updates added, including those to the same runner.
+     */
+    public long getUpdatesCount() {
+        return updatesCount;
+    }
+
+    public boolean isEmpty() {
+        return updatesCount == 0;
+    }
+
+    Map<Runner, long[]> getMetresByRunner() {
+        return metresByRunner;
+    }
+}
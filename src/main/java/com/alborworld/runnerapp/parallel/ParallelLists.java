@@ -0,0 +1,168 @@
+package com.alborworld.runnerapp.parallel;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds and sorts large lists on a fork/join pool of its own, so that list requests use at most
+ * {@code parallelism} cores between them and leave the others to updates.
+ * <p>
+ * Lists shorter than {@code threshold} are handled on the calling thread, as are all lists until {@link #start()}.
+ * Results never depend on the parallelism: ranges are written in place, and the merge sort is stable.
+ */
+public class ParallelLists {
+
+    private static final int DEFAULT_THRESHOLD = 65536;
+    private static final int LEAVES_PER_THREAD = 4;
+    private static final int MIN_LEAF_SIZE = 1024;
+
+    private int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private int threshold = DEFAULT_THRESHOLD;
+
+    private ForkJoinPool pool;
+
+    /**
+     * Works on the indices {@code from} (inclusive) to {@code to} (exclusive) of a list.
+     */
+    public interface RangeTask {
+        void run(int from, int to);
+    }
+
+    public void start() {
+        pool = new ForkJoinPool(parallelism, new WorkerFactory(), null, false);
+    }
+
+    public void stop() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs {@code task} over disjoint ranges covering the indices 0 to {@code size}, and returns once all are done.
+     */
+    public void forEachRange(int size, RangeTask task) {
+        if (pool == null || size < threshold) {
+            task.run(0, size);
+        } else {
+            pool.invoke(new RangeAction(task, 0, size, leafSize(size)));
+        }
+    }
+
+    /**
+     * Sorts {@code items} as {@link Arrays#sort(Object[], Comparator)} does: stably.
+     */
+    public <T> void sort(T[] items, Comparator<? super T> comparator) {
+        if (pool == null || items.length < threshold) {
+            Arrays.sort(items, comparator);
+        } else {
+            pool.invoke(new MergeSort<>(items, items.clone(), 0, items.length, leafSize(items.length), comparator));
+        }
+    }
+
+    private int leafSize(int size) {
+        return Math.max(MIN_LEAF_SIZE, size / (parallelism * LEAVES_PER_THREAD));
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @param threshold the length from which lists are worked on in parallel.
+     */
+    public void setThreshold(int threshold) {
+        this.threshold = threshold;
+    }
+
+    private static class RangeAction extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final RangeTask task;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+
+        RangeAction(RangeTask task, int from, int to, int leafSize) {
+            this.task = task;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= leafSize) {
+                task.run(from, to);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RangeAction(task, from, middle, leafSize), new RangeAction(task, middle, to, leafSize));
+            }
+        }
+    }
+
+    private static class MergeSort<T> extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final T[] items;
+        private final T[] buffer;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+        private final Comparator<? super T> comparator;
+
+        MergeSort(T[] items, T[] buffer, int from, int to, int leafSize, Comparator<? super T> comparator) {
+            this.items = items;
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+            this.comparator = comparator;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= leafSize) {
+                Arrays.sort(items, from, to, comparator);
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new MergeSort<>(items, buffer, from, middle, leafSize, comparator), new MergeSort<>(items,
+                    buffer, middle, to, leafSize, comparator));
+            if (comparator.compare(items[middle - 1], items[middle]) <= 0) {
+                return;
+            }
+
+            // On ties the left half goes first, which keeps the sort stable.
+            System.arraycopy(items, from, buffer, from, to - from);
+            int left = from;
+            int right = middle;
+            for (int i = from; i < to; i++) {
+                if (right == to || (left < middle && comparator.compare(buffer[left], buffer[right]) <= 0)) {
+                    items[i] = buffer[left++];
+                } else {
+                    items[i] = buffer[right++];
+                }
+            }
+        }
+    }
+
+    private static class WorkerFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("list-worker-" + count.getAndIncrement());
+            return thread;
+        }
+    }
+}
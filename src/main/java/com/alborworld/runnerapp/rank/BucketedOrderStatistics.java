@@ -0,0 +1,127 @@
+package com.alborworld.runnerapp.rank;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A multiset of totals like {@link OrderStatisticTree}, for the totals every update goes through: they are spread over
+ * log-linear buckets, each with its own treap, so that concurrent updates only contend when their totals fall in the
+ * same bucket. How many totals each bucket holds is kept in a Fenwick tree of atomic counters, which counts the totals
+ * of the buckets above any one in O(log B) without a lock.
+ * <p>
+ * Counts stay exact, but a count read while totals move between buckets may include a total twice, or miss it, until
+ * the move has completed.
+ */
+class BucketedOrderStatistics {
+
+    // Totals below 2^(SUB_BUCKET_BITS + 1) have a bucket each; above, every power of two has 2^SUB_BUCKET_BITS.
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_BUCKETS = 2 * SUB_BUCKETS;
+
+    static final int BUCKETS = bucketOf(Long.MAX_VALUE) + 1;
+
+    private final AtomicReferenceArray<OrderStatisticTree> buckets = new AtomicReferenceArray<>(BUCKETS);
+    // Fenwick tree of the counts of the buckets, 1-based.
+    private final AtomicLongArray bucketCounts = new AtomicLongArray(BUCKETS + 1);
+
+    /**
+     * Adds {@code delta}, which may be negative, to the number of occurrences of {@code total}.
+     */
+    void add(long total, int delta) {
+        int bucket = bucketOf(total);
+        bucket(bucket).add(total, delta);
+        addToCount(bucket, delta);
+    }
+
+    /**
+     * Removes one occurrence of {@code previousTotal} and adds one of {@code total}, at once if they share a bucket,
+     * otherwise adding before removing.
+     */
+    void move(long previousTotal, long total) {
+        int previousBucket = bucketOf(previousTotal);
+        int bucket = bucketOf(total);
+        if (previousBucket == bucket) {
+            bucket(bucket).move(previousTotal, total);
+        } else {
+            add(total, 1);
+            add(previousTotal, -1);
+        }
+    }
+
+    /**
+     * @return the number of totals greater than {@code total}, and the number of all totals.
+     */
+    long[] countGreaterAndAll(long total) {
+        int bucket = bucketOf(total);
+        long all = countUpTo(BUCKETS - 1);
+        long greater = all - countUpTo(bucket);
+        OrderStatisticTree tree = buckets.get(bucket);
+        if (tree != null) {
+            greater += tree.countGreaterAndAll(total)[0];
+        }
+        return new long[] { greater, all };
+    }
+
+    long size() {
+        return countUpTo(BUCKETS - 1);
+    }
+
+    long nodeCount() {
+        long nodes = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            OrderStatisticTree tree = buckets.get(i);
+            if (tree != null) {
+                nodes += tree.nodeCount();
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * @return the number of buckets with a treap.
+     */
+    long treeCount() {
+        long trees = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (buckets.get(i) != null) {
+                trees++;
+            }
+        }
+        return trees;
+    }
+
+    static int bucketOf(long total) {
+        if (total < LINEAR_BUCKETS) {
+            return (int) Math.max(total, 0);
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(total) - SUB_BUCKET_BITS;
+        return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + (int) (total >>> shift) - SUB_BUCKETS;
+    }
+
+    private OrderStatisticTree bucket(int bucket) {
+        OrderStatisticTree tree = buckets.get(bucket);
+        if (tree == null) {
+            OrderStatisticTree newTree = new OrderStatisticTree();
+            tree = buckets.compareAndSet(bucket, null, newTree) ? newTree : buckets.get(bucket);
+        }
+        return tree;
+    }
+
+    private void addToCount(int bucket, long delta) {
+        for (int i = bucket + 1; i <= BUCKETS; i += i & -i) {
+            bucketCounts.addAndGet(i, delta);
+        }
+    }
+
+    /**
+     * @return the number of totals in the buckets up to {@code bucket}, included.
+     */
+    private long countUpTo(int bucket) {
+        long count = 0;
+        for (int i = bucket + 1; i > 0; i -= i & -i) {
+            count += bucketCounts.get(i);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,145 @@
+package com.alborworld.runnerapp.rank;
+
+import java.util.Random;
+
+/**
+ * A multiset of totals that counts the totals above any value in O(log N): a treap keyed by total, where every node
+ * holds how many times its total occurs and the sum of those counts over its subtree.
+ * <p>
+ * Counts may go below zero for a while, so that the removal of a total can be applied before its addition: moves
+ * reported out of order by concurrent updates still add up to the right multiset. Nodes are dropped when their count
+ * is back to zero.
+ */
+class OrderStatisticTree {
+
+    private final Random random = new Random();
+
+    private Node root;
+    private long nodes;
+
+    /**
+     * Adds {@code delta}, which may be negative, to the number of occurrences of {@code total}.
+     */
+    synchronized void add(long total, int delta) {
+        root = add(root, total, delta);
+    }
+
+    /**
+     * Removes one occurrence of {@code previousTotal} and adds one of {@code total}, at once.
+     */
+    synchronized void move(long previousTotal, long total) {
+        root = add(add(root, previousTotal, -1), total, 1);
+    }
+
+    /**
+     * @return the number of totals greater than {@code total}, and the number of all totals, read at once.
+     */
+    synchronized long[] countGreaterAndAll(long total) {
+        long greater = 0;
+        Node node = root;
+        while (node != null) {
+            if (total < node.total) {
+                greater += node.count + sum(node.right);
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        return new long[] { greater, sum(root) };
+    }
+
+    synchronized long size() {
+        return sum(root);
+    }
+
+    synchronized long nodeCount() {
+        return nodes;
+    }
+
+    private Node add(Node node, long total, int delta) {
+        if (node == null) {
+            nodes++;
+            return new Node(total, delta, random.nextInt());
+        }
+
+        if (total < node.total) {
+            node.left = add(node.left, total, delta);
+            if (node.left != null && node.left.priority > node.priority) {
+                node = rotateRight(node);
+            }
+        } else if (total > node.total) {
+            node.right = add(node.right, total, delta);
+            if (node.right != null && node.right.priority > node.priority) {
+                node = rotateLeft(node);
+            }
+        } else {
+            node.count += delta;
+            if (node.count == 0) {
+                nodes--;
+                return merge(node.left, node.right);
+            }
+        }
+        node.update();
+        return node;
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.update();
+            return left;
+        }
+        right.left = merge(left, right.left);
+        right.update();
+        return right;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node left = node.left;
+        node.left = left.right;
+        node.update();
+        left.right = node;
+        left.update();
+        return left;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node right = node.right;
+        node.right = right.left;
+        node.update();
+        right.left = node;
+        right.update();
+        return right;
+    }
+
+    private static long sum(Node node) {
+        return (node == null) ? 0 : node.sum;
+    }
+
+    private static final class Node {
+
+        final long total;
+        final int priority;
+        long count;
+        long sum;
+        Node left;
+        Node right;
+
+        Node(long total, long count, int priority) {
+            this.total = total;
+            this.count = count;
+            this.priority = priority;
+            this.sum = count;
+        }
+
+        void update() {
+            sum = count + sum(left) + sum(right);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.alborworld.runnerapp.rank;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.alborworld.runnerapp.footprint.FootprintEstimator;
+import com.alborworld.runnerapp.footprint.FootprintSource;
+import com.alborworld.runnerapp.footprint.ObjectSizes;
+import com.alborworld.runnerapp.xml.StructureFootprint;
+
+/**
+ * The exact rank of every total among those of all runners, and among those of the runners of its country, in
+ * O(log N) and without scanning them. Like the quantiles of {@link com.alborworld.runnerapp.sketch.CountryStatistics},
+ * ranks only cover runners who have run some distance.
+ */
+public class RunnerRanks implements FootprintSource {
+
+    // Every update goes through the global ranks, which are bucketed so that updates don't all wait on one lock.
+    private final BucketedOrderStatistics global = new BucketedOrderStatistics();
+    private final ConcurrentMap<String, OrderStatisticTree> byCountry = new ConcurrentHashMap<>();
+
+    /**
+     * A position, from 1 for the longest total, among a number of runners.
+     */
+    public static class Rank {
+
+        private final long position;
+        private final long runners;
+
+        Rank(long position, long runners) {
+            this.position = position;
+            this.runners = runners;
+        }
+
+        public long getPosition() {
+            return position;
+        }
+
+        public long getRunners() {
+            return runners;
+        }
+    }
+
+    /**
+     * Records that the total of a runner of {@code country} has gone from {@code previousTotalMetres} to {@code totalMetres}.
+     */
+    public void onRunnerUpdated(String country, long previousTotalMetres, long totalMetres) {
+        if (previousTotalMetres == totalMetres) {
+            return;
+        }
+
+        OrderStatisticTree countryTree = countryTree(country);
+        if (previousTotalMetres > 0) {
+            global.move(previousTotalMetres, totalMetres);
+            countryTree.move(previousTotalMetres, totalMetres);
+        } else {
+            global.add(totalMetres, 1);
+            countryTree.add(totalMetres, 1);
+        }
+    }
+
+    /**
+     * @return the rank of {@code totalMetres} among all runners, or null if it is zero.
+     */
+    public Rank getGlobalRank(long totalMetres) {
+        return (totalMetres <= 0) ? null : rank(global.countGreaterAndAll(totalMetres));
+    }
+
+    /**
+     * @return the rank of {@code totalMetres} among the runners of {@code country}, or null if it is zero.
+     */
+    public Rank getCountryRank(String country, long totalMetres) {
+        OrderStatisticTree countryTree = byCountry.get(country);
+        return (countryTree == null || totalMetres <= 0) ? null : rank(countryTree.countGreaterAndAll(totalMetres));
+    }
+
+    private static Rank rank(long[] counts) {
+        // A concurrent update may have reached the store and not the ranks yet.
+        return new Rank(counts[0] + 1, Math.max(counts[1], counts[0] + 1));
+    }
+
+    @Override
+    public void addFootprints(List<StructureFootprint> structures) {
+        long nodes = global.nodeCount();
+        for (OrderStatisticTree countryTree : byCountry.values()) {
+            nodes += countryTree.nodeCount();
+        }
+        long trees = byCountry.size() + global.treeCount();
+        long bytes =
+                nodes * ObjectSizes.object(28, 2) + trees * (ObjectSizes.object(8, 2) + ObjectSizes.object(8, 0))
+                        + ObjectSizes.hashTable(byCountry.size())
+                        + ObjectSizes.referenceArray(BucketedOrderStatistics.BUCKETS)
+                        + ObjectSizes.array(BucketedOrderStatistics.BUCKETS + 1, 8);
+        structures.add(FootprintEstimator.structure("runnerRanks", nodes, bytes, true));
+    }
+
+    private OrderStatisticTree countryTree(String country) {
+        OrderStatisticTree tree = byCountry.get(country);
+        if (tree == null) {
+            OrderStatisticTree newTree = new OrderStatisticTree();
+            tree = byCountry.putIfAbsent(country, newTree);
+            if (tree == null) {
+                tree = newTree;
+            }
+        }
+        return tree;
+    }
+}
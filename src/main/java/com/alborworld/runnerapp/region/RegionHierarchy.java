@@ -0,0 +1,76 @@
+package com.alborworld.runnerapp.region;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.core.io.Resource;
+
+/**
+ * The region and continent of every known country, read once at startup from UTF-8 lines of
+ * {@code country<TAB>region<TAB>continent}. Blank lines and lines starting with {@code #} are ignored.
+ */
+public class RegionHierarchy {
+
+    private final Map<String, String> regionByCountry;
+    private final Map<String, String> continentByRegion;
+
+    /**
+     * A hierarchy without countries, where every country is unassigned.
+     */
+    public RegionHierarchy() {
+        regionByCountry = Collections.emptyMap();
+        continentByRegion = Collections.emptyMap();
+    }
+
+    public RegionHierarchy(Resource resource) throws IOException {
+        Map<String, String> regions = new HashMap<>();
+        Map<String, String> continents = new HashMap<>();
+        try (BufferedReader reader =
+                new BufferedReader(new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] fields = line.split("\t");
+                checkArgument(fields.length == 3, "Line %s of %s has %s fields but expected 3", lineNumber,
+                        resource.getDescription(), fields.length);
+                String country = fields[0].trim();
+                String region = fields[1].trim();
+                String continent = fields[2].trim();
+                checkArgument(regions.put(country, region) == null, "Country %s is listed twice in %s", country,
+                        resource.getDescription());
+                String previousContinent = continents.put(region, continent);
+                checkArgument(previousContinent == null || previousContinent.equals(continent),
+                        "Region %s is in both %s and %s in %s", region, previousContinent, continent,
+                        resource.getDescription());
+            }
+        }
+        regionByCountry = regions;
+        continentByRegion = continents;
+    }
+
+    /**
+     * @return the region of {@code country}, or null if it is unknown.
+     */
+    public String getRegion(String country) {
+        return regionByCountry.get(country);
+    }
+
+    /**
+     * @return every configured region, with its continent.
+     */
+    public Map<String, String> getContinentByRegion() {
+        return Collections.unmodifiableMap(continentByRegion);
+    }
+}
@@ -0,0 +1,144 @@
+package com.alborworld.runnerapp.region;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.alborworld.runnerapp.controller.Order;
+import com.alborworld.runnerapp.controller.SortCriteria;
+import com.alborworld.runnerapp.footprint.FootprintEstimator;
+import com.alborworld.runnerapp.footprint.FootprintSource;
+import com.alborworld.runnerapp.footprint.ObjectSizes;
+import com.alborworld.runnerapp.model.Distances;
+import com.alborworld.runnerapp.xml.Region;
+import com.alborworld.runnerapp.xml.RegionList;
+import com.alborworld.runnerapp.xml.StructureFootprint;
+
+/**
+ * The totals of every region and continent of a {@link RegionHierarchy}, added to as countries are, so that reading
+ * them takes O(regions) whatever the number of countries and runners. Countries outside the hierarchy add up in the
+ * {@link #UNASSIGNED} region and continent.
+ * <p>
+ * Every rollup is created up front, so adding to one takes a lookup of the country and two atomic additions.
+ */
+public class RegionRollups implements FootprintSource {
+
+    public static final String UNASSIGNED = "Unassigned";
+
+    private final RegionHierarchy hierarchy;
+    private final Map<String, Rollup> regions = new HashMap<>();
+    private final Map<String, Rollup> continents = new HashMap<>();
+    private final Rollup unassigned;
+
+    public RegionRollups(RegionHierarchy hierarchy) {
+        this.hierarchy = hierarchy;
+        for (Map.Entry<String, String> entry : hierarchy.getContinentByRegion().entrySet()) {
+            regions.put(entry.getKey(), new Rollup(entry.getKey(), continent(entry.getValue())));
+        }
+        Rollup unassignedRegion = regions.get(UNASSIGNED);
+        if (unassignedRegion == null) {
+            unassignedRegion = new Rollup(UNASSIGNED, continent(UNASSIGNED));
+            regions.put(UNASSIGNED, unassignedRegion);
+        }
+        unassigned = unassignedRegion;
+    }
+
+    private Rollup continent(String name) {
+        Rollup continent = continents.get(name);
+        if (continent == null) {
+            continent = new Rollup(name, null);
+            continents.put(name, continent);
+        }
+        return continent;
+    }
+
+    /**
+     * Adds {@code metres} to the region and continent of {@code country}.
+     */
+    public void add(String country, long metres) {
+        String regionName = hierarchy.getRegion(country);
+        Rollup region = (regionName == null) ? unassigned : regions.get(regionName);
+        region.total.addAndGet(metres);
+        region.continent.total.addAndGet(metres);
+    }
+
+    /**
+     * @return the regions, then the continents, each sorted on their own. The unassigned ones are left out until a
+     *         country adds to them.
+     */
+    public RegionList getRegionList(SortCriteria sortCriteria, Order order) {
+        RegionList regionList = new RegionList();
+        regionList.getRegions().addAll(toRegions(regions, sortCriteria, order));
+        regionList.getContinents().addAll(toRegions(continents, sortCriteria, order));
+        return regionList;
+    }
+
+    private static List<Region> toRegions(Map<String, Rollup> rollups, SortCriteria sortCriteria, Order order) {
+        List<Region> result = new ArrayList<>(rollups.size());
+        for (Rollup rollup : rollups.values()) {
+            long totalMetres = rollup.total.get();
+            if (totalMetres == 0 && UNASSIGNED.equals(rollup.name)) {
+                continue;
+            }
+
+            Region region = new Region();
+            region.setName(rollup.name);
+            region.setContinent((rollup.continent == null) ? null : rollup.continent.name);
+            region.setTotalKm(Distances.toKm(totalMetres));
+            region.setTotalMetres(totalMetres);
+            result.add(region);
+        }
+
+        if (sortCriteria != SortCriteria.NO_SORT) {
+            Collections.sort(result, new RegionComparator(sortCriteria, order));
+        }
+        return result;
+    }
+
+    @Override
+    public void addFootprints(List<StructureFootprint> structures) {
+        long rollups = regions.size() + continents.size();
+        long bytes =
+                ObjectSizes.hashTable(regions.size()) + ObjectSizes.hashTable(continents.size()) + rollups
+                        * (ObjectSizes.object(0, 3) + ObjectSizes.object(8, 0));
+        structures.add(FootprintEstimator.structure("regionRollups", rollups, bytes, false));
+    }
+
+    private static final class Rollup {
+
+        final String name;
+        final Rollup continent;
+        final AtomicLong total = new AtomicLong();
+
+        Rollup(String name, Rollup continent) {
+            this.name = name;
+            this.continent = continent;
+        }
+    }
+
+    private static final class RegionComparator implements Comparator<Region> {
+
+        private final SortCriteria sortCriteria;
+        private final Order order;
+
+        RegionComparator(SortCriteria sortCriteria, Order order) {
+            this.sortCriteria = sortCriteria;
+            this.order = order;
+        }
+
+        @Override
+        public int compare(Region r1, Region r2) {
+            int cmp =
+                    SortCriteria.SORT_BY_NAME.equals(sortCriteria) ? r1.getName().compareTo(r2.getName()) : Long
+                            .compare(r1.getTotalMetres(), r2.getTotalMetres());
+            if (Order.DESCENDING.equals(order)) {
+                cmp *= -1;
+            }
+            return cmp;
+        }
+    }
+}
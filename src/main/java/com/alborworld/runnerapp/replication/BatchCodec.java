@@ -0,0 +1,105 @@
+package com.alborworld.runnerapp.replication;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.alborworld.runnerapp.model.Runner;
+
+/**
+ * Binary form of a {@link ReplicationBatch}. Node ids are written once, in a table at the start of the batch, and
+ * referred to by their index in it.
+ */
+final class BatchCodec {
+
+    private static final int VERSION = 1;
+
+    private BatchCodec() {
+    }
+
+    static byte[] encode(ReplicationBatch batch) {
+        Map<String, Integer> nodes = new HashMap<>();
+        List<String> nodeTable = new ArrayList<>();
+        for (ReplicationBatch.Count<Runner> count : batch.getRunnerCounts()) {
+            indexOf(count.getNode(), nodes, nodeTable);
+        }
+        for (ReplicationBatch.Count<String> count : batch.getCountryCounts()) {
+            indexOf(count.getNode(), nodes, nodeTable);
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(VERSION);
+            out.writeUTF(batch.getOrigin());
+            out.writeLong(batch.getSequence());
+
+            out.writeInt(nodeTable.size());
+            for (String node : nodeTable) {
+                out.writeUTF(node);
+            }
+
+            out.writeInt(batch.getRunnerCounts().size());
+            for (ReplicationBatch.Count<Runner> count : batch.getRunnerCounts()) {
+                out.writeUTF(count.getKey().getName());
+                out.writeUTF(count.getKey().getCountry());
+                out.writeInt(nodes.get(count.getNode()));
+                out.writeLong(count.getCount());
+            }
+
+            out.writeInt(batch.getCountryCounts().size());
+            for (ReplicationBatch.Count<String> count : batch.getCountryCounts()) {
+                out.writeUTF(count.getKey());
+                out.writeInt(nodes.get(count.getNode()));
+                out.writeLong(count.getCount());
+            }
+
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot encode a batch in memory", e);
+        }
+    }
+
+    private static void indexOf(String node, Map<String, Integer> nodes, List<String> nodeTable) {
+        if (!nodes.containsKey(node)) {
+            nodes.put(node, nodeTable.size());
+            nodeTable.add(node);
+        }
+    }
+
+    static ReplicationBatch decode(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Batch version was " + version + " but expected " + VERSION);
+        }
+
+        ReplicationBatch batch = new ReplicationBatch(in.readUTF(), in.readLong());
+
+        String[] nodeTable = new String[in.readInt()];
+        for (int i = 0; i < nodeTable.length; i++) {
+            nodeTable[i] = in.readUTF();
+        }
+
+        int runnerCounts = in.readInt();
+        for (int i = 0; i < runnerCounts; i++) {
+            Runner runner = new Runner(in.readUTF(), in.readUTF());
+            batch.addRunnerCount(runner, nodeTable[in.readInt()], in.readLong());
+        }
+
+        int countryCounts = in.readInt();
+        for (int i = 0; i < countryCounts; i++) {
+            String country = in.readUTF();
+            batch.addCountryCount(country, nodeTable[in.readInt()], in.readLong());
+        }
+
+        return batch;
+    }
+}
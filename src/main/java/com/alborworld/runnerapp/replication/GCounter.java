@@ -0,0 +1,93 @@
+package com.alborworld.runnerapp.replication;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.math.LongMath;
+
+/**
+ * Grow-only counter CRDT: one count per node, of which only the owner node ever increments its own. The value is the
+ * sum of all the counts, and merging keeps the maximum of each count, so replicas that have seen the same counts in
+ * any order, any number of times, agree on the value.
+ */
+final class GCounter {
+
+    interface CountVisitor {
+        void visit(String node, long count);
+    }
+
+    private final String localNode;
+    private final AtomicLong localCount = new AtomicLong();
+    private final ConcurrentMap<String, Long> remoteCounts = new ConcurrentHashMap<>(4);
+
+    GCounter(String localNode) {
+        this.localNode = localNode;
+    }
+
+    /**
+     * @return the value after adding {@code delta} to the local count.
+     */
+    long add(long delta) {
+        while (true) {
+            long current = localCount.get();
+            // Checks the value, not only the local count, which is a part of it.
+            long value = LongMath.checkedAdd(value(current), delta);
+            if (localCount.compareAndSet(current, current + delta)) {
+                return value;
+            }
+        }
+    }
+
+    long value() {
+        return value(localCount.get());
+    }
+
+    private long value(long localCount) {
+        long value = localCount;
+        for (Long count : remoteCounts.values()) {
+            value = LongMath.checkedAdd(value, count);
+        }
+        return value;
+    }
+
+    long getLocalCount() {
+        return localCount.get();
+    }
+
+    /**
+     * @return how much the count of {@code node}, and so the value, has grown, or 0.
+     */
+    long merge(String node, long count) {
+        if (localNode.equals(node)) {
+            long current = localCount.get();
+            while (current < count) {
+                if (localCount.compareAndSet(current, count)) {
+                    return count - current;
+                }
+                current = localCount.get();
+            }
+            return 0;
+        }
+
+        Long current = remoteCounts.putIfAbsent(node, count);
+        while (current != null) {
+            if (current >= count) {
+                return 0;
+            }
+            if (remoteCounts.replace(node, current, count)) {
+                return count - current;
+            }
+            current = remoteCounts.putIfAbsent(node, count);
+        }
+        return count;
+    }
+
+    void forEachCount(CountVisitor visitor) {
+        visitor.visit(localNode, localCount.get());
+        for (Map.Entry<String, Long> entry : remoteCounts.entrySet()) {
+            visitor.visit(entry.getKey(), entry.getValue());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.alborworld.runnerapp.replication;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * In-process {@link ReplicationTransport}: delivers every batch synchronously to the other transports of the same
+ * {@link Network}. Meant for tests and for running several nodes in one JVM.
+ */
+public class LoopbackReplicationTransport implements ReplicationTransport {
+
+    public static class Network {
+
+        private final Set<LoopbackReplicationTransport> members = new CopyOnWriteArraySet<>();
+
+        public LoopbackReplicationTransport connect() {
+            return new LoopbackReplicationTransport(this);
+        }
+    }
+
+    private final Network network;
+    private volatile BatchHandler handler;
+
+    private LoopbackReplicationTransport(Network network) {
+        this.network = network;
+    }
+
+    @Override
+    public void start(BatchHandler handler) {
+        this.handler = handler;
+        network.members.add(this);
+    }
+
+    @Override
+    public void send(ReplicationBatch batch) {
+        for (LoopbackReplicationTransport member : network.members) {
+            if (member != this) {
+                member.handler.onBatch(batch);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        network.members.remove(this);
+    }
+}
@@ -0,0 +1,351 @@
+package com.alborworld.runnerapp.replication;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alborworld.runnerapp.locking.LockRegistry;
+import com.alborworld.runnerapp.model.Runner;
+import com.alborworld.runnerapp.store.MergingRunnerStore;
+import com.alborworld.runnerapp.store.RunnerKeys;
+import com.alborworld.runnerapp.store.RunnerStore;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A {@link RunnerStore} replicated across the nodes of a cluster: every runner and country total is a {@link GCounter}
+ * with one count per node.
+ * <p>
+ * Additions only increment the local count, so writes never wait for other nodes. Once per ship interval the local
+ * counts changed since the previous batch are sent to the peers through a {@link ReplicationTransport}, and once per
+ * full sync interval every known count is, so that nodes that missed batches or joined late catch up. Either is split
+ * into batches of a bounded number of counts. Batches received from peers are merged, never forwarded.
+ * <p>
+ * The node id must be unique to the running process: a node restarted with empty counters must not reuse its old id,
+ * which is why the default one is random.
+ */
+public class ReplicatedRunnerStore implements MergingRunnerStore, ReplicationTransport.BatchHandler {
+
+    private static final long DEFAULT_SHIP_INTERVAL_MILLIS = 200L;
+    private static final long DEFAULT_FULL_SYNC_INTERVAL_MILLIS = 30000L;
+    private static final int DEFAULT_MAX_COUNTS_PER_BATCH = 10000;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final String nodeId;
+    private final ReplicationTransport transport;
+
+    private final ConcurrentMap<Runner, GCounter> runners = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, GCounter> countries = new ConcurrentHashMap<>();
+
+    // Keys whose local count has changed since the last batch.
+    private final Set<Runner> changedRunners = Collections.newSetFromMap(new ConcurrentHashMap<Runner, Boolean>());
+    private final Set<String> changedCountries = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final AtomicLong sequence = new AtomicLong(0);
+
+    private long shipIntervalMillis = DEFAULT_SHIP_INTERVAL_MILLIS;
+    private long fullSyncIntervalMillis = DEFAULT_FULL_SYNC_INTERVAL_MILLIS;
+    private int maxCountsPerBatch = DEFAULT_MAX_COUNTS_PER_BATCH;
+
+    private LockRegistry lockRegistry;
+    private volatile MergeListener mergeListener;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param nodeId the id of this node, or an empty string for a random one.
+     */
+    public ReplicatedRunnerStore(String nodeId, ReplicationTransport transport) {
+        this.nodeId = nodeId.isEmpty() ? UUID.randomUUID().toString() : nodeId;
+        this.transport = transport;
+    }
+
+    public void start() throws IOException {
+        transport.start(this);
+
+        scheduler =
+                Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true)
+                        .setNameFormat("replication-sender-%d").build());
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    shipChanges();
+                } catch (RuntimeException e) {
+                    logger.error("Failed to ship changed counts.", e);
+                }
+            }
+        }, shipIntervalMillis, shipIntervalMillis, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    shipAll();
+                } catch (RuntimeException e) {
+                    logger.error("Failed to ship all counts.", e);
+                }
+            }
+        }, 0, fullSyncIntervalMillis, TimeUnit.MILLISECONDS);
+
+        logger.info("Started replication as node {}.", nodeId);
+    }
+
+    @Override
+    public boolean keepsRunnersOnHeap() {
+        return true;
+    }
+
+    /**
+     * @throws UnsupportedOperationException always, since the other nodes would have to reset at the same point of
+     *         their merges.
+     */
+    @Override
+    public RunnerStore newEmptyStore() {
+        throw new UnsupportedOperationException("A replicated store cannot be reset");
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(shipIntervalMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            shipChanges();
+        }
+        transport.close();
+    }
+
+    @Override
+    public long addRunnerDistance(Runner runner, long metres) {
+        long total = counter(runners, runner).add(metres);
+        changedRunners.add(runner);
+        return total;
+    }
+
+    @Override
+    public long addCountryDistance(String country, long metres) {
+        long total = counter(countries, country).add(metres);
+        changedCountries.add(country);
+        return total;
+    }
+
+    private <K> GCounter counter(ConcurrentMap<K, GCounter> counters, K key) {
+        GCounter counter = counters.get(key);
+        if (counter == null) {
+            GCounter newCounter = new GCounter(nodeId);
+            counter = counters.putIfAbsent(key, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        return counter;
+    }
+
+    @Override
+    public long getRunnerDistance(Runner runner) {
+        GCounter counter = runners.get(runner);
+        return (counter == null) ? ABSENT : counter.value();
+    }
+
+    @Override
+    public long getCountryDistance(String country) {
+        GCounter counter = countries.get(country);
+        return (counter == null) ? ABSENT : counter.value();
+    }
+
+    @Override
+    public void scanRunners(RunnerVisitor visitor) {
+        for (Map.Entry<Runner, GCounter> entry : runners.entrySet()) {
+            visitor.visit(entry.getKey(), entry.getValue().value());
+        }
+    }
+
+    @Override
+    public void sortedScanRunners(RunnerVisitor visitor) {
+        List<Map.Entry<byte[], Runner>> keys = new ArrayList<>(runners.size());
+        for (Runner runner : runners.keySet()) {
+            keys.add(new AbstractMap.SimpleImmutableEntry<>(RunnerKeys.encode(runner), runner));
+        }
+
+        Collections.sort(keys, new Comparator<Map.Entry<byte[], Runner>>() {
+            @Override
+            public int compare(Map.Entry<byte[], Runner> e1, Map.Entry<byte[], Runner> e2) {
+                return RunnerKeys.ORDER.compare(e1.getKey(), e2.getKey());
+            }
+        });
+
+        for (Map.Entry<byte[], Runner> key : keys) {
+            visitor.visit(key.getValue(), runners.get(key.getValue()).value());
+        }
+    }
+
+    @Override
+    public void scanCountries(CountryVisitor visitor) {
+        for (Map.Entry<String, GCounter> entry : countries.entrySet()) {
+            visitor.visit(entry.getKey(), entry.getValue().value());
+        }
+    }
+
+    /**
+     * Merges the countries first, so that the listener is told of each runner with the total of its country.
+     */
+    @Override
+    public void onBatch(ReplicationBatch batch) {
+        for (ReplicationBatch.Count<String> count : batch.getCountryCounts()) {
+            GCounter counter = counter(countries, count.getKey());
+            long metres = counter.merge(count.getNode(), count.getCount());
+            MergeListener listener = mergeListener;
+            if (metres > 0 && listener != null) {
+                listener.onCountryMerged(count.getKey(), metres, counter.value());
+            }
+        }
+        for (ReplicationBatch.Count<Runner> count : batch.getRunnerCounts()) {
+            Lock lock = (lockRegistry != null) ? lockRegistry.getWriteLockFor(count.getKey()) : null;
+            if (lock != null) {
+                lock.lock();
+            }
+            try {
+                GCounter counter = counter(runners, count.getKey());
+                long metres = counter.merge(count.getNode(), count.getCount());
+                MergeListener listener = mergeListener;
+                if (metres > 0 && listener != null) {
+                    listener.onRunnerMerged(count.getKey(), metres, counter.value());
+                }
+            } finally {
+                if (lock != null) {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends the local counts changed since the previous batch.
+     */
+    void shipChanges() {
+        BatchSender sender = new BatchSender();
+
+        // A key changed again after its removal is shipped with its newer count now, and once more next time.
+        for (Iterator<Runner> iterator = changedRunners.iterator(); iterator.hasNext();) {
+            Runner runner = iterator.next();
+            iterator.remove();
+            sender.addRunnerCount(runner, nodeId, runners.get(runner).getLocalCount());
+        }
+        for (Iterator<String> iterator = changedCountries.iterator(); iterator.hasNext();) {
+            String country = iterator.next();
+            iterator.remove();
+            sender.addCountryCount(country, nodeId, countries.get(country).getLocalCount());
+        }
+
+        sender.flush();
+    }
+
+    /**
+     * Sends every count this node knows of, its own and those of the other nodes.
+     */
+    void shipAll() {
+        final BatchSender sender = new BatchSender();
+
+        for (Map.Entry<Runner, GCounter> entry : runners.entrySet()) {
+            final Runner runner = entry.getKey();
+            entry.getValue().forEachCount(new GCounter.CountVisitor() {
+                @Override
+                public void visit(String node, long count) {
+                    sender.addRunnerCount(runner, node, count);
+                }
+            });
+        }
+        for (Map.Entry<String, GCounter> entry : countries.entrySet()) {
+            final String country = entry.getKey();
+            entry.getValue().forEachCount(new GCounter.CountVisitor() {
+                @Override
+                public void visit(String node, long count) {
+                    sender.addCountryCount(country, node, count);
+                }
+            });
+        }
+
+        sender.flush();
+    }
+
+    /**
+     * Sends counts in batches of at most {@link #maxCountsPerBatch}, so that no batch outgrows what the transport
+     * carries in one frame however many runners there are. Counts are absolute, so each batch is merged on its own.
+     */
+    private final class BatchSender {
+
+        private ReplicationBatch batch = new ReplicationBatch(nodeId, sequence.incrementAndGet());
+
+        void addRunnerCount(Runner runner, String node, long count) {
+            batch.addRunnerCount(runner, node, count);
+            if (batch.size() >= maxCountsPerBatch) {
+                flush();
+            }
+        }
+
+        void addCountryCount(String country, String node, long count) {
+            batch.addCountryCount(country, node, count);
+            if (batch.size() >= maxCountsPerBatch) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (!batch.isEmpty()) {
+                transport.send(batch);
+                batch = new ReplicationBatch(nodeId, sequence.incrementAndGet());
+            }
+        }
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void setMergeListener(MergeListener mergeListener) {
+        this.mergeListener = mergeListener;
+    }
+
+    /**
+     * @param lockRegistry the locks the runners are updated under, to merge them under the same.
+     */
+    public void setLockRegistry(LockRegistry lockRegistry) {
+        this.lockRegistry = lockRegistry;
+    }
+
+    public void setShipIntervalMillis(long shipIntervalMillis) {
+        this.shipIntervalMillis = shipIntervalMillis;
+    }
+
+    public void setFullSyncIntervalMillis(long fullSyncIntervalMillis) {
+        this.fullSyncIntervalMillis = fullSyncIntervalMillis;
+    }
+
+    public void setMaxCountsPerBatch(int maxCountsPerBatch) {
+        checkArgument(maxCountsPerBatch > 0, "Max counts per batch was %s but expected positive", maxCountsPerBatch);
+        this.maxCountsPerBatch = maxCountsPerBatch;
+    }
+}
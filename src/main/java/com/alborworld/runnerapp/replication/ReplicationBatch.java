@@ -0,0 +1,85 @@
+package com.alborworld.runnerapp.replication;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.alborworld.runnerapp.model.Runner;
+
+/**
+ * A batch of per-node counts sent by one node to its peers: usually the local counts changed since its previous
+ * batch, and from time to time every count it knows of. Counts are absolute, not increments, so a batch can be lost,
+ * duplicated or reordered without harm.
+ */
+public final class ReplicationBatch {
+
+    public static final class Count<K> {
+
+        private final K key;
+        private final String node;
+        private final long count;
+
+        Count(K key, String node, long count) {
+            this.key = key;
+            this.node = node;
+            this.count = count;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public String getNode() {
+            return node;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+
+    private final String origin;
+    private final long sequence;
+    private final List<Count<Runner>> runnerCounts = new ArrayList<>();
+    private final List<Count<String>> countryCounts = new ArrayList<>();
+
+    public ReplicationBatch(String origin, long sequence) {
+        this.origin = origin;
+        this.sequence = sequence;
+    }
+
+    public void addRunnerCount(Runner runner, String node, long count) {
+        runnerCounts.add(new Count<>(runner, node, count));
+    }
+
+    public void addCountryCount(String country, String node, long count) {
+        countryCounts.add(new Count<>(country, node, count));
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public List<Count<Runner>> getRunnerCounts() {
+        return Collections.unmodifiableList(runnerCounts);
+    }
+
+    public List<Count<String>> getCountryCounts() {
+        return Collections.unmodifiableList(countryCounts);
+    }
+
+    /**
+     * @return the number of counts in the batch.
+     */
+    public int size() {
+        return runnerCounts.size() + countryCounts.size();
+    }
+
+    public boolean isEmpty() {
+        return runnerCounts.isEmpty() && countryCounts.isEmpty();
+    }
+}
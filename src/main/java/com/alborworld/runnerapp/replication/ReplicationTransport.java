@@ -0,0 +1,25 @@
+package com.alborworld.runnerapp.replication;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Carries {@link ReplicationBatch}es between the nodes of a cluster. Delivery is best effort: batches may be lost,
+ * duplicated or reordered, which the counters tolerate.
+ */
+public interface ReplicationTransport extends Closeable {
+
+    interface BatchHandler {
+        void onBatch(ReplicationBatch batch);
+    }
+
+    /**
+     * Starts delivering the batches of the other nodes to {@code handler}.
+     */
+    void start(BatchHandler handler) throws IOException;
+
+    /**
+     * Sends {@code batch} to every other node.
+     */
+    void send(ReplicationBatch batch);
+}
@@ -0,0 +1,177 @@
+package com.alborworld.runnerapp.replication;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Splitter;
+import com.google.common.net.HostAndPort;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * {@link ReplicationTransport} over TCP: listens on a port for the batches of the other nodes, and sends its own to a
+ * fixed list of peers as length-prefixed frames on one long-lived connection per peer.
+ * <p>
+ * A batch that can't be sent to a peer is dropped for that peer, and the connection is opened again for the next
+ * batch: the periodic full batches repair whatever was lost in the meantime.
+ */
+public class TcpReplicationTransport implements ReplicationTransport {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    private static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final int port;
+    private final List<HostAndPort> peers = new ArrayList<>();
+    private final Map<HostAndPort, Socket> connections = new HashMap<>();
+    private final Set<Socket> acceptedSockets = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+
+    private ServerSocket serverSocket;
+    private ExecutorService executor;
+
+    /**
+     * @param port the port to listen on, or 0 for any free one.
+     * @param peers the other nodes, as comma separated {@code host:port}s.
+     */
+    public TcpReplicationTransport(int port, String peers) {
+        this.port = port;
+        for (String peer : Splitter.on(',').trimResults().omitEmptyStrings().split(peers)) {
+            HostAndPort hostAndPort = HostAndPort.fromString(peer);
+            checkArgument(hostAndPort.hasPort(), "Peer %s has no port", peer);
+            this.peers.add(hostAndPort);
+        }
+    }
+
+    @Override
+    public void start(final BatchHandler handler) throws IOException {
+        serverSocket = new ServerSocket(port);
+        executor =
+                Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true)
+                        .setNameFormat("replication-receiver-%d").build());
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                accept(handler);
+            }
+        });
+        logger.info("Replicating on port {} to {}.", serverSocket.getLocalPort(), peers);
+    }
+
+    public int getLocalPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void accept(final BatchHandler handler) {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                acceptedSockets.add(socket);
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        receive(socket, handler);
+                    }
+                });
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    logger.warn("Failed to accept a replication connection.", e);
+                }
+            }
+        }
+    }
+
+    private void receive(Socket socket, BatchHandler handler) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            while (true) {
+                int length = in.readInt();
+                if (length < 0 || length > MAX_FRAME_SIZE) {
+                    throw new IOException("Frame of " + length + " bytes");
+                }
+                byte[] frame = new byte[length];
+                in.readFully(frame);
+                handler.onBatch(BatchCodec.decode(frame));
+            }
+        } catch (EOFException e) {
+            logger.debug("Replication connection from {} closed.", socket.getRemoteSocketAddress());
+        } catch (IOException | RuntimeException e) {
+            if (!serverSocket.isClosed()) {
+                logger.warn("Dropping replication connection from " + socket.getRemoteSocketAddress() + ".", e);
+            }
+        } finally {
+            acceptedSockets.remove(socket);
+        }
+    }
+
+    @Override
+    public synchronized void send(ReplicationBatch batch) {
+        byte[] frame = BatchCodec.encode(batch);
+
+        for (HostAndPort peer : peers) {
+            try {
+                Socket socket = connections.get(peer);
+                if (socket == null) {
+                    socket = new Socket();
+                    socket.setTcpNoDelay(true);
+                    socket.connect(new InetSocketAddress(peer.getHostText(), peer.getPort()), CONNECT_TIMEOUT_MILLIS);
+                    connections.put(peer, socket);
+                }
+
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                out.writeInt(frame.length);
+                out.write(frame);
+                out.flush();
+            } catch (IOException e) {
+                logger.warn("Failed to send batch {} to {}: {}", batch.getSequence(), peer, e.toString());
+                closeQuietly(connections.remove(peer));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (Socket socket : connections.values()) {
+            closeQuietly(socket);
+        }
+        connections.clear();
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+        for (Socket socket : acceptedSockets) {
+            closeQuietly(socket);
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Nothing left to do with it.
+            }
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.alborworld.runnerapp.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.alborworld.runnerapp.footprint.FootprintEstimator;
+import com.alborworld.runnerapp.footprint.FootprintSource;
+import com.alborworld.runnerapp.footprint.ObjectSizes;
+import com.alborworld.runnerapp.model.Runner;
+import com.alborworld.runnerapp.xml.StructureFootprint;
+
+/**
+ * A trie over the names of the runners, folded to lower case, for prefix and bounded edit distance lookups.
+ * <p>
+ * Lookups take no lock and see every runner added before they started. Additions lock only the nodes they change,
+ * which copy their arrays on write; the common case, a runner already indexed, takes no lock either.
+ */
+public class RunnerNameIndex implements FootprintSource {
+
+    private final Node root = new Node();
+
+    private final AtomicLong nodes = new AtomicLong(1);
+    private final AtomicLong runners = new AtomicLong();
+
+    /**
+     * A runner found by a lookup, with the edit distance of its name to the query.
+     */
+    public static class Match {
+
+        private final Runner runner;
+        private final int distance;
+
+        Match(Runner runner, int distance) {
+            this.runner = runner;
+            this.distance = distance;
+        }
+
+        public Runner getRunner() {
+            return runner;
+        }
+
+        public int getDistance() {
+            return distance;
+        }
+    }
+
+    private static final Comparator<Match> BEST_FIRST = new Comparator<Match>() {
+        @Override
+        public int compare(Match first, Match second) {
+            if (first.distance != second.distance) {
+                return (first.distance < second.distance) ? -1 : 1;
+            }
+            int byName = first.runner.getName().compareTo(second.runner.getName());
+            return (byName != 0) ? byName : first.runner.getCountry().compareTo(second.runner.getCountry());
+        }
+    };
+
+    public void add(Runner runner) {
+        String key = fold(runner.getName());
+        Node node = root;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.childOrAdd(key.charAt(i), nodes);
+        }
+        if (node.addRunner(runner)) {
+            runners.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the number of runners indexed.
+     */
+    public long size() {
+        return runners.get();
+    }
+
+    public long getNodeCount() {
+        return nodes.get();
+    }
+
+    /**
+     * Every node but the root is one slot of its parent's arrays; nodes without runners are taken to have children.
+     */
+    @Override
+    public void addFootprints(List<StructureFootprint> structures) {
+        long nodeCount = nodes.get();
+        long runnerCount = runners.get();
+        long parents = Math.max(1, nodeCount - runnerCount);
+        long bytes =
+                nodeCount * ObjectSizes.object(0, 2) + parents
+                        * (ObjectSizes.object(0, 2) + ObjectSizes.array(0, 2) + ObjectSizes.referenceArray(0))
+                        + (nodeCount - 1) * (2 + ObjectSizes.REFERENCE) + runnerCount * ObjectSizes.referenceArray(1);
+        structures.add(FootprintEstimator.structure("runnerNameIndex", runnerCount, bytes, true));
+    }
+
+    /**
+     * @return up to {@code limit} runners whose name starts with {@code prefix}, ignoring case, in the order of their
+     *         names, optionally only those of {@code country}.
+     */
+    public List<Match> findByPrefix(String prefix, String country, int limit) {
+        String key = fold(prefix);
+        Node node = root;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.child(key.charAt(i));
+        }
+
+        List<Match> matches = new ArrayList<>();
+        if (node != null) {
+            collect(node, country, limit, matches);
+        }
+        return matches;
+    }
+
+    private static void collect(Node node, String country, int limit, List<Match> matches) {
+        for (Runner runner : node.runners) {
+            if (matches.size() == limit) {
+                return;
+            }
+            if (country == null || country.equals(runner.getCountry())) {
+                matches.add(new Match(runner, 0));
+            }
+        }
+        for (Node child : node.edges.children) {
+            if (matches.size() == limit) {
+                return;
+            }
+            collect(child, country, limit, matches);
+        }
+    }
+
+    /**
+     * @return up to {@code limit} runners whose name is within {@code maxEdits} insertions, deletions or substitutions
+     *         of {@code name}, ignoring case, closest first, optionally only those of {@code country}.
+     */
+    public List<Match> findSimilar(String name, String country, int maxEdits, int limit) {
+        String key = fold(name);
+        PriorityQueue<Match> best = new PriorityQueue<>(limit + 1, Collections.reverseOrder(BEST_FIRST));
+
+        int[] row = new int[key.length() + 1];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = i;
+        }
+        if (row[key.length()] <= maxEdits) {
+            offer(root, row[key.length()], country, limit, best);
+        }
+
+        Edges edges = root.edges;
+        for (int i = 0; i < edges.labels.length; i++) {
+            searchSimilar(edges.children[i], edges.labels[i], key, row, country, maxEdits, limit, best);
+        }
+
+        List<Match> matches = new ArrayList<>(best);
+        Collections.sort(matches, BEST_FIRST);
+        return matches;
+    }
+
+    // One row of the Levenshtein matrix per trie level; a subtree is pruned once its row holds no distance in bounds.
+    private static void searchSimilar(Node node, char label, String key, int[] previousRow, String country,
+            int maxEdits, int limit, PriorityQueue<Match> best) {
+        int[] row = new int[previousRow.length];
+        row[0] = previousRow[0] + 1;
+        int rowMinimum = row[0];
+        for (int i = 1; i < row.length; i++) {
+            int substitution = previousRow[i - 1] + ((key.charAt(i - 1) == label) ? 0 : 1);
+            row[i] = Math.min(Math.min(row[i - 1] + 1, previousRow[i] + 1), substitution);
+            rowMinimum = Math.min(rowMinimum, row[i]);
+        }
+
+        int distance = row[row.length - 1];
+        if (distance <= maxEdits) {
+            offer(node, distance, country, limit, best);
+        }
+
+        // Once the queue is full, names farther than the farthest kept cannot make it.
+        int bound = (best.size() == limit) ? Math.min(maxEdits, best.peek().distance) : maxEdits;
+        if (rowMinimum <= bound) {
+            Edges edges = node.edges;
+            for (int i = 0; i < edges.labels.length; i++) {
+                searchSimilar(edges.children[i], edges.labels[i], key, row, country, maxEdits, limit, best);
+            }
+        }
+    }
+
+    private static void offer(Node node, int distance, String country, int limit, PriorityQueue<Match> best) {
+        for (Runner runner : node.runners) {
+            if (country == null || country.equals(runner.getCountry())) {
+                best.add(new Match(runner, distance));
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+        }
+    }
+
+    private static String fold(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Edges {
+
+        static final Edges EMPTY = new Edges(new char[0], new Node[0]);
+
+        final char[] labels;
+        final Node[] children;
+
+        Edges(char[] labels, Node[] children) {
+            this.labels = labels;
+            this.children = children;
+        }
+    }
+
+    private static final class Node {
+
+        private static final Runner[] NO_RUNNERS = new Runner[0];
+
+        volatile Edges edges = Edges.EMPTY;
+        volatile Runner[] runners = NO_RUNNERS;
+
+        Node child(char label) {
+            Edges current = edges;
+            int index = Arrays.binarySearch(current.labels, label);
+            return (index >= 0) ? current.children[index] : null;
+        }
+
+        Node childOrAdd(char label, AtomicLong nodes) {
+            Node child = child(label);
+            if (child != null) {
+                return child;
+            }
+
+            synchronized (this) {
+                Edges current = edges;
+                int index = Arrays.binarySearch(current.labels, label);
+                if (index >= 0) {
+                    return current.children[index];
+                }
+
+                int insertion = -index - 1;
+                int length = current.labels.length;
+                char[] labels = new char[length + 1];
+                Node[] children = new Node[length + 1];
+                System.arraycopy(current.labels, 0, labels, 0, insertion);
+                System.arraycopy(current.children, 0, children, 0, insertion);
+                labels[insertion] = label;
+                children[insertion] = new Node();
+                System.arraycopy(current.labels, insertion, labels, insertion + 1, length - insertion);
+                System.arraycopy(current.children, insertion, children, insertion + 1, length - insertion);
+                edges = new Edges(labels, children);
+                nodes.incrementAndGet();
+                return children[insertion];
+            }
+        }
+
+        boolean addRunner(Runner runner) {
+            if (contains(runners, runner)) {
+                return false;
+            }
+            synchronized (this) {
+                Runner[] current = runners;
+                if (contains(current, runner)) {
+                    return false;
+                }
+                Runner[] added = Arrays.copyOf(current, current.length + 1);
+                added[current.length] = runner;
+                runners = added;
+                return true;
+            }
+        }
+
+        private static boolean contains(Runner[] runners, Runner runner) {
+            for (Runner indexed : runners) {
+                if (indexed.equals(runner)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.alborworld.runnerapp.server;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.server.AsyncNCSARequestLog;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.HandlerCollection;
+import org.eclipse.jetty.server.handler.RequestLogHandler;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.springframework.web.context.support.XmlWebApplicationContext;
+import org.springframework.web.servlet.DispatcherServlet;
+
+/**
+ * Runs the application in an embedded Jetty, without a war or a servlet container. Unless given explicitly, active
+ * Spring profiles are taken from {@code -Dspring.profiles.active} as usual.
+ * <p>
+ * The connector and its threads are tunable: a bounded pool of request threads behind a bounded queue, so that an
+ * overload is refused by the connector rather than growing the heap, and acceptor and selector threads sized for
+ * many idle keep-alive connections. Requests are logged in NCSA format by a background writer, off the request
+ * threads. Settings take effect on {@link #start()}.
+ */
+public class RunnerAppServer {
+
+    public static final int DEFAULT_PORT = 9090;
+
+    private static final String CONFIG_LOCATION = "classpath:webapp/WEB-INF/runnerapp-servlet.xml";
+    private static final String PROPERTY_PREFIX = "runnerapp.server.";
+
+    private final int port;
+    private final String[] activeProfiles;
+
+    private int minThreads = 8;
+    private int maxThreads = 200;
+    private int acceptors = -1;
+    private int selectors = -1;
+    private int maxQueuedRequests = 1024;
+    private long idleTimeoutMillis = TimeUnit.SECONDS.toMillis(30);
+    private int acceptQueueSize = 1024;
+    private String requestLogFile;
+    private int requestLogRetainDays = 90;
+
+    private QueuedThreadPool threadPool;
+    private Server server;
+    private ServerConnector connector;
+
+    public RunnerAppServer(int port, String... activeProfiles) {
+        this.port = port;
+        this.activeProfiles = activeProfiles;
+    }
+
+    /**
+     * Starts a server on the port given as first argument, or 9090, tuned by the {@code runnerapp.server.*} system
+     * properties named after the setters, such as {@code -Drunnerapp.server.maxThreads=400}.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        RunnerAppServer server = new RunnerAppServer(port);
+        server.setAcceptors(Integer.getInteger(PROPERTY_PREFIX + "acceptors", server.acceptors));
+        server.setSelectors(Integer.getInteger(PROPERTY_PREFIX + "selectors", server.selectors));
+        server.setMinThreads(Integer.getInteger(PROPERTY_PREFIX + "minThreads", server.minThreads));
+        server.setMaxThreads(Integer.getInteger(PROPERTY_PREFIX + "maxThreads", server.maxThreads));
+        server.setMaxQueuedRequests(Integer.getInteger(PROPERTY_PREFIX + "maxQueuedRequests",
+                server.maxQueuedRequests));
+        server.setIdleTimeoutMillis(Long.getLong(PROPERTY_PREFIX + "idleTimeoutMillis", server.idleTimeoutMillis));
+        server.setAcceptQueueSize(Integer.getInteger(PROPERTY_PREFIX + "acceptQueueSize", server.acceptQueueSize));
+        server.setRequestLogFile(System.getProperty(PROPERTY_PREFIX + "requestLogFile"));
+        server.start();
+        server.join();
+    }
+
+    public void start() throws Exception {
+        int queueCapacity = (maxQueuedRequests > 0) ? Math.min(maxQueuedRequests, 1024) : 1024;
+        BlockingQueue<Runnable> queue =
+                (maxQueuedRequests > 0) ? new BlockingArrayQueue<Runnable>(queueCapacity, queueCapacity,
+                        maxQueuedRequests) : new BlockingArrayQueue<Runnable>(queueCapacity, queueCapacity);
+        threadPool = new QueuedThreadPool(maxThreads, minThreads, (int) idleTimeoutMillis, queue);
+        threadPool.setName("runnerapp");
+        server = new Server(threadPool);
+
+        XmlWebApplicationContext context = new XmlWebApplicationContext();
+        context.setConfigLocation(CONFIG_LOCATION);
+        if (activeProfiles.length > 0) {
+            context.getEnvironment().setActiveProfiles(activeProfiles);
+        }
+
+        ServletContextHandler contextHandler = new ServletContextHandler();
+        contextHandler.setContextPath("/");
+        ServletHolder servletHolder = new ServletHolder(new DispatcherServlet(context));
+        servletHolder.setAsyncSupported(true);
+        servletHolder.setInitOrder(1);
+        contextHandler.addServlet(servletHolder, "/");
+
+        HandlerCollection handlers = new HandlerCollection();
+        handlers.addHandler(contextHandler);
+        if (requestLogFile != null) {
+            AsyncNCSARequestLog requestLog = new AsyncNCSARequestLog(requestLogFile);
+            requestLog.setRetainDays(requestLogRetainDays);
+            requestLog.setAppend(true);
+            requestLog.setExtended(false);
+            requestLog.setLogTimeZone("GMT");
+            RequestLogHandler requestLogHandler = new RequestLogHandler();
+            requestLogHandler.setRequestLog(requestLog);
+            handlers.addHandler(requestLogHandler);
+        }
+        server.setHandler(handlers);
+
+        HttpConfiguration httpConfiguration = new HttpConfiguration();
+        httpConfiguration.setSendServerVersion(false);
+        connector =
+                new ServerConnector(server, null, null, null, acceptors, selectors, new HttpConnectionFactory(
+                        httpConfiguration));
+        connector.setPort(port);
+        connector.setIdleTimeout(idleTimeoutMillis);
+        connector.setAcceptQueueSize(acceptQueueSize);
+        server.setConnectors(new Connector[] { connector });
+        server.setStopAtShutdown(true);
+
+        server.start();
+    }
+
+    public void stop() throws Exception {
+        server.stop();
+    }
+
+    public void join() throws InterruptedException {
+        server.join();
+    }
+
+    public int getPort() {
+        return connector.getLocalPort();
+    }
+
+    QueuedThreadPool getThreadPool() {
+        return threadPool;
+    }
+
+    /**
+     * @param acceptors threads accepting connections, or -1 for Jetty's default based on the number of cores.
+     */
+    public void setAcceptors(int acceptors) {
+        this.acceptors = acceptors;
+    }
+
+    /**
+     * @param selectors threads selecting ready connections, or -1 for Jetty's default based on the number of cores.
+     */
+    public void setSelectors(int selectors) {
+        this.selectors = selectors;
+    }
+
+    public void setMinThreads(int minThreads) {
+        this.minThreads = minThreads;
+    }
+
+    /**
+     * @param maxThreads the bound of the pool, which also runs the acceptors and selectors.
+     */
+    public void setMaxThreads(int maxThreads) {
+        this.maxThreads = maxThreads;
+    }
+
+    /**
+     * @param maxQueuedRequests the bound of the queue of tasks waiting for a thread, or 0 for no bound.
+     */
+    public void setMaxQueuedRequests(int maxQueuedRequests) {
+        this.maxQueuedRequests = maxQueuedRequests;
+    }
+
+    /**
+     * @param idleTimeoutMillis after which idle keep-alive connections are closed, and idle threads stopped.
+     */
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public void setAcceptQueueSize(int acceptQueueSize) {
+        this.acceptQueueSize = acceptQueueSize;
+    }
+
+    /**
+     * @param requestLogFile the NCSA request log, where {@code yyyy_mm_dd} is replaced by the date, or null for none.
+     */
+    public void setRequestLogFile(String requestLogFile) {
+        this.requestLogFile = requestLogFile;
+    }
+
+    public void setRequestLogRetainDays(int requestLogRetainDays) {
+        this.requestLogRetainDays = requestLogRetainDays;
+    }
+}
@@ -0,0 +1,58 @@
+package com.alborworld.runnerapp.sketch;
+
+import java.nio.charset.StandardCharsets;
+
+import com.alborworld.runnerapp.footprint.ObjectSizes;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Fixed-memory statistics of the runners of one country: their approximate number, and the approximate quantiles of
+ * their totals. Quantiles only cover runners who have run some distance.
+ */
+public class CountryStatistics {
+
+    private static final int HYPER_LOG_LOG_PRECISION = 12;
+    private static final double HISTOGRAM_RELATIVE_ACCURACY = 0.02;
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final HyperLogLog runners = new HyperLogLog(HYPER_LOG_LOG_PRECISION);
+    private final LogHistogram totals = new LogHistogram(HISTOGRAM_RELATIVE_ACCURACY);
+
+    /**
+     * Records that the total of runner {@code name} has gone from {@code previousTotalMetres} to {@code totalMetres}.
+     */
+    public void onRunnerUpdated(String name, long previousTotalMetres, long totalMetres) {
+        runners.offer(HASH_FUNCTION.hashString(name, StandardCharsets.UTF_8).asLong());
+
+        if (previousTotalMetres == totalMetres) {
+            return;
+        }
+        if (previousTotalMetres > 0) {
+            totals.move(previousTotalMetres, totalMetres);
+        } else {
+            totals.add(totalMetres);
+        }
+    }
+
+    public long getRunnerCount() {
+        return runners.estimate();
+    }
+
+    public long getMedianMetres() {
+        return totals.quantile(0.5);
+    }
+
+    public long getP90Metres() {
+        return totals.quantile(0.9);
+    }
+
+    public long getP99Metres() {
+        return totals.quantile(0.99);
+    }
+
+    public long estimatedBytes() {
+        return ObjectSizes.object(0, 2) + runners.estimatedBytes() + totals.estimatedBytes();
+    }
+}
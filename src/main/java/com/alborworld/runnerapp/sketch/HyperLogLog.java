@@ -0,0 +1,70 @@
+package com.alborworld.runnerapp.sketch;
+
+import static com.google.common.base.Preconditions.*;
+
+import com.alborworld.runnerapp.footprint.ObjectSizes;
+
+/**
+ * HyperLogLog estimate of the number of distinct 64-bit hashes offered, in {@code 2^precision} one-byte registers.
+ * The standard error is about {@code 1.04 / sqrt(2^precision)}.
+ * <p>
+ * Registers only ever grow, and each one does so at most a few dozen times, so offers of already seen hashes are
+ * lock-free reads. The estimate is maintained incrementally whenever a register grows, which makes reading it O(1).
+ */
+public class HyperLogLog {
+
+    private final int precision;
+    private final byte[] registers;
+    private final double alphaMM;
+
+    // Guarded by this; registers are read without it, where a stale value only costs a needless lock.
+    private double inverseSum;
+    private int zeroRegisters;
+
+    private volatile long estimate;
+
+    public HyperLogLog(int precision) {
+        checkArgument(precision >= 4 && precision <= 16, "Precision was %s but expected in [4, 16]", precision);
+        this.precision = precision;
+        int m = 1 << precision;
+        this.registers = new byte[m];
+        this.alphaMM = 0.7213 / (1 + 1.079 / m) * m * m;
+        this.inverseSum = m;
+        this.zeroRegisters = m;
+    }
+
+    public void offer(long hash) {
+        int index = (int) (hash >>> (Long.SIZE - precision));
+        int rank = Math.min(Long.numberOfLeadingZeros(hash << precision), Long.SIZE - precision) + 1;
+
+        if (rank > registers[index]) {
+            grow(index, rank);
+        }
+    }
+
+    private synchronized void grow(int index, int rank) {
+        int current = registers[index];
+        if (rank <= current) {
+            return;
+        }
+
+        registers[index] = (byte) rank;
+        inverseSum += Math.scalb(1.0, -rank) - Math.scalb(1.0, -current);
+        if (current == 0) {
+            zeroRegisters--;
+        }
+
+        int m = registers.length;
+        double raw = alphaMM / inverseSum;
+        // Small range correction: linear counting while many registers are still empty.
+        estimate = Math.round((raw <= 2.5 * m && zeroRegisters > 0) ? m * Math.log((double) m / zeroRegisters) : raw);
+    }
+
+    public long estimate() {
+        return estimate;
+    }
+
+    public long estimatedBytes() {
+        return ObjectSizes.object(36, 1) + ObjectSizes.array(registers.length, 1);
+    }
+}
@@ -0,0 +1,102 @@
+package com.alborworld.runnerapp.sketch;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.alborworld.runnerapp.footprint.ObjectSizes;
+
+/**
+ * Histogram of positive longs in logarithmically sized buckets, so that any quantile it returns is within a fixed
+ * relative error of the true one. Its size depends only on that error, not on the number of values.
+ * <p>
+ * Unlike a t-digest or a KLL sketch, it supports removals, so it can follow values that change over time, like the
+ * totals of the runners: moving a value is one decrement and one increment.
+ */
+public class LogHistogram {
+
+    private final double logGamma;
+    private final double gamma;
+    private final AtomicLongArray counts;
+    private final AtomicLong totalCount = new AtomicLong();
+
+    /**
+     * @param relativeAccuracy the maximum relative error of the quantiles, in (0, 1).
+     */
+    public LogHistogram(double relativeAccuracy) {
+        checkArgument(relativeAccuracy > 0 && relativeAccuracy < 1, "Relative accuracy was %s but expected in (0, 1)",
+                relativeAccuracy);
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.counts = new AtomicLongArray(indexOf(Long.MAX_VALUE) + 1);
+    }
+
+    public void add(long value) {
+        counts.incrementAndGet(indexOf(value));
+        totalCount.incrementAndGet();
+    }
+
+    public void remove(long value) {
+        counts.decrementAndGet(indexOf(value));
+        totalCount.decrementAndGet();
+    }
+
+    /**
+     * Moves one occurrence of {@code from} to {@code to}.
+     */
+    public void move(long from, long to) {
+        int fromIndex = indexOf(from);
+        int toIndex = indexOf(to);
+        if (fromIndex != toIndex) {
+            counts.incrementAndGet(toIndex);
+            counts.decrementAndGet(fromIndex);
+        }
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * @return the value at quantile {@code q}, or 0 if the histogram is empty. Reads a constant number of buckets.
+     */
+    public long quantile(double q) {
+        checkArgument(q >= 0 && q <= 1, "Quantile was %s but expected in [0, 1]", q);
+
+        long count = totalCount.get();
+        if (count <= 0) {
+            return 0;
+        }
+
+        long rank = (long) (q * (count - 1));
+        long seen = 0;
+        int last = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            long bucketCount = counts.get(i);
+            if (bucketCount > 0) {
+                last = i;
+                seen += bucketCount;
+                if (seen > rank) {
+                    return valueOf(i);
+                }
+            }
+        }
+        // Concurrent updates made the buckets add up to less than the total read above.
+        return valueOf(last);
+    }
+
+    public long estimatedBytes() {
+        return ObjectSizes.object(16, 2) + ObjectSizes.object(0, 1) + ObjectSizes.array(counts.length(), 8)
+                + ObjectSizes.object(8, 0);
+    }
+
+    private int indexOf(long value) {
+        checkArgument(value > 0, "Value was %s but expected positive", value);
+        return (int) Math.ceil(Math.log(value) / logGamma);
+    }
+
+    private long valueOf(int index) {
+        return Math.round(2 * Math.pow(gamma, index) / (gamma + 1));
+    }
+}
@@ -0,0 +1,74 @@
+package com.alborworld.runnerapp.startup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import com.alborworld.runnerapp.server.RunnerAppServer;
+
+/**
+ * Training run for an AppCDS archive: starts the embedded server, waits until it is ready and sends one request of
+ * every kind, so that the JVM that runs it with {@code -XX:ArchiveClassesAtExit} archives every class loaded by a
+ * startup and its first requests. See the {@code appcds} Maven profile.
+ */
+public final class CdsTraining {
+
+    private static final long READY_TIMEOUT_MILLIS = 60000L;
+
+    private static final String UPDATE =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+                    + "<runnerUpdate xmlns=\"http://com.alborworld/schema/Runner\" name=\"Training\" "
+                    + "country=\"Training\" km=\"1\" />";
+
+    private CdsTraining() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        RunnerAppServer server = new RunnerAppServer(0);
+        server.start();
+        try {
+            String base = "http://localhost:" + server.getPort();
+
+            long deadline = System.currentTimeMillis() + READY_TIMEOUT_MILLIS;
+            while (get(base + "/ready") != HttpURLConnection.HTTP_OK) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("Not ready after " + READY_TIMEOUT_MILLIS + " ms");
+                }
+                Thread.sleep(100);
+            }
+
+            post(base + "/sendRunnerStatusUpdate", UPDATE);
+            get(base + "/getRunnerStatus?name=Training&country=Training");
+            get(base + "/getRunnerList");
+            get(base + "/getCountryList");
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static int get(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static int post(String url, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "application/xml");
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.alborworld.runnerapp.startup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.NOPLogger;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+import com.alborworld.runnerapp.compression.ResponseBodyCache;
+import com.alborworld.runnerapp.controller.Order;
+import com.alborworld.runnerapp.controller.RunnerController;
+import com.alborworld.runnerapp.controller.SortCriteria;
+import com.alborworld.runnerapp.dedup.UpdateDeduplicator;
+import com.alborworld.runnerapp.locking.LockRegistry;
+import com.alborworld.runnerapp.model.RunnerModel;
+import com.alborworld.runnerapp.xml.ChangeFeed;
+import com.alborworld.runnerapp.xml.CountryList;
+import com.alborworld.runnerapp.xml.RunnerList;
+import com.alborworld.runnerapp.xml.RunnerStatus;
+import com.alborworld.runnerapp.xml.RunnerUpdate;
+
+/**
+ * Once the context is up, warms the hot paths in the background and then reports the node ready.
+ * <p>
+ * It first builds the JAXB context of every XML type by writing and reading one sample through the message converters
+ * of the MVC handler adapter, which otherwise happens on the first request of each type. Then it runs synthetic
+ * updates, status reads and list scans through a scratch controller and model, so that they are compiled before real
+ * traffic arrives without touching the real totals.
+ */
+public class Warmup implements ApplicationListener<ContextRefreshedEvent> {
+
+    private static final Class<?>[] XML_TYPES = { RunnerUpdate.class, RunnerStatus.class, RunnerList.class,
+            CountryList.class, ChangeFeed.class };
+
+    private static final int RUNNERS = 100;
+    private static final int COUNTRIES = 10;
+    private static final int SCAN_EVERY = 100;
+    private static final String ACCEPT_ENCODING = "gzip";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final long createdNanos = System.nanoTime();
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    private int iterations = 0;
+
+    private volatile boolean ready;
+    private volatile long readyMillis = -1;
+
+    public Warmup() {
+    }
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+
+        final List<HttpMessageConverter<?>> converters =
+                event.getApplicationContext().getBean(RequestMappingHandlerAdapter.class).getMessageConverters();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    warmUpConverters(converters);
+                    warmUpPaths();
+                } catch (IOException | RuntimeException e) {
+                    logger.warn("Warm-up failed, reporting ready anyway.", e);
+                } finally {
+                    readyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - createdNanos);
+                    ready = true;
+                    logger.info("Ready {} ms after the context started, after {} warm-up iterations.", readyMillis,
+                            iterations);
+                }
+            }
+        }, "warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void warmUpConverters(List<HttpMessageConverter<?>> converters) throws IOException {
+        for (Class<?> type : XML_TYPES) {
+            for (HttpMessageConverter<?> converter : converters) {
+                if (converter.canWrite(type, MediaType.APPLICATION_XML)
+                        && converter.canRead(type, MediaType.APPLICATION_XML)) {
+                    HttpMessageConverter<Object> objectConverter = (HttpMessageConverter<Object>) converter;
+                    BufferedOutputMessage output = new BufferedOutputMessage();
+                    objectConverter.write(newInstance(type), MediaType.APPLICATION_XML, output);
+                    objectConverter.read(type, new BufferedInputMessage(output.body.toByteArray()));
+                    break;
+                }
+            }
+        }
+    }
+
+    private static Object newInstance(Class<?> type) {
+        try {
+            return type.newInstance();
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new IllegalStateException("Cannot instantiate " + type, e);
+        }
+    }
+
+    private void warmUpPaths() {
+        // Quiet, since every scratch update and read would otherwise log a line.
+        RunnerModel model = new RunnerModel();
+        model.setLogger(NOPLogger.NOP_LOGGER);
+        RunnerController controller = new RunnerController();
+        controller.setLogger(NOPLogger.NOP_LOGGER);
+        controller.setRunnerModel(model);
+        controller.setLockRegistry(new LockRegistry());
+        controller.setUpdateDeduplicator(new UpdateDeduplicator());
+        ResponseBodyCache responseBodyCache = new ResponseBodyCache();
+        responseBodyCache.setRefreshMillis(0);
+        controller.setResponseBodyCache(responseBodyCache);
+
+        for (int i = 0; i < iterations; i++) {
+            String name = "Warmup" + (i % RUNNERS);
+            String country = "Warmup" + (i % COUNTRIES);
+
+            RunnerUpdate update = new RunnerUpdate();
+            update.setName(name);
+            update.setCountry(country);
+            update.setKm(BigInteger.ONE);
+            update.setUpdateId("warmup-" + i);
+            controller.updateRunnerStatus(update);
+            controller.getRunnerStatus(name, country);
+
+            if (i % SCAN_EVERY == 0) {
+                controller.getRunnerList(ACCEPT_ENCODING);
+                controller.getCountryList(SortCriteria.SORT_BY_DISTANCE, Order.DESCENDING, null, ACCEPT_ENCODING);
+            }
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @return how long after its creation the node became ready, or -1 if it isn't yet.
+     */
+    public long getReadyMillis() {
+        return readyMillis;
+    }
+
+    public void setIterations(int iterations) {
+        this.iterations = iterations;
+    }
+
+    private static class BufferedOutputMessage implements HttpOutputMessage {
+
+        private final HttpHeaders headers = new HttpHeaders();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public OutputStream getBody() {
+            return body;
+        }
+    }
+
+    private static class BufferedInputMessage implements HttpInputMessage {
+
+        private final HttpHeaders headers = new HttpHeaders();
+        private final byte[] body;
+
+        BufferedInputMessage(byte[] body) {
+            this.body = body;
+            headers.setContentType(MediaType.APPLICATION_XML);
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(body);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.alborworld.runnerapp.store;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.alborworld.runnerapp.footprint.FootprintEstimator;
+import com.alborworld.runnerapp.footprint.FootprintSource;
+import com.alborworld.runnerapp.footprint.ObjectSizes;
+import com.alborworld.runnerapp.model.Distances;
+import com.alborworld.runnerapp.model.Runner;
+import com.alborworld.runnerapp.xml.StructureFootprint;
+
+/**
+ * The reference {@link RunnerStore}: two hash maps on the heap.
+ */
+public class InMemoryRunnerStore implements RunnerStore, FootprintSource {
+
+    private static final int FOOTPRINT_SAMPLE_SIZE = 256;
+
+    private final ConcurrentMap<Runner, AtomicLong> runnerDistanceMap = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> countryDistanceMap = new ConcurrentHashMap<>();
+
+    public InMemoryRunnerStore() {
+    }
+
+    @Override
+    public long addRunnerDistance(Runner runner, long metres) {
+        return add(runnerDistanceMap, runner, metres);
+    }
+
+    @Override
+    public long addCountryDistance(String country, long metres) {
+        return add(countryDistanceMap, country, metres);
+    }
+
+    private static <K> long add(ConcurrentMap<K, AtomicLong> map, K key, long metres) {
+        AtomicLong total = map.get(key);
+        if (total == null) {
+            AtomicLong newTotal = new AtomicLong();
+            total = map.putIfAbsent(key, newTotal);
+            if (total == null) {
+                total = newTotal;
+            }
+        }
+        return Distances.addAndGet(total, metres);
+    }
+
+    @Override
+    public long getRunnerDistance(Runner runner) {
+        AtomicLong total = runnerDistanceMap.get(runner);
+        return (total == null) ? ABSENT : total.get();
+    }
+
+    @Override
+    public long getCountryDistance(String country) {
+        AtomicLong total = countryDistanceMap.get(country);
+        return (total == null) ? ABSENT : total.get();
+    }
+
+    @Override
+    public void scanRunners(RunnerVisitor visitor) {
+        for (Map.Entry<Runner, AtomicLong> entry : runnerDistanceMap.entrySet()) {
+            visitor.visit(entry.getKey(), entry.getValue().get());
+        }
+    }
+
+    @Override
+    public void sortedScanRunners(RunnerVisitor visitor) {
+        List<Map.Entry<byte[], Runner>> keys = new ArrayList<>(runnerDistanceMap.size());
+        for (Runner runner : runnerDistanceMap.keySet()) {
+            keys.add(new AbstractMap.SimpleImmutableEntry<>(RunnerKeys.encode(runner), runner));
+        }
+
+        Collections.sort(keys, new Comparator<Map.Entry<byte[], Runner>>() {
+            @Override
+            public int compare(Map.Entry<byte[], Runner> e1, Map.Entry<byte[], Runner> e2) {
+                return RunnerKeys.ORDER.compare(e1.getKey(), e2.getKey());
+            }
+        });
+
+        for (Map.Entry<byte[], Runner> key : keys) {
+            visitor.visit(key.getValue(), runnerDistanceMap.get(key.getValue()).get());
+        }
+    }
+
+    @Override
+    public void scanCountries(CountryVisitor visitor) {
+        for (Map.Entry<String, AtomicLong> entry : countryDistanceMap.entrySet()) {
+            visitor.visit(entry.getKey(), entry.getValue().get());
+        }
+    }
+
+    /**
+     * Sizes the names from a sample of the first runners of the table.
+     */
+    @Override
+    public void addFootprints(List<StructureFootprint> structures) {
+        long sampled = 0;
+        long nameChars = 0;
+        long countryChars = 0;
+        for (Runner runner : runnerDistanceMap.keySet()) {
+            if (sampled == FOOTPRINT_SAMPLE_SIZE) {
+                break;
+            }
+            nameChars += runner.getName().length();
+            countryChars += runner.getCountry().length();
+            sampled++;
+        }
+
+        long runners = runnerDistanceMap.size();
+        long bytesPerRunner =
+                ObjectSizes.object(0, 2) + ObjectSizes.object(8, 0)
+                        + ((sampled == 0) ? 0 : ObjectSizes.string(nameChars / sampled)
+                                + ObjectSizes.string(countryChars / sampled));
+        structures.add(FootprintEstimator.structure("runnerStore.runners", runners, ObjectSizes.hashTable(runners)
+                + runners * bytesPerRunner, true));
+
+        long countryBytes = ObjectSizes.hashTable(countryDistanceMap.size());
+        for (String country : countryDistanceMap.keySet()) {
+            countryBytes += ObjectSizes.string(country.length()) + ObjectSizes.object(8, 0);
+        }
+        structures.add(FootprintEstimator.structure("runnerStore.countries", countryDistanceMap.size(),
+                countryBytes, false));
+    }
+
+    @Override
+    public boolean keepsRunnersOnHeap() {
+        return true;
+    }
+
+    @Override
+    public RunnerStore newEmptyStore() {
+        return new InMemoryRunnerStore();
+    }
+
+    @Override
+    public void close() {
+    }
+}
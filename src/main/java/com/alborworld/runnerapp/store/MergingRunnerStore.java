@@ -0,0 +1,21 @@
+package com.alborworld.runnerapp.store;
+
+import com.alborworld.runnerapp.model.Runner;
+
+/**
+ * A {@link RunnerStore} whose totals also grow by themselves, such as by merging the counts of other nodes, rather than
+ * only through its add methods.
+ */
+public interface MergingRunnerStore extends RunnerStore {
+
+    /**
+     * Told of every total raised by a merge, once the store has raised it.
+     */
+    interface MergeListener {
+        void onRunnerMerged(Runner runner, long metres, long totalMetres);
+
+        void onCountryMerged(String country, long metres, long totalMetres);
+    }
+
+    void setMergeListener(MergeListener mergeListener);
+}
@@ -0,0 +1,336 @@
+package com.alborworld.runnerapp.store;
+
+import static com.alborworld.runnerapp.store.UnsafeAccess.*;
+import static com.google.common.base.Preconditions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Open-addressing hash table from byte keys to long counters, laid out in a single direct or memory-mapped buffer so
+ * that none of its entries is a Java object.
+ * <p>
+ * Layout: a header, then {@code capacity} slots of {@code [control, value]}, then an append-only arena with the keys.
+ * A slot's control word holds the 32-bit hash of its key next to the key's arena offset, and is claimed with a single
+ * CAS once the key has been copied into the arena; values are updated with CAS as well, so no operation takes a lock.
+ * Entries are never removed and the table never grows: it rejects new keys once it is three quarters full.
+ * <p>
+ * The header starts with a magic number and the {@link #VERSION} of this layout, so that a memory-mapped table can be
+ * opened again as it is by another instance, even while the first one still updates it.
+ */
+public class OffHeapHashTable {
+
+    /** Returned by {@link #get(byte[])} for absent keys. */
+    public static final long ABSENT = -1L;
+
+    static final long MAGIC = 0x52554e4e45524854L;
+    static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 8;
+    private static final int CAPACITY_OFFSET = 12;
+    private static final int ARENA_SIZE_OFFSET = 16;
+    private static final int ARENA_TOP_OFFSET = 24;
+    private static final int SIZE_OFFSET = 32;
+
+    private static final int SLOT_SIZE = 16;
+    private static final int KEY_LENGTH_SIZE = 2;
+    private static final int MAX_KEY_LENGTH = 0xFFFF;
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_32();
+
+    public interface EntryVisitor {
+        void visit(byte[] key, long value);
+    }
+
+    // Keeps the native memory reachable for as long as the table is.
+    private final ByteBuffer buffer;
+
+    private final long address;
+    private final int capacity;
+    private final long maxEntries;
+    private final long slotsAddress;
+    private final long arenaAddress;
+    private final long arenaSize;
+
+    private OffHeapHashTable(ByteBuffer buffer, int capacity, long arenaSize) {
+        this.buffer = buffer;
+        this.address = addressOf(buffer);
+        this.capacity = capacity;
+        this.maxEntries = capacity - (capacity >>> 2);
+        this.slotsAddress = address + HEADER_SIZE;
+        this.arenaAddress = slotsAddress + (long) capacity * SLOT_SIZE;
+        this.arenaSize = arenaSize;
+    }
+
+    public static OffHeapHashTable allocateDirect(int capacity, long arenaSize) {
+        checkLayout(capacity, arenaSize);
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) bufferSize(capacity, arenaSize));
+        return initialize(buffer, capacity, arenaSize);
+    }
+
+    /**
+     * Maps a new, empty table onto {@code file}, replacing whatever it held.
+     */
+    public static OffHeapHashTable mapFile(File file, int capacity, long arenaSize) throws IOException {
+        checkLayout(capacity, arenaSize);
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(0);
+            ByteBuffer buffer =
+                    randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                            bufferSize(capacity, arenaSize));
+            return initialize(buffer, capacity, arenaSize);
+        }
+    }
+
+    /**
+     * Maps the table that {@link #mapFile} left in {@code file}, in this process or another, without copying or
+     * checking its entries. Both mappings share the same memory, and since every update is a CAS on it, they can keep
+     * updating the table at the same time.
+     *
+     * @throws IOException if the file doesn't hold a table of this layout version.
+     */
+    public static OffHeapHashTable openFile(File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            long length = randomAccessFile.length();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+                throw new StreamCorruptedException(file + " has " + length + " bytes, which no table has");
+            }
+
+            ByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+            long address = addressOf(buffer);
+            long magic = UNSAFE.getLongVolatile(null, address + MAGIC_OFFSET);
+            int version = UNSAFE.getInt(address + VERSION_OFFSET);
+            int capacity = UNSAFE.getInt(address + CAPACITY_OFFSET);
+            long arenaSize = UNSAFE.getLong(address + ARENA_SIZE_OFFSET);
+            if (magic != MAGIC) {
+                throw new StreamCorruptedException(file + " is not an off-heap table");
+            }
+            if (version != VERSION) {
+                throw new StreamCorruptedException(file + " has layout version " + version + " but expected "
+                        + VERSION);
+            }
+            if (bufferSize(capacity, arenaSize) != length) {
+                throw new StreamCorruptedException(file + " has " + length + " bytes but its header expects "
+                        + bufferSize(capacity, arenaSize));
+            }
+            return new OffHeapHashTable(buffer, capacity, arenaSize);
+        }
+    }
+
+    private static void checkLayout(int capacity, long arenaSize) {
+        checkArgument(capacity >= 4 && Integer.bitCount(capacity) == 1,
+                "Capacity was %s but expected a power of two of at least 4", capacity);
+        checkArgument(arenaSize > 0 && arenaSize < 0xFFFFFFFFL, "Arena size was %s but expected in (0, 4G)",
+                arenaSize);
+        checkArgument(bufferSize(capacity, arenaSize) <= Integer.MAX_VALUE,
+                "A table of %s slots and %s arena bytes doesn't fit in one buffer", capacity, arenaSize);
+    }
+
+    private static long bufferSize(int capacity, long arenaSize) {
+        return HEADER_SIZE + (long) capacity * SLOT_SIZE + arenaSize;
+    }
+
+    private static OffHeapHashTable initialize(ByteBuffer buffer, int capacity, long arenaSize) {
+        OffHeapHashTable table = new OffHeapHashTable(buffer, capacity, arenaSize);
+        UNSAFE.setMemory(table.address, bufferSize(capacity, arenaSize), (byte) 0);
+        UNSAFE.putInt(table.address + VERSION_OFFSET, VERSION);
+        UNSAFE.putInt(table.address + CAPACITY_OFFSET, capacity);
+        UNSAFE.putLong(table.address + ARENA_SIZE_OFFSET, arenaSize);
+        UNSAFE.putLongVolatile(null, table.address + MAGIC_OFFSET, MAGIC);
+        return table;
+    }
+
+    /**
+     * Atomically adds {@code delta} to the counter of {@code key}, creating it at zero first if needed.
+     *
+     * @return the counter after the addition.
+     */
+    public long addAndGet(byte[] key, long delta) {
+        long valueAddress = findOrInsert(key) + 8;
+
+        long current;
+        long updated;
+        do {
+            current = UNSAFE.getLongVolatile(null, valueAddress);
+            updated = current + delta;
+            if (((current ^ updated) & (delta ^ updated)) < 0) {
+                throw new ArithmeticException("Counter overflow");
+            }
+        } while (!UNSAFE.compareAndSwapLong(null, valueAddress, current, updated));
+
+        return updated;
+    }
+
+    /**
+     * @return the counter of {@code key}, or {@link #ABSENT} if it has never been added to.
+     */
+    public long get(byte[] key) {
+        int hash = HASH_FUNCTION.hashBytes(key).asInt();
+        int mask = capacity - 1;
+
+        for (int probe = 0, index = hash & mask; probe < capacity; probe++, index = (index + 1) & mask) {
+            long slot = slotsAddress + (long) index * SLOT_SIZE;
+            long control = UNSAFE.getLongVolatile(null, slot);
+            if (control == 0) {
+                return ABSENT;
+            }
+            if (matches(control, hash, key)) {
+                return UNSAFE.getLongVolatile(null, slot + 8);
+            }
+        }
+
+        return ABSENT;
+    }
+
+    public void forEach(EntryVisitor visitor) {
+        for (int index = 0; index < capacity; index++) {
+            long slot = slotsAddress + (long) index * SLOT_SIZE;
+            long control = UNSAFE.getLongVolatile(null, slot);
+            if (control != 0) {
+                visitor.visit(readKey(control), UNSAFE.getLongVolatile(null, slot + 8));
+            }
+        }
+    }
+
+    /**
+     * Writes a memory-mapped table back to its file; does nothing for a table in direct memory.
+     */
+    public void force() {
+        if (buffer instanceof MappedByteBuffer) {
+            ((MappedByteBuffer) buffer).force();
+        }
+    }
+
+    public long size() {
+        return UNSAFE.getLongVolatile(null, address + SIZE_OFFSET);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * The number of entries the table holds before it refuses new keys.
+     */
+    public long getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getArenaSize() {
+        return arenaSize;
+    }
+
+    public long getArenaBytesUsed() {
+        return UNSAFE.getLongVolatile(null, address + ARENA_TOP_OFFSET);
+    }
+
+    /**
+     * The arena bytes taken by {@code entries} keys of at most {@code maxKeyLength} bytes.
+     */
+    public static long arenaBytesFor(long entries, int maxKeyLength) {
+        return entries * (KEY_LENGTH_SIZE + maxKeyLength);
+    }
+
+    private long findOrInsert(byte[] key) {
+        checkArgument(key.length <= MAX_KEY_LENGTH, "Key of %s bytes is too long", key.length);
+
+        int hash = HASH_FUNCTION.hashBytes(key).asInt();
+        int mask = capacity - 1;
+        long newControl = 0;
+
+        for (int probe = 0, index = hash & mask; probe < capacity; probe++, index = (index + 1) & mask) {
+            long slot = slotsAddress + (long) index * SLOT_SIZE;
+            long control = UNSAFE.getLongVolatile(null, slot);
+
+            while (control == 0) {
+                if (newControl == 0) {
+                    newControl = ((long) hash << 32) | (reserveEntry(key) + 1);
+                }
+                if (UNSAFE.compareAndSwapLong(null, slot, 0, newControl)) {
+                    return slot;
+                }
+                control = UNSAFE.getLongVolatile(null, slot);
+            }
+
+            if (matches(control, hash, key)) {
+                if (newControl != 0) {
+                    // Another thread inserted the same key first: give back the reserved entry. Its copy of the key
+                    // stays in the arena, unreferenced.
+                    addToHeader(SIZE_OFFSET, -1);
+                }
+                return slot;
+            }
+        }
+
+        throw new IllegalStateException("Off-heap table is full");
+    }
+
+    /**
+     * Counts one more entry and copies its key into the arena.
+     *
+     * @return the arena offset of the key.
+     */
+    private long reserveEntry(byte[] key) {
+        if (addToHeader(SIZE_OFFSET, 1) > maxEntries) {
+            addToHeader(SIZE_OFFSET, -1);
+            throw new IllegalStateException("Off-heap table is full: " + maxEntries + " entries");
+        }
+
+        long entrySize = KEY_LENGTH_SIZE + key.length;
+        long offset = addToHeader(ARENA_TOP_OFFSET, entrySize) - entrySize;
+        if (offset + entrySize > arenaSize) {
+            addToHeader(SIZE_OFFSET, -1);
+            throw new IllegalStateException("Off-heap key arena is full: " + arenaSize + " bytes");
+        }
+
+        long entryAddress = arenaAddress + offset;
+        UNSAFE.putShort(entryAddress, (short) key.length);
+        UNSAFE.copyMemory(key, BYTE_ARRAY_OFFSET, null, entryAddress + KEY_LENGTH_SIZE, key.length);
+        return offset;
+    }
+
+    private boolean matches(long control, int hash, byte[] key) {
+        if ((int) (control >>> 32) != hash) {
+            return false;
+        }
+
+        long entryAddress = arenaAddress + (control & 0xFFFFFFFFL) - 1;
+        if ((UNSAFE.getShort(entryAddress) & 0xFFFF) != key.length) {
+            return false;
+        }
+
+        long keyAddress = entryAddress + KEY_LENGTH_SIZE;
+        for (int i = 0; i < key.length; i++) {
+            if (UNSAFE.getByte(keyAddress + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] readKey(long control) {
+        long entryAddress = arenaAddress + (control & 0xFFFFFFFFL) - 1;
+        byte[] key = new byte[UNSAFE.getShort(entryAddress) & 0xFFFF];
+        UNSAFE.copyMemory(null, entryAddress + KEY_LENGTH_SIZE, key, BYTE_ARRAY_OFFSET, key.length);
+        return key;
+    }
+
+    private long addToHeader(int offset, long delta) {
+        long fieldAddress = address + offset;
+        long current;
+        do {
+            current = UNSAFE.getLongVolatile(null, fieldAddress);
+        } while (!UNSAFE.compareAndSwapLong(null, fieldAddress, current, current + delta));
+        return current + delta;
+    }
+}
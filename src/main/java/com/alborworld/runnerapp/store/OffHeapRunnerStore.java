@@ -0,0 +1,206 @@
+package com.alborworld.runnerapp.store;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.alborworld.runnerapp.model.Runner;
+import com.alborworld.runnerapp.model.RunnerUpdateValidator;
+
+/**
+ * A {@link RunnerStore} that keeps runner and country totals in two {@link OffHeapHashTable}s, so that the heap doesn't
+ * grow with the number of runners. Runners are keyed by {@link RunnerKeys}, countries by their UTF-8 bytes.
+ */
+public class OffHeapRunnerStore implements RunnerStore {
+
+    private static final int DEFAULT_COUNTRY_CAPACITY = 1024;
+    private static final long DEFAULT_COUNTRY_ARENA_SIZE = 256 * 1024L;
+
+    // A char of a country name takes at most 3 UTF-8 bytes: supplementary characters take 4 for 2 chars.
+    private static final int MAX_COUNTRY_BYTES = 3 * RunnerUpdateValidator.MAX_COUNTRY_LENGTH;
+
+    private final OffHeapHashTable runners;
+    private final OffHeapHashTable countries;
+    private final boolean mapped;
+
+    public OffHeapRunnerStore(OffHeapHashTable runners, OffHeapHashTable countries) {
+        this(runners, countries, false);
+    }
+
+    private OffHeapRunnerStore(OffHeapHashTable runners, OffHeapHashTable countries, boolean mapped) {
+        this.runners = runners;
+        this.countries = countries;
+        this.mapped = mapped;
+    }
+
+    /**
+     * A store in direct buffers, for up to three quarters of {@code runnerCapacity} runners.
+     */
+    public OffHeapRunnerStore(int runnerCapacity, long runnerArenaSize) {
+        this(runnerCapacity, runnerArenaSize, DEFAULT_COUNTRY_CAPACITY, DEFAULT_COUNTRY_ARENA_SIZE);
+    }
+
+    /**
+     * A store in direct buffers, for up to three quarters of {@code runnerCapacity} runners and of
+     * {@code countryCapacity} countries.
+     */
+    public OffHeapRunnerStore(int runnerCapacity, long runnerArenaSize, int countryCapacity, long countryArenaSize) {
+        this(OffHeapHashTable.allocateDirect(runnerCapacity, runnerArenaSize), OffHeapHashTable.allocateDirect(
+                countryCapacity, countryArenaSize));
+    }
+
+    public OffHeapRunnerStore(File directory, int runnerCapacity, long runnerArenaSize) throws IOException {
+        this(directory, runnerCapacity, runnerArenaSize, DEFAULT_COUNTRY_CAPACITY, DEFAULT_COUNTRY_ARENA_SIZE);
+    }
+
+    /**
+     * A store in two files memory-mapped from {@code directory}, for up to three quarters of {@code runnerCapacity}
+     * runners and of {@code countryCapacity} countries. Files left there by another store are taken over as they are,
+     * with the capacity they were created with, so that a new instance starts with the totals of the one it replaces
+     * without copying them; that one may even keep updating them meanwhile.
+     */
+    public OffHeapRunnerStore(File directory, int runnerCapacity, long runnerArenaSize, int countryCapacity,
+            long countryArenaSize) throws IOException {
+        this(mapOrOpen(directory, "runners.tbl", runnerCapacity, runnerArenaSize), mapOrOpen(directory,
+                "countries.tbl", countryCapacity, countryArenaSize), true);
+    }
+
+    private static OffHeapHashTable mapOrOpen(File directory, String name, int capacity, long arenaSize)
+            throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        File file = new File(directory, name);
+        return (file.length() > 0) ? OffHeapHashTable.openFile(file) : OffHeapHashTable.mapFile(file, capacity,
+                arenaSize);
+    }
+
+    @Override
+    public long addRunnerDistance(Runner runner, long metres) {
+        return runners.addAndGet(RunnerKeys.encode(runner), metres);
+    }
+
+    @Override
+    public long addCountryDistance(String country, long metres) {
+        return countries.addAndGet(country.getBytes(StandardCharsets.UTF_8), metres);
+    }
+
+    @Override
+    public long getRunnerDistance(Runner runner) {
+        return runners.get(RunnerKeys.encode(runner));
+    }
+
+    @Override
+    public long getCountryDistance(String country) {
+        return countries.get(country.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void scanRunners(final RunnerVisitor visitor) {
+        runners.forEach(new OffHeapHashTable.EntryVisitor() {
+            @Override
+            public void visit(byte[] key, long value) {
+                visitor.visit(RunnerKeys.decode(key), value);
+            }
+        });
+    }
+
+    @Override
+    public void sortedScanRunners(RunnerVisitor visitor) {
+        final List<byte[]> keys = new ArrayList<>();
+        runners.forEach(new OffHeapHashTable.EntryVisitor() {
+            @Override
+            public void visit(byte[] key, long value) {
+                keys.add(key);
+            }
+        });
+
+        Collections.sort(keys, RunnerKeys.ORDER);
+
+        for (byte[] key : keys) {
+            visitor.visit(RunnerKeys.decode(key), runners.get(key));
+        }
+    }
+
+    @Override
+    public void scanCountries(final CountryVisitor visitor) {
+        countries.forEach(new OffHeapHashTable.EntryVisitor() {
+            @Override
+            public void visit(byte[] key, long value) {
+                visitor.visit(new String(key, StandardCharsets.UTF_8), value);
+            }
+        });
+    }
+
+    public long getRunnersCount() {
+        return runners.size();
+    }
+
+    /**
+     * Checks at startup that the store has room for {@code expectedRunners}, since its table never grows and every
+     * new runner is refused once it is full.
+     *
+     * @throws IllegalArgumentException if it hasn't.
+     */
+    public void setExpectedRunners(long expectedRunners) {
+        checkArgument(expectedRunners <= runners.getMaxEntries(),
+                "The store has room for %s runners but %s are expected: raise its capacity to at least %s",
+                runners.getMaxEntries(), expectedRunners, Long.highestOneBit((expectedRunners * 4 + 2) / 3 - 1) << 1);
+    }
+
+    /**
+     * Checks at startup that the store has room for {@code expectedCountries}, whose names may be as long as
+     * {@link RunnerUpdateValidator#MAX_COUNTRY_LENGTH} allows, for the same reason as
+     * {@link #setExpectedRunners(long)}. Countries already stored are counted with the arena bytes they took.
+     *
+     * @throws IllegalArgumentException if it hasn't.
+     */
+    public void setExpectedCountries(long expectedCountries) {
+        checkArgument(expectedCountries <= countries.getMaxEntries(),
+                "The store has room for %s countries but %s are expected: raise its country capacity to at least %s",
+                countries.getMaxEntries(), expectedCountries,
+                Long.highestOneBit((expectedCountries * 4 + 2) / 3 - 1) << 1);
+
+        long newCountries = Math.max(0, expectedCountries - countries.size());
+        long arenaBytes =
+                countries.getArenaBytesUsed() + OffHeapHashTable.arenaBytesFor(newCountries, MAX_COUNTRY_BYTES);
+        checkArgument(arenaBytes <= countries.getArenaSize(),
+                "The country arena has %s bytes but %s countries may need: raise its size to at least %s",
+                countries.getArenaSize(), expectedCountries, arenaBytes);
+    }
+
+    @Override
+    public boolean keepsRunnersOnHeap() {
+        return false;
+    }
+
+    /**
+     * @throws UnsupportedOperationException if memory-mapped, since the files of the new store would replace those
+     *         of this one.
+     */
+    @Override
+    public RunnerStore newEmptyStore() {
+        if (mapped) {
+            throw new UnsupportedOperationException("A memory-mapped store cannot be reset");
+        }
+        return new OffHeapRunnerStore(runners.getCapacity(), runners.getArenaSize(), countries.getCapacity(),
+                countries.getArenaSize());
+    }
+
+    /**
+     * Writes memory-mapped totals back to their files, for the next store to open them; the tables stay usable, for
+     * the calls still under way.
+     */
+    @Override
+    public void close() {
+        if (mapped) {
+            runners.force();
+            countries.force();
+        }
+    }
+}
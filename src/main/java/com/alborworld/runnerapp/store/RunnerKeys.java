@@ -0,0 +1,52 @@
+package com.alborworld.runnerapp.store;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+
+import com.alborworld.runnerapp.model.Runner;
+import com.google.common.primitives.UnsignedBytes;
+
+/**
+ * Binary keys of runners: the UTF-8 bytes of the name, a zero byte, then the UTF-8 bytes of the country. Comparing
+ * keys as unsigned bytes orders runners by name first, then country.
+ */
+public final class RunnerKeys {
+
+    public static final Comparator<byte[]> ORDER = UnsignedBytes.lexicographicalComparator();
+
+    private static final byte SEPARATOR = 0;
+
+    private RunnerKeys() {
+    }
+
+    public static byte[] encode(Runner runner) {
+        byte[] name = runner.getName().getBytes(StandardCharsets.UTF_8);
+        byte[] country = runner.getCountry().getBytes(StandardCharsets.UTF_8);
+        for (byte b : name) {
+            if (b == SEPARATOR) {
+                throw new IllegalArgumentException("Runner name contains a NUL character");
+            }
+        }
+
+        byte[] key = new byte[name.length + 1 + country.length];
+        System.arraycopy(name, 0, key, 0, name.length);
+        key[name.length] = SEPARATOR;
+        System.arraycopy(country, 0, key, name.length + 1, country.length);
+        return key;
+    }
+
+    public static Runner decode(byte[] key) {
+        return decode(key, 0, key.length);
+    }
+
+    public static Runner decode(byte[] key, int offset, int length) {
+        int separator = offset;
+        while (key[separator] != SEPARATOR) {
+            separator++;
+        }
+
+        String name = new String(key, offset, separator - offset, StandardCharsets.UTF_8);
+        String country = new String(key, separator + 1, offset + length - separator - 1, StandardCharsets.UTF_8);
+        return new Runner(name, country);
+    }
+}
@@ -0,0 +1,68 @@
+package com.alborworld.runnerapp.store;
+
+import java.io.Closeable;
+
+import com.alborworld.runnerapp.model.Runner;
+
+/**
+ * Storage of the total distance, in metres, of every runner and of every country, behind
+ * {@link com.alborworld.runnerapp.model.RunnerModel}.
+ * <p>
+ * Implementations must be safe for concurrent use, and must make each addition atomic: concurrent additions to the
+ * same runner or country are never lost.
+ */
+public interface RunnerStore extends Closeable {
+
+    /** Returned by the getters for unknown runners and countries. */
+    long ABSENT = -1L;
+
+    interface RunnerVisitor {
+        void visit(Runner runner, long totalMetres);
+    }
+
+    interface CountryVisitor {
+        void visit(String country, long totalMetres);
+    }
+
+    /**
+     * @return the total of the runner after adding {@code metres} to it.
+     */
+    long addRunnerDistance(Runner runner, long metres);
+
+    /**
+     * @return the total of the country after adding {@code metres} to it.
+     */
+    long addCountryDistance(String country, long metres);
+
+    long getRunnerDistance(Runner runner);
+
+    long getCountryDistance(String country);
+
+    /**
+     * Visits every runner, in no particular order.
+     */
+    void scanRunners(RunnerVisitor visitor);
+
+    /**
+     * Visits every runner in the byte order of its UTF-8 encoded name, then country.
+     */
+    void sortedScanRunners(RunnerVisitor visitor);
+
+    /**
+     * Visits every country, in no particular order.
+     */
+    void scanCountries(CountryVisitor visitor);
+
+    /**
+     * @return true if the runners are on the heap anyway, so that the model may keep indexes of every runner next to
+     *         them, false if the store exists to keep them off the heap.
+     */
+    boolean keepsRunnersOnHeap();
+
+    /**
+     * @return a new, empty store configured like this one, for the next epoch of
+     *         {@link com.alborworld.runnerapp.model.RunnerModel#reset()}.
+     * @throws UnsupportedOperationException if the store cannot have an empty twin next to it.
+     */
+    RunnerStore newEmptyStore();
+}
@@ -0,0 +1,42 @@
+package com.alborworld.runnerapp.store;
+
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * Atomic operations on the native memory behind direct and mapped byte buffers, which {@link ByteBuffer} itself
+ * doesn't offer.
+ */
+// The only class naming sun.misc.Unsafe, fully qualified since imports cannot be annotated.
+@SuppressWarnings("sunapi")
+final class UnsafeAccess {
+
+    static final sun.misc.Unsafe UNSAFE;
+
+    static final long BYTE_ARRAY_OFFSET;
+
+    private static final long BUFFER_ADDRESS_OFFSET;
+
+    static {
+        try {
+            Field field = sun.misc.Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            UNSAFE = (sun.misc.Unsafe) field.get(null);
+            BYTE_ARRAY_OFFSET = UNSAFE.arrayBaseOffset(byte[].class);
+            BUFFER_ADDRESS_OFFSET = UNSAFE.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private UnsafeAccess() {
+    }
+
+    static long addressOf(ByteBuffer buffer) {
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("Only direct or mapped buffers have a native address");
+        }
+        return UNSAFE.getLong(buffer, BUFFER_ADDRESS_OFFSET);
+    }
+}
@@ -0,0 +1,53 @@
+package com.alborworld.runnerapp.store.lsm;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An exclusive lock on the directory of a store, held on a lock file in it, so that its logs and tables are only
+ * written by one store at a time, in this process or another. The operating system releases it if the process dies.
+ */
+final class DirectoryLock implements Closeable {
+
+    static final String LOCK_FILE = ".lock";
+
+    private final FileChannel channel;
+    // Referenced, as the JVM only tells its own overlapping locks apart while they are reachable.
+    private final FileLock lock;
+
+    private DirectoryLock(FileChannel channel, FileLock lock) {
+        this.channel = channel;
+        this.lock = lock;
+    }
+
+    /**
+     * @throws IllegalStateException if another store holds the lock.
+     */
+    static DirectoryLock lock(File directory) throws IOException {
+        FileChannel channel =
+                FileChannel.open(new File(directory, LOCK_FILE).toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new IllegalStateException("The directory " + directory + " is used by another store");
+        }
+        return new DirectoryLock(channel, lock);
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.release();
+        channel.close();
+    }
+}
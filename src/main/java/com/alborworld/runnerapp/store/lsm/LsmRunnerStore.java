@@ -0,0 +1,499 @@
+package com.alborworld.runnerapp.store.lsm;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alborworld.runnerapp.model.Distances;
+import com.alborworld.runnerapp.model.Runner;
+import com.alborworld.runnerapp.store.RunnerKeys;
+import com.alborworld.runnerapp.store.RunnerStore;
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterators;
+
+/**
+ * A persistent {@link RunnerStore}: a log-structured merge tree in a local directory.
+ * <p>
+ * Every addition is appended to a write-ahead log and applied to an in-memory sorted memtable, which holds the full
+ * totals of the keys changed since the last flush. A full memtable is flushed to an immutable {@link SortedTable}
+ * named after the last log it covers, and all the tables are merged into one once there are too many of them. On
+ * startup the logs not yet covered by a table are replayed, so no acknowledged addition is lost by a restart.
+ * <p>
+ * Runners and countries share one key space, told apart by a one byte prefix. Scans take the memtables and tables
+ * under the lock and visit them without it, so that a slow visitor, such as an export to a slow client, holds off
+ * neither flushes nor the additions queued behind them; compactions leave the tables they replace to the last scan
+ * reading them. An open store locks its directory: a second store refuses to open it until the first one is closed.
+ */
+public class LsmRunnerStore implements RunnerStore {
+
+    private static final byte COUNTRY_PREFIX = 'C';
+    private static final byte RUNNER_PREFIX = 'R';
+
+    private static final int DEFAULT_MEMTABLE_ENTRIES = 100000;
+    private static final int DEFAULT_MAX_TABLES = 4;
+
+    private static final String TABLE_PREFIX = "table-";
+    private static final String TABLE_SUFFIX = ".sst";
+    private static final String LOG_PREFIX = "wal-";
+    private static final String LOG_SUFFIX = ".log";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final File directory;
+    private final int memtableEntries;
+    private final int maxTables;
+    private final boolean syncOnWrite;
+
+    private final ReentrantReadWriteLock structureLock = new ReentrantReadWriteLock();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private ConcurrentSkipListMap<byte[], AtomicLong> memtable = newMemtable();
+    private final AtomicInteger memtableSize = new AtomicInteger();
+    private ConcurrentSkipListMap<byte[], AtomicLong> flushingMemtable;
+
+    // Newest first.
+    private List<SortedTable> tables = new ArrayList<>();
+
+    private final DirectoryLock directoryLock;
+    private WriteAheadLog log;
+    private long logSequence;
+    // Replayed logs whose additions are in the memtable but not yet in a table.
+    private List<File> replayedLogs = new ArrayList<>();
+
+    public LsmRunnerStore(File directory) throws IOException {
+        this(directory, DEFAULT_MEMTABLE_ENTRIES, DEFAULT_MAX_TABLES, false);
+    }
+
+    public LsmRunnerStore(File directory, int memtableEntries, int maxTables, boolean syncOnWrite) throws IOException {
+        this.directory = directory;
+        this.memtableEntries = memtableEntries;
+        this.maxTables = maxTables;
+        this.syncOnWrite = syncOnWrite;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        directoryLock = DirectoryLock.lock(directory);
+        try {
+            recover();
+        } catch (IOException | RuntimeException e) {
+            directoryLock.close();
+            throw e;
+        }
+    }
+
+    private void recover() throws IOException {
+        for (File temporary : list(".tmp")) {
+            Files.deleteIfExists(temporary.toPath());
+        }
+
+        long lastTableSequence = 0;
+        for (File file : list(TABLE_SUFFIX)) {
+            long sequence = sequenceOf(file, TABLE_PREFIX, TABLE_SUFFIX);
+            tables.add(SortedTable.open(file, sequence));
+            lastTableSequence = Math.max(lastTableSequence, sequence);
+        }
+        Collections.sort(tables, new Comparator<SortedTable>() {
+            @Override
+            public int compare(SortedTable t1, SortedTable t2) {
+                return Long.compare(t2.getSequence(), t1.getSequence());
+            }
+        });
+
+        logSequence = lastTableSequence;
+        List<File> logs = list(LOG_SUFFIX);
+        Collections.sort(logs);
+        for (File file : logs) {
+            long sequence = sequenceOf(file, LOG_PREFIX, LOG_SUFFIX);
+            if (sequence <= lastTableSequence) {
+                Files.deleteIfExists(file.toPath());
+                continue;
+            }
+
+            WriteAheadLog.replay(file, new WriteAheadLog.RecordVisitor() {
+                @Override
+                public void visit(byte[] key, long delta) {
+                    try {
+                        apply(key, delta);
+                    } catch (ArithmeticException e) {
+                        // Logged before it was refused for overflowing the total, as it is again.
+                        logger.warn("Skipped a logged addition of {} overflowing its total.", delta);
+                    }
+                }
+            });
+            replayedLogs.add(file);
+            logSequence = Math.max(logSequence, sequence);
+        }
+
+        logSequence++;
+        log = new WriteAheadLog(logFile(logSequence), syncOnWrite);
+
+        logger.info("Opened {} with {} tables and {} replayed logs.", directory, tables.size(), replayedLogs.size());
+    }
+
+    @Override
+    public long addRunnerDistance(Runner runner, long metres) {
+        return add(runnerKey(runner), metres);
+    }
+
+    @Override
+    public long addCountryDistance(String country, long metres) {
+        return add(countryKey(country), metres);
+    }
+
+    @Override
+    public long getRunnerDistance(Runner runner) {
+        return get(runnerKey(runner));
+    }
+
+    @Override
+    public long getCountryDistance(String country) {
+        return get(countryKey(country));
+    }
+
+    @Override
+    public void scanRunners(RunnerVisitor visitor) {
+        sortedScanRunners(visitor);
+    }
+
+    @Override
+    public void sortedScanRunners(RunnerVisitor visitor) {
+        List<SortedTable> scanned = new ArrayList<>();
+        try {
+            Iterator<Map.Entry<byte[], Long>> entries = scan(RUNNER_PREFIX, scanned);
+            while (entries.hasNext()) {
+                Map.Entry<byte[], Long> entry = entries.next();
+                visitor.visit(RunnerKeys.decode(entry.getKey(), 1, entry.getKey().length - 1), entry.getValue());
+            }
+        } finally {
+            release(scanned);
+        }
+    }
+
+    @Override
+    public void scanCountries(CountryVisitor visitor) {
+        List<SortedTable> scanned = new ArrayList<>();
+        try {
+            Iterator<Map.Entry<byte[], Long>> entries = scan(COUNTRY_PREFIX, scanned);
+            while (entries.hasNext()) {
+                Map.Entry<byte[], Long> entry = entries.next();
+                byte[] key = entry.getKey();
+                visitor.visit(new String(key, 1, key.length - 1, StandardCharsets.UTF_8), entry.getValue());
+            }
+        } finally {
+            release(scanned);
+        }
+    }
+
+    @Override
+    public boolean keepsRunnersOnHeap() {
+        return false;
+    }
+
+    /**
+     * @throws UnsupportedOperationException always: the store would have to find the right directory at the next
+     *         startup.
+     */
+    @Override
+    public RunnerStore newEmptyStore() {
+        throw new UnsupportedOperationException("An LSM store cannot be reset");
+    }
+
+    /**
+     * Flushes the memtable, so that the next startup doesn't have to replay it, and releases all files.
+     */
+    @Override
+    public void close() throws IOException {
+        flushLock.lock();
+        try {
+            flush();
+            structureLock.writeLock().lock();
+            try {
+                log.close();
+                for (SortedTable table : tables) {
+                    table.close();
+                }
+            } finally {
+                structureLock.writeLock().unlock();
+            }
+        } finally {
+            flushLock.unlock();
+            directoryLock.close();
+        }
+    }
+
+    int getTablesCount() {
+        return tables.size();
+    }
+
+    private long add(byte[] key, long delta) {
+        long total;
+
+        structureLock.readLock().lock();
+        try {
+            log.append(key, delta);
+            total = apply(key, delta);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to log an addition to " + directory, e);
+        } finally {
+            structureLock.readLock().unlock();
+        }
+
+        if (memtableSize.get() >= memtableEntries && flushLock.tryLock()) {
+            try {
+                flush();
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to flush " + directory, e);
+            } finally {
+                flushLock.unlock();
+            }
+        }
+
+        return total;
+    }
+
+    // Callers hold the read lock, or are still constructing the store.
+    private long apply(byte[] key, long delta) {
+        AtomicLong total = memtable.get(key);
+        if (total == null) {
+            long flushed = getFlushed(key);
+            AtomicLong newTotal = new AtomicLong((flushed == ABSENT) ? 0 : flushed);
+            total = memtable.putIfAbsent(key, newTotal);
+            if (total == null) {
+                total = newTotal;
+                memtableSize.incrementAndGet();
+            }
+        }
+        return Distances.addAndGet(total, delta);
+    }
+
+    private long get(byte[] key) {
+        structureLock.readLock().lock();
+        try {
+            AtomicLong total = memtable.get(key);
+            return (total != null) ? total.get() : getFlushed(key);
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    private long getFlushed(byte[] key) {
+        if (flushingMemtable != null) {
+            AtomicLong total = flushingMemtable.get(key);
+            if (total != null) {
+                return total.get();
+            }
+        }
+
+        try {
+            for (SortedTable table : tables) {
+                long total = table.get(key);
+                if (total != ABSENT) {
+                    return total;
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read " + directory, e);
+        }
+
+        return ABSENT;
+    }
+
+    // Takes the memtables and tables of the moment, retaining the tables into scanned. The memtables stay readable
+    // once flushed, and their totals only grow, so that the scan sees every key at its total of that moment or later.
+    private Iterator<Map.Entry<byte[], Long>> scan(final byte prefix, List<SortedTable> scanned) {
+        List<Iterator<Map.Entry<byte[], Long>>> sources = new ArrayList<>();
+        structureLock.readLock().lock();
+        try {
+            sources.add(totals(withPrefix(memtable, prefix)));
+            if (flushingMemtable != null) {
+                sources.add(totals(withPrefix(flushingMemtable, prefix)));
+            }
+            for (SortedTable table : tables) {
+                table.retain();
+                scanned.add(table);
+                sources.add(Iterators.filter(table.iterator(), new Predicate<Map.Entry<byte[], Long>>() {
+                    @Override
+                    public boolean apply(Map.Entry<byte[], Long> entry) {
+                        return entry.getKey()[0] == prefix;
+                    }
+                }));
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+        return new MergingIterator(sources);
+    }
+
+    private void release(List<SortedTable> scanned) {
+        for (SortedTable table : scanned) {
+            try {
+                table.release();
+            } catch (IOException e) {
+                logger.warn("Failed to release a table of " + directory + ".", e);
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        ConcurrentSkipListMap<byte[], AtomicLong> flushed;
+        long tableSequence;
+        List<File> flushedLogs;
+
+        structureLock.writeLock().lock();
+        try {
+            if (memtableSize.get() == 0) {
+                return;
+            }
+
+            flushed = memtable;
+            flushingMemtable = flushed;
+            memtable = newMemtable();
+            memtableSize.set(0);
+
+            log.close();
+            flushedLogs = replayedLogs;
+            flushedLogs.add(log.getFile());
+            replayedLogs = new ArrayList<>();
+            tableSequence = logSequence;
+            log = new WriteAheadLog(logFile(++logSequence), syncOnWrite);
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+
+        File file = tableFile(tableSequence);
+        SortedTable.write(file, totals(flushed), flushed.size());
+        SortedTable table = SortedTable.open(file, tableSequence);
+
+        structureLock.writeLock().lock();
+        try {
+            List<SortedTable> newTables = new ArrayList<>();
+            newTables.add(table);
+            newTables.addAll(tables);
+            tables = newTables;
+            flushingMemtable = null;
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+
+        for (File flushedLog : flushedLogs) {
+            Files.deleteIfExists(flushedLog.toPath());
+        }
+
+        if (tables.size() > maxTables) {
+            compact();
+        }
+    }
+
+    // Callers hold the flush lock, so the tables only change here.
+    private void compact() throws IOException {
+        List<SortedTable> inputs = tables;
+        long sequence = inputs.get(0).getSequence();
+
+        int expectedEntries = 0;
+        List<Iterator<Map.Entry<byte[], Long>>> sources = new ArrayList<>();
+        for (SortedTable table : inputs) {
+            expectedEntries += table.getEntryCount();
+            sources.add(table.iterator());
+        }
+
+        // Replaces the newest input: should we crash before deleting the others, they are older and thus shadowed.
+        File file = tableFile(sequence);
+        SortedTable.write(file, new MergingIterator(sources), expectedEntries);
+        SortedTable compacted = SortedTable.open(file, sequence);
+
+        structureLock.writeLock().lock();
+        try {
+            tables = new ArrayList<>(Arrays.asList(compacted));
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+
+        // The newest input's file was replaced by the compacted table, so only the others are deleted.
+        for (SortedTable table : inputs) {
+            if (table.getSequence() != sequence) {
+                table.discard();
+            } else {
+                table.close();
+            }
+        }
+
+        logger.info("Compacted {} tables of {} into one.", inputs.size(), directory);
+    }
+
+    private static ConcurrentSkipListMap<byte[], AtomicLong> newMemtable() {
+        return new ConcurrentSkipListMap<>(RunnerKeys.ORDER);
+    }
+
+    private static NavigableMap<byte[], AtomicLong> withPrefix(NavigableMap<byte[], AtomicLong> memtable, byte prefix) {
+        return memtable.subMap(new byte[] { prefix }, true, new byte[] { (byte) (prefix + 1) }, false);
+    }
+
+    private static Iterator<Map.Entry<byte[], Long>> totals(NavigableMap<byte[], AtomicLong> memtable) {
+        return Iterators.transform(memtable.entrySet().iterator(),
+                new Function<Map.Entry<byte[], AtomicLong>, Map.Entry<byte[], Long>>() {
+                    @Override
+                    public Map.Entry<byte[], Long> apply(Map.Entry<byte[], AtomicLong> entry) {
+                        return new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue().get());
+                    }
+                });
+    }
+
+    private static byte[] runnerKey(Runner runner) {
+        return prefixed(RUNNER_PREFIX, RunnerKeys.encode(runner));
+    }
+
+    private static byte[] countryKey(String country) {
+        return prefixed(COUNTRY_PREFIX, country.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] prefixed(byte prefix, byte[] bytes) {
+        byte[] key = new byte[bytes.length + 1];
+        key[0] = prefix;
+        System.arraycopy(bytes, 0, key, 1, bytes.length);
+        return key;
+    }
+
+    private File tableFile(long sequence) {
+        return new File(directory, String.format("%s%019d%s", TABLE_PREFIX, sequence, TABLE_SUFFIX));
+    }
+
+    private File logFile(long sequence) {
+        return new File(directory, String.format("%s%019d%s", LOG_PREFIX, sequence, LOG_SUFFIX));
+    }
+
+    private List<File> list(final String suffix) {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(suffix);
+            }
+        });
+        return (files == null) ? new ArrayList<File>() : new ArrayList<>(Arrays.asList(files));
+    }
+
+    private static long sequenceOf(File file, String prefix, String suffix) {
+        String name = file.getName();
+        return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+    }
+}
@@ -0,0 +1,88 @@
+package com.alborworld.runnerapp.store.lsm;
+
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import com.alborworld.runnerapp.store.RunnerKeys;
+
+/**
+ * Merges sorted iterators into one sorted iterator without duplicate keys. When several sources have the same key,
+ * the value of the first source in the list wins, so sources must be listed newest first.
+ */
+class MergingIterator implements Iterator<Map.Entry<byte[], Long>> {
+
+    private static class Head implements Comparable<Head> {
+
+        private final int source;
+        private final Iterator<Map.Entry<byte[], Long>> iterator;
+        private Map.Entry<byte[], Long> entry;
+
+        Head(int source, Iterator<Map.Entry<byte[], Long>> iterator) {
+            this.source = source;
+            this.iterator = iterator;
+            this.entry = iterator.next();
+        }
+
+        boolean advance() {
+            if (!iterator.hasNext()) {
+                return false;
+            }
+            entry = iterator.next();
+            return true;
+        }
+
+        @Override
+        public int compareTo(Head other) {
+            int cmp = RunnerKeys.ORDER.compare(entry.getKey(), other.entry.getKey());
+            return (cmp != 0) ? cmp : Integer.compare(source, other.source);
+        }
+    }
+
+    private final PriorityQueue<Head> heads = new PriorityQueue<>();
+
+    MergingIterator(List<? extends Iterator<Map.Entry<byte[], Long>>> sources) {
+        for (int i = 0; i < sources.size(); i++) {
+            if (sources.get(i).hasNext()) {
+                heads.add(new Head(i, sources.get(i)));
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !heads.isEmpty();
+    }
+
+    @Override
+    public Map.Entry<byte[], Long> next() {
+        if (heads.isEmpty()) {
+            throw new NoSuchElementException();
+        }
+
+        Head newest = heads.poll();
+        Map.Entry<byte[], Long> result =
+                new AbstractMap.SimpleImmutableEntry<>(newest.entry.getKey(), newest.entry.getValue());
+        if (newest.advance()) {
+            heads.add(newest);
+        }
+
+        // Skip the older versions of the same key.
+        while (!heads.isEmpty() && RunnerKeys.ORDER.compare(heads.peek().entry.getKey(), result.getKey()) == 0) {
+            Head older = heads.poll();
+            if (older.advance()) {
+                heads.add(older);
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,393 @@
+package com.alborworld.runnerapp.store.lsm;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.alborworld.runnerapp.store.RunnerKeys;
+import com.alborworld.runnerapp.store.RunnerStore;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+/**
+ * Immutable file of key/value pairs sorted by key: deflate-compressed data blocks, then a sparse index with the first
+ * key of every block, then a Bloom filter of all the keys, then a fixed size footer.
+ * <p>
+ * Only the index and the Bloom filter are kept in memory. A lookup of an absent key is usually answered by the Bloom
+ * filter alone, and any other lookup reads and inflates exactly one block.
+ * <p>
+ * The file stays open until its owner and every scan that {@link #retain()}ed it have released it, so that a table
+ * can be compacted away while it is still scanned.
+ */
+class SortedTable implements Closeable, Iterable<Map.Entry<byte[], Long>> {
+
+    private static final long MAGIC = 0x52554e4e45525354L;
+    private static final int FOOTER_SIZE = 8 + 8 + 4 + 8;
+    private static final int BLOCK_SIZE = 4096;
+    private static final double BLOOM_FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    private final File file;
+    private final long sequence;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+
+    private final List<byte[]> firstKeys;
+    private final long[] blockOffsets;
+    private final int[] compressedLengths;
+    private final int[] rawLengths;
+    private final BloomFilter<byte[]> bloomFilter;
+    private final int entryCount;
+
+    // One held by the owner of the table, and one by each scan reading it.
+    private final AtomicInteger references = new AtomicInteger(1);
+    private volatile boolean discarded;
+
+    private SortedTable(File file, long sequence) throws IOException {
+        this.file = file;
+        this.sequence = sequence;
+        this.randomAccessFile = new RandomAccessFile(file, "r");
+        this.channel = randomAccessFile.getChannel();
+
+        ByteBuffer footer = read(channel.size() - FOOTER_SIZE, FOOTER_SIZE);
+        long indexOffset = footer.getLong();
+        long bloomOffset = footer.getLong();
+        this.entryCount = footer.getInt();
+        if (footer.getLong() != MAGIC) {
+            randomAccessFile.close();
+            throw new IOException("Not a sorted table: " + file);
+        }
+
+        DataInputStream index =
+                new DataInputStream(new ByteArrayInputStream(read(indexOffset, (int) (bloomOffset - indexOffset))
+                        .array()));
+        int blockCount = index.readInt();
+        this.firstKeys = new ArrayList<>(blockCount);
+        this.blockOffsets = new long[blockCount];
+        this.compressedLengths = new int[blockCount];
+        this.rawLengths = new int[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            byte[] firstKey = new byte[index.readInt()];
+            index.readFully(firstKey);
+            firstKeys.add(firstKey);
+            blockOffsets[i] = index.readLong();
+            compressedLengths[i] = index.readInt();
+            rawLengths[i] = index.readInt();
+        }
+
+        byte[] bloom = read(bloomOffset, (int) (channel.size() - FOOTER_SIZE - bloomOffset)).array();
+        this.bloomFilter = BloomFilter.readFrom(new ByteArrayInputStream(bloom), Funnels.byteArrayFunnel());
+    }
+
+    static SortedTable open(File file, long sequence) throws IOException {
+        return new SortedTable(file, sequence);
+    }
+
+    /**
+     * Writes {@code entries}, which must be sorted by {@link RunnerKeys#ORDER} and free of duplicates, and atomically
+     * moves the result to {@code file}.
+     */
+    static void write(File file, Iterator<Map.Entry<byte[], Long>> entries, int expectedEntries) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        BloomFilter<byte[]> bloomFilter =
+                BloomFilter.create(Funnels.byteArrayFunnel(), Math.max(expectedEntries, 1),
+                        BLOOM_FALSE_POSITIVE_PROBABILITY);
+
+        try (FileOutputStream fileStream = new FileOutputStream(temporary)) {
+            CountingOutput out = new CountingOutput(new BufferedOutputStream(fileStream));
+
+            ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+            DataOutputStream index = new DataOutputStream(indexBytes);
+            int blockCount = 0;
+
+            ByteArrayOutputStream blockBytes = new ByteArrayOutputStream(BLOCK_SIZE * 2);
+            DataOutputStream block = new DataOutputStream(blockBytes);
+            byte[] firstKey = null;
+            int entryCount = 0;
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+            while (entries.hasNext()) {
+                Map.Entry<byte[], Long> entry = entries.next();
+                if (firstKey == null) {
+                    firstKey = entry.getKey();
+                }
+                block.writeInt(entry.getKey().length);
+                block.write(entry.getKey());
+                block.writeLong(entry.getValue());
+                bloomFilter.put(entry.getKey());
+                entryCount++;
+
+                if (blockBytes.size() >= BLOCK_SIZE || !entries.hasNext()) {
+                    writeBlock(out, index, firstKey, blockBytes, deflater);
+                    blockCount++;
+                    blockBytes.reset();
+                    firstKey = null;
+                }
+            }
+            deflater.end();
+
+            long indexOffset = out.position();
+            out.data.writeInt(blockCount);
+            out.data.write(indexBytes.toByteArray());
+
+            long bloomOffset = out.position();
+            bloomFilter.writeTo(out.data);
+
+            out.data.writeLong(indexOffset);
+            out.data.writeLong(bloomOffset);
+            out.data.writeInt(entryCount);
+            out.data.writeLong(MAGIC);
+            out.data.flush();
+            fileStream.getFD().sync();
+        }
+
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeBlock(CountingOutput out, DataOutputStream index, byte[] firstKey,
+            ByteArrayOutputStream blockBytes, Deflater deflater) throws IOException {
+        byte[] raw = blockBytes.toByteArray();
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length);
+        byte[] buffer = new byte[BLOCK_SIZE];
+        while (!deflater.finished()) {
+            int length = deflater.deflate(buffer);
+            compressed.write(buffer, 0, length);
+        }
+
+        index.writeInt(firstKey.length);
+        index.write(firstKey);
+        index.writeLong(out.position());
+        index.writeInt(compressed.size());
+        index.writeInt(raw.length);
+
+        out.data.write(compressed.toByteArray());
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return the value of {@code key}, or {@link RunnerStore#ABSENT}.
+     */
+    long get(byte[] key) throws IOException {
+        if (!bloomFilter.mightContain(key)) {
+            return RunnerStore.ABSENT;
+        }
+
+        int block = findBlock(key);
+        if (block < 0) {
+            return RunnerStore.ABSENT;
+        }
+
+        ByteBuffer entries = readBlock(block);
+        while (entries.hasRemaining()) {
+            int keyLength = entries.getInt();
+            int cmp = compare(entries, keyLength, key);
+            entries.position(entries.position() + keyLength);
+            long value = entries.getLong();
+            if (cmp == 0) {
+                return value;
+            }
+            if (cmp > 0) {
+                break;
+            }
+        }
+
+        return RunnerStore.ABSENT;
+    }
+
+    @Override
+    public Iterator<Map.Entry<byte[], Long>> iterator() {
+        return new Iterator<Map.Entry<byte[], Long>>() {
+
+            private int nextBlock = 0;
+            private ByteBuffer entries = ByteBuffer.allocate(0);
+
+            @Override
+            public boolean hasNext() {
+                while (!entries.hasRemaining() && nextBlock < blockOffsets.length) {
+                    try {
+                        entries = readBlock(nextBlock++);
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Failed to read " + file, e);
+                    }
+                }
+                return entries.hasRemaining();
+            }
+
+            @Override
+            public Map.Entry<byte[], Long> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                byte[] key = new byte[entries.getInt()];
+                entries.get(key);
+                return new AbstractMap.SimpleImmutableEntry<>(key, entries.getLong());
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Takes a reference for a scan, to be released once it is done. Callers must know the table is not yet closed,
+     * such as by holding the lock its owner changes its tables under.
+     */
+    void retain() {
+        references.incrementAndGet();
+    }
+
+    /**
+     * Releases a reference, closing the file with the last one, and deleting it if discarded.
+     */
+    void release() throws IOException {
+        if (references.decrementAndGet() == 0) {
+            randomAccessFile.close();
+            if (discarded) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+
+    /**
+     * Releases the reference of the owner.
+     */
+    @Override
+    public void close() throws IOException {
+        release();
+    }
+
+    /**
+     * Releases the reference of the owner, and deletes the file once no scan reads it any more.
+     */
+    void discard() throws IOException {
+        discarded = true;
+        release();
+    }
+
+    // The last block whose first key is not greater than the key, if any.
+    private int findBlock(byte[] key) {
+        int low = 0;
+        int high = firstKeys.size() - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (RunnerKeys.ORDER.compare(firstKeys.get(middle), key) <= 0) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    private static int compare(ByteBuffer entries, int keyLength, byte[] key) {
+        int position = entries.position();
+        int length = Math.min(keyLength, key.length);
+        for (int i = 0; i < length; i++) {
+            int cmp = (entries.get(position + i) & 0xFF) - (key[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return keyLength - key.length;
+    }
+
+    private ByteBuffer readBlock(int block) throws IOException {
+        byte[] compressed = read(blockOffsets[block], compressedLengths[block]).array();
+        byte[] raw = new byte[rawLengths[block]];
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int length = 0;
+            while (length < raw.length && !inflater.finished()) {
+                length += inflater.inflate(raw, length, raw.length - length);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted block " + block + " of " + file, e);
+        } finally {
+            inflater.end();
+        }
+
+        return ByteBuffer.wrap(raw);
+    }
+
+    private ByteBuffer read(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of " + file);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static class CountingOutput extends FilterOutputStream {
+
+        private final DataOutputStream data;
+        private long position;
+
+        CountingOutput(OutputStream out) {
+            super(out);
+            this.data = new DataOutputStream(this);
+        }
+
+        long position() {
+            return position;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            position++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            position += len;
+        }
+    }
+}
@@ -0,0 +1,539 @@
+package com.alborworld.runnerapp.store.lsm;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alborworld.runnerapp.footprint.FootprintEstimator;
+import com.alborworld.runnerapp.footprint.FootprintSource;
+import com.alborworld.runnerapp.footprint.ObjectSizes;
+import com.alborworld.runnerapp.model.Distances;
+import com.alborworld.runnerapp.model.Runner;
+import com.alborworld.runnerapp.store.RunnerKeys;
+import com.alborworld.runnerapp.store.RunnerStore;
+import com.alborworld.runnerapp.xml.StructureFootprint;
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterators;
+import com.google.common.math.LongMath;
+import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A {@link RunnerStore} that keeps only the runners active in the last {@code idleMillis} on the heap, so that its
+ * size follows the active runners rather than every runner ever seen.
+ * <p>
+ * Idle runners are evicted in the background to {@link SortedTable}s in a local directory: deflated blocks, a sparse
+ * index and a Bloom filter, which answers most lookups of new runners without reading the disk. A runner is paged
+ * back on the heap the first time it is read or added to again. Country totals always stay on the heap, so they are
+ * exact. The directory is only spill space: it is emptied when the store is opened and closed, and locked in between.
+ * <p>
+ * Hits take no lock. Misses and evictions of the same runner are serialized by a striped lock, and an evicted runner
+ * is written to a table before it leaves the heap, so a runner is always either on the heap or in the newest table
+ * that has it.
+ */
+public class TieredRunnerStore implements RunnerStore, FootprintSource {
+
+    private static final long EVICTED = Long.MIN_VALUE;
+
+    private static final long DEFAULT_IDLE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long DEFAULT_EVICTION_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final int DEFAULT_MAX_TABLES = 4;
+    private static final int STRIPES = 1024;
+    private static final int FOOTPRINT_SAMPLE_SIZE = 256;
+
+    private static final String TABLE_PREFIX = "cold-";
+    private static final String TABLE_SUFFIX = ".sst";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final File directory;
+    private final DirectoryLock directoryLock;
+
+    private final ConcurrentMap<Runner, HotEntry> hot = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> countries = new ConcurrentHashMap<>();
+    private final Striped<Lock> missLocks = Striped.lock(STRIPES);
+
+    // Guards the list of tables: held shared by cold lookups and scans, exclusively to change the list.
+    private final ReentrantReadWriteLock structureLock = new ReentrantReadWriteLock();
+    // Newest first.
+    private volatile List<SortedTable> tables = new ArrayList<>();
+    private long tableSequence;
+
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong pageIns = new AtomicLong();
+
+    private long idleMillis = DEFAULT_IDLE_MILLIS;
+    private long evictionIntervalMillis = DEFAULT_EVICTION_INTERVAL_MILLIS;
+    private int maxTables = DEFAULT_MAX_TABLES;
+
+    private ScheduledExecutorService evictor;
+
+    private static class HotEntry {
+
+        // EVICTED once written to a table and on its way off the heap.
+        final AtomicLong total;
+        volatile long lastAccessMillis;
+
+        HotEntry(long total, long lastAccessMillis) {
+            this.total = new AtomicLong(total);
+            this.lastAccessMillis = lastAccessMillis;
+        }
+    }
+
+    public TieredRunnerStore(File directory) throws IOException {
+        this.directory = directory;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        directoryLock = DirectoryLock.lock(directory);
+        try {
+            deleteTables();
+        } catch (IOException e) {
+            directoryLock.close();
+            throw e;
+        }
+    }
+
+    public void start() {
+        evictor =
+                Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true)
+                        .setNameFormat("runner-evictor-%d").build());
+        evictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    evictIdle();
+                } catch (IOException | RuntimeException e) {
+                    logger.error("Failed to evict idle runners to " + directory + ".", e);
+                }
+            }
+        }, evictionIntervalMillis, evictionIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public long addRunnerDistance(Runner runner, long metres) {
+        HotEntry entry = hot.get(runner);
+        while (true) {
+            if (entry == null) {
+                entry = pageIn(runner, true);
+            }
+            long total = entry.total.get();
+            if (total == EVICTED) {
+                entry = null;
+            } else {
+                long updated = LongMath.checkedAdd(total, metres);
+                if (entry.total.compareAndSet(total, updated)) {
+                    entry.lastAccessMillis = System.currentTimeMillis();
+                    return updated;
+                }
+            }
+        }
+    }
+
+    @Override
+    public long addCountryDistance(String country, long metres) {
+        AtomicLong total = countries.get(country);
+        if (total == null) {
+            AtomicLong newTotal = new AtomicLong();
+            total = countries.putIfAbsent(country, newTotal);
+            if (total == null) {
+                total = newTotal;
+            }
+        }
+        return Distances.addAndGet(total, metres);
+    }
+
+    @Override
+    public long getRunnerDistance(Runner runner) {
+        HotEntry entry = hot.get(runner);
+        while (true) {
+            if (entry == null) {
+                entry = pageIn(runner, false);
+                if (entry == null) {
+                    return ABSENT;
+                }
+            }
+            long total = entry.total.get();
+            if (total != EVICTED) {
+                entry.lastAccessMillis = System.currentTimeMillis();
+                return total;
+            }
+            entry = null;
+        }
+    }
+
+    @Override
+    public long getCountryDistance(String country) {
+        AtomicLong total = countries.get(country);
+        return (total == null) ? ABSENT : total.get();
+    }
+
+    @Override
+    public void scanRunners(RunnerVisitor visitor) {
+        sortedScanRunners(visitor);
+    }
+
+    /**
+     * Merges a sorted copy of the runners on the heap with the tables, without paging anything in. Both are taken
+     * under the lock, so that no runner is evicted to a table the scan misses, and visited without it, so that a slow
+     * visitor holds off neither evictions nor the misses queued behind them.
+     */
+    @Override
+    public void sortedScanRunners(RunnerVisitor visitor) {
+        List<Iterator<Map.Entry<byte[], Long>>> sources = new ArrayList<>();
+        List<SortedTable> scanned = new ArrayList<>();
+        structureLock.readLock().lock();
+        try {
+            List<Map.Entry<byte[], Long>> hotTotals = new ArrayList<>(hot.size());
+            for (Map.Entry<Runner, HotEntry> entry : hot.entrySet()) {
+                long total = entry.getValue().total.get();
+                // An evicted runner is already in a table.
+                if (total != EVICTED) {
+                    hotTotals.add(new AbstractMap.SimpleImmutableEntry<>(RunnerKeys.encode(entry.getKey()), total));
+                }
+            }
+            Collections.sort(hotTotals, KEY_ORDER);
+
+            sources.add(hotTotals.iterator());
+            for (SortedTable table : tables) {
+                table.retain();
+                scanned.add(table);
+                sources.add(table.iterator());
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+
+        try {
+            Iterator<Map.Entry<byte[], Long>> entries = new MergingIterator(sources);
+            while (entries.hasNext()) {
+                Map.Entry<byte[], Long> entry = entries.next();
+                visitor.visit(RunnerKeys.decode(entry.getKey()), entry.getValue());
+            }
+        } finally {
+            for (SortedTable table : scanned) {
+                try {
+                    table.release();
+                } catch (IOException e) {
+                    logger.warn("Failed to release a table of " + directory + ".", e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void scanCountries(CountryVisitor visitor) {
+        for (Map.Entry<String, AtomicLong> entry : countries.entrySet()) {
+            visitor.visit(entry.getKey(), entry.getValue().get());
+        }
+    }
+
+    /**
+     * Writes every runner idle for {@code idleMillis} to a new table and drops it from the heap, then compacts the
+     * tables if there are more than {@code maxTables}. Runners updated while their table is written stay.
+     *
+     * @return the number of runners evicted.
+     */
+    public synchronized int evictIdle() throws IOException {
+        long cutoff = System.currentTimeMillis() - idleMillis;
+        List<Candidate> candidates = new ArrayList<>();
+        for (Map.Entry<Runner, HotEntry> entry : hot.entrySet()) {
+            HotEntry hotEntry = entry.getValue();
+            long total = hotEntry.total.get();
+            if (hotEntry.lastAccessMillis <= cutoff && total != EVICTED) {
+                candidates.add(new Candidate(entry.getKey(), hotEntry, total));
+            }
+        }
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+
+        Collections.sort(candidates);
+        File file = tableFile(++tableSequence);
+        SortedTable.write(file, Iterators.transform(candidates.iterator(), Candidate.TO_ENTRY), candidates.size());
+        SortedTable table = SortedTable.open(file, tableSequence);
+
+        // Published before any runner leaves the heap, so that a miss always finds its total.
+        structureLock.writeLock().lock();
+        try {
+            List<SortedTable> newTables = new ArrayList<>();
+            newTables.add(table);
+            newTables.addAll(tables);
+            tables = newTables;
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+
+        int evicted = 0;
+        for (Candidate candidate : candidates) {
+            Lock missLock = missLocks.get(candidate.runner);
+            missLock.lock();
+            try {
+                if (candidate.entry.lastAccessMillis <= cutoff
+                        && candidate.entry.total.compareAndSet(candidate.total, EVICTED)) {
+                    hot.remove(candidate.runner, candidate.entry);
+                    evicted++;
+                }
+            } finally {
+                missLock.unlock();
+            }
+        }
+        evictions.addAndGet(evicted);
+        logger.info("Evicted {} idle runners to {}, {} remain on the heap.", evicted, file, hot.size());
+
+        if (tables.size() > maxTables) {
+            compact();
+        }
+        return evicted;
+    }
+
+    @Override
+    public boolean keepsRunnersOnHeap() {
+        return false;
+    }
+
+    /**
+     * @throws UnsupportedOperationException always, as for an {@link LsmRunnerStore}.
+     */
+    @Override
+    public RunnerStore newEmptyStore() {
+        throw new UnsupportedOperationException("A tiered store cannot be reset");
+    }
+
+    /**
+     * Stops evicting and deletes the tables.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (evictor != null) {
+            evictor.shutdownNow();
+        }
+
+        structureLock.writeLock().lock();
+        try {
+            for (SortedTable table : tables) {
+                table.close();
+            }
+            tables = new ArrayList<>();
+            deleteTables();
+        } finally {
+            structureLock.writeLock().unlock();
+            directoryLock.close();
+        }
+    }
+
+    /**
+     * Only the heap is reported: the tables keep their sparse index and Bloom filter in memory, a few bytes per
+     * evicted runner.
+     */
+    @Override
+    public void addFootprints(List<StructureFootprint> structures) {
+        long sampled = 0;
+        long nameChars = 0;
+        for (Runner runner : hot.keySet()) {
+            if (sampled == FOOTPRINT_SAMPLE_SIZE) {
+                break;
+            }
+            nameChars += runner.getName().length() + runner.getCountry().length();
+            sampled++;
+        }
+
+        long runners = hot.size();
+        long bytesPerRunner =
+                ObjectSizes.object(0, 2) + ObjectSizes.object(8, 1) + ObjectSizes.object(8, 0)
+                        + ((sampled == 0) ? 0 : 2 * ObjectSizes.string(nameChars / sampled / 2));
+        structures.add(FootprintEstimator.structure("runnerStore.hotRunners", runners, ObjectSizes.hashTable(runners)
+                + runners * bytesPerRunner, false));
+
+        long countryBytes = ObjectSizes.hashTable(countries.size());
+        for (String country : countries.keySet()) {
+            countryBytes += ObjectSizes.string(country.length()) + ObjectSizes.object(8, 0);
+        }
+        structures.add(FootprintEstimator.structure("runnerStore.countries", countries.size(), countryBytes, false));
+    }
+
+    /**
+     * @return the number of runners on the heap.
+     */
+    public int getHotCount() {
+        return hot.size();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getPageIns() {
+        return pageIns.get();
+    }
+
+    int getTablesCount() {
+        return tables.size();
+    }
+
+    public void setIdleMillis(long idleMillis) {
+        this.idleMillis = idleMillis;
+    }
+
+    public void setEvictionIntervalMillis(long evictionIntervalMillis) {
+        this.evictionIntervalMillis = evictionIntervalMillis;
+    }
+
+    public void setMaxTables(int maxTables) {
+        this.maxTables = maxTables;
+    }
+
+    // Returns the entry of the runner on the heap, paging it in from the tables, or creating it if asked to. Never
+    // returns an evicted entry, since evictions finish under the same lock.
+    private HotEntry pageIn(Runner runner, boolean create) {
+        Lock missLock = missLocks.get(runner);
+        missLock.lock();
+        try {
+            HotEntry entry = hot.get(runner);
+            if (entry != null) {
+                return entry;
+            }
+
+            long total = getCold(RunnerKeys.encode(runner));
+            if (total == ABSENT && !create) {
+                return null;
+            }
+            if (total != ABSENT) {
+                pageIns.incrementAndGet();
+            }
+            entry = new HotEntry((total == ABSENT) ? 0 : total, System.currentTimeMillis());
+            hot.put(runner, entry);
+            return entry;
+        } finally {
+            missLock.unlock();
+        }
+    }
+
+    private long getCold(byte[] key) {
+        structureLock.readLock().lock();
+        try {
+            for (SortedTable table : tables) {
+                long total = table.get(key);
+                if (total != ABSENT) {
+                    return total;
+                }
+            }
+            return ABSENT;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read " + directory, e);
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    // Callers hold the monitor, so the tables only change here. Runners back on the heap are dropped: should they be
+    // evicted again, it will be to a newer table.
+    private void compact() throws IOException {
+        List<SortedTable> inputs = tables;
+        long sequence = inputs.get(0).getSequence();
+
+        int expectedEntries = 0;
+        List<Iterator<Map.Entry<byte[], Long>>> sources = new ArrayList<>();
+        for (SortedTable table : inputs) {
+            expectedEntries += table.getEntryCount();
+            sources.add(table.iterator());
+        }
+        Iterator<Map.Entry<byte[], Long>> cold =
+                Iterators.filter(new MergingIterator(sources), new Predicate<Map.Entry<byte[], Long>>() {
+                    @Override
+                    public boolean apply(Map.Entry<byte[], Long> entry) {
+                        return !hot.containsKey(RunnerKeys.decode(entry.getKey()));
+                    }
+                });
+
+        File file = tableFile(++tableSequence);
+        SortedTable.write(file, cold, expectedEntries);
+        SortedTable compacted = SortedTable.open(file, tableSequence);
+
+        structureLock.writeLock().lock();
+        try {
+            tables = new ArrayList<>(Collections.singletonList(compacted));
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+
+        for (SortedTable table : inputs) {
+            table.discard();
+        }
+        logger.info("Compacted {} tables of evicted runners in {} into one of {} runners.", inputs.size(), directory,
+                compacted.getEntryCount());
+    }
+
+    private File tableFile(long sequence) {
+        return new File(directory, String.format("%s%019d%s", TABLE_PREFIX, sequence, TABLE_SUFFIX));
+    }
+
+    private void deleteTables() throws IOException {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(TABLE_PREFIX);
+            }
+        });
+        if (files != null) {
+            for (File file : files) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+
+    private static final Comparator<Map.Entry<byte[], Long>> KEY_ORDER = new Comparator<Map.Entry<byte[], Long>>() {
+        @Override
+        public int compare(Map.Entry<byte[], Long> e1, Map.Entry<byte[], Long> e2) {
+            return RunnerKeys.ORDER.compare(e1.getKey(), e2.getKey());
+        }
+    };
+
+    private static class Candidate implements Comparable<Candidate> {
+
+        static final Function<Candidate, Map.Entry<byte[], Long>> TO_ENTRY =
+                new Function<Candidate, Map.Entry<byte[], Long>>() {
+                    @Override
+                    public Map.Entry<byte[], Long> apply(Candidate candidate) {
+                        return new AbstractMap.SimpleImmutableEntry<>(candidate.key, candidate.total);
+                    }
+                };
+
+        final Runner runner;
+        final byte[] key;
+        final HotEntry entry;
+        final long total;
+
+        Candidate(Runner runner, HotEntry entry, long total) {
+            this.runner = runner;
+            this.key = RunnerKeys.encode(runner);
+            this.entry = entry;
+            this.total = total;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            return RunnerKeys.ORDER.compare(key, other.key);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.alborworld.runnerapp.store.lsm;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the additions not yet flushed to a {@link SortedTable}. Each record is
+ * {@code [crc][key length][key][delta]}; replay stops at the first torn or corrupted record.
+ */
+class WriteAheadLog implements Closeable {
+
+    interface RecordVisitor {
+        void visit(byte[] key, long delta);
+    }
+
+    private final File file;
+    private final FileOutputStream fileStream;
+    private final DataOutputStream out;
+    private final boolean syncOnWrite;
+
+    WriteAheadLog(File file, boolean syncOnWrite) throws IOException {
+        this.file = file;
+        this.fileStream = new FileOutputStream(file, true);
+        this.out = new DataOutputStream(fileStream);
+        this.syncOnWrite = syncOnWrite;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    synchronized void append(byte[] key, long delta) throws IOException {
+        // One write call per record, so that a crash can at worst tear the last record.
+        ByteBuffer record = ByteBuffer.allocate(4 + 4 + key.length + 8);
+        record.putInt(0).putInt(key.length).put(key).putLong(delta);
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, record.capacity() - 4);
+        record.putInt(0, (int) crc.getValue());
+
+        out.write(record.array());
+        if (syncOnWrite) {
+            fileStream.getFD().sync();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        fileStream.getFD().sync();
+        out.close();
+    }
+
+    static void replay(File file, RecordVisitor visitor) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int expectedCrc = in.readInt();
+                int keyLength = in.readInt();
+                if (keyLength < 0 || keyLength > 0xFFFF) {
+                    return;
+                }
+                byte[] key = new byte[keyLength];
+                in.readFully(key);
+                long delta = in.readLong();
+
+                ByteBuffer record = ByteBuffer.allocate(4 + keyLength + 8);
+                record.putInt(keyLength).put(key).putLong(delta);
+                CRC32 crc = new CRC32();
+                crc.update(record.array());
+                if ((int) crc.getValue() != expectedCrc) {
+                    return;
+                }
+
+                visitor.visit(key, delta);
+            }
+        } catch (EOFException e) {
+            // A record torn by a crash: everything before it has been replayed.
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.alborworld.runnerapp.admission;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AdaptiveConcurrencyLimitTest {
+
+    private static final long FAST_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    @Test
+    public void shouldRejectRequestsBeyondTheLimitAndItsShares() {
+        // GIVEN a limit of 4
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(4, 1, 100, 100);
+
+        // WHEN 2 requests are in flight
+        assertTrue("Expected the first request to be admitted.", limit.tryAcquire(1.0));
+        assertTrue("Expected the second request to be admitted.", limit.tryAcquire(1.0));
+
+        // THEN a request allowed half of the limit is rejected, but one allowed all of it is admitted
+        assertFalse("Expected the half share request to be rejected.", limit.tryAcquire(0.5));
+        assertTrue("Expected the third request to be admitted.", limit.tryAcquire(1.0));
+        assertTrue("Expected the fourth request to be admitted.", limit.tryAcquire(1.0));
+
+        // AND a fifth is rejected
+        assertFalse("Expected the fifth request to be rejected.", limit.tryAcquire(1.0));
+        assertEquals("Unexpected requests in flight.", 4, limit.getInFlight());
+    }
+
+    @Test
+    public void shouldGrowWhileLatencyIsLowAndBackOffWhenItIsHigh() throws Exception {
+        // GIVEN a limit of 10 in full use
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 1, 100, 100);
+
+        // WHEN 100 requests complete quickly at full use
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < 10; j++) {
+                limit.tryAcquire(1.0);
+            }
+            for (int j = 0; j < 10; j++) {
+                limit.release(FAST_NANOS);
+            }
+        }
+
+        // THEN the limit has grown
+        double grown = limit.getLimit();
+        assertTrue("Expected the limit to grow but it is " + grown, grown > 10);
+
+        // WHEN a request is slow, after the backoff interval
+        Thread.sleep(150);
+        limit.tryAcquire(1.0);
+        limit.release(SLOW_NANOS);
+
+        // THEN the limit is cut by a tenth
+        assertEquals("Unexpected limit after backoff.", grown * 0.9, limit.getLimit(), 0.001);
+
+        // AND more slow requests within the same interval don't cut it again
+        limit.tryAcquire(1.0);
+        limit.release(SLOW_NANOS);
+        assertEquals("Unexpected limit after a second slow request.", grown * 0.9, limit.getLimit(), 0.001);
+    }
+}
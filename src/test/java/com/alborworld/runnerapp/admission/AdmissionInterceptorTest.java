@@ -0,0 +1,156 @@
+package com.alborworld.runnerapp.admission;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.web.servlet.HandlerMapping;
+
+public class AdmissionInterceptorTest {
+
+    @Test
+    public void shouldRejectAClientOverItsRateWithA503() throws Exception {
+        // GIVEN an interceptor allowing bursts of 2 requests per client
+        AdmissionInterceptor interceptor = new AdmissionInterceptor(new AdaptiveConcurrencyLimit(100, 1, 100, 1000));
+        interceptor.setClientRatePerSecond(0.001);
+        interceptor.setClientBurst(2);
+
+        // WHEN a client sends 3 requests
+        assertTrue("Expected the first request to be admitted.",
+                interceptor.preHandle(request("1.2.3.4", "/getRunnerStatus"), mock(HttpServletResponse.class), null));
+        assertTrue("Expected the second request to be admitted.",
+                interceptor.preHandle(request("1.2.3.4", "/getRunnerStatus"), mock(HttpServletResponse.class), null));
+        HttpServletResponse response = response();
+        boolean admitted = interceptor.preHandle(request("1.2.3.4", "/getRunnerStatus"), response, null);
+
+        // THEN the third is rejected with a 503
+        assertFalse("Expected the third request to be rejected.", admitted);
+        verify(response).setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        verify(response).setHeader("Retry-After", "1");
+        assertEquals("Unexpected rate limited count.", 1, interceptor.getRateLimitedCount());
+
+        // AND another client is still admitted
+        assertTrue("Expected another client to be admitted.",
+                interceptor.preHandle(request("5.6.7.8", "/getRunnerStatus"), mock(HttpServletResponse.class), null));
+    }
+
+    @Test
+    public void shouldShedScansBeforeReads() throws Exception {
+        // GIVEN an interceptor with a fixed limit of 4, of which scans may use a quarter
+        AdmissionInterceptor interceptor = new AdmissionInterceptor(new AdaptiveConcurrencyLimit(4, 4, 4, 1000));
+        interceptor.setScanShare(0.25);
+
+        // AND one read in flight
+        HttpServletRequest read = request("1.2.3.4", "/getRunnerStatus");
+        assertTrue("Expected the read to be admitted.",
+                interceptor.preHandle(read, mock(HttpServletResponse.class), null));
+
+        // WHEN a scan arrives
+        HttpServletResponse response = response();
+        boolean admitted = interceptor.preHandle(request("1.2.3.4", "/getRunnerList"), response, null);
+
+        // THEN it is rejected with a 503
+        assertFalse("Expected the scan to be rejected.", admitted);
+        verify(response).setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        assertEquals("Unexpected overloaded count.", 1, interceptor.getOverloadedCount());
+
+        // AND another read is admitted
+        assertTrue("Expected another read to be admitted.",
+                interceptor.preHandle(request("1.2.3.4", "/getRunnerStatus"), mock(HttpServletResponse.class), null));
+
+        // AND once the first read completes, long-polls are still admitted with the limit in use
+        interceptor.afterCompletion(read, mock(HttpServletResponse.class), null, null);
+        assertTrue("Expected a long-poll to be admitted.",
+                interceptor.preHandle(request("1.2.3.4", "/getChanges"), mock(HttpServletResponse.class), null));
+    }
+
+    @Test
+    public void shouldGiveBackTheTokenOfARequestOverTheLimit() throws Exception {
+        // GIVEN an interceptor with a fixed limit of 1, allowing a single request per client
+        AdmissionInterceptor interceptor = new AdmissionInterceptor(new AdaptiveConcurrencyLimit(1, 1, 1, 1000));
+        interceptor.setClientRatePerSecond(0.001);
+        interceptor.setClientBurst(1);
+
+        // AND one read in flight
+        HttpServletRequest read = request("1.2.3.4", "/getRunnerStatus");
+        assertTrue("Expected the read to be admitted.",
+                interceptor.preHandle(read, mock(HttpServletResponse.class), null));
+
+        // WHEN another client is rejected by the limit
+        assertFalse("Expected the request over the limit to be rejected.",
+                interceptor.preHandle(request("5.6.7.8", "/getRunnerStatus"), response(), null));
+        assertEquals("Unexpected overloaded count.", 1, interceptor.getOverloadedCount());
+
+        // THEN it is admitted once the read completes, its token untouched
+        interceptor.afterCompletion(read, mock(HttpServletResponse.class), null, null);
+        assertTrue("Expected the retry to be admitted.",
+                interceptor.preHandle(request("5.6.7.8", "/getRunnerStatus"), mock(HttpServletResponse.class), null));
+        assertEquals("Unexpected rate limited count.", 0, interceptor.getRateLimitedCount());
+    }
+
+    @Test
+    public void shouldTrackABoundedNumberOfClients() throws Exception {
+        // GIVEN an interceptor tracking up to 10 clients whose buckets never refill
+        AdmissionInterceptor interceptor = new AdmissionInterceptor(new AdaptiveConcurrencyLimit(100, 1, 100, 1000));
+        interceptor.setClientRatePerSecond(0.001);
+        interceptor.setMaxTrackedClients(10);
+
+        // WHEN 100 clients send a request each
+        for (int i = 0; i < 100; i++) {
+            HttpServletRequest request = request("10.0.0." + i, "/getChanges");
+            assertTrue("Expected the request to be admitted.",
+                    interceptor.preHandle(request, mock(HttpServletResponse.class), null));
+        }
+
+        // THEN at most 10 buckets are kept
+        assertTrue("Unexpected tracked clients count: " + interceptor.getTrackedClientsCount(),
+                interceptor.getTrackedClientsCount() <= 10);
+    }
+
+    private static HttpServletRequest request(String client, String path) {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        final Map<String, Object> attributes = new HashMap<>();
+        attributes.put(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, path);
+
+        when(request.getRemoteAddr()).thenReturn(client);
+        when(request.getDispatcherType()).thenReturn(DispatcherType.REQUEST);
+        when(request.getAttribute(anyString())).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                return attributes.get(invocation.getArguments()[0]);
+            }
+        });
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                attributes.put((String) invocation.getArguments()[0], invocation.getArguments()[1]);
+                return null;
+            }
+        }).when(request).setAttribute(anyString(), any());
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                attributes.remove(invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(request).removeAttribute(anyString());
+        return request;
+    }
+
+    private static HttpServletResponse response() throws Exception {
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(response.getOutputStream()).thenReturn(mock(ServletOutputStream.class));
+        return response;
+    }
+}
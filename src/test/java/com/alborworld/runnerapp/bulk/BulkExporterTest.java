@@ -0,0 +1,96 @@
+package com.alborworld.runnerapp.bulk;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.alborworld.runnerapp.dedup.UpdateDeduplicator;
+import com.alborworld.runnerapp.locking.LockRegistry;
+import com.alborworld.runnerapp.model.RunnerModel;
+import com.alborworld.runnerapp.utils.RunnerUpdateBuilder;
+
+public class BulkExporterTest {
+
+    @Test
+    public void shouldExportCountriesAsCsv() throws Exception {
+        // GIVEN a runner in a country whose name needs quoting
+        RunnerModel runnerModel = new RunnerModel();
+        runnerModel.updateRunnerStatus(new RunnerUpdateBuilder().withName("James").withCountry("Korea, South")
+                .withKm(BigInteger.valueOf(12)).build());
+
+        // WHEN the countries are exported as CSV
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long count = new BulkExporter(runnerModel).exportTo(out, BulkFormat.CSV, ExportRecords.COUNTRIES);
+
+        // THEN the country is quoted
+        assertEquals("Unexpected records count.", 1, count);
+        assertEquals("Unexpected export.", "country,km\n\"Korea, South\",12\n",
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void shouldExportSubKilometreTotalsAsDecimalKm() throws Exception {
+        // GIVEN runners with whole, fractional and sub-kilometre totals
+        RunnerModel runnerModel = new RunnerModel();
+        runnerModel.updateRunnerStatus(new RunnerUpdateBuilder().withName("A").withCountry("Australia")
+                .withMetres(12000).build());
+        runnerModel.updateRunnerStatus(new RunnerUpdateBuilder().withName("B").withCountry("Belgium")
+                .withMetres(4200).build());
+        runnerModel.updateRunnerStatus(new RunnerUpdateBuilder().withName("C").withCountry("Chile").withMetres(5)
+                .build());
+
+        // WHEN the countries are exported as NDJSON
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BulkExporter(runnerModel).exportTo(out, BulkFormat.NDJSON, ExportRecords.COUNTRIES);
+
+        // THEN km have only the decimals they need
+        String export = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue("Unexpected export: " + export, export.contains("{\"country\":\"Australia\",\"km\":12}\n"));
+        assertTrue("Unexpected export: " + export, export.contains("{\"country\":\"Belgium\",\"km\":4.2}\n"));
+        assertTrue("Unexpected export: " + export, export.contains("{\"country\":\"Chile\",\"km\":0.005}\n"));
+    }
+
+    @Test
+    public void shouldExportRunnersThatImportBackUnchanged() throws Exception {
+        // GIVEN runners with names that need escaping
+        RunnerModel runnerModel = new RunnerModel();
+        runnerModel.updateRunnerStatus(new RunnerUpdateBuilder().withName("Jo\"hn").withCountry("Çad")
+                .withKm(BigInteger.valueOf(5)).build());
+        runnerModel.updateRunnerStatus(new RunnerUpdateBuilder().withName("Tab\tbed").withCountry("Česko")
+                .withKm(BigInteger.valueOf(7)).build());
+        runnerModel.updateRunnerStatus(new RunnerUpdateBuilder().withName("𝄞").withCountry("Australia")
+                .withKm(BigInteger.valueOf(9)).build());
+        runnerModel.updateRunnerStatus(new RunnerUpdateBuilder().withName("Metric").withCountry("Australia")
+                .withMetres(4205).build());
+
+        for (BulkFormat format : BulkFormat.values()) {
+            // WHEN they are exported and imported into an empty model
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new BulkExporter(runnerModel).exportTo(out, format, ExportRecords.RUNNERS);
+
+            RunnerModel importedModel = new RunnerModel();
+            BulkImporter importer = new BulkImporter(importedModel, new LockRegistry(), new UpdateDeduplicator());
+            importer.start();
+            try {
+                importer.importFrom(new ByteArrayInputStream(out.toByteArray()), format);
+            } finally {
+                importer.stop();
+            }
+
+            // THEN the imported totals are the exported ones
+            assertEquals("Unexpected total in " + format, BigInteger.valueOf(5),
+                    importedModel.getRunnerStatus("Jo\"hn", "Çad").getTotalKm());
+            assertEquals("Unexpected total in " + format, BigInteger.valueOf(7),
+                    importedModel.getRunnerStatus("Tab\tbed", "Česko").getTotalKm());
+            assertEquals("Unexpected total in " + format, BigInteger.valueOf(9),
+                    importedModel.getRunnerStatus("𝄞", "Australia").getTotalKm());
+            assertEquals("Unexpected total in " + format, 4205, importedModel.getRunnerStatus("Metric", "Australia")
+                    .getTotalMetres());
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.alborworld.runnerapp.bulk;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alborworld.runnerapp.dedup.UpdateDeduplicator;
+import com.alborworld.runnerapp.locking.LockRegistry;
+import com.alborworld.runnerapp.model.RunnerModel;
+import com.alborworld.runnerapp.xml.ImportResult;
+
+public class BulkImporterTest {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private RunnerModel runnerModel;
+    private BulkImporter importer;
+
+    @Before
+    public void setUp() {
+        runnerModel = new RunnerModel();
+        importer = new BulkImporter(runnerModel, new LockRegistry(), new UpdateDeduplicator());
+        importer.setParserThreads(4);
+        // Small chunks, so that records are spread over many of them.
+        importer.setChunkSize(64);
+        importer.start();
+    }
+
+    @After
+    public void tearDown() {
+        importer.stop();
+    }
+
+    @Test
+    public void shouldImportCsv() throws Exception {
+        // GIVEN a CSV body with a header, quoted fields, an update id and a blank line
+        String body =
+                "name,country,km\r\n" + "James,Australia,10\r\n" + "\"Smith, John\",\"United \"\"Kingdom\"\"\",5\n"
+                        + "\n" + "James,Australia,7,id-1\n" + "Zoë,Česko,3";
+
+        // WHEN it is imported
+        ImportResult result = importer.importFrom(stream(body), BulkFormat.CSV);
+
+        // THEN every record is applied
+        assertEquals("Unexpected imported count.", 4, result.getImported());
+        assertEquals("Unexpected rejected count.", 0, result.getRejected());
+        assertEquals("Unexpected lines count.", 6, result.getLines());
+        assertEquals("Unexpected total.", BigInteger.valueOf(17),
+                runnerModel.getRunnerStatus("James", "Australia").getTotalKm());
+        assertEquals("Unexpected total.", BigInteger.valueOf(5),
+                runnerModel.getRunnerStatus("Smith, John", "United \"Kingdom\"").getTotalKm());
+        assertEquals("Unexpected total.", BigInteger.valueOf(3), runnerModel.getRunnerStatus("Zoë", "Česko")
+                .getTotalKm());
+        assertEquals("Unexpected updates count.", 4, runnerModel.getUpdatesCount());
+    }
+
+    @Test
+    public void shouldImportNdjson() throws Exception {
+        // GIVEN an NDJSON body with escapes, an ignored member and a null update id
+        String body =
+                "{\"name\":\"James\",\"country\":\"Australia\",\"km\":10}\n"
+                        + "{ \"km\" : 5, \"name\" : \"Jo\\\"hn\", \"country\" : \"\\u00c7ad\", \"extra\": [1, {\"a\": \"}\"}] }\n"
+                        + "{\"name\":\"James\",\"country\":\"Australia\",\"km\":7,\"updateId\":null}\n";
+
+        // WHEN it is imported
+        ImportResult result = importer.importFrom(stream(body), BulkFormat.NDJSON);
+
+        // THEN every record is applied
+        assertEquals("Unexpected imported count.", 3, result.getImported());
+        assertEquals("Unexpected rejected count.", 0, result.getRejected());
+        assertEquals("Unexpected total.", BigInteger.valueOf(17),
+                runnerModel.getRunnerStatus("James", "Australia").getTotalKm());
+        assertEquals("Unexpected total.", BigInteger.valueOf(5), runnerModel.getRunnerStatus("Jo\"hn", "Çad")
+                .getTotalKm());
+    }
+
+    @Test
+    public void shouldImportDecimalKmAndMetres() throws Exception {
+        // GIVEN a CSV body with decimal km, one of them with too many decimals
+        String csv = "James,Australia,4.25\n" + "James,Australia,.5\n" + "James,Australia,1.2345\n";
+
+        // AND an NDJSON body with decimal km and metres
+        String ndjson =
+                "{\"name\":\"James\",\"country\":\"Australia\",\"km\":0.05}\n"
+                        + "{\"name\":\"James\",\"country\":\"Australia\",\"metres\":200}\n";
+
+        // WHEN they are imported
+        ImportResult csvResult = importer.importFrom(stream(csv), BulkFormat.CSV);
+        ImportResult ndjsonResult = importer.importFrom(stream(ndjson), BulkFormat.NDJSON);
+
+        // THEN every record with at most three decimals is applied in metres
+        assertEquals("Unexpected imported count.", 2, csvResult.getImported());
+        assertEquals("Unexpected rejection.", "Km has more than 3 decimals", csvResult.getFirstRejectionReason());
+        assertEquals("Unexpected imported count.", 2, ndjsonResult.getImported());
+        assertEquals("Unexpected total.", 5000, runnerModel.getRunnerStatus("James", "Australia").getTotalMetres());
+    }
+
+    @Test
+    public void shouldSkipInvalidAndRedeliveredRecords() throws Exception {
+        // GIVEN a CSV body with a negative distance, a missing field, a redelivered update and a bad number
+        String body =
+                "James,Australia,10,id-1\n" + "James,Australia,-1\n" + "James,Australia\n"
+                        + "James,Australia,10,id-1\n" + "James,Australia,ten\n";
+
+        // WHEN it is imported
+        ImportResult result = importer.importFrom(stream(body), BulkFormat.CSV);
+
+        // THEN only the first record is applied
+        assertEquals("Unexpected imported count.", 1, result.getImported());
+        assertEquals("Unexpected duplicates count.", 1, result.getDuplicates());
+        assertEquals("Unexpected rejected count.", 3, result.getRejected());
+        assertEquals("Unexpected total.", BigInteger.TEN,
+                runnerModel.getRunnerStatus("James", "Australia").getTotalKm());
+
+        // AND the first rejection is reported
+        assertEquals("Unexpected first rejected line.", Long.valueOf(2), result.getFirstRejectedLine());
+        assertEquals("Unexpected first rejection reason.", "Metres were -1000 but expected nonnegative",
+                result.getFirstRejectionReason());
+    }
+
+    @Test
+    public void shouldImportLinesLongerThanAChunk() throws Exception {
+        // GIVEN a runner whose name is longer than a chunk
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            name.append('a');
+        }
+
+        // WHEN it is imported
+        ImportResult result =
+                importer.importFrom(stream("James,Australia,1\n" + name + ",Australia,2\n"), BulkFormat.CSV);
+
+        // THEN both records are applied
+        assertEquals("Unexpected imported count.", 2, result.getImported());
+        assertEquals("Unexpected total.", BigInteger.valueOf(2),
+                runnerModel.getRunnerStatus(name.toString(), "Australia").getTotalKm());
+    }
+
+    @Test
+    public void shouldImportMillionsOfRowsQuickly() throws Exception {
+        // GIVEN 2 million updates of 100000 runners in 100 countries, in chunks of the default size
+        final int rows = 2000000;
+        ByteArrayOutputStream body = new ByteArrayOutputStream(rows * 32);
+        for (int i = 0; i < rows; i++) {
+            int runner = i % 100000;
+            body.write(("Runner" + runner + ",Country" + (runner % 100) + ",1\n").getBytes(StandardCharsets.UTF_8));
+        }
+        importer.stop();
+        importer = new BulkImporter(runnerModel, new LockRegistry(), new UpdateDeduplicator());
+        importer.start();
+
+        // WHEN they are imported
+        long start = System.nanoTime();
+        ImportResult result = importer.importFrom(new ByteArrayInputStream(body.toByteArray()), BulkFormat.CSV);
+        long elapsedNanos = System.nanoTime() - start;
+
+        // THEN all of them are applied
+        assertEquals("Unexpected imported count.", rows, result.getImported());
+        assertEquals("Unexpected total.", BigInteger.valueOf(20),
+                runnerModel.getRunnerStatus("Runner7", "Country7").getTotalKm());
+        logger.info("Imported {} rows per second.", (long) (rows / (elapsedNanos / 1e9)));
+    }
+
+    private static InputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,41 @@
+package com.alborworld.runnerapp.bulk;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.alborworld.runnerapp.model.Runner;
+import com.alborworld.runnerapp.store.InMemoryRunnerStore;
+
+public class EpochArchiveTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldArchiveTheRunnersAndCountriesOfAnEpoch() throws Exception {
+        // GIVEN the store of an epoch
+        InMemoryRunnerStore store = new InMemoryRunnerStore();
+        store.addRunnerDistance(new Runner("James", "Australia"), 1500);
+        store.addCountryDistance("Australia", 1500);
+
+        // WHEN it is archived
+        EpochArchive archive = new EpochArchive(folder.getRoot().getPath() + "/epochs");
+        archive.archive(3, store);
+
+        // THEN its runners and countries are exported as CSV
+        assertEquals("Unexpected archived runners.", "name,country,km\nJames,Australia,1.5\n", read(archive,
+                ExportRecords.RUNNERS));
+        assertEquals("Unexpected archived countries.", "country,km\nAustralia,1.5\n", read(archive,
+                ExportRecords.COUNTRIES));
+    }
+
+    private static String read(EpochArchive archive, ExportRecords records) throws Exception {
+        return new String(Files.readAllBytes(archive.fileOf(3, records).toPath()), StandardCharsets.UTF_8);
+    }
+}
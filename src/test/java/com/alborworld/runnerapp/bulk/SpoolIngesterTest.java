@@ -0,0 +1,160 @@
+package com.alborworld.runnerapp.bulk;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.alborworld.runnerapp.dedup.UpdateDeduplicator;
+import com.alborworld.runnerapp.locking.LockRegistry;
+import com.alborworld.runnerapp.model.RunnerModel;
+import com.alborworld.runnerapp.model.UpdateBatch;
+
+public class SpoolIngesterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private RunnerModel runnerModel;
+    private SpoolIngester ingester;
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        runnerModel = new RunnerModel();
+        directory = folder.getRoot();
+        ingester = new SpoolIngester(runnerModel, new LockRegistry(), new UpdateDeduplicator(), directory.getPath());
+        // Small regions and batches, so that lines straddle regions and files take several checkpoints.
+        ingester.setRegionSize(32);
+        ingester.setBatchRecords(3);
+    }
+
+    @Test
+    public void shouldIngestSpooledFilesAndMoveThemAside() throws Exception {
+        // GIVEN a CSV file, an NDJSON file, a file being written and a file of an unknown format
+        spool("a.csv", "\ufeffname,country,km\r\nJames,Australia,1.5\nJames,Australia,2,id-1\n"
+                + "James,Australia,2,id-1\nbroken line\nZoë,Česko,0.25");
+        spool("b.ndjson", "{\"name\":\"James\",\"country\":\"Australia\",\"metres\":500}\n"
+                + "{\"name\":\"A very long runner name, longer than a region\",\"country\":\"Italy\",\"km\":1}\n");
+        spool(".c.csv", "James,Australia,100\n");
+        spool("d.txt", "James,Australia,100\n");
+
+        // WHEN the directory is polled
+        ingester.poll();
+
+        // THEN the complete files are applied, with duplicates and malformed lines skipped
+        assertEquals("Unexpected total.", 4000, runnerModel.getRunnerStatus("James", "Australia").getTotalMetres());
+        assertEquals("Unexpected total.", 250, runnerModel.getRunnerStatus("Zoë", "Česko").getTotalMetres());
+        assertEquals("Unexpected total.", 1000,
+                runnerModel.getRunnerStatus("A very long runner name, longer than a region", "Italy")
+                        .getTotalMetres());
+        assertEquals("Unexpected files count.", 2, ingester.getFilesCount());
+        assertEquals("Unexpected imported count.", 5, ingester.getImportedCount());
+        assertEquals("Unexpected duplicates count.", 1, ingester.getDuplicatesCount());
+        assertEquals("Unexpected rejected count.", 1, ingester.getRejectedCount());
+
+        // AND they are moved aside, leaving no checkpoint
+        assertTrue("Unexpected unprocessed file.", new File(directory, "processed/a.csv").isFile());
+        assertTrue("Unexpected unprocessed file.", new File(directory, "processed/b.ndjson").isFile());
+        assertTrue("Unexpected unrejected file.", new File(directory, "rejected/d.txt").isFile());
+        assertTrue("Unexpected processed file being written.", new File(directory, ".c.csv").isFile());
+        assertFalse("Unexpected checkpoint.", new File(directory, SpoolIngester.CHECKPOINT_FILE).exists());
+    }
+
+    @Test
+    public void shouldResumeAFileFromItsCheckpoint() throws Exception {
+        // GIVEN a file whose first two lines were applied before a crash, and an older file
+        String applied = "James,Australia,1\nJames,Australia,2\n";
+        spool("a.csv", applied + "James,Australia,4\nJames,Australia,8\n");
+        File older = spool("b.csv", "James,Australia,16\n");
+        older.setLastModified(System.currentTimeMillis() - 60000);
+        ingester.writeCheckpoint("a.csv", applied.getBytes(StandardCharsets.UTF_8).length);
+
+        // WHEN the directory is polled
+        ingester.poll();
+
+        // THEN the checkpointed file is resumed before the older one, and no line is applied twice
+        assertEquals("Unexpected total.", 28000, runnerModel.getRunnerStatus("James", "Australia").getTotalMetres());
+        assertEquals("Unexpected imported count.", 3, ingester.getImportedCount());
+        assertFalse("Unexpected checkpoint.", new File(directory, SpoolIngester.CHECKPOINT_FILE).exists());
+    }
+
+    @Test
+    public void shouldApplyTheRetryOfAFileThatFailedToApply() throws Exception {
+        // GIVEN a model failing to apply the first batch
+        RunnerModel failingModel = spy(new RunnerModel());
+        doThrow(new IllegalStateException("Off-heap table is full")).doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                invocation.callRealMethod();
+                return null;
+            }
+        }).when(failingModel).updateRunnerStatuses(any(UpdateBatch.class), any(LockRegistry.class));
+        UpdateDeduplicator deduplicator = new UpdateDeduplicator();
+        SpoolIngester failingIngester =
+                new SpoolIngester(failingModel, new LockRegistry(), deduplicator, directory.getPath());
+
+        // AND a file of updates with ids
+        spool("a.csv", "James,Australia,1,id-1\nJames,Australia,2,id-2\n");
+
+        // WHEN the directory is polled, failing, then polled again
+        try {
+            failingIngester.poll();
+            fail("Expected the first poll to fail.");
+        } catch (IllegalStateException e) {
+            assertTrue("Unexpected message: " + e.getMessage(), e.getMessage().contains("full"));
+        }
+        failingIngester.poll();
+
+        // THEN the updates are applied by the retry, and not taken for duplicates
+        assertEquals("Unexpected total.", 3000, failingModel.getRunnerStatus("James", "Australia").getTotalMetres());
+        assertEquals("Unexpected duplicates count.", 0, failingIngester.getDuplicatesCount());
+        assertTrue("Unexpected unprocessed file.", new File(directory, "processed/a.csv").isFile());
+
+        // AND they are taken for duplicates once applied
+        assertTrue("Expected the id to be recorded.", deduplicator.isRedelivery("id-1"));
+    }
+
+    @Test
+    public void shouldRefuseToStartOnADirectoryAlreadyIngested() throws Exception {
+        // GIVEN an ingester started on the directory
+        ingester.start();
+        try {
+            // WHEN a second one is started on it
+            SpoolIngester second =
+                    new SpoolIngester(new RunnerModel(), new LockRegistry(), new UpdateDeduplicator(),
+                            directory.getPath());
+            try {
+                second.start();
+                fail("Expected the second ingester to refuse to start.");
+            } catch (IllegalStateException e) {
+                // THEN it refuses to
+                assertTrue("Unexpected message: " + e.getMessage(), e.getMessage().contains(directory.getPath()));
+            }
+        } finally {
+            ingester.stop();
+        }
+
+        // AND starts once the first one has stopped
+        SpoolIngester third =
+                new SpoolIngester(new RunnerModel(), new LockRegistry(), new UpdateDeduplicator(), directory.getPath());
+        third.start();
+        third.stop();
+    }
+
+    private File spool(String name, String content) throws Exception {
+        File file = new File(directory, name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
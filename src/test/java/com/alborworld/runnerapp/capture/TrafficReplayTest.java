@@ -0,0 +1,137 @@
+package com.alborworld.runnerapp.capture;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.alborworld.runnerapp.controller.Order;
+import com.alborworld.runnerapp.controller.SortCriteria;
+import com.alborworld.runnerapp.locking.LockRegistry;
+import com.alborworld.runnerapp.model.RunnerModel;
+import com.alborworld.runnerapp.server.RunnerAppServer;
+import com.alborworld.runnerapp.utils.RunnerUpdateBuilder;
+
+public class TrafficReplayTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldReadBackEveryCapturedRequestInOrder() throws Exception {
+        // GIVEN a capture of one request of every kind
+        File file = capture(0);
+
+        // WHEN it is read back
+        List<CapturedRequest> requests = new ArrayList<>();
+        try (TrafficCaptureReader reader = new TrafficCaptureReader(new FileInputStream(file))) {
+            CapturedRequest request;
+            while ((request = reader.next()) != null) {
+                requests.add(request);
+            }
+        }
+
+        // THEN every request is there, in order, with its parameters
+        assertEquals("Unexpected number of requests.", 5, requests.size());
+        assertEquals("Unexpected kind.", CapturedRequest.Kind.UPDATE, requests.get(0).getKind());
+        assertEquals("Unexpected name.", "Zoë", requests.get(0).getName());
+        assertEquals("Unexpected country.", "Australia", requests.get(0).getCountry());
+        assertEquals("Unexpected metres.", 42000, requests.get(0).getMetres());
+        assertEquals("Unexpected update id.", "id-1", requests.get(0).getUpdateId());
+        assertNull("Unexpected update id.", requests.get(1).getUpdateId());
+        assertEquals("Unexpected kind.", CapturedRequest.Kind.RUNNER_STATUS, requests.get(2).getKind());
+        assertEquals("Unexpected name.", "Zoë", requests.get(2).getName());
+        assertEquals("Unexpected kind.", CapturedRequest.Kind.RUNNER_LIST, requests.get(3).getKind());
+        assertEquals("Unexpected kind.", CapturedRequest.Kind.COUNTRY_LIST, requests.get(4).getKind());
+        assertEquals("Unexpected criteria.", SortCriteria.SORT_BY_NAME, requests.get(4).getCriteria());
+        assertEquals("Unexpected order.", Order.ASCENDING, requests.get(4).getOrder());
+        assertEquals("Unexpected locale.", Locale.forLanguageTag("sv-SE"), requests.get(4).getLocale());
+
+        // AND their offsets never go backwards
+        for (int i = 1; i < requests.size(); i++) {
+            assertTrue("Unexpected offset.", requests.get(i).getOffsetMicros() >= requests.get(i - 1).getOffsetMicros());
+        }
+    }
+
+    @Test
+    public void shouldReplayIntoAModelAtTheRequestedSpeed() throws Exception {
+        // GIVEN a capture whose requests span at least 400 ms
+        File file = capture(100);
+
+        // WHEN it is replayed into a model four times faster than captured
+        RunnerModel runnerModel = new RunnerModel();
+        TrafficReplay.Result result;
+        try (TrafficCaptureReader reader = new TrafficCaptureReader(new FileInputStream(file))) {
+            result = TrafficReplay.replay(reader, new ModelReplayTarget(runnerModel, new LockRegistry()), 4);
+        }
+
+        // THEN every request is sent without error
+        assertEquals("Unexpected requests.", 5, result.getRequests());
+        assertEquals("Unexpected updates.", 2, result.getRequests(CapturedRequest.Kind.UPDATE));
+        assertEquals("Unexpected errors.", 0, result.getErrors());
+
+        // AND the model holds the updates
+        assertEquals("Unexpected total.", BigInteger.valueOf(84), runnerModel.getRunnerStatus("Zoë", "Australia")
+                .getTotalKm());
+
+        // AND the requests were spread over about a quarter of the original time
+        long elapsedMillis = TimeUnit.MICROSECONDS.toMillis(result.getElapsedMicros());
+        assertTrue("Unexpected elapsed time: " + elapsedMillis, elapsedMillis >= 90 && elapsedMillis < 400);
+    }
+
+    @Test
+    public void shouldReplayAgainstAServer() throws Exception {
+        // GIVEN a capture and a running server
+        File file = capture(0);
+        RunnerAppServer server = new RunnerAppServer(0);
+        server.start();
+
+        try {
+            // WHEN it is replayed against the server as fast as possible
+            TrafficReplay.Result result;
+            try (TrafficCaptureReader reader = new TrafficCaptureReader(new FileInputStream(file))) {
+                result =
+                        TrafficReplay.replay(reader, new HttpReplayTarget("http://localhost:" + server.getPort()),
+                                0);
+            }
+
+            // THEN every request is answered
+            assertEquals("Unexpected requests.", 5, result.getRequests());
+            assertEquals("Unexpected errors.", 0, result.getErrors());
+            assertTrue("Unexpected latency.", result.getLatencyMicros(CapturedRequest.Kind.RUNNER_LIST, 1) > 0);
+        } finally {
+            server.stop();
+        }
+    }
+
+    private File capture(long pauseMillis) throws Exception {
+        File file = folder.newFile();
+        TrafficCapture capture = new TrafficCapture(file.getPath());
+        capture.start();
+        capture.captureUpdate(new RunnerUpdateBuilder().withName("Zoë").withCountry("Australia")
+                .withKm(BigInteger.valueOf(42)).withUpdateId("id-1").build());
+        Thread.sleep(pauseMillis);
+        capture.captureUpdate(new RunnerUpdateBuilder().withName("Zoë").withCountry("Australia")
+                .withKm(BigInteger.valueOf(42)).build());
+        Thread.sleep(pauseMillis);
+        capture.captureRunnerStatus("Zoë", "Australia");
+        Thread.sleep(pauseMillis);
+        capture.captureRunnerList();
+        Thread.sleep(pauseMillis);
+        capture.captureCountryList(SortCriteria.SORT_BY_NAME, Order.ASCENDING, Locale.forLanguageTag("sv-SE"));
+        capture.stop();
+
+        assertEquals("Unexpected captured requests.", 5, capture.getCaptured());
+        assertEquals("Unexpected dropped requests.", 0, capture.getDropped());
+        return file;
+    }
+}
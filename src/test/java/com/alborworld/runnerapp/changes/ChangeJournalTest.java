@@ -0,0 +1,107 @@
+package com.alborworld.runnerapp.changes;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import com.alborworld.runnerapp.model.Runner;
+import com.alborworld.runnerapp.xml.ChangeFeed;
+
+public class ChangeJournalTest {
+
+    private ChangeJournal journal;
+
+    @Before
+    public void setup() {
+        journal = new ChangeJournal();
+        journal.setSubscriptionBufferSize(2);
+    }
+
+    @Test
+    public void shouldStartANewSubscriptionWithAResync() {
+        // GIVEN a journal without subscriptions
+
+        // WHEN the feed is polled without a subscription id
+        ChangeFeed feed = (ChangeFeed) journal.poll(null).getResult();
+
+        // THEN a new subscription is returned immediately, asking for a resync
+        assertNotNull("Expected an immediate result.", feed);
+        assertNotNull("Expected a subscription id.", feed.getSubscription());
+        assertTrue("Expected a resync.", feed.isResync());
+        assertEquals("Unexpected number of subscriptions.", 1, journal.getSubscriptionsCount());
+    }
+
+    @Test
+    public void shouldDeliverCoalescedTotalsToAParkedPoll() {
+        // GIVEN a subscription that has already resynced
+        String subscription = subscribe();
+
+        // AND a parked poll
+        DeferredResult<ChangeFeed> result = journal.poll(subscription);
+        assertFalse("Expected the poll to be parked.", result.hasResult());
+
+        // WHEN runner "One" in Australia is updated twice within the same interval
+        journal.onRunnerStatusUpdated(new Runner("One", "Australia"), 10000, 10000);
+        journal.onRunnerStatusUpdated(new Runner("One", "Australia"), 30000, 30000);
+        journal.flush();
+
+        // THEN the parked poll receives only the latest totals
+        ChangeFeed feed = (ChangeFeed) result.getResult();
+        assertNotNull("Expected the parked poll to be completed.", feed);
+        assertFalse("Unexpected resync.", feed.isResync());
+        assertEquals("Unexpected number of runners.", 1, feed.getRunners().size());
+        assertEquals("Unexpected runner total.", 30, feed.getRunners().get(0).getTotalKm().intValue());
+        assertEquals("Unexpected runner metres.", 30000, feed.getRunners().get(0).getTotalMetres());
+        assertEquals("Unexpected number of countries.", 1, feed.getCountries().size());
+        assertEquals("Unexpected country total.", 30, feed.getCountries().get(0).getTotalKm().intValue());
+    }
+
+    @Test
+    public void shouldAskASlowSubscriptionToResyncWhenItsBufferOverflows() {
+        // GIVEN a subscription that has already resynced
+        String subscription = subscribe();
+
+        // WHEN more batches are published than its buffer can hold
+        for (int i = 1; i <= 3; i++) {
+            journal.onRunnerStatusUpdated(new Runner("One", "Australia"), i * 1000, i * 1000);
+            journal.flush();
+        }
+
+        // THEN the next poll asks for a resync instead of returning the changes
+        ChangeFeed feed = (ChangeFeed) journal.poll(subscription).getResult();
+        assertTrue("Expected a resync.", feed.isResync());
+        assertTrue("Unexpected runners in a resync.", feed.getRunners().isEmpty());
+    }
+
+    @Test
+    public void shouldAskEverySubscriptionToResyncOnAReset() {
+        // GIVEN a subscription that has already resynced, with a parked poll
+        String subscription = subscribe();
+        DeferredResult<ChangeFeed> result = journal.poll(subscription);
+
+        // AND a pending total of the current epoch
+        journal.onRunnerStatusUpdated(new Runner("One", "Australia"), 30000, 30000);
+
+        // WHEN the model starts a new epoch, in which the runner runs less
+        journal.onReset(1);
+        journal.onRunnerStatusUpdated(new Runner("One", "Australia"), 1000, 1000);
+
+        // THEN the parked poll asks for a resync
+        ChangeFeed feed = (ChangeFeed) result.getResult();
+        assertNotNull("Expected the parked poll to be completed.", feed);
+        assertTrue("Expected a resync.", feed.isResync());
+
+        // AND the next changes carry the total of the new epoch
+        result = journal.poll(subscription);
+        journal.flush();
+        feed = (ChangeFeed) result.getResult();
+        assertEquals("Unexpected number of runners.", 1, feed.getRunners().size());
+        assertEquals("Unexpected runner metres.", 1000, feed.getRunners().get(0).getTotalMetres());
+    }
+
+    private String subscribe() {
+        return ((ChangeFeed) journal.poll(null).getResult()).getSubscription();
+    }
+}
@@ -0,0 +1,21 @@
+package com.alborworld.runnerapp.compression;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ContentCodingTest {
+
+    @Test
+    public void shouldNegotiateTheAcceptedCodingOfHighestQuality() {
+        assertEquals("Unexpected coding without a header.", ContentCoding.IDENTITY, ContentCoding.negotiate(null));
+        assertEquals("Unexpected coding for gzip.", ContentCoding.GZIP, ContentCoding.negotiate("gzip, deflate, br"));
+        assertEquals("Unexpected coding for deflate.", ContentCoding.DEFLATE, ContentCoding.negotiate("deflate"));
+        assertEquals("Unexpected coding for a preferred deflate.", ContentCoding.DEFLATE,
+                ContentCoding.negotiate("gzip;q=0.5, deflate"));
+        assertEquals("Unexpected coding for a refused gzip.", ContentCoding.IDENTITY,
+                ContentCoding.negotiate("gzip;q=0, identity"));
+        assertEquals("Unexpected coding for a wildcard.", ContentCoding.GZIP, ContentCoding.negotiate("*"));
+        assertEquals("Unexpected coding for an unknown coding.", ContentCoding.IDENTITY, ContentCoding.negotiate("zstd"));
+    }
+}
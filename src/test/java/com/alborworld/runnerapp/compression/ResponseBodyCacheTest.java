@@ -0,0 +1,117 @@
+package com.alborworld.runnerapp.compression;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+import com.alborworld.runnerapp.compression.ResponseBodyCache.EncodedBody;
+import com.alborworld.runnerapp.xml.RunnerList;
+import com.alborworld.runnerapp.xml.RunnerStatus;
+
+public class ResponseBodyCacheTest {
+
+    @Test
+    public void shouldBuildAndCompressABodyOncePerVersion() throws Exception {
+        // GIVEN a list of 1000 runners
+        ResponseBodyCache cache = new ResponseBodyCache();
+        cache.setRefreshMillis(0);
+        CountingSource source = new CountingSource(1000);
+
+        // WHEN it is requested twice with gzip at the same version
+        EncodedBody first = cache.get("runners", 1, ContentCoding.GZIP, source);
+        EncodedBody second = cache.get("runners", 1, ContentCoding.GZIP, source);
+
+        // THEN it is built and compressed once
+        assertEquals("Unexpected number of loads.", 1, source.loads.get());
+        assertSame("Expected the compressed bytes to be reused.", first.getBytes(), second.getBytes());
+        assertEquals("Unexpected coding.", ContentCoding.GZIP, first.getCoding());
+
+        // AND it decompresses to the XML list, at least 10 times shorter
+        String xml = new String(gunzip(first.getBytes()), StandardCharsets.UTF_8);
+        assertTrue("Unexpected body: " + xml, xml.contains("name=\"Runner999\""));
+        assertTrue("Expected a compression ratio of 10 but got " + xml.length() / first.getBytes().length,
+                first.getBytes().length * 10 < xml.length());
+
+        // AND the plain body is served from the same build
+        EncodedBody identity = cache.get("runners", 1, ContentCoding.IDENTITY, source);
+        assertEquals("Unexpected number of loads.", 1, source.loads.get());
+        assertEquals("Unexpected identity body.", xml, new String(identity.getBytes(), StandardCharsets.UTF_8));
+
+        // WHEN the version changes
+        cache.get("runners", 2, ContentCoding.GZIP, source);
+
+        // THEN it is built again
+        assertEquals("Unexpected number of loads.", 2, source.loads.get());
+    }
+
+    @Test
+    public void shouldReuseABodyWithinTheRefreshInterval() {
+        // GIVEN a cache refreshing bodies at most once a minute
+        ResponseBodyCache cache = new ResponseBodyCache();
+        cache.setRefreshMillis(60000);
+        CountingSource source = new CountingSource(10);
+
+        // WHEN a body is requested at two versions
+        cache.get("runners", 1, ContentCoding.IDENTITY, source);
+        cache.get("runners", 2, ContentCoding.IDENTITY, source);
+
+        // THEN it is built once
+        assertEquals("Unexpected number of loads.", 1, source.loads.get());
+    }
+
+    @Test
+    public void shouldNotCompressShortBodies() {
+        // GIVEN a list of a single runner
+        ResponseBodyCache cache = new ResponseBodyCache();
+        cache.setMinCompressedSize(1024);
+
+        // WHEN it is requested with gzip
+        EncodedBody body = cache.get("runners", 1, ContentCoding.GZIP, new CountingSource(1));
+
+        // THEN it is sent as it is
+        assertEquals("Unexpected coding.", ContentCoding.IDENTITY, body.getCoding());
+    }
+
+    private static byte[] gunzip(byte[] bytes) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            byte[] buffer = new byte[4096];
+            for (int read; (read = in.read(buffer)) > 0;) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static class CountingSource implements ResponseBodyCache.BodySource {
+
+        private final int runners;
+        private final AtomicInteger loads = new AtomicInteger();
+
+        CountingSource(int runners) {
+            this.runners = runners;
+        }
+
+        @Override
+        public Object load() {
+            loads.incrementAndGet();
+            RunnerList list = new RunnerList();
+            for (int i = 0; i < runners; i++) {
+                RunnerStatus status = new RunnerStatus();
+                status.setName("Runner" + i);
+                status.setCountry("Country" + (i % 10));
+                status.setTotalKm(BigInteger.valueOf(i));
+                list.getRunners().add(status);
+            }
+            return list;
+        }
+    }
+}
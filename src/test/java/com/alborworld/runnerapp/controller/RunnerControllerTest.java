@@ -3,24 +3,32 @@ package com.alborworld.runnerapp.controller;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
+import java.io.ByteArrayInputStream;
 import java.math.BigInteger;
 import java.util.concurrent.locks.Lock;
 
+import javax.xml.bind.JAXB;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 
+import com.alborworld.runnerapp.compression.ResponseBodyCache;
+import com.alborworld.runnerapp.dedup.UpdateDeduplicator;
 import com.alborworld.runnerapp.locking.LockRegistry;
 import com.alborworld.runnerapp.model.Runner;
 import com.alborworld.runnerapp.model.RunnerModel;
 import com.alborworld.runnerapp.utils.RunnerUpdateBuilder;
+import com.alborworld.runnerapp.xml.Country;
 import com.alborworld.runnerapp.xml.CountryList;
 import com.alborworld.runnerapp.xml.RunnerList;
 import com.alborworld.runnerapp.xml.RunnerStatus;
 import com.alborworld.runnerapp.xml.RunnerUpdate;
+import com.google.common.base.Strings;
 
 public class RunnerControllerTest {
 
@@ -42,6 +50,8 @@ public class RunnerControllerTest {
         lockRegistry = mock(LockRegistry.class);
         controller.setLockRegistry(lockRegistry);
 
+        controller.setUpdateDeduplicator(new UpdateDeduplicator());
+
         lock = mock(Lock.class);
 
         doAnswer(new Answer<Object>() {
@@ -85,6 +95,69 @@ public class RunnerControllerTest {
         verify(lock, times(1)).unlock();
     }
 
+    @Test
+    public void shouldApplyARedeliveredUpdateOnlyOnce() {
+        // GIVEN a controller with mocked model and mocked lock registry
+        when(lockRegistry.getWriteLockFor(new Runner("One", "Australia"))).thenReturn(lock);
+
+        // WHEN the same update of runner "One" with id "update-1" is delivered twice
+        RunnerUpdate update =
+                new RunnerUpdateBuilder().withName("One").withCountry("Australia").withKm(BigInteger.valueOf(10))
+                        .withUpdateId("update-1").build();
+
+        ResponseEntity<Void> firstResponse = controller.updateRunnerStatus(update);
+        ResponseEntity<Void> secondResponse = controller.updateRunnerStatus(update);
+
+        // THEN both deliveries are acknowledged
+        assertEquals("Unexpected HTTP response to first delivery.", HttpStatus.OK, firstResponse.getStatusCode());
+        assertEquals("Unexpected HTTP response to second delivery.", HttpStatus.OK, secondResponse.getStatusCode());
+
+        // AND the model is updated only once
+        verify(model, times(1)).updateRunnerStatus(update);
+    }
+
+    @Test
+    public void shouldApplyTheRetryOfAnUpdateThatFailed() {
+        // GIVEN a controller whose model fails to apply the first delivery of an update
+        when(lockRegistry.getWriteLockFor(new Runner("One", "Australia"))).thenReturn(lock);
+        RunnerUpdate update =
+                new RunnerUpdateBuilder().withName("One").withCountry("Australia").withKm(BigInteger.valueOf(10))
+                        .withUpdateId("update-1").build();
+        doThrow(new IllegalStateException("Off-heap table is full")).doNothing().when(model)
+                .updateRunnerStatus(update);
+
+        try {
+            controller.updateRunnerStatus(update);
+            fail("Expected the first delivery to fail.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        // WHEN the client retries it
+        ResponseEntity<Void> response = controller.updateRunnerStatus(update);
+
+        // THEN the retry is applied rather than taken for a redelivery
+        assertEquals("Unexpected HTTP response to the retry.", HttpStatus.OK, response.getStatusCode());
+        verify(model, times(2)).updateRunnerStatus(update);
+
+        // AND the lock is released both times
+        verify(lock, times(2)).unlock();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotUpdateWhenUpdateIdIsEmpty() {
+        // GIVEN a controller with mocked model and mocked lock registry
+
+        // WHEN an update of runner "One" with empty update id is performed
+        RunnerUpdate update =
+                new RunnerUpdateBuilder().withName("One").withCountry("Australia").withKm(BigInteger.valueOf(10))
+                        .withUpdateId("").build();
+
+        controller.updateRunnerStatus(update);
+
+        // THEN IllegalArgumentException is thrown
+    }
+
     @Test(expected = NullPointerException.class)
     public void shouldNotUpdateWhenRequestObjectIsNull() {
         // GIVEN a controller with mocked model and mocked lock registry
@@ -148,6 +221,20 @@ public class RunnerControllerTest {
         // THEN IllegalArgumentException is thrown
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotUpdateWhenCountryNameIsTooLong() {
+        // GIVEN a controller with mocked model and mocked lock registry
+
+        // WHEN an update of runner "One" in a country of 65 characters with 10 km is performed
+        RunnerUpdate update =
+                new RunnerUpdateBuilder().withName("One").withCountry(Strings.repeat("A", 65))
+                        .withKm(BigInteger.valueOf(10)).build();
+
+        controller.updateRunnerStatus(update);
+
+        // THEN IllegalArgumentException is thrown
+    }
+
     @Test(expected = NullPointerException.class)
     public void shouldNotUpdateWhenNumberOfKmIsNull() {
         // GIVEN a controller with mocked model and mocked lock registry
@@ -238,36 +325,80 @@ public class RunnerControllerTest {
     }
 
     @Test
-    public void shouldGetRunnerList() {
-        // GIVEN a controller with mocked model and mocked lock registry
-
-        // WHEN the list of runners is requested
+    public void shouldServeTheRunnerList() {
+        // GIVEN a controller with mocked model and a response body cache
+        controller.setResponseBodyCache(new ResponseBodyCache());
         RunnerList expectedRunnerList = new RunnerList();
+        expectedRunnerList.getRunners().add(runnerStatus("One", "Australia", 10000));
         when(model.getRunnerList()).thenReturn(expectedRunnerList);
 
-        RunnerList runnerList = controller.getRunnerList().getBody();
+        // WHEN the list of runners is requested twice
+        controller.getRunnerList(null);
+        ResponseEntity<byte[]> response = controller.getRunnerList(null);
 
-        // THEN the expected runner list is returned
-        assertEquals("Unexpected runner list.", expectedRunnerList, runnerList);
+        // THEN it is served as XML
+        assertEquals("Unexpected HTTP response.", HttpStatus.OK, response.getStatusCode());
+        assertEquals("Unexpected content type.", MediaType.APPLICATION_XML, response.getHeaders().getContentType());
+        RunnerList runnerList = JAXB.unmarshal(new ByteArrayInputStream(response.getBody()), RunnerList.class);
+        assertEquals("Unexpected runners count.", 1, runnerList.getRunners().size());
+        assertEquals("Unexpected runner.", "One", runnerList.getRunners().get(0).getName());
+        assertEquals("Unexpected total.", 10000, runnerList.getRunners().get(0).getTotalMetres());
 
-        // AND the total number of status request to the model is 1
+        // AND the model is asked for it once, the body being cached
         verify(model, times(1)).getRunnerList();
     }
 
     @Test
-    public void shouldGetCountryList() {
-        // GIVEN a controller with mocked model and mocked lock registry
-
-        // WHEN the country list in descending order is requested
+    public void shouldServeTheCountryList() {
+        // GIVEN a controller with mocked model and a response body cache
+        controller.setResponseBodyCache(new ResponseBodyCache());
         CountryList expectedCountryList = new CountryList();
+        Country country = new Country();
+        country.setName("Australia");
+        country.setTotalKm(BigInteger.TEN);
+        country.setTotalMetres(10000);
+        expectedCountryList.getCountries().add(country);
         when(model.getCountryList(SortCriteria.SORT_BY_DISTANCE, Order.DESCENDING)).thenReturn(expectedCountryList);
 
-        CountryList countryList = controller.getCountryList(SortCriteria.SORT_BY_DISTANCE, Order.DESCENDING).getBody();
+        // WHEN the country list in descending order is requested twice
+        controller.getCountryList(SortCriteria.SORT_BY_DISTANCE, Order.DESCENDING, null, null);
+        ResponseEntity<byte[]> response =
+                controller.getCountryList(SortCriteria.SORT_BY_DISTANCE, Order.DESCENDING, null, null);
 
-        // THEN the expected runner list is returned
-        assertEquals("Unexpected country list.", expectedCountryList, countryList);
+        // THEN it is served as XML
+        assertEquals("Unexpected HTTP response.", HttpStatus.OK, response.getStatusCode());
+        assertEquals("Unexpected content type.", MediaType.APPLICATION_XML, response.getHeaders().getContentType());
+        CountryList countryList = JAXB.unmarshal(new ByteArrayInputStream(response.getBody()), CountryList.class);
+        assertEquals("Unexpected countries count.", 1, countryList.getCountries().size());
+        assertEquals("Unexpected country.", "Australia", countryList.getCountries().get(0).getName());
+        assertEquals("Unexpected total.", 10000, countryList.getCountries().get(0).getTotalMetres());
 
-        // AND the total number of status request to the model is 1
+        // AND the model is asked for it once, the body being cached
         verify(model, times(1)).getCountryList(SortCriteria.SORT_BY_DISTANCE, Order.DESCENDING);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldOnlyResetWhenEnabled() {
+        // GIVEN a controller with mocked model, as deployed by default
+        // WHEN a reset is requested
+        ResponseEntity<Void> response = controller.reset();
+
+        // THEN it is refused, leaving the model alone
+        assertEquals("Unexpected HTTP response.", HttpStatus.FORBIDDEN, response.getStatusCode());
+        verify(model, never()).reset();
+
+        // AND it is done once resetting is enabled
+        controller.setResetEnabled(true);
+        assertEquals("Unexpected HTTP response.", HttpStatus.OK, controller.reset().getStatusCode());
+        verify(model, times(1)).reset();
+    }
+
+    private static RunnerStatus runnerStatus(String name, String country, long totalMetres) {
+        RunnerStatus runnerStatus = new RunnerStatus();
+        runnerStatus.setName(name);
+        runnerStatus.setCountry(country);
+        runnerStatus.setTotalKm(BigInteger.valueOf(totalMetres / 1000));
+        runnerStatus.setTotalMetres(totalMetres);
+        return runnerStatus;
+    }
+}
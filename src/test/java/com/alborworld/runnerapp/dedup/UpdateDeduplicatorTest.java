@@ -0,0 +1,105 @@
+package com.alborworld.runnerapp.dedup;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class UpdateDeduplicatorTest {
+
+    private static final long BUCKET_MILLIS = 1000L;
+
+    @Test
+    public void shouldAcceptFirstDeliveryAndRejectRedelivery() {
+        // GIVEN an empty deduplicator
+        UpdateDeduplicator deduplicator = new UpdateDeduplicator(10, 3, BUCKET_MILLIS, 1000, 1e-6);
+
+        // WHEN update "a" is delivered and recorded, then delivered again
+        boolean first = !deduplicator.isRedelivery("a", 0L);
+        deduplicator.recordDelivery("a", 0L);
+        boolean second = !deduplicator.isRedelivery("a", 10L);
+
+        // THEN only the first delivery is accepted
+        assertTrue("Expected first delivery to be accepted.", first);
+        assertFalse("Expected redelivery to be rejected.", second);
+
+        // AND a different id is still accepted
+        assertFalse("Expected a different id to be accepted.", deduplicator.isRedelivery("b", 20L));
+    }
+
+    @Test
+    public void shouldRecognizeIdsEvictedFromTheExactCacheWithinTheBloomWindow() {
+        // GIVEN a deduplicator whose exact cache only remembers 2 ids
+        UpdateDeduplicator deduplicator = new UpdateDeduplicator(2, 3, BUCKET_MILLIS, 1000, 1e-6);
+
+        // AND update "a" followed by enough other updates to evict it from the exact cache
+        deduplicator.recordDelivery("a", 0L);
+        deduplicator.recordDelivery("b", 0L);
+        deduplicator.recordDelivery("c", 0L);
+        assertEquals("Unexpected number of exact ids.", 2, deduplicator.getRecentIdsCount());
+
+        // WHEN "a" is redelivered within the window of the Bloom filter
+        boolean redelivery = deduplicator.isRedelivery("a", 2 * BUCKET_MILLIS);
+
+        // THEN it is rejected
+        assertTrue("Expected redelivery of an evicted id to be rejected.", redelivery);
+    }
+
+    @Test
+    public void shouldForgetIdsOnceTheBloomWindowHasPassed() {
+        // GIVEN a deduplicator whose exact cache only remembers 1 id, with a window of 3 buckets
+        UpdateDeduplicator deduplicator = new UpdateDeduplicator(1, 3, BUCKET_MILLIS, 1000, 1e-6);
+
+        // AND update "a" has been seen and evicted from the exact cache
+        deduplicator.recordDelivery("a", 0L);
+        deduplicator.recordDelivery("b", 0L);
+
+        // WHEN "a" is delivered again after the whole window has rotated
+        deduplicator.recordDelivery("c", 3 * BUCKET_MILLIS);
+        boolean lateDelivery = !deduplicator.isRedelivery("a", 3 * BUCKET_MILLIS);
+
+        // THEN it is accepted as a new update
+        assertTrue("Expected an id older than the window to be accepted.", lateDelivery);
+    }
+
+    @Test
+    public void shouldOnlyTakeAnIdForARedeliveryOnceRecorded() {
+        // GIVEN a deduplicator whose exact cache only remembers 1 id
+        UpdateDeduplicator deduplicator = new UpdateDeduplicator(1, 3, BUCKET_MILLIS, 1000, 1e-6);
+
+        // WHEN update "a" is checked but not recorded
+        boolean checked = deduplicator.isRedelivery("a", 0L);
+
+        // THEN it is still not a redelivery
+        assertFalse("Unexpected redelivery before recording.", checked);
+        assertFalse("Unexpected redelivery before recording.", deduplicator.isRedelivery("a", 10L));
+
+        // AND it is once recorded, even after leaving the exact cache
+        deduplicator.recordDelivery("a", 20L);
+        assertTrue("Expected a redelivery once recorded.", deduplicator.isRedelivery("a", 30L));
+        deduplicator.recordDelivery("b", 40L);
+        assertTrue("Expected a redelivery out of the exact cache.", deduplicator.isRedelivery("a", 50L));
+    }
+
+    @Test
+    public void shouldTakeAnIdClaimedByABatchInFlightForARedelivery() {
+        // GIVEN a deduplicator
+        UpdateDeduplicator deduplicator = new UpdateDeduplicator();
+
+        // WHEN update "a" is claimed by a batch
+        assertTrue("Expected a first claim to succeed.", deduplicator.claimDelivery("a"));
+
+        // THEN it cannot be claimed again until the batch ends
+        assertFalse("Unexpected second claim.", deduplicator.claimDelivery("a"));
+
+        // AND it can once a batch that failed ends
+        deduplicator.endDeliveries(Collections.singleton("a"), false);
+        assertFalse("Unexpected redelivery of a failed update.", deduplicator.isRedelivery("a"));
+        assertTrue("Expected a claim after a failure to succeed.", deduplicator.claimDelivery("a"));
+
+        // AND never again once a batch that was applied ends
+        deduplicator.endDeliveries(Collections.singleton("a"), true);
+        assertFalse("Unexpected claim of an applied update.", deduplicator.claimDelivery("a"));
+    }
+}
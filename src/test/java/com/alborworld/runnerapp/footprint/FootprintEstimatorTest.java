@@ -0,0 +1,99 @@
+package com.alborworld.runnerapp.footprint;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alborworld.runnerapp.compression.ResponseBodyCache;
+import com.alborworld.runnerapp.locking.LockRegistry;
+import com.alborworld.runnerapp.model.Runner;
+import com.alborworld.runnerapp.model.RunnerModel;
+import com.alborworld.runnerapp.utils.RunnerUpdateBuilder;
+import com.alborworld.runnerapp.xml.Footprint;
+import com.alborworld.runnerapp.xml.StructureFootprint;
+
+public class FootprintEstimatorTest {
+
+    private RunnerModel runnerModel;
+    private LockRegistry lockRegistry;
+    private FootprintEstimator estimator;
+
+    @Before
+    public void setUp() {
+        runnerModel = new RunnerModel();
+        lockRegistry = new LockRegistry();
+        estimator = new FootprintEstimator(runnerModel);
+        estimator.setSources(Arrays.<FootprintSource> asList(lockRegistry, new ResponseBodyCache()));
+    }
+
+    @Test
+    public void shouldEstimateEveryStructureAndProjectIt() {
+        // GIVEN 10000 runners in 100 countries, each updated under its lock
+        for (int i = 0; i < 10000; i++) {
+            update("Runner" + i, "Country" + (i % 100));
+        }
+
+        // WHEN the footprint is estimated and projected to 1 million runners
+        Footprint footprint = estimator.estimate(1000000L);
+
+        // THEN every structure is reported, with as many entries as it holds
+        Map<String, StructureFootprint> structures = byName(footprint);
+        assertEquals("Unexpected runners in the store.", 10000, structures.get("runnerStore.runners").getEntries());
+        assertEquals("Unexpected countries in the store.", 100, structures.get("runnerStore.countries").getEntries());
+        assertEquals("Unexpected indexed runners.", 10000, structures.get("runnerNameIndex").getEntries());
+        assertEquals("Unexpected country statistics.", 100, structures.get("countryStatistics").getEntries());
+        assertEquals("Unexpected locks.", 10000, structures.get("lockRegistry").getEntries());
+        assertTrue("Unexpected response bodies.", structures.containsKey("responseBodyCache"));
+
+        // AND a runner takes a plausible number of bytes
+        assertEquals("Unexpected runners.", 10000, footprint.getRunners());
+        assertTrue("Unexpected bytes per runner: " + footprint.getBytesPerRunner(),
+                footprint.getBytesPerRunner() > 200 && footprint.getBytesPerRunner() < 2000);
+
+        // AND the projection scales only what grows with the runners
+        long fixedBytes =
+                structures.get("runnerStore.countries").getEstimatedBytes()
+                        + structures.get("countryStatistics").getEstimatedBytes()
+                        + structures.get("regionRollups").getEstimatedBytes();
+        assertEquals("Unexpected projection.", fixedBytes + 1000000L * footprint.getBytesPerRunner(), footprint
+                .getProjectedBytes().longValue());
+    }
+
+    @Test
+    public void shouldShowLocksOfRunnersThatDoNotExist() {
+        // GIVEN 100 runners
+        for (int i = 0; i < 100; i++) {
+            update("Runner" + i, "Italy");
+        }
+
+        // WHEN 1000 runners that do not exist are looked up under their locks
+        for (int i = 0; i < 1000; i++) {
+            lockRegistry.getReadLockFor(new Runner("Ghost" + i, "Italy"));
+        }
+
+        // THEN the locks outnumber the runners
+        Map<String, StructureFootprint> structures = byName(estimator.estimate(null));
+        assertEquals("Unexpected runners.", 100, structures.get("runnerStore.runners").getEntries());
+        assertEquals("Unexpected locks.", 1100, structures.get("lockRegistry").getEntries());
+    }
+
+    private void update(String name, String country) {
+        lockRegistry.getWriteLockFor(new Runner(name, country));
+        runnerModel.updateRunnerStatus(new RunnerUpdateBuilder().withName(name).withCountry(country)
+                .withKm(BigInteger.TEN).build());
+    }
+
+    private static Map<String, StructureFootprint> byName(Footprint footprint) {
+        Map<String, StructureFootprint> structures = new HashMap<>();
+        for (StructureFootprint structure : footprint.getStructures()) {
+            structures.put(structure.getName(), structure);
+        }
+        return structures;
+    }
+}
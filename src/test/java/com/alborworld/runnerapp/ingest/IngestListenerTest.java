@@ -0,0 +1,114 @@
+package com.alborworld.runnerapp.ingest;
+
+import static org.junit.Assert.*;
+
+import java.io.DataOutputStream;
+import java.math.BigInteger;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alborworld.runnerapp.dedup.UpdateDeduplicator;
+import com.alborworld.runnerapp.locking.LockRegistry;
+import com.alborworld.runnerapp.model.RunnerModel;
+import com.alborworld.runnerapp.utils.RunnerUpdateBuilder;
+import com.alborworld.runnerapp.xml.RunnerUpdate;
+
+public class IngestListenerTest {
+
+    private RunnerModel runnerModel;
+    private IngestListener listener;
+
+    @Before
+    public void setUp() throws Exception {
+        runnerModel = new RunnerModel();
+        listener = new IngestListener(runnerModel, new LockRegistry(), new UpdateDeduplicator(), 0);
+        // Small buffers, so that frames are compacted and read in several parts.
+        listener.setBufferSize(256);
+        listener.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        listener.stop();
+    }
+
+    @Test
+    public void shouldApplyABatchAndSkipInvalidAndDuplicateUpdates() throws Exception {
+        // GIVEN a batch with valid updates, an invalid one and a redelivered one
+        RunnerUpdate first = update("James", "Australia", 1500, "id-1");
+        RunnerUpdate invalid = update("", "Australia", 1000, null);
+        RunnerUpdate redelivered = update("James", "Australia", 1500, "id-1");
+        RunnerUpdate second =
+                new RunnerUpdateBuilder().withName("Zoë").withCountry("Česko").withKm(BigInteger.valueOf(3)).build();
+
+        // WHEN it is sent
+        IngestAck ack;
+        try (IngestClient client = new IngestClient("localhost", listener.getPort())) {
+            ack = client.send(42, Arrays.asList(first, invalid, redelivered, second));
+        }
+
+        // THEN the ack accounts for every update
+        assertEquals("Unexpected batch id.", 42, ack.getBatchId());
+        assertEquals("Unexpected applied count.", 2, ack.getApplied());
+        assertEquals("Unexpected duplicates count.", 1, ack.getDuplicates());
+        assertEquals("Unexpected rejected count.", 1, ack.getRejected());
+        assertEquals("Unexpected first rejected index.", 1, ack.getFirstRejectedIndex());
+
+        // AND the valid updates are in the model by the time of the ack
+        assertEquals("Unexpected total.", 1500, runnerModel.getRunnerStatus("James", "Australia").getTotalMetres());
+        assertEquals("Unexpected total.", 3000, runnerModel.getRunnerStatus("Zoë", "Česko").getTotalMetres());
+    }
+
+    @Test
+    public void shouldApplyManyBatchesOnOneConnection() throws Exception {
+        // GIVEN a connection
+        try (IngestClient client = new IngestClient("localhost", listener.getPort())) {
+            // WHEN many batches are sent on it, filling most of the read buffer
+            for (int i = 0; i < 50; i++) {
+                RunnerUpdate update = update("Runner" + (i % 5), "Italy", 100, "id-" + i);
+                IngestAck ack = client.send(i, Collections.nCopies(1 + i % 6, update));
+
+                // THEN each is acked in turn, repeated update ids counting as duplicates
+                assertEquals("Unexpected batch id.", i, ack.getBatchId());
+                assertEquals("Unexpected applied count.", 1, ack.getApplied());
+                assertEquals("Unexpected duplicates count.", i % 6, ack.getDuplicates());
+            }
+        }
+
+        // AND the model has every first delivery
+        assertEquals("Unexpected total.", 1000, runnerModel.getRunnerStatus("Runner0", "Italy").getTotalMetres());
+        assertEquals("Unexpected batches count.", 50, listener.getBatchesCount());
+        assertEquals("Unexpected applied count.", 50, listener.getAppliedCount());
+    }
+
+    @Test
+    public void shouldCloseAConnectionOnAMalformedFrame() throws Exception {
+        // GIVEN a connection
+        try (Socket socket = new Socket("localhost", listener.getPort())) {
+            // WHEN it sends a frame too short to hold a batch
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeInt(3);
+            out.write(new byte[3]);
+            out.flush();
+
+            // THEN the listener closes it
+            assertEquals("Unexpected answer to a malformed frame.", -1, socket.getInputStream().read());
+        }
+
+        // AND goes on serving the others
+        try (IngestClient client = new IngestClient("localhost", listener.getPort())) {
+            assertEquals("Unexpected applied count.", 1,
+                    client.send(1, Collections.singletonList(update("James", "Spain", 10, null))).getApplied());
+        }
+    }
+
+    private static RunnerUpdate update(String name, String country, long metres, String updateId) {
+        return new RunnerUpdateBuilder().withName(name).withCountry(country).withMetres(metres)
+                .withUpdateId(updateId).build();
+    }
+}
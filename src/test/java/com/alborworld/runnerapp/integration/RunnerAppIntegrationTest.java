@@ -1,6 +1,7 @@
 package com.alborworld.runnerapp.integration;
 
 import static com.jayway.restassured.RestAssured.*;
+import static java.nio.charset.StandardCharsets.*;
 import static org.junit.Assert.*;
 
 import java.util.List;
@@ -13,10 +14,15 @@ import org.junit.Before;
 import org.junit.Test;
 import org.springframework.http.HttpStatus;
 
+import com.alborworld.runnerapp.xml.ChangeFeed;
 import com.alborworld.runnerapp.xml.Country;
 import com.alborworld.runnerapp.xml.CountryList;
+import com.alborworld.runnerapp.xml.ImportResult;
+import com.alborworld.runnerapp.xml.Region;
+import com.alborworld.runnerapp.xml.RegionList;
 import com.alborworld.runnerapp.xml.RunnerList;
 import com.alborworld.runnerapp.xml.RunnerStatus;
+import com.jayway.restassured.response.Response;
 
 public class RunnerAppIntegrationTest {
 
@@ -173,6 +179,101 @@ public class RunnerAppIntegrationTest {
         assertEquals("Unexpected distance for the Netherlands.", 20, country.getTotalKm().longValue());
     }
 
+    @Test
+    public void shouldGetRegionList() {
+        // GIVEN runners in Australia and the Netherlands
+        given().port(port).header("content-type", "application/xml").body(b("One", "Australia", 10)).expect()
+                .statusCode(HttpStatus.OK.value()).and().post("/runnerapp/sendRunnerStatusUpdate");
+        given().port(port).header("content-type", "application/xml").body(b("Two", "The Netherlands", 20)).expect()
+                .statusCode(HttpStatus.OK.value()).and().post("/runnerapp/sendRunnerStatusUpdate");
+
+        // WHEN the regions are retrieved by name
+        RegionList regionList =
+                given().port(port).param("criteria", "SORT_BY_NAME").param("order", "ASCENDING").expect()
+                        .statusCode(HttpStatus.OK.value()).when().get("/runnerapp/getRegionList")
+                        .as(RegionList.class);
+
+        // THEN the continents of both countries have their totals
+        List<Region> continents = regionList.getContinents();
+        assertEquals("Unexpected first continent.", "Africa", continents.get(0).getName());
+        Region europe = null;
+        Region oceania = null;
+        for (Region continent : continents) {
+            if (continent.getName().equals("Europe")) {
+                europe = continent;
+            } else if (continent.getName().equals("Oceania")) {
+                oceania = continent;
+            }
+        }
+        assertEquals("Unexpected distance for Europe.", 20, europe.getTotalKm().longValue());
+        assertEquals("Unexpected distance for Oceania.", 10, oceania.getTotalKm().longValue());
+    }
+
+    @Test
+    public void shouldStreamChangedTotals() {
+        // GIVEN a subscription to the change feed
+        ChangeFeed feed =
+                given().port(port).header("content-type", "application/xml").expect()
+                        .statusCode(HttpStatus.OK.value()).when().get("/runnerapp/getChanges").as(ChangeFeed.class);
+        assertTrue("Expected a new subscription to resync.", feed.isResync());
+        String subscription = feed.getSubscription();
+
+        // WHEN runner "One" in Australia is updated with 10 km
+        given().port(port).header("content-type", "application/xml").body(b("One", "Australia", 10)).expect()
+                .statusCode(HttpStatus.OK.value()).and().post("/runnerapp/sendRunnerStatusUpdate");
+
+        // THEN the next poll of the subscription returns the changed totals
+        feed =
+                given().port(port).header("content-type", "application/xml").param("subscription", subscription)
+                        .expect().statusCode(HttpStatus.OK.value()).when().get("/runnerapp/getChanges")
+                        .as(ChangeFeed.class);
+        assertFalse("Unexpected resync.", feed.isResync());
+        assertEquals("Unexpected number of runners.", 1, feed.getRunners().size());
+        assertEquals("Unexpected runner total.", 10, feed.getRunners().get(0).getTotalKm().intValue());
+        assertEquals("Unexpected country.", "Australia", feed.getCountries().get(0).getName());
+    }
+
+    @Test
+    public void shouldImportAndExportInBulk() {
+        // GIVEN runners "One" and "Two" imported as CSV
+        ImportResult result =
+                given().port(port).header("content-type", "text/csv")
+                        .body("name,country,km\nOne,Australia,10\nTwo,Italy,20\nOne,Australia,5\n".getBytes(UTF_8))
+                        .expect().statusCode(HttpStatus.OK.value()).when().post("/runnerapp/import")
+                        .as(ImportResult.class);
+        assertEquals("Unexpected imported count.", 3, result.getImported());
+
+        // WHEN the countries are exported as NDJSON
+        String export =
+                given().port(port).param("format", "NDJSON").param("records", "COUNTRIES").expect()
+                        .statusCode(HttpStatus.OK.value()).when().get("/runnerapp/export").asString();
+
+        // THEN there is one line per country with its total
+        assertTrue("Unexpected export: " + export, export.contains("{\"country\":\"Australia\",\"km\":15}\n"));
+        assertTrue("Unexpected export: " + export, export.contains("{\"country\":\"Italy\",\"km\":20}\n"));
+        assertEquals("Unexpected export: " + export, 2, export.split("\n").length);
+    }
+
+    @Test
+    public void shouldCompressLongLists() {
+        // GIVEN 100 runners
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            csv.append("Runner").append(i).append(",Australia,").append(i).append('\n');
+        }
+        given().port(port).header("content-type", "text/csv").body(csv.toString().getBytes(UTF_8)).expect()
+                .statusCode(HttpStatus.OK.value()).when().post("/runnerapp/import");
+
+        // WHEN the list of runners is retrieved accepting gzip
+        Response response =
+                given().port(port).header("Accept-Encoding", "gzip").expect().statusCode(HttpStatus.OK.value())
+                        .when().get("/runnerapp/getRunnerList");
+
+        // THEN it is gzipped, and lists every runner
+        assertEquals("Unexpected content encoding.", "gzip", response.getHeader("Content-Encoding"));
+        assertEquals("Unexpected number of runners.", 100, response.as(RunnerList.class).getRunners().size());
+    }
+
     String b(String name, String country, int distance) {
         return String.format(RUNNER_STATUS_UPDATE_TEMPLATE, name, country, distance);
     }
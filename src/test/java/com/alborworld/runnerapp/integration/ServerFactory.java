@@ -33,7 +33,9 @@ public class ServerFactory {
         ServletContextHandler contextHandler = new ServletContextHandler();
         contextHandler.setErrorHandler(null);
         contextHandler.setContextPath(CONTEXT_PATH);
-        contextHandler.addServlet(new ServletHolder(new DispatcherServlet(context)), serverUrl);
+        ServletHolder servletHolder = new ServletHolder(new DispatcherServlet(context));
+        servletHolder.setAsyncSupported(true);
+        contextHandler.addServlet(servletHolder, serverUrl);
         contextHandler.addEventListener(new ContextLoaderListener(context));
         contextHandler.setResourceBase(new ClassPathResource("webapp").getURI().toString());
         return contextHandler;
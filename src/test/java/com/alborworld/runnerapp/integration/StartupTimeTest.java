@@ -0,0 +1,131 @@
+package com.alborworld.runnerapp.integration;
+
+import static com.jayway.restassured.RestAssured.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+
+import com.alborworld.runnerapp.capture.CapturedRequest;
+import com.alborworld.runnerapp.capture.TrafficCaptureReader;
+import com.alborworld.runnerapp.server.RunnerAppServer;
+
+/**
+ * Measures how long the fast-startup profile takes to serve its first request, to report ready and to reach a steady
+ * request latency.
+ */
+public class StartupTimeTest {
+
+    private static final long TIMEOUT_MILLIS = 30000L;
+
+    private static final int BATCH_SIZE = 50;
+    private static final int MAX_BATCHES = 40;
+    private static final double STEADY_RATIO = 1.5;
+
+    private static final String RUNNER_STATUS_UPDATE_TEMPLATE =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><runnerUpdate xmlns=\"http://com.alborworld/schema/Runner\" "
+                    + "name=\"Runner%d\" country=\"Country%d\" km=\"1\"/>";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldServeAndReportReadyInTheFastStartupProfile() throws Exception {
+        // GIVEN a server started in the fast-startup profile
+        long startNanos = System.nanoTime();
+        RunnerAppServer server = new RunnerAppServer(0, "fast-startup");
+        server.start();
+        try {
+            int port = server.getPort();
+
+            // WHEN the first request is sent
+            // THEN it succeeds
+            given().port(port).param("name", "Nobody").param("country", "Nowhere").when().get("/getRunnerStatus")
+                    .then().statusCode(HttpStatus.OK.value());
+            long firstRequestMillis = millisSince(startNanos);
+
+            // AND the node reports ready within the timeout
+            while (given().port(port).when().get("/ready").statusCode() != HttpStatus.OK.value()) {
+                assertTrue("Expected the node to be ready within " + TIMEOUT_MILLIS + " ms.",
+                        millisSince(startNanos) < TIMEOUT_MILLIS);
+                Thread.sleep(50);
+            }
+            long readyMillis = millisSince(startNanos);
+
+            // AND the latency of the updates settles
+            long previousMedian = Long.MAX_VALUE;
+            int batches = 0;
+            long median;
+            do {
+                median = medianUpdateNanos(port, batches++);
+                if (median * STEADY_RATIO >= previousMedian) {
+                    break;
+                }
+                previousMedian = median;
+            } while (batches < MAX_BATCHES);
+            long steadyMillis = millisSince(startNanos);
+
+            logger.info("First request after {} ms, ready after {} ms, steady after {} ms and {} batches "
+                    + "with a median update latency of {} us.", firstRequestMillis, readyMillis, steadyMillis,
+                    batches, TimeUnit.NANOSECONDS.toMicros(median));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void shouldCaptureTrafficInTheFastStartupProfile() throws Exception {
+        // GIVEN a server started in the fast-startup and traffic-capture profiles
+        File file = folder.newFile("traffic.cap");
+        System.setProperty("runnerapp.capture.file", file.getPath());
+        RunnerAppServer server = new RunnerAppServer(0, "fast-startup", "traffic-capture");
+        try {
+            server.start();
+
+            // WHEN an update is sent
+            given().port(server.getPort()).contentType("application/xml").body(String.format(
+                    RUNNER_STATUS_UPDATE_TEMPLATE, 0, 0)).when().post("/sendRunnerStatusUpdate").then()
+                    .statusCode(HttpStatus.OK.value());
+        } finally {
+            server.stop();
+            System.clearProperty("runnerapp.capture.file");
+        }
+
+        // THEN it is captured
+        boolean captured = false;
+        try (TrafficCaptureReader reader = new TrafficCaptureReader(new FileInputStream(file))) {
+            for (CapturedRequest request = reader.next(); request != null; request = reader.next()) {
+                captured |= request.getKind() == CapturedRequest.Kind.UPDATE && "Runner0".equals(request.getName());
+            }
+        }
+        assertTrue("Expected the update to be captured.", captured);
+    }
+
+    private static long medianUpdateNanos(int port, int batch) {
+        long[] latencies = new long[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            String update = String.format(RUNNER_STATUS_UPDATE_TEMPLATE, i, batch);
+            long start = System.nanoTime();
+            given().port(port).contentType("application/xml").body(update).when().post("/sendRunnerStatusUpdate")
+                    .then().statusCode(HttpStatus.OK.value());
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        return latencies[BATCH_SIZE / 2];
+    }
+
+    private static long millisSince(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
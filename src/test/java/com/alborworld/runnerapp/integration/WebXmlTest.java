@@ -0,0 +1,147 @@
+package com.alborworld.runnerapp.integration;
+
+import static com.jayway.restassured.RestAssured.*;
+import static org.junit.Assert.*;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.EventListener;
+import java.util.List;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletContext;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.FrameworkServlet;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import com.alborworld.runnerapp.ingest.IngestListener;
+import com.alborworld.runnerapp.model.RunnerModel;
+
+/**
+ * Starts the application as declared by the real web.xml, with every listener, servlet and context it declares.
+ */
+public class WebXmlTest {
+
+    private static final String WEBAPP = "webapp";
+    private static final String WEB_XML = "webapp/WEB-INF/web.xml";
+
+    private Server server;
+    private ServletContextHandler contextHandler;
+    private int port;
+
+    @Before
+    public void setUp() throws Exception {
+        contextHandler = new ServletContextHandler();
+        contextHandler.setContextPath("/");
+        contextHandler.setResourceBase(new ClassPathResource(WEBAPP).getURI().toString());
+        contextHandler.setInitParameter("spring.profiles.active", "tcp-ingest");
+        deploy(contextHandler, readWebXml());
+
+        server = new Server();
+        ServerConnector connector = new ServerConnector(server);
+        server.setConnectors(new Connector[] { connector });
+        server.setHandler(contextHandler);
+        server.start();
+        port = connector.getLocalPort();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void shouldCreateTheApplicationBeansOnceAcrossAllContexts() throws Exception {
+        // GIVEN the application started from its web.xml
+        // WHEN a request is served
+        given().port(port).param("name", "Nobody").param("country", "Nowhere").when().get("/getRunnerStatus")
+                .then().statusCode(HttpStatus.OK.value());
+
+        // THEN the beans owning state, ports and files exist once, whatever context they are in
+        assertEquals("Unexpected number of runner models.", 1, countBeans(RunnerModel.class));
+        assertEquals("Unexpected number of ingest listeners.", 1, countBeans(IngestListener.class));
+    }
+
+    private int countBeans(Class<?> type) {
+        ServletContext servletContext = contextHandler.getServletContext();
+        int count = 0;
+        ApplicationContext root =
+                (ApplicationContext) servletContext
+                        .getAttribute(WebApplicationContext.ROOT_WEB_APPLICATION_CONTEXT_ATTRIBUTE);
+        if (root != null) {
+            count += root.getBeanNamesForType(type).length;
+        }
+        for (Element servlet : elements(readWebXml().getDocumentElement(), "servlet")) {
+            ApplicationContext context =
+                    (ApplicationContext) servletContext.getAttribute(FrameworkServlet.SERVLET_CONTEXT_PREFIX
+                            + text(servlet, "servlet-name"));
+            if (context != null) {
+                count += context.getBeanNamesForType(type).length;
+            }
+        }
+        return count;
+    }
+
+    private static void deploy(ServletContextHandler contextHandler, Document webXml) throws Exception {
+        Element webApp = webXml.getDocumentElement();
+        for (Element parameter : elements(webApp, "context-param")) {
+            contextHandler.setInitParameter(text(parameter, "param-name"), text(parameter, "param-value"));
+        }
+        for (Element listener : elements(webApp, "listener")) {
+            contextHandler.addEventListener(Class.forName(text(listener, "listener-class"))
+                    .asSubclass(EventListener.class).newInstance());
+        }
+        for (Element servlet : elements(webApp, "servlet")) {
+            String name = text(servlet, "servlet-name");
+            ServletHolder holder =
+                    new ServletHolder(name, Class.forName(text(servlet, "servlet-class")).asSubclass(Servlet.class));
+            holder.setAsyncSupported(Boolean.parseBoolean(text(servlet, "async-supported")));
+            String loadOnStartup = text(servlet, "load-on-startup");
+            if (loadOnStartup != null) {
+                holder.setInitOrder(Integer.parseInt(loadOnStartup));
+            }
+            for (Element mapping : elements(webApp, "servlet-mapping")) {
+                if (name.equals(text(mapping, "servlet-name"))) {
+                    contextHandler.addServlet(holder, text(mapping, "url-pattern"));
+                }
+            }
+        }
+    }
+
+    private static Document readWebXml() {
+        try (InputStream in = new ClassPathResource(WEB_XML).getInputStream()) {
+            return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(in);
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot read " + WEB_XML, e);
+        }
+    }
+
+    private static Iterable<Element> elements(Element parent, String name) {
+        NodeList nodes = parent.getElementsByTagName(name);
+        List<Element> elements = new ArrayList<>();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            elements.add((Element) nodes.item(i));
+        }
+        return elements;
+    }
+
+    private static String text(Element parent, String name) {
+        NodeList nodes = parent.getElementsByTagName(name);
+        return (nodes.getLength() > 0) ? nodes.item(0).getTextContent().trim() : null;
+    }
+}
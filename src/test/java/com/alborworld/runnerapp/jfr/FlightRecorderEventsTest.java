@@ -0,0 +1,115 @@
+package com.alborworld.runnerapp.jfr;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.net.URL;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.alborworld.runnerapp.compression.ContentCoding;
+import com.alborworld.runnerapp.compression.ResponseBodyCache;
+import com.alborworld.runnerapp.controller.Order;
+import com.alborworld.runnerapp.controller.RunnerController;
+import com.alborworld.runnerapp.controller.SortCriteria;
+import com.alborworld.runnerapp.dedup.UpdateDeduplicator;
+import com.alborworld.runnerapp.locking.LockRegistry;
+import com.alborworld.runnerapp.model.RunnerModel;
+import com.alborworld.runnerapp.utils.RunnerUpdateBuilder;
+
+public class FlightRecorderEventsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void assumeFlightRecorder() {
+        assumeTrue(FlightRecorderEvents.AVAILABLE);
+    }
+
+    @Test
+    public void shouldRecordTheHotPathsWithoutThresholds() throws Exception {
+        // GIVEN a controller and a model
+        final RunnerModel runnerModel = new RunnerModel();
+        RunnerController controller = new RunnerController();
+        controller.setRunnerModel(runnerModel);
+        controller.setLockRegistry(new LockRegistry());
+        controller.setUpdateDeduplicator(new UpdateDeduplicator());
+        ResponseBodyCache responseBodyCache = new ResponseBodyCache();
+
+        // AND a recording of their events, whatever their duration
+        Recording recording = new Recording();
+        for (Class<? extends jdk.jfr.Event> eventClass : eventClasses()) {
+            recording.enable(eventClass).withoutThreshold();
+        }
+        recording.start();
+
+        // WHEN a runner is updated and read, and the lists built and marshalled
+        controller.updateRunnerStatus(new RunnerUpdateBuilder().withName("One").withCountry("Italy")
+                .withKm(BigInteger.TEN).build());
+        controller.getRunnerStatus("One", "Italy");
+        runnerModel.getRunnerList();
+        runnerModel.getCountryList(SortCriteria.SORT_BY_NAME, Order.ASCENDING);
+        responseBodyCache.get("runners", 1, ContentCoding.IDENTITY, new ResponseBodyCache.BodySource() {
+            @Override
+            public Object load() {
+                return runnerModel.getRunnerList();
+            }
+        });
+
+        recording.stop();
+        File file = folder.newFile("events.jfr");
+        recording.dump(file.toPath());
+        recording.close();
+
+        // THEN every event is recorded with its fields
+        Map<String, Integer> counts = new HashMap<>();
+        RecordedEvent update = null;
+        for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+            String name = event.getEventType().getName();
+            counts.put(name, counts.containsKey(name) ? counts.get(name) + 1 : 1);
+            if (name.equals("com.alborworld.runnerapp.UpdateApplied")) {
+                update = event;
+            }
+        }
+        assertEquals("Unexpected lock waits.", Integer.valueOf(2), counts.get("com.alborworld.runnerapp.LockWait"));
+        assertEquals("Unexpected updates.", Integer.valueOf(1), counts.get("com.alborworld.runnerapp.UpdateApplied"));
+        assertEquals("Unexpected lists.", Integer.valueOf(3), counts.get("com.alborworld.runnerapp.ListBuilt"));
+        assertEquals("Unexpected marshals.", Integer.valueOf(1), counts.get("com.alborworld.runnerapp.Marshal"));
+        assertEquals("Unexpected runner.", "One", update.getString("runnerName"));
+    }
+
+    @Test
+    public void shouldBundleAValidConfiguration() throws Exception {
+        // GIVEN the configuration bundled on the classpath
+        URL resource = getClass().getResource("/runnerapp.jfc");
+        assertNotNull("Expected the configuration on the classpath.", resource);
+
+        // WHEN it is parsed
+        Configuration configuration = Configuration.create(Paths.get(resource.toURI()));
+
+        // THEN it sets the thresholds of the events
+        assertEquals("Unexpected threshold.", "5 ms",
+                configuration.getSettings().get("com.alborworld.runnerapp.LockWait#threshold"));
+    }
+
+    private static List<Class<? extends jdk.jfr.Event>> eventClasses() {
+        return Arrays.<Class<? extends jdk.jfr.Event>> asList(LockWaitEvent.class, UpdateAppliedEvent.class,
+                ListBuiltEvent.class, MarshalEvent.class);
+    }
+}
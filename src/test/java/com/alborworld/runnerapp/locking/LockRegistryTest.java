@@ -0,0 +1,71 @@
+package com.alborworld.runnerapp.locking;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+
+import org.junit.Test;
+
+import com.alborworld.runnerapp.model.Runner;
+import com.alborworld.runnerapp.xml.StructureFootprint;
+
+public class LockRegistryTest {
+
+    @Test
+    public void shouldKeepAWeakLockWhileItIsHeldAndDropItAfterwards() throws Exception {
+        // GIVEN a registry of weak locks
+        final LockRegistry registry = new LockRegistry(true);
+        final Runner runner = new Runner("One", "Australia");
+
+        // WHEN the write lock of a runner is held through a collection of the weak references
+        Lock lock = registry.getWriteLockFor(runner);
+        lock.lock();
+        collectGarbage();
+
+        // THEN another thread still cannot take it
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            boolean locked = executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return registry.getReadLockFor(runner).tryLock();
+                }
+            }).get();
+            assertFalse("Unexpected lock taken while held.", locked);
+        } finally {
+            lock.unlock();
+            executor.shutdown();
+        }
+
+        // AND locks no longer referenced are dropped
+        lock = null;
+        for (int i = 0; i < 1000; i++) {
+            registry.getWriteLockFor(new Runner("Runner" + i, "Italy"));
+        }
+        long locks = 0;
+        for (int attempt = 0; attempt < 10; attempt++) {
+            collectGarbage();
+            // Cleared entries are removed by the next writes.
+            for (int i = 0; i < 100; i++) {
+                registry.getWriteLockFor(new Runner("Other" + attempt + "-" + i, "Italy"));
+            }
+            List<StructureFootprint> structures = new ArrayList<>();
+            registry.addFootprints(structures);
+            locks = structures.get(0).getEntries();
+            if (locks < 1000) {
+                break;
+            }
+        }
+        assertTrue("Unexpected locks kept: " + locks, locks < 1000);
+    }
+
+    private static void collectGarbage() throws InterruptedException {
+        System.gc();
+        Thread.sleep(50);
+    }
+}
@@ -0,0 +1,48 @@
+package com.alborworld.runnerapp.model;
+
+import static org.junit.Assert.*;
+
+import java.util.Locale;
+
+import org.junit.Test;
+
+public class CollationKeysTest {
+
+    @Test
+    public void shouldAcceptLocalesWithACollatorOrTheirLanguage() {
+        // GIVEN locales with a collator of their own, of their language only, and without any
+
+        // WHEN they are looked up
+        Locale swedish = CollationKeys.supportedLocale("sv-SE");
+        Locale german = CollationKeys.supportedLocale("de-XX");
+
+        // THEN the first is kept as it is, and the second falls back to its language
+        assertEquals("Unexpected locale.", Locale.forLanguageTag("sv-SE"), swedish);
+        assertEquals("Unexpected locale.", Locale.GERMAN, german);
+
+        // AND the third is refused
+        try {
+            CollationKeys.supportedLocale("xx-YY");
+            fail("Expected a locale without a collator to be refused.");
+        } catch (IllegalArgumentException e) {
+            assertTrue("Unexpected message: " + e.getMessage(), e.getMessage().contains("xx-YY"));
+        }
+    }
+
+    @Test
+    public void shouldComputeTheKeyOfANameOncePerLocale() {
+        // GIVEN collation keys
+        CollationKeys keys = new CollationKeys();
+
+        // WHEN the key of a name is asked for twice in one locale, and once in another
+        byte[] first = keys.key("Österreich", Locale.GERMAN);
+        byte[] second = keys.key("Österreich", Locale.GERMAN);
+        byte[] swedish = keys.key("Österreich", new Locale("sv"));
+
+        // THEN the first key is reused
+        assertSame("Unexpected key computed twice.", first, second);
+
+        // AND the other locale has a key of its own
+        assertNotSame("Unexpected key shared between locales.", first, swedish);
+    }
+}
@@ -3,15 +3,30 @@ package com.alborworld.runnerapp.model;
 import static org.junit.Assert.*;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
 
 import com.alborworld.runnerapp.controller.Order;
+import com.alborworld.runnerapp.controller.SearchMode;
 import com.alborworld.runnerapp.controller.SortCriteria;
+import com.alborworld.runnerapp.locking.LockRegistry;
+import com.alborworld.runnerapp.parallel.ParallelLists;
+import com.alborworld.runnerapp.region.RegionHierarchy;
+import com.alborworld.runnerapp.store.InMemoryRunnerStore;
+import com.alborworld.runnerapp.store.OffHeapRunnerStore;
+import com.alborworld.runnerapp.store.RunnerStore;
 import com.alborworld.runnerapp.utils.RunnerUpdateBuilder;
 import com.alborworld.runnerapp.xml.Country;
 import com.alborworld.runnerapp.xml.CountryList;
+import com.alborworld.runnerapp.xml.Region;
+import com.alborworld.runnerapp.xml.RegionList;
 import com.alborworld.runnerapp.xml.RunnerList;
 import com.alborworld.runnerapp.xml.RunnerStatus;
 import com.alborworld.runnerapp.xml.RunnerUpdate;
@@ -56,6 +71,42 @@ public class RunnerModelTest {
         assertEquals("Unexpected number of updates.", 1, model.getUpdatesCount());
     }
 
+    @Test
+    public void shouldAddMetresAndKmToTheSameTotal() {
+        // GIVEN a model where runner "One" in Australia has run 4200 metres
+        RunnerModel model = new RunnerModel();
+        model.updateRunnerStatus(new RunnerUpdateBuilder().withName("One").withCountry("Australia").withMetres(4200)
+                .build());
+
+        // WHEN an older client adds 1 km to it
+        model.updateRunnerStatus(new RunnerUpdateBuilder().withName("One").withCountry("Australia")
+                .withKm(BigInteger.ONE).build());
+
+        // THEN the total is 5200 metres, or 5 whole km
+        RunnerStatus status = model.getRunnerStatus("One", "Australia");
+        assertEquals("Unexpected total number of metres.", 5200, status.getTotalMetres());
+        assertEquals("Unexpected total number of km.", BigInteger.valueOf(5), status.getTotalKm());
+
+        // AND countries are sorted by metres, even within the same km
+        model.updateRunnerStatus(new RunnerUpdateBuilder().withName("Two").withCountry("Italy").withMetres(5900)
+                .build());
+        CountryList countryList = model.getCountryList(SortCriteria.SORT_BY_DISTANCE, Order.DESCENDING);
+        assertEquals("Unexpected countries.", Arrays.asList("Italy", "Australia"), names(countryList));
+        assertEquals("Unexpected country metres.", 5900, countryList.getCountries().get(0).getTotalMetres());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectKmThatOverflowMetres() {
+        // GIVEN a new model
+        RunnerModel model = new RunnerModel();
+
+        // WHEN a runner is updated with more km than a long holds in metres
+        model.updateRunnerStatus(new RunnerUpdateBuilder().withName("One").withCountry("Australia")
+                .withKm(BigInteger.valueOf(Long.MAX_VALUE / 999)).build());
+
+        // THEN the update is rejected
+    }
+
     @Test
     public void shouldUpdateExistingRunner() {
         // GIVEN a model
@@ -392,6 +443,72 @@ public class RunnerModelTest {
         assertEquals("Unexpected distance for The Netherlands.", 50, country.getTotalKm().longValue());
     }
 
+    @Test
+    public void shouldGetCountryListByNameInTheOrderOfALocale() {
+        // GIVEN a model with runners in countries whose names start with accented letters
+        RunnerModel model = new RunnerModel();
+        for (String country : new String[] { "Zambia", "Österreich", "Australia", "Åland" }) {
+            model.updateRunnerStatus(new RunnerUpdateBuilder().withName("One").withCountry(country)
+                    .withKm(BigInteger.ONE).build());
+        }
+
+        // WHEN the list of countries is retrieved by name without and with a German locale, in both orders
+        List<String> byCodeUnit = names(model.getCountryList(SortCriteria.SORT_BY_NAME, Order.ASCENDING));
+        List<String> ascending =
+                names(model.getCountryList(SortCriteria.SORT_BY_NAME, Order.ASCENDING, Locale.GERMAN));
+        List<String> descending =
+                names(model.getCountryList(SortCriteria.SORT_BY_NAME, Order.DESCENDING, Locale.GERMAN));
+
+        // THEN without a locale accented letters come after "Z"
+        assertEquals("Unexpected order without a locale.", Arrays.asList("Australia", "Zambia", "Åland", "Österreich"),
+                byCodeUnit);
+
+        // AND with it they sort with their base letter
+        assertEquals("Unexpected ascending order.", Arrays.asList("Åland", "Australia", "Österreich", "Zambia"),
+                ascending);
+        assertEquals("Unexpected descending order.", Arrays.asList("Zambia", "Österreich", "Australia", "Åland"),
+                descending);
+    }
+
+    private static List<String> names(CountryList countryList) {
+        List<String> names = new ArrayList<>();
+        for (Country country : countryList.getCountries()) {
+            names.add(country.getName());
+        }
+        return names;
+    }
+
+    @Test
+    public void shouldRollUpTotalsIntoRegions() throws Exception {
+        // GIVEN a store that already has the totals of a country
+        InMemoryRunnerStore store = new InMemoryRunnerStore();
+        new RunnerModel(store).updateRunnerStatus(new RunnerUpdateBuilder().withName("One").withCountry("Italy")
+                .withKm(BigInteger.valueOf(10)).build());
+
+        // AND a model over it, with the default hierarchy
+        RunnerModel model = new RunnerModel(store);
+        model.setRegionHierarchy(new RegionHierarchy(new ClassPathResource("regions.tsv")));
+
+        // WHEN runners of another country of the same region are updated, one by one and in a batch
+        model.updateRunnerStatus(new RunnerUpdateBuilder().withName("Two").withCountry("Spain").withMetres(2500)
+                .build());
+        UpdateBatch batch = new UpdateBatch();
+        batch.add("Three", "Spain", 500);
+        batch.add("Four", "Australia", 1000);
+        model.updateRunnerStatuses(batch, new LockRegistry());
+
+        // THEN the region adds up the totals of its countries
+        RegionList regionList = model.getRegionList(SortCriteria.SORT_BY_DISTANCE, Order.DESCENDING);
+        Region southernEurope = regionList.getRegions().get(0);
+        assertEquals("Unexpected region.", "Southern Europe", southernEurope.getName());
+        assertEquals("Unexpected region total.", 13000, southernEurope.getTotalMetres());
+
+        // AND so does the continent
+        assertEquals("Unexpected continent.", "Europe", regionList.getContinents().get(0).getName());
+        assertEquals("Unexpected continent total.", 13000, regionList.getContinents().get(0).getTotalMetres());
+        assertEquals("Unexpected continent.", "Oceania", regionList.getContinents().get(1).getName());
+    }
+
     @Test
     public void shouldGetCountryNonSortedList() {
         // GIVEN a model
@@ -434,4 +551,251 @@ public class RunnerModelTest {
             }
         }
     }
+
+    @Test
+    public void shouldStartANewEpochFromZeroAndArchiveTheOldOne() throws Exception {
+        // GIVEN a model whose old epochs are archived right away
+        RunnerModel model = new RunnerModel();
+        final CountDownLatch archived = new CountDownLatch(1);
+        final long[] archivedTotal = new long[1];
+        model.setArchiveGraceMillis(0);
+        model.setEpochArchiver(new EpochArchiver() {
+            @Override
+            public void archive(long epoch, RunnerStore store) {
+                archivedTotal[0] = store.getRunnerDistance(new Runner("One", "Australia"));
+                archived.countDown();
+            }
+        });
+
+        // AND runners "One" and "Two" in Australia with 10 and 20 km
+        model.updateRunnerStatus(new RunnerUpdateBuilder().withName("One").withCountry("Australia")
+                .withKm(BigInteger.valueOf(10)).build());
+        model.updateRunnerStatus(new RunnerUpdateBuilder().withName("Two").withCountry("Australia")
+                .withKm(BigInteger.valueOf(20)).build());
+        long version = model.getVersion();
+
+        // WHEN the model is reset, and runner "One" runs 3 km
+        assertEquals("Unexpected new epoch.", 1, model.reset());
+        assertEquals("Unexpected version after a reset.", version + 1, model.getVersion());
+        model.updateRunnerStatus(new RunnerUpdateBuilder().withName("One").withCountry("Australia")
+                .withKm(BigInteger.valueOf(3)).build());
+
+        // THEN only the distance of the new epoch counts
+        RunnerStatus status = model.getRunnerStatus("One", "Australia");
+        assertEquals("Unexpected total.", 3000, status.getTotalMetres());
+        assertEquals("Unexpected global rank.", 1, status.getGlobalRank().intValue());
+        assertEquals("Unexpected global runners.", 1, status.getGlobalRunners().intValue());
+        assertEquals("Unexpected runner of the old epoch.", "N/A", model.getRunnerStatus("Two", "Australia")
+                .getName());
+        assertEquals("Unexpected number of runners.", 1, model.getRunnerCount());
+        assertEquals("Unexpected distance for Australia.", 3000,
+                model.getCountryList(SortCriteria.NO_SORT, Order.ASCENDING).getCountries().get(0).getTotalMetres());
+
+        // AND updates are still counted across epochs
+        assertEquals("Unexpected number of updates.", 3, model.getUpdatesCount());
+
+        // AND the old epoch is archived with its totals
+        assertTrue("Expected the old epoch to be archived.", archived.await(10, TimeUnit.SECONDS));
+        assertEquals("Unexpected archived total.", 10000, archivedTotal[0]);
+    }
+
+    @Test
+    public void shouldKeepTotalsOffHeap() {
+        // GIVEN a model backed by an off-heap store
+        RunnerModel model = new RunnerModel(new OffHeapRunnerStore(16, 1024));
+
+        // AND runners "One" and "Two" in Australia with 10 and 20 km
+        model.updateRunnerStatus(new RunnerUpdateBuilder().withName("One").withCountry("Australia")
+                .withKm(BigInteger.valueOf(10)).build());
+        model.updateRunnerStatus(new RunnerUpdateBuilder().withName("Two").withCountry("Australia")
+                .withKm(BigInteger.valueOf(20)).build());
+
+        // WHEN runner "One" runs another 5 km
+        model.updateRunnerStatus(new RunnerUpdateBuilder().withName("One").withCountry("Australia")
+                .withKm(BigInteger.valueOf(5)).build());
+
+        // THEN the status of "One" has 15 km, and no rank, since ranking would keep every runner on the heap
+        RunnerStatus one = model.getRunnerStatus("One", "Australia");
+        assertEquals("Unexpected total number of km.", 15, one.getTotalKm().intValue());
+        assertNull("Unexpected rank.", one.getGlobalRank());
+
+        // AND the runner list has both runners
+        assertEquals("Unexpected number of runners.", 2, model.getRunnerList().getRunners().size());
+
+        // AND Australia has 35 km
+        List<Country> countries = model.getCountryList(SortCriteria.SORT_BY_DISTANCE, Order.DESCENDING).getCountries();
+        assertEquals("Unexpected number of countries.", 1, countries.size());
+        assertEquals("Unexpected distance for Australia.", 35, countries.get(0).getTotalKm().longValue());
+
+        // AND the runners are counted without indexing their names on the heap
+        assertEquals("Unexpected number of runners.", 2, model.getRunnerCount());
+        try {
+            model.searchRunners("On", SearchMode.PREFIX, null, 0, 10);
+            fail("Expected a search without a name index to be refused.");
+        } catch (UnsupportedOperationException e) {
+            assertTrue("Unexpected message: " + e.getMessage(), e.getMessage().contains("off the heap"));
+        }
+    }
+
+    @Test
+    public void shouldLeaveTheRunnerUntouchedWhenTheStoreRefusesItsCountry() {
+        // GIVEN a model backed by an off-heap store with room for 3 countries, all taken
+        RunnerModel model = new RunnerModel(new OffHeapRunnerStore(16, 1024, 4, 1024));
+        for (String country : new String[] { "Australia", "Brazil", "Chile" }) {
+            model.updateRunnerStatus(new RunnerUpdateBuilder().withName("One").withCountry(country)
+                    .withKm(BigInteger.valueOf(10)).build());
+        }
+
+        try {
+            // WHEN a runner of a fourth country is updated
+            model.updateRunnerStatus(new RunnerUpdateBuilder().withName("One").withCountry("Denmark")
+                    .withKm(BigInteger.valueOf(10)).build());
+            fail("Expected the fourth country to be refused.");
+        } catch (IllegalStateException e) {
+            // THEN the update is refused
+            assertTrue("Unexpected message: " + e.getMessage(), e.getMessage().contains("full"));
+        }
+
+        // AND nothing was added to the runner, so that a retry once there is room is counted once
+        assertEquals("Unexpected runner.", "N/A", model.getRunnerStatus("One", "Denmark").getName());
+        assertEquals("Unexpected number of runners.", 3, model.getRunnerCount());
+    }
+
+    @Test
+    public void shouldSummarizeTheRunnersOfEachCountry() {
+        // GIVEN a model
+        RunnerModel model = new RunnerModel();
+
+        // AND 100 runners in Italy, runner i having run i km in two updates
+        for (int i = 1; i <= 100; i++) {
+            model.updateRunnerStatus(new RunnerUpdateBuilder().withName("Runner" + i).withCountry("Italy")
+                    .withKm(BigInteger.valueOf(i - i / 2)).build());
+            model.updateRunnerStatus(new RunnerUpdateBuilder().withName("Runner" + i).withCountry("Italy")
+                    .withKm(BigInteger.valueOf(i / 2)).build());
+        }
+
+        // WHEN the list of countries is retrieved
+        Country italy = model.getCountryList(SortCriteria.NO_SORT, Order.ASCENDING).getCountries().get(0);
+
+        // THEN Italy has about 100 runners
+        assertEquals("Unexpected number of runners.", 100, italy.getRunnerCount(), 100 * 0.05);
+
+        // AND the quantiles of their totals are within 2%
+        assertEquals("Unexpected median.", 50, italy.getMedianKm(), 50 * 0.02);
+        assertEquals("Unexpected p90.", 90, italy.getP90Km(), 90 * 0.02);
+        assertEquals("Unexpected p99.", 99, italy.getP99Km(), 99 * 0.02);
+    }
+
+    @Test
+    public void shouldGiveTheQuantilesOfACountryInMetres() {
+        // GIVEN 100 runners in Italy, runner i having run 10 * i metres
+        RunnerModel model = new RunnerModel();
+        for (int i = 1; i <= 100; i++) {
+            model.updateRunnerStatus(new RunnerUpdateBuilder().withName("Runner" + i).withCountry("Italy")
+                    .withMetres(10L * i).build());
+        }
+
+        // WHEN the list of countries is retrieved
+        Country italy = model.getCountryList(SortCriteria.NO_SORT, Order.ASCENDING).getCountries().get(0);
+
+        // THEN the quantiles, all under 1 km, are 0 in whole km
+        assertEquals("Unexpected median km.", 0, italy.getMedianKm().longValue());
+
+        // AND within 2% in metres
+        assertEquals("Unexpected median.", 500, italy.getMedianMetres(), 500 * 0.02);
+        assertEquals("Unexpected p90.", 900, italy.getP90Metres(), 900 * 0.02);
+        assertEquals("Unexpected p99.", 990, italy.getP99Metres(), 990 * 0.02);
+    }
+
+    @Test
+    public void shouldSearchRunnersWithTheirTotals() {
+        // GIVEN runners "John" in Australia with 10 km and "Joan" in Canada with 20 km, after two updates each
+        RunnerModel model = new RunnerModel();
+        for (int i = 0; i < 2; i++) {
+            model.updateRunnerStatus(new RunnerUpdateBuilder().withName("John").withCountry("Australia")
+                    .withKm(BigInteger.valueOf(5)).build());
+            model.updateRunnerStatus(new RunnerUpdateBuilder().withName("Joan").withCountry("Canada")
+                    .withKm(BigInteger.valueOf(10)).build());
+        }
+
+        // WHEN runners starting with "jo" are searched
+        List<RunnerStatus> runners = model.searchRunners("jo", SearchMode.PREFIX, null, 0, 10).getRunners();
+
+        // THEN both are found once, with their totals
+        assertEquals("Unexpected number of runners.", 2, runners.size());
+        assertEquals("Unexpected runner.", "Joan", runners.get(0).getName());
+        assertEquals("Unexpected total.", 20, runners.get(0).getTotalKm().intValue());
+
+        // AND only "John" is within 1 edit of "jon" in Australia
+        runners = model.searchRunners("jon", SearchMode.FUZZY, "Australia", 1, 10).getRunners();
+        assertEquals("Unexpected number of runners.", 1, runners.size());
+        assertEquals("Unexpected total.", 10, runners.get(0).getTotalKm().intValue());
+    }
+
+    @Test
+    public void shouldBuildTheSameListsInParallel() {
+        // GIVEN 5000 runners in 500 countries, with many equal totals
+        InMemoryRunnerStore store = new InMemoryRunnerStore();
+        RunnerModel sequentialModel = new RunnerModel(store);
+        for (int i = 0; i < 5000; i++) {
+            sequentialModel.updateRunnerStatus(new RunnerUpdateBuilder().withName("Runner" + i)
+                    .withCountry("Country" + (i % 500)).withKm(BigInteger.valueOf(i % 7)).build());
+        }
+
+        // AND a model over the same runners building its lists in parallel
+        ParallelLists parallelLists = new ParallelLists();
+        parallelLists.setParallelism(4);
+        parallelLists.setThreshold(100);
+        parallelLists.start();
+        RunnerModel parallelModel = new RunnerModel(store);
+        parallelModel.setParallelLists(parallelLists);
+
+        try {
+            // WHEN the lists are retrieved from both
+            List<RunnerStatus> sequentialRunners = sequentialModel.getRunnerList().getRunners();
+            List<RunnerStatus> parallelRunners = parallelModel.getRunnerList().getRunners();
+            List<Country> sequentialCountries =
+                    sequentialModel.getCountryList(SortCriteria.SORT_BY_DISTANCE, Order.DESCENDING).getCountries();
+            List<Country> parallelCountries =
+                    parallelModel.getCountryList(SortCriteria.SORT_BY_DISTANCE, Order.DESCENDING).getCountries();
+
+            // THEN they are in the same order
+            assertEquals("Unexpected number of runners.", 5000, parallelRunners.size());
+            for (int i = 0; i < sequentialRunners.size(); i++) {
+                assertEquals("Unexpected runner at " + i + ".", sequentialRunners.get(i).getName(), parallelRunners
+                        .get(i).getName());
+            }
+            assertEquals("Unexpected number of countries.", 500, parallelCountries.size());
+            for (int i = 0; i < sequentialCountries.size(); i++) {
+                assertEquals("Unexpected country at " + i + ".", sequentialCountries.get(i).getName(),
+                        parallelCountries.get(i).getName());
+            }
+        } finally {
+            parallelLists.stop();
+        }
+    }
+
+    @Test
+    public void shouldRankRunnerStatusInCountryAndGlobally() {
+        // GIVEN "One" in Italy with 10 km, "Two" in Italy with 30 km and "Three" in Canada with 20 km
+        RunnerModel model = new RunnerModel();
+        model.updateRunnerStatus(new RunnerUpdateBuilder().withName("One").withCountry("Italy")
+                .withKm(BigInteger.valueOf(10)).build());
+        model.updateRunnerStatus(new RunnerUpdateBuilder().withName("Two").withCountry("Italy")
+                .withKm(BigInteger.valueOf(30)).build());
+        model.updateRunnerStatus(new RunnerUpdateBuilder().withName("Three").withCountry("Canada")
+                .withKm(BigInteger.valueOf(20)).build());
+
+        // WHEN the status of "One" is retrieved
+        RunnerStatus status = model.getRunnerStatus("One", "Italy");
+
+        // THEN it is second of two in Italy, and third of three globally
+        assertEquals("Unexpected country rank.", Long.valueOf(2), status.getCountryRank());
+        assertEquals("Unexpected country runners.", Long.valueOf(2), status.getCountryRunners());
+        assertEquals("Unexpected global rank.", Long.valueOf(3), status.getGlobalRank());
+        assertEquals("Unexpected global runners.", Long.valueOf(3), status.getGlobalRunners());
+
+        // AND unknown runners have no rank
+        assertNull("Unexpected rank.", model.getRunnerStatus("Four", "Italy").getGlobalRank());
+    }
 }
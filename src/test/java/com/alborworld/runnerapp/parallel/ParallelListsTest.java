@@ -0,0 +1,136 @@
+package com.alborworld.runnerapp.parallel;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ParallelListsTest {
+
+    private static final Comparator<long[]> BY_KEY = new Comparator<long[]>() {
+        @Override
+        public int compare(long[] first, long[] second) {
+            return Long.compare(first[0], second[0]);
+        }
+    };
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private ParallelLists parallelLists;
+
+    @Before
+    public void setUp() {
+        parallelLists = new ParallelLists();
+        parallelLists.setParallelism(4);
+        parallelLists.setThreshold(1000);
+        parallelLists.start();
+    }
+
+    @After
+    public void tearDown() {
+        parallelLists.stop();
+    }
+
+    @Test
+    public void shouldSortStablyLikeASequentialSort() {
+        // GIVEN 100000 items with many equal keys, each tagged with its position
+        long[][] items = items(100000, 100, new Random(42));
+        long[][] expected = items.clone();
+        Arrays.sort(expected, BY_KEY);
+
+        // WHEN they are sorted in parallel
+        parallelLists.sort(items, BY_KEY);
+
+        // THEN they are in the order of a sequential stable sort
+        assertArrayEquals("Unexpected order.", expected, items);
+    }
+
+    @Test
+    public void shouldRunEveryIndexExactlyOnce() {
+        // GIVEN a list above the threshold
+        final AtomicIntegerArray runs = new AtomicIntegerArray(100000);
+
+        // WHEN a task is run over it
+        parallelLists.forEachRange(runs.length(), new ParallelLists.RangeTask() {
+            @Override
+            public void run(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    runs.incrementAndGet(i);
+                }
+            }
+        });
+
+        // THEN every index is run once
+        for (int i = 0; i < runs.length(); i++) {
+            assertEquals("Unexpected runs of index " + i + ".", 1, runs.get(i));
+        }
+    }
+
+    @Test
+    public void shouldRunOnTheCallingThreadUntilStarted() {
+        // GIVEN lists that are not started
+        ParallelLists notStarted = new ParallelLists();
+        notStarted.setThreshold(1);
+        final Thread caller = Thread.currentThread();
+        final boolean[] onCaller = { false };
+
+        // WHEN a task is run
+        notStarted.forEachRange(100000, new ParallelLists.RangeTask() {
+            @Override
+            public void run(int from, int to) {
+                onCaller[0] = (from == 0 && to == 100000 && Thread.currentThread() == caller);
+            }
+        });
+
+        // THEN it runs once over the whole list, on the calling thread
+        assertTrue("Unexpected thread or ranges.", onCaller[0]);
+    }
+
+    @Test
+    public void shouldReportTheCrossover() {
+        // GIVEN lists of growing length, sorted sequentially and in parallel
+        Random random = new Random(7);
+        for (int size = 1000; size <= 1000000; size *= 10) {
+            long[][] items = items(size, size, random);
+            long sequentialNanos = Long.MAX_VALUE;
+            long parallelNanos = Long.MAX_VALUE;
+
+            // WHEN each is timed at its best of a few runs
+            for (int run = 0; run < 5; run++) {
+                long[][] copy = items.clone();
+                long start = System.nanoTime();
+                Arrays.sort(copy, BY_KEY);
+                sequentialNanos = Math.min(sequentialNanos, System.nanoTime() - start);
+
+                long[][] parallelCopy = items.clone();
+                start = System.nanoTime();
+                parallelLists.sort(parallelCopy, BY_KEY);
+                parallelNanos = Math.min(parallelNanos, System.nanoTime() - start);
+
+                // THEN both agree
+                assertArrayEquals("Unexpected order.", copy, parallelCopy);
+            }
+
+            logger.info("Sorted {} items in {} us sequentially and {} us with {} cores.", size,
+                    TimeUnit.NANOSECONDS.toMicros(sequentialNanos), TimeUnit.NANOSECONDS.toMicros(parallelNanos),
+                    Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    private static long[][] items(int count, int keys, Random random) {
+        long[][] items = new long[count][];
+        for (int i = 0; i < count; i++) {
+            items[i] = new long[] { random.nextInt(keys), i };
+        }
+        return items;
+    }
+}
@@ -0,0 +1,155 @@
+package com.alborworld.runnerapp.rank;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class RunnerRanksTest {
+
+    @Test
+    public void shouldRankRunnersInTheirCountryAndGlobally() {
+        // GIVEN runners with 30 and 10 km in Italy, and one with 20 km in Canada
+        RunnerRanks ranks = new RunnerRanks();
+        ranks.onRunnerUpdated("Italy", 0, 30);
+        ranks.onRunnerUpdated("Italy", 0, 10);
+        ranks.onRunnerUpdated("Canada", 0, 20);
+
+        // WHEN the runner with 10 km is ranked
+        RunnerRanks.Rank countryRank = ranks.getCountryRank("Italy", 10);
+        RunnerRanks.Rank globalRank = ranks.getGlobalRank(10);
+
+        // THEN it is second of two in Italy
+        assertEquals("Unexpected country rank.", 2, countryRank.getPosition());
+        assertEquals("Unexpected country runners.", 2, countryRank.getRunners());
+
+        // AND third of three globally
+        assertEquals("Unexpected global rank.", 3, globalRank.getPosition());
+        assertEquals("Unexpected global runners.", 3, globalRank.getRunners());
+
+        // AND after running 25 km more it is first in both
+        ranks.onRunnerUpdated("Italy", 10, 35);
+        assertEquals("Unexpected country rank.", 1, ranks.getCountryRank("Italy", 35).getPosition());
+        assertEquals("Unexpected global rank.", 1, ranks.getGlobalRank(35).getPosition());
+        assertEquals("Unexpected global runners.", 3, ranks.getGlobalRank(35).getRunners());
+    }
+
+    @Test
+    public void shouldShareTheRankOfEqualTotalsAndSkipZeroTotals() {
+        // GIVEN two runners with 10 km and one with 20 km
+        RunnerRanks ranks = new RunnerRanks();
+        ranks.onRunnerUpdated("Italy", 0, 10);
+        ranks.onRunnerUpdated("Italy", 0, 10);
+        ranks.onRunnerUpdated("Italy", 0, 20);
+
+        // THEN both runners with 10 km are second
+        assertEquals("Unexpected rank.", 2, ranks.getCountryRank("Italy", 10).getPosition());
+
+        // AND a runner who has not run is not ranked
+        ranks.onRunnerUpdated("Italy", 0, 0);
+        assertNull("Unexpected rank.", ranks.getCountryRank("Italy", 0));
+        assertEquals("Unexpected runners.", 3, ranks.getGlobalRank(10).getRunners());
+
+        // AND a country without runners has no ranks
+        assertNull("Unexpected rank.", ranks.getCountryRank("Canada", 10));
+    }
+
+    @Test
+    public void shouldMatchSortedTotalsAfterMovesInAnyOrder() {
+        // GIVEN 2000 runners, each running 5 times, with their moves applied in random order
+        Random random = new Random(3);
+        long[] totals = new long[2000];
+        List<long[]> moves = new ArrayList<>();
+        for (int run = 0; run < 5; run++) {
+            for (int i = 0; i < totals.length; i++) {
+                long km = 1 + random.nextInt(50);
+                moves.add(new long[] { totals[i], totals[i] + km });
+                totals[i] += km;
+            }
+        }
+        Collections.shuffle(moves, random);
+        OrderStatisticTree tree = new OrderStatisticTree();
+        for (long[] move : moves) {
+            if (move[0] > 0) {
+                tree.move(move[0], move[1]);
+            } else {
+                tree.add(move[1], 1);
+            }
+        }
+
+        // THEN every total counts the totals above it as a scan would
+        assertEquals("Unexpected size.", totals.length, tree.size());
+        for (long total : totals) {
+            long greater = 0;
+            for (long other : totals) {
+                if (other > total) {
+                    greater++;
+                }
+            }
+            assertEquals("Unexpected count above " + total + ".", greater, tree.countGreaterAndAll(total)[0]);
+        }
+    }
+
+    @Test
+    public void shouldMatchSortedTotalsAfterConcurrentMovesAcrossBuckets() throws Exception {
+        // GIVEN 8 threads, each running 500 runners 20 times, by distances spanning many buckets
+        final BucketedOrderStatistics statistics = new BucketedOrderStatistics();
+        final long[][] totals = new long[8][500];
+        ExecutorService executor = Executors.newFixedThreadPool(totals.length);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < totals.length; t++) {
+            final long[] threadTotals = totals[t];
+            final Random random = new Random(t);
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int run = 0; run < 20; run++) {
+                        for (int i = 0; i < threadTotals.length; i++) {
+                            long metres = 1 + (long) random.nextInt(1 << random.nextInt(24));
+                            if (threadTotals[i] > 0) {
+                                statistics.move(threadTotals[i], threadTotals[i] + metres);
+                            } else {
+                                statistics.add(metres, 1);
+                            }
+                            threadTotals[i] += metres;
+                        }
+                    }
+                }
+            }));
+        }
+
+        // WHEN they have all run
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // THEN every total counts the totals above it as a scan would
+        List<Long> all = new ArrayList<>();
+        for (long[] threadTotals : totals) {
+            for (long total : threadTotals) {
+                all.add(total);
+            }
+        }
+        Collections.sort(all);
+        assertEquals("Unexpected size.", all.size(), statistics.size());
+        for (int i = 0; i < all.size(); i += 7) {
+            long total = all.get(i);
+            int notGreater = i;
+            while (notGreater < all.size() && all.get(notGreater) == total) {
+                notGreater++;
+            }
+            long[] counts = statistics.countGreaterAndAll(total);
+            assertEquals("Unexpected count above " + total + ".", all.size() - notGreater, counts[0]);
+            assertEquals("Unexpected count of all.", all.size(), counts[1]);
+        }
+    }
+}
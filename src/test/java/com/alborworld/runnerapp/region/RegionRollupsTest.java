@@ -0,0 +1,88 @@
+package com.alborworld.runnerapp.region;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ByteArrayResource;
+
+import com.alborworld.runnerapp.controller.Order;
+import com.alborworld.runnerapp.controller.SortCriteria;
+import com.alborworld.runnerapp.xml.RegionList;
+
+public class RegionRollupsTest {
+
+    private RegionHierarchy hierarchy;
+
+    @Before
+    public void setup() throws Exception {
+        hierarchy =
+                hierarchy("# country, region, continent\n" + "Italy\tSouthern Europe\tEurope\n"
+                        + "Spain\tSouthern Europe\tEurope\n" + "\n" + "Sweden\tNorthern Europe\tEurope\n"
+                        + "Australia\tAustralia and New Zealand\tOceania\n");
+    }
+
+    @Test
+    public void shouldRollCountriesUpIntoRegionsAndContinents() {
+        // GIVEN rollups of the hierarchy
+        RegionRollups rollups = new RegionRollups(hierarchy);
+
+        // WHEN countries of the same region, another region and no region are added to
+        rollups.add("Italy", 3000);
+        rollups.add("Spain", 2500);
+        rollups.add("Sweden", 1000);
+        rollups.add("Atlantis", 700);
+
+        // THEN regions are sorted by their totals
+        RegionList regionList = rollups.getRegionList(SortCriteria.SORT_BY_DISTANCE, Order.DESCENDING);
+        assertEquals("Unexpected number of regions.", 4, regionList.getRegions().size());
+        assertEquals("Unexpected first region.", "Southern Europe", regionList.getRegions().get(0).getName());
+        assertEquals("Unexpected continent of the first region.", "Europe", regionList.getRegions().get(0)
+                .getContinent());
+        assertEquals("Unexpected total of the first region.", 5500, regionList.getRegions().get(0).getTotalMetres());
+        assertEquals("Unexpected whole km of the first region.", 5, regionList.getRegions().get(0).getTotalKm()
+                .intValue());
+        assertEquals("Unexpected last region.", "Australia and New Zealand", regionList.getRegions().get(3)
+                .getName());
+
+        // AND so are continents, with unknown countries unassigned
+        assertEquals("Unexpected number of continents.", 3, regionList.getContinents().size());
+        assertEquals("Unexpected first continent.", "Europe", regionList.getContinents().get(0).getName());
+        assertNull("Unexpected continent of a continent.", regionList.getContinents().get(0).getContinent());
+        assertEquals("Unexpected total of Europe.", 6500, regionList.getContinents().get(0).getTotalMetres());
+        assertEquals("Unexpected second continent.", RegionRollups.UNASSIGNED, regionList.getContinents().get(1)
+                .getName());
+        assertEquals("Unexpected unassigned total.", 700, regionList.getContinents().get(1).getTotalMetres());
+    }
+
+    @Test
+    public void shouldSortRegionsByName() {
+        // GIVEN rollups of the hierarchy without unassigned countries
+        RegionRollups rollups = new RegionRollups(hierarchy);
+        rollups.add("Sweden", 1000);
+
+        // WHEN regions are listed by name
+        RegionList regionList = rollups.getRegionList(SortCriteria.SORT_BY_NAME, Order.ASCENDING);
+
+        // THEN every configured region is listed, in order, and the unassigned one is left out
+        assertEquals("Unexpected number of regions.", 3, regionList.getRegions().size());
+        assertEquals("Unexpected first region.", "Australia and New Zealand", regionList.getRegions().get(0)
+                .getName());
+        assertEquals("Unexpected second region.", "Northern Europe", regionList.getRegions().get(1).getName());
+        assertEquals("Unexpected third region.", "Southern Europe", regionList.getRegions().get(2).getName());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectARegionOnTwoContinents() throws Exception {
+        // WHEN a hierarchy puts the same region on two continents
+        hierarchy("Italy\tSouthern Europe\tEurope\n" + "Chile\tSouthern Europe\tAmericas\n");
+
+        // THEN it is rejected
+    }
+
+    private static RegionHierarchy hierarchy(String lines) throws Exception {
+        return new RegionHierarchy(new ByteArrayResource(lines.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,226 @@
+package com.alborworld.runnerapp.replication;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import com.alborworld.runnerapp.controller.Order;
+import com.alborworld.runnerapp.controller.SearchMode;
+import com.alborworld.runnerapp.controller.SortCriteria;
+import com.alborworld.runnerapp.locking.LockRegistry;
+import com.alborworld.runnerapp.model.Runner;
+import com.alborworld.runnerapp.model.RunnerModel;
+import com.alborworld.runnerapp.model.RunnerModelListener;
+import com.alborworld.runnerapp.region.RegionHierarchy;
+import com.alborworld.runnerapp.store.AbstractRunnerStoreTest;
+import com.alborworld.runnerapp.store.RunnerStore;
+import com.alborworld.runnerapp.utils.RunnerUpdateBuilder;
+import com.alborworld.runnerapp.xml.Country;
+import com.alborworld.runnerapp.xml.RunnerStatus;
+
+public class ReplicatedRunnerStoreTest extends AbstractRunnerStoreTest {
+
+    private static final long CONVERGENCE_TIMEOUT_MILLIS = 5000L;
+
+    @Override
+    protected RunnerStore createStore() {
+        return new ReplicatedRunnerStore("", new LoopbackReplicationTransport.Network().connect());
+    }
+
+    @Test
+    public void shouldConvergeWhenBothNodesAreUpdated() throws Exception {
+        // GIVEN two nodes on the same network
+        LoopbackReplicationTransport.Network network = new LoopbackReplicationTransport.Network();
+        ReplicatedRunnerStore nodeA = new ReplicatedRunnerStore("A", network.connect());
+        ReplicatedRunnerStore nodeB = new ReplicatedRunnerStore("B", network.connect());
+        nodeA.start();
+        nodeB.start();
+
+        // WHEN runner "One" runs 10 km on node A and 20 km on node B
+        nodeA.addRunnerDistance(new Runner("One", "Australia"), 10);
+        nodeA.addCountryDistance("Australia", 10);
+        nodeB.addRunnerDistance(new Runner("One", "Australia"), 20);
+        nodeB.addCountryDistance("Australia", 20);
+
+        // AND both ship their changes
+        nodeA.shipChanges();
+        nodeB.shipChanges();
+
+        // THEN both nodes have the total of 30 km for the runner and the country
+        for (ReplicatedRunnerStore node : new ReplicatedRunnerStore[] { nodeA, nodeB }) {
+            assertEquals("Unexpected runner total on node " + node.getNodeId() + ".", 30,
+                    node.getRunnerDistance(new Runner("One", "Australia")));
+            assertEquals("Unexpected country total on node " + node.getNodeId() + ".", 30,
+                    node.getCountryDistance("Australia"));
+        }
+
+        nodeA.close();
+        nodeB.close();
+    }
+
+    @Test
+    public void shouldIgnoreRedeliveredAndReorderedBatches() {
+        // GIVEN a node
+        ReplicatedRunnerStore node =
+                new ReplicatedRunnerStore("A", new LoopbackReplicationTransport.Network().connect());
+
+        // WHEN it receives the counts of node B twice, the newer batch before the older one
+        ReplicationBatch older = new ReplicationBatch("B", 1);
+        older.addRunnerCount(new Runner("One", "Australia"), "B", 10);
+        ReplicationBatch newer = new ReplicationBatch("B", 2);
+        newer.addRunnerCount(new Runner("One", "Australia"), "B", 15);
+        node.onBatch(newer);
+        node.onBatch(older);
+        node.onBatch(newer);
+
+        // THEN the total is the latest count of node B
+        assertEquals("Unexpected total.", 15, node.getRunnerDistance(new Runner("One", "Australia")));
+    }
+
+    @Test
+    public void shouldCatchUpANodeThatJoinsLate() throws Exception {
+        // GIVEN node A, which has been updated before node B joins
+        LoopbackReplicationTransport.Network network = new LoopbackReplicationTransport.Network();
+        ReplicatedRunnerStore nodeA = new ReplicatedRunnerStore("A", network.connect());
+        nodeA.addRunnerDistance(new Runner("One", "Australia"), 10);
+        nodeA.shipChanges();
+
+        // WHEN node B joins and node A sends all of its counts
+        ReplicatedRunnerStore nodeB = new ReplicatedRunnerStore("B", network.connect());
+        nodeB.start();
+        nodeA.shipAll();
+
+        // THEN node B has the total of node A
+        assertEquals("Unexpected total on node B.", 10, nodeB.getRunnerDistance(new Runner("One", "Australia")));
+
+        nodeA.close();
+        nodeB.close();
+    }
+
+    @Test
+    public void shouldSplitAFullSyncIntoBoundedBatches() throws Exception {
+        // GIVEN node A with 5 runners in one country, sending at most 2 counts per batch
+        LoopbackReplicationTransport.Network network = new LoopbackReplicationTransport.Network();
+        ReplicatedRunnerStore nodeA = new ReplicatedRunnerStore("A", network.connect());
+        nodeA.setMaxCountsPerBatch(2);
+        for (int i = 0; i < 5; i++) {
+            nodeA.addRunnerDistance(new Runner("Runner " + i, "Australia"), 10);
+            nodeA.addCountryDistance("Australia", 10);
+        }
+
+        // AND node B, counting the batches it receives
+        final List<ReplicationBatch> batches = new ArrayList<>();
+        ReplicatedRunnerStore nodeB = new ReplicatedRunnerStore("B", network.connect()) {
+            @Override
+            public void onBatch(ReplicationBatch batch) {
+                batches.add(batch);
+                super.onBatch(batch);
+            }
+        };
+        nodeB.start();
+
+        // WHEN node A sends all of its counts
+        nodeA.shipAll();
+
+        // THEN they arrive in 3 batches of at most 2 counts
+        assertEquals("Unexpected number of batches.", 3, batches.size());
+        for (ReplicationBatch batch : batches) {
+            assertTrue("Unexpected batch size: " + batch.size(), batch.size() <= 2);
+        }
+
+        // AND node B has every total of node A
+        for (int i = 0; i < 5; i++) {
+            assertEquals("Unexpected total on node B.", 10, nodeB.getRunnerDistance(new Runner("Runner " + i,
+                    "Australia")));
+        }
+        assertEquals("Unexpected country total on node B.", 50, nodeB.getCountryDistance("Australia"));
+
+        nodeA.close();
+        nodeB.close();
+    }
+
+    @Test
+    public void shouldReplicateOverLoopbackSockets() throws Exception {
+        // GIVEN node A listening on a free port, and node B sending to it
+        TcpReplicationTransport transportA = new TcpReplicationTransport(0, "");
+        ReplicatedRunnerStore nodeA = new ReplicatedRunnerStore("A", transportA);
+        nodeA.start();
+        ReplicatedRunnerStore nodeB =
+                new ReplicatedRunnerStore("B", new TcpReplicationTransport(0, "localhost:" + transportA.getLocalPort()));
+        nodeB.setShipIntervalMillis(10);
+        nodeB.start();
+
+        // WHEN runner "One" runs 10 km on node B
+        nodeB.addRunnerDistance(new Runner("One", "Australia"), 10);
+
+        // THEN node A soon has the same total
+        long deadline = System.currentTimeMillis() + CONVERGENCE_TIMEOUT_MILLIS;
+        while (nodeA.getRunnerDistance(new Runner("One", "Australia")) != 10
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("Unexpected total on node A.", 10, nodeA.getRunnerDistance(new Runner("One", "Australia")));
+
+        nodeB.close();
+        nodeA.close();
+    }
+
+    @Test
+    public void shouldPassTheMergedTotalsThroughTheModel() throws Exception {
+        // GIVEN a model on each of two nodes
+        LoopbackReplicationTransport.Network network = new LoopbackReplicationTransport.Network();
+        ReplicatedRunnerStore nodeA = new ReplicatedRunnerStore("A", network.connect());
+        ReplicatedRunnerStore nodeB = new ReplicatedRunnerStore("B", network.connect());
+        nodeB.setLockRegistry(new LockRegistry());
+        nodeA.start();
+        nodeB.start();
+        RunnerModel modelA = new RunnerModel(nodeA);
+        RunnerModel modelB = new RunnerModel(nodeB);
+        modelB.setRegionHierarchy(new RegionHierarchy(new ClassPathResource("regions.tsv")));
+        final long[] notified = new long[1];
+        modelB.addListener(new RunnerModelListener() {
+            @Override
+            public void onRunnerStatusUpdated(Runner runner, long runnerTotal, long countryTotal) {
+                notified[0] = runnerTotal;
+            }
+
+            @Override
+            public void onReset(long epoch) {
+            }
+        });
+
+        // WHEN "One" runs 10 km on node A and "Two" 20 km on node B
+        modelA.updateRunnerStatus(new RunnerUpdateBuilder().withName("One").withCountry("Italy")
+                .withKm(BigInteger.valueOf(10)).build());
+        modelB.updateRunnerStatus(new RunnerUpdateBuilder().withName("Two").withCountry("Italy")
+                .withKm(BigInteger.valueOf(20)).build());
+
+        // AND node A ships its changes
+        nodeA.shipChanges();
+
+        // THEN the model of node B ranks, counts, finds and rolls up the runner of node A too
+        RunnerStatus one = modelB.getRunnerStatus("One", "Italy");
+        assertEquals("Unexpected total.", 10000, one.getTotalMetres());
+        assertEquals("Unexpected country rank.", Long.valueOf(2), one.getCountryRank());
+        assertEquals("Unexpected global runners.", Long.valueOf(2), one.getGlobalRunners());
+        Country italy = modelB.getCountryList(SortCriteria.NO_SORT, Order.ASCENDING).getCountries().get(0);
+        assertEquals("Unexpected country total.", 30000, italy.getTotalMetres());
+        assertEquals("Unexpected runner count.", Long.valueOf(2), italy.getRunnerCount());
+        assertEquals("Unexpected search result.", "One",
+                modelB.searchRunners("on", SearchMode.PREFIX, null, 0, 10).getRunners().get(0).getName());
+        assertEquals("Unexpected region total.", 30000,
+                modelB.getRegionList(SortCriteria.SORT_BY_DISTANCE, Order.DESCENDING).getRegions().get(0)
+                        .getTotalMetres());
+
+        // AND its listeners are told of it
+        assertEquals("Unexpected notified total.", 10000, notified[0]);
+
+        nodeA.close();
+        nodeB.close();
+    }
+}
@@ -0,0 +1,120 @@
+package com.alborworld.runnerapp.search;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import com.alborworld.runnerapp.model.Runner;
+import com.alborworld.runnerapp.search.RunnerNameIndex.Match;
+
+public class RunnerNameIndexTest {
+
+    @Test
+    public void shouldFindRunnersByPrefixIgnoringCase() {
+        // GIVEN runners named John, Johanna, Joe and Mary, with two Johns
+        RunnerNameIndex index = new RunnerNameIndex();
+        index.add(new Runner("John", "Australia"));
+        index.add(new Runner("John", "Canada"));
+        index.add(new Runner("Johanna", "Canada"));
+        index.add(new Runner("Joe", "Italy"));
+        index.add(new Runner("Mary", "Canada"));
+
+        // WHEN runners starting with "jo" are searched
+        List<Match> matches = index.findByPrefix("jo", null, 10);
+
+        // THEN the four runners are found in the order of their names
+        assertEquals("Unexpected matches.", "[Joe/Italy, Johanna/Canada, John/Australia, John/Canada]",
+                toString(matches));
+
+        // AND the search can be scoped to a country and capped
+        assertEquals("Unexpected matches in Canada.", "[Johanna/Canada, John/Canada]",
+                toString(index.findByPrefix("JO", "Canada", 10)));
+        assertEquals("Unexpected capped matches.", "[Joe/Italy, Johanna/Canada]", toString(index.findByPrefix("Jo",
+                null, 2)));
+        assertTrue("Expected no matches.", index.findByPrefix("Jx", null, 10).isEmpty());
+    }
+
+    @Test
+    public void shouldFindTheClosestRunnersWithinTheEditDistance() {
+        // GIVEN runners named Jon, John, Joan, Jonathan and Mary
+        RunnerNameIndex index = new RunnerNameIndex();
+        for (String name : new String[] { "Jon", "John", "Joan", "Jonathan", "Mary" }) {
+            index.add(new Runner(name, "Australia"));
+        }
+
+        // WHEN runners within 1 edit of "john" are searched
+        List<Match> matches = index.findSimilar("john", null, 1, 10);
+
+        // THEN they are found closest first
+        assertEquals("Unexpected matches.", "[John/Australia, Joan/Australia, Jon/Australia]", toString(matches));
+        assertEquals("Unexpected distance.", 0, matches.get(0).getDistance());
+        assertEquals("Unexpected distance.", 1, matches.get(1).getDistance());
+
+        // AND only the closest are kept when capped
+        assertEquals("Unexpected capped matches.", "[John/Australia, Joan/Australia]",
+                toString(index.findSimilar("john", null, 1, 2)));
+    }
+
+    @Test
+    public void shouldFindWhatABruteForceSearchFinds() {
+        // GIVEN 2000 random names over a small alphabet
+        Random random = new Random(7);
+        RunnerNameIndex index = new RunnerNameIndex();
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder name = new StringBuilder();
+            for (int length = 1 + random.nextInt(6); name.length() < length;) {
+                name.append((char) ('a' + random.nextInt(4)));
+            }
+            names.add(name.toString());
+            index.add(new Runner(name.toString(), "Australia"));
+        }
+
+        for (int i = 0; i < 100; i++) {
+            // WHEN a random name is searched within 2 edits
+            String query = names.get(random.nextInt(names.size())) + (char) ('a' + random.nextInt(4));
+            List<Match> matches = index.findSimilar(query, null, 2, 1000000);
+
+            // THEN every name found is within 2 edits, and so is no name missed
+            int expected = 0;
+            for (String name : new TreeSet<>(names)) {
+                if (levenshtein(query, name) <= 2) {
+                    expected++;
+                }
+            }
+            assertEquals("Unexpected number of matches for " + query, expected, matches.size());
+            for (Match match : matches) {
+                assertEquals("Unexpected distance for " + match.getRunner().getName(),
+                        levenshtein(query, match.getRunner().getName()), match.getDistance());
+            }
+        }
+    }
+
+    private static int levenshtein(String first, String second) {
+        int[][] distances = new int[first.length() + 1][second.length() + 1];
+        for (int i = 0; i <= first.length(); i++) {
+            for (int j = 0; j <= second.length(); j++) {
+                if (i == 0 || j == 0) {
+                    distances[i][j] = i + j;
+                } else {
+                    int substitution = distances[i - 1][j - 1] + ((first.charAt(i - 1) == second.charAt(j - 1)) ? 0 : 1);
+                    distances[i][j] = Math.min(Math.min(distances[i - 1][j] + 1, distances[i][j - 1] + 1), substitution);
+                }
+            }
+        }
+        return distances[first.length()][second.length()];
+    }
+
+    private static String toString(List<Match> matches) {
+        List<String> runners = new ArrayList<>();
+        for (Match match : matches) {
+            runners.add(match.getRunner().getName() + "/" + match.getRunner().getCountry());
+        }
+        return runners.toString();
+    }
+}
@@ -0,0 +1,74 @@
+package com.alborworld.runnerapp.server;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RunnerAppServerTest {
+
+    private static final String REQUEST = "GET /getRunnerStatus?name=One&country=Australia HTTP/1.1\r\n"
+            + "Host: localhost\r\nAccept: application/xml\r\n\r\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldServeKeepAliveRequestsWithTheGivenSettingsAndLogThem() throws Exception {
+        // GIVEN a server with one acceptor, one selector, at most 16 threads and a request log
+        File requestLog = new File(folder.getRoot(), "yyyy_mm_dd.request.log");
+        RunnerAppServer server = new RunnerAppServer(0);
+        server.setAcceptors(1);
+        server.setSelectors(1);
+        server.setMaxThreads(16);
+        server.setMaxQueuedRequests(64);
+        server.setRequestLogFile(requestLog.getPath());
+        server.start();
+
+        try {
+            // WHEN two requests are sent on one connection
+            String responses;
+            try (Socket socket = new Socket("localhost", server.getPort())) {
+                OutputStream out = socket.getOutputStream();
+                out.write((REQUEST + REQUEST).getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                responses = readResponses(socket.getInputStream(), 2);
+            }
+
+            // THEN both are answered on it
+            assertEquals("Unexpected responses: " + responses, 2, responses.split("HTTP/1.1 200 OK").length - 1);
+
+            // AND the thread pool is bounded as configured
+            assertEquals("Unexpected max threads.", 16, server.getThreadPool().getMaxThreads());
+        } finally {
+            server.stop();
+        }
+
+        // AND both requests are logged
+        File[] logs = folder.getRoot().listFiles();
+        assertEquals("Unexpected number of request logs.", 1, logs.length);
+        String log = new String(Files.readAllBytes(logs[0].toPath()), StandardCharsets.UTF_8);
+        assertEquals("Unexpected request log: " + log, 2, log.split("GET /getRunnerStatus").length - 1);
+    }
+
+    private static String readResponses(InputStream in, int count) throws Exception {
+        StringBuilder responses = new StringBuilder();
+        byte[] buffer = new byte[4096];
+        while (responses.toString().split("</runnerStatus>|<runnerStatus[^>]*/>").length - 1 < count) {
+            int read = in.read(buffer);
+            if (read < 0) {
+                break;
+            }
+            responses.append(new String(buffer, 0, read, StandardCharsets.UTF_8));
+        }
+        return responses.toString();
+    }
+}
@@ -0,0 +1,46 @@
+package com.alborworld.runnerapp.sketch;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.google.common.hash.Hashing;
+
+public class HyperLogLogTest {
+
+    @Test
+    public void shouldCountSmallSetsExactly() {
+        // GIVEN an empty sketch
+        HyperLogLog sketch = new HyperLogLog(12);
+
+        // WHEN 3 distinct hashes are offered, one of them three times
+        sketch.offer(hash(1));
+        sketch.offer(hash(2));
+        sketch.offer(hash(3));
+        sketch.offer(hash(3));
+        sketch.offer(hash(3));
+
+        // THEN the estimate is 3
+        assertEquals("Unexpected estimate.", 3, sketch.estimate());
+    }
+
+    @Test
+    public void shouldEstimateLargeSetsWithinTheStandardError() {
+        // GIVEN an empty sketch with a standard error of about 1.6%
+        HyperLogLog sketch = new HyperLogLog(12);
+
+        // WHEN 100000 distinct hashes are offered twice each
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 100000; i++) {
+                sketch.offer(hash(i));
+            }
+        }
+
+        // THEN the estimate is within three standard errors
+        assertEquals("Unexpected estimate.", 100000, sketch.estimate(), 100000 * 0.05);
+    }
+
+    private static long hash(int i) {
+        return Hashing.murmur3_128().hashInt(i).asLong();
+    }
+}
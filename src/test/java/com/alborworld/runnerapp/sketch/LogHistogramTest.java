@@ -0,0 +1,51 @@
+package com.alborworld.runnerapp.sketch;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LogHistogramTest {
+
+    @Test
+    public void shouldReturnQuantilesWithinTheRelativeAccuracy() {
+        // GIVEN a histogram with 2% relative accuracy
+        LogHistogram histogram = new LogHistogram(0.02);
+
+        // WHEN the values 1 to 10000 are added
+        for (long value = 1; value <= 10000; value++) {
+            histogram.add(value);
+        }
+
+        // THEN the median and the p90 and p99 are within 2% of the exact ones
+        assertEquals("Unexpected count.", 10000, histogram.getCount());
+        assertEquals("Unexpected median.", 5000, histogram.quantile(0.5), 5000 * 0.02);
+        assertEquals("Unexpected p90.", 9000, histogram.quantile(0.9), 9000 * 0.02);
+        assertEquals("Unexpected p99.", 9900, histogram.quantile(0.99), 9900 * 0.02);
+    }
+
+    @Test
+    public void shouldFollowMovedValues() {
+        // GIVEN a histogram of three values
+        LogHistogram histogram = new LogHistogram(0.02);
+        histogram.add(10);
+        histogram.add(20);
+        histogram.add(30);
+
+        // WHEN 10 grows to 1000
+        histogram.move(10, 1000);
+
+        // THEN the smallest value is 20 and the largest 1000
+        assertEquals("Unexpected count.", 3, histogram.getCount());
+        assertEquals("Unexpected minimum.", 20, histogram.quantile(0), 20 * 0.02);
+        assertEquals("Unexpected maximum.", 1000, histogram.quantile(1), 1000 * 0.02);
+    }
+
+    @Test
+    public void shouldReturnZeroWhenEmpty() {
+        // GIVEN an empty histogram
+        LogHistogram histogram = new LogHistogram(0.02);
+
+        // THEN every quantile is 0
+        assertEquals("Unexpected median.", 0, histogram.quantile(0.5));
+    }
+}
@@ -0,0 +1,239 @@
+package com.alborworld.runnerapp.store;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alborworld.runnerapp.model.Runner;
+
+/**
+ * Conformance and performance tests that every {@link RunnerStore} must pass.
+ */
+public abstract class AbstractRunnerStoreTest {
+
+    private static final int THREAD_POOL_SIZE = 8;
+    private static final int UPDATES_PER_THREAD = 10000;
+    private static final int THROUGHPUT_RUNNERS = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    protected RunnerStore store;
+
+    /**
+     * @return an empty store, with room for at least 8192 runners.
+     */
+    protected abstract RunnerStore createStore() throws Exception;
+
+    @Before
+    public void setUp() throws Exception {
+        store = createStore();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        store.close();
+    }
+
+    @Test
+    public void shouldAddAndGetTotals() {
+        // GIVEN an empty store
+
+        // WHEN runner "One" in Australia runs 10 and then 20 km
+        store.addRunnerDistance(new Runner("One", "Australia"), 10);
+        long total = store.addRunnerDistance(new Runner("One", "Australia"), 20);
+
+        // AND Australia gets 30 km
+        store.addCountryDistance("Australia", 30);
+
+        // THEN the total is 30 km
+        assertEquals("Unexpected total returned by the update.", 30, total);
+        assertEquals("Unexpected total.", 30, store.getRunnerDistance(new Runner("One", "Australia")));
+        assertEquals("Unexpected country total.", 30, store.getCountryDistance("Australia"));
+
+        // AND the same name in another country is unknown, as is the other country
+        assertEquals("Unexpected total of unknown runner.", RunnerStore.ABSENT,
+                store.getRunnerDistance(new Runner("One", "Italy")));
+        assertEquals("Unexpected total of unknown country.", RunnerStore.ABSENT, store.getCountryDistance("Italy"));
+    }
+
+    @Test
+    public void shouldRefuseAnAdditionOverflowingATotal() {
+        // GIVEN runner "One" and Australia with one metre short of the largest total
+        store.addRunnerDistance(new Runner("One", "Australia"), Long.MAX_VALUE - 1);
+        store.addCountryDistance("Australia", Long.MAX_VALUE - 1);
+
+        try {
+            // WHEN the runner runs another 2 metres
+            store.addRunnerDistance(new Runner("One", "Australia"), 2);
+            fail("Expected the runner total to overflow.");
+        } catch (ArithmeticException e) {
+            // THEN the addition is refused
+        }
+        try {
+            // AND so is the country's
+            store.addCountryDistance("Australia", 2);
+            fail("Expected the country total to overflow.");
+        } catch (ArithmeticException e) {
+            // THEN the addition is refused
+        }
+
+        // AND both totals are left as they were
+        assertEquals("Unexpected total.", Long.MAX_VALUE - 1, store.getRunnerDistance(new Runner("One", "Australia")));
+        assertEquals("Unexpected country total.", Long.MAX_VALUE - 1, store.getCountryDistance("Australia"));
+    }
+
+    @Test
+    public void shouldScanAllRunnersAndCountries() {
+        // GIVEN a store with runners whose names aren't ASCII
+        store.addRunnerDistance(new Runner("Jürgen", "Österreich"), 10);
+        store.addRunnerDistance(new Runner("Åsa", "Sverige"), 20);
+        store.addCountryDistance("Österreich", 10);
+        store.addCountryDistance("Sverige", 20);
+
+        // WHEN all the runners and countries are scanned
+        final Map<Runner, Long> runners = new HashMap<>();
+        store.scanRunners(new RunnerStore.RunnerVisitor() {
+            @Override
+            public void visit(Runner runner, long totalKm) {
+                runners.put(runner, totalKm);
+            }
+        });
+        final Map<String, Long> countries = new HashMap<>();
+        store.scanCountries(new RunnerStore.CountryVisitor() {
+            @Override
+            public void visit(String country, long totalKm) {
+                countries.put(country, totalKm);
+            }
+        });
+
+        // THEN names and countries are returned unchanged with their totals
+        assertEquals("Unexpected number of runners.", 2, runners.size());
+        assertEquals("Unexpected total of Jürgen.", Long.valueOf(10), runners.get(new Runner("Jürgen", "Österreich")));
+        assertEquals("Unexpected total of Åsa.", Long.valueOf(20), runners.get(new Runner("Åsa", "Sverige")));
+        assertEquals("Unexpected number of countries.", 2, countries.size());
+        assertEquals("Unexpected total of Sverige.", Long.valueOf(20), countries.get("Sverige"));
+    }
+
+    @Test
+    public void shouldScanRunnersSortedByNameThenCountry() {
+        // GIVEN a store with runners added out of order, two of them with the same name
+        store.addRunnerDistance(new Runner("Two", "Italy"), 1);
+        store.addRunnerDistance(new Runner("One", "Italy"), 2);
+        store.addRunnerDistance(new Runner("On", "Italy"), 3);
+        store.addRunnerDistance(new Runner("One", "Australia"), 4);
+
+        // WHEN they are scanned in order
+        final List<Runner> runners = new ArrayList<>();
+        store.sortedScanRunners(new RunnerStore.RunnerVisitor() {
+            @Override
+            public void visit(Runner runner, long totalKm) {
+                runners.add(runner);
+            }
+        });
+
+        // THEN a name comes before its extensions, and the same names are ordered by country
+        List<Runner> expected = new ArrayList<>();
+        expected.add(new Runner("On", "Italy"));
+        expected.add(new Runner("One", "Australia"));
+        expected.add(new Runner("One", "Italy"));
+        expected.add(new Runner("Two", "Italy"));
+        assertEquals("Unexpected order of runners.", expected, runners);
+    }
+
+    @Test
+    public void shouldNotLoseConcurrentUpdates() throws Exception {
+        // GIVEN an empty store
+
+        // WHEN several threads concurrently add 1 km to the same few runners and their country
+        runConcurrently(new Callable<Void>() {
+            @Override
+            public Void call() {
+                for (int j = 0; j < UPDATES_PER_THREAD; j++) {
+                    store.addRunnerDistance(new Runner("Runner" + (j % 4), "Australia"), 1);
+                    store.addCountryDistance("Australia", 1);
+                }
+                return null;
+            }
+        });
+
+        // THEN every runner has all of its updates
+        for (int i = 0; i < 4; i++) {
+            assertEquals("Unexpected total of Runner" + i + ".", THREAD_POOL_SIZE * UPDATES_PER_THREAD / 4,
+                    store.getRunnerDistance(new Runner("Runner" + i, "Australia")));
+        }
+
+        // AND the country total has all the updates
+        assertEquals("Unexpected country total.", THREAD_POOL_SIZE * UPDATES_PER_THREAD,
+                store.getCountryDistance("Australia"));
+    }
+
+    @Test
+    public void shouldReportThroughput() throws Exception {
+        // GIVEN an empty store
+
+        // WHEN several threads concurrently update and read many runners
+        long start = System.nanoTime();
+        runConcurrently(new Callable<Void>() {
+            @Override
+            public Void call() {
+                for (int j = 0; j < UPDATES_PER_THREAD; j++) {
+                    Runner runner = new Runner("Runner" + (j % THROUGHPUT_RUNNERS), "Australia");
+                    store.addRunnerDistance(runner, 1);
+                    store.getRunnerDistance(runner);
+                }
+                return null;
+            }
+        });
+        long elapsedNanos = System.nanoTime() - start;
+
+        // THEN all the updates are there
+        final long[] total = new long[1];
+        store.scanRunners(new RunnerStore.RunnerVisitor() {
+            @Override
+            public void visit(Runner runner, long totalKm) {
+                total[0] += totalKm;
+            }
+        });
+        assertEquals("Unexpected sum of all totals.", THREAD_POOL_SIZE * UPDATES_PER_THREAD, total[0]);
+
+        logger.info("{}: {} updates and reads per second.", store.getClass().getSimpleName(), 2L * THREAD_POOL_SIZE
+                * UPDATES_PER_THREAD * TimeUnit.SECONDS.toNanos(1) / Math.max(elapsedNanos, 1));
+    }
+
+    private static void runConcurrently(final Callable<Void> task) throws Exception {
+        final CyclicBarrier barrier = new CyclicBarrier(THREAD_POOL_SIZE);
+        ExecutorService executorService = Executors.newFixedThreadPool(THREAD_POOL_SIZE);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREAD_POOL_SIZE; i++) {
+                futures.add(executorService.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        barrier.await();
+                        return task.call();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.alborworld.runnerapp.store;
+
+public class InMemoryRunnerStoreTest extends AbstractRunnerStoreTest {
+
+    @Override
+    protected RunnerStore createStore() {
+        return new InMemoryRunnerStore();
+    }
+}
@@ -0,0 +1,128 @@
+package com.alborworld.runnerapp.store;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.alborworld.runnerapp.model.Runner;
+
+public class OffHeapRunnerStoreTest extends AbstractRunnerStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Override
+    protected RunnerStore createStore() throws Exception {
+        return new OffHeapRunnerStore(folder.getRoot(), 16384, 1024 * 1024);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectNewRunnersWhenFull() {
+        // GIVEN a store with room for 3 runners
+        OffHeapRunnerStore store = new OffHeapRunnerStore(4, 1024);
+        store.addRunnerDistance(new Runner("One", "Australia"), 1);
+        store.addRunnerDistance(new Runner("Two", "Australia"), 1);
+        store.addRunnerDistance(new Runner("Three", "Australia"), 1);
+
+        // WHEN a fourth runner is added
+        store.addRunnerDistance(new Runner("Four", "Australia"), 1);
+
+        // THEN IllegalStateException is thrown
+    }
+
+    @Test
+    public void shouldRefuseToStartWithoutRoomForTheExpectedRunners() {
+        // GIVEN a store with room for 3 runners
+        OffHeapRunnerStore store = new OffHeapRunnerStore(4, 1024);
+        store.setExpectedRunners(3);
+
+        try {
+            // WHEN 4 runners are expected
+            store.setExpectedRunners(4);
+            fail("Expected the store to refuse 4 runners.");
+        } catch (IllegalArgumentException e) {
+            // THEN it refuses them, naming the capacity that would do
+            assertTrue("Unexpected message: " + e.getMessage(), e.getMessage().contains("at least 8"));
+        }
+    }
+
+    @Test
+    public void shouldRefuseToStartWithoutRoomForTheExpectedCountries() {
+        // GIVEN a store with room for 6 countries and an arena for 2 of the longest names
+        OffHeapRunnerStore store = new OffHeapRunnerStore(4, 1024, 8, 2 * (2 + 3 * 64));
+        store.setExpectedCountries(2);
+
+        try {
+            // WHEN 7 countries are expected
+            store.setExpectedCountries(7);
+            fail("Expected the store to refuse 7 countries.");
+        } catch (IllegalArgumentException e) {
+            // THEN it refuses them, naming the capacity that would do
+            assertTrue("Unexpected message: " + e.getMessage(), e.getMessage().contains("at least 16"));
+        }
+
+        try {
+            // WHEN 3 countries are expected
+            store.setExpectedCountries(3);
+            fail("Expected the store to refuse 3 countries.");
+        } catch (IllegalArgumentException e) {
+            // THEN it refuses them, naming the arena size that would do
+            assertTrue("Unexpected message: " + e.getMessage(), e.getMessage().contains("at least 582"));
+        }
+    }
+
+    @Test
+    public void shouldKeepEveryRunnerOnce() {
+        // GIVEN a store in memory-mapped files
+
+        // WHEN the same runner is updated twice
+        store.addRunnerDistance(new Runner("One", "Australia"), 1);
+        store.addRunnerDistance(new Runner("One", "Australia"), 1);
+
+        // THEN it is stored once
+        assertEquals("Unexpected number of runners.", 1, ((OffHeapRunnerStore) store).getRunnersCount());
+
+        // AND the files are where they were asked to be
+        assertTrue("Expected the runners file.", new File(folder.getRoot(), "runners.tbl").exists());
+    }
+
+    @Test
+    public void shouldHandTheTotalsOverToAStoreOpeningTheSameFiles() throws Exception {
+        // GIVEN a store in memory-mapped files with a runner
+        store.addRunnerDistance(new Runner("One", "Australia"), 1500);
+        store.addCountryDistance("Australia", 1500);
+        store.close();
+
+        // WHEN another store maps the same files, with another capacity, while the first is still in use
+        OffHeapRunnerStore next = new OffHeapRunnerStore(folder.getRoot(), 64, 1024);
+
+        // THEN it has the totals of the first one, with the layout they were created with
+        assertEquals("Unexpected runner total.", 1500, next.getRunnerDistance(new Runner("One", "Australia")));
+        assertEquals("Unexpected country total.", 1500, next.getCountryDistance("Australia"));
+
+        // AND updates through either store are seen by the other
+        store.addRunnerDistance(new Runner("One", "Australia"), 500);
+        next.addRunnerDistance(new Runner("Two", "Australia"), 700);
+        assertEquals("Unexpected runner total.", 2000, next.getRunnerDistance(new Runner("One", "Australia")));
+        assertEquals("Unexpected runner total.", 700, store.getRunnerDistance(new Runner("Two", "Australia")));
+        assertEquals("Unexpected number of runners.", 2, next.getRunnersCount());
+    }
+
+    @Test(expected = StreamCorruptedException.class)
+    public void shouldRefuseFilesOfAnotherLayout() throws Exception {
+        // GIVEN a runners file that is not a table
+        File directory = folder.newFolder();
+        Files.write(new File(directory, "runners.tbl").toPath(), new byte[1024]);
+
+        // WHEN a store maps it
+        new OffHeapRunnerStore(directory, 16, 1024);
+
+        // THEN StreamCorruptedException is thrown
+    }
+}
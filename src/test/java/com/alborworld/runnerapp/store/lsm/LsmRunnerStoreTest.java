@@ -0,0 +1,226 @@
+package com.alborworld.runnerapp.store.lsm;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.alborworld.runnerapp.model.Runner;
+import com.alborworld.runnerapp.store.AbstractRunnerStoreTest;
+import com.alborworld.runnerapp.store.RunnerStore;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+public class LsmRunnerStoreTest extends AbstractRunnerStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Override
+    protected RunnerStore createStore() throws Exception {
+        // Small memtables, so that the shared tests flush and compact too.
+        return new LsmRunnerStore(folder.newFolder(), 256, 2, false);
+    }
+
+    @Test
+    public void shouldRecoverTotalsAfterReopening() throws Exception {
+        // GIVEN a store with flushed and unflushed totals
+        File directory = folder.newFolder();
+        LsmRunnerStore store = new LsmRunnerStore(directory, 4, 2, false);
+        for (int i = 0; i < 10; i++) {
+            store.addRunnerDistance(new Runner("Runner" + i, "Australia"), i);
+            store.addCountryDistance("Australia", i);
+        }
+        store.addRunnerDistance(new Runner("Runner0", "Australia"), 100);
+
+        // WHEN it is closed and reopened
+        store.close();
+        store = new LsmRunnerStore(directory, 4, 2, false);
+
+        // THEN all the totals are back
+        assertEquals("Unexpected total of Runner0.", 100, store.getRunnerDistance(new Runner("Runner0", "Australia")));
+        assertEquals("Unexpected total of Runner9.", 9, store.getRunnerDistance(new Runner("Runner9", "Australia")));
+        assertEquals("Unexpected country total.", 45, store.getCountryDistance("Australia"));
+        store.close();
+    }
+
+    @Test
+    public void shouldReplayTheLogAfterACrash() throws Exception {
+        // GIVEN a store whose last additions are only in its log
+        File directory = folder.newFolder();
+        LsmRunnerStore store = new LsmRunnerStore(directory, 1000, 2, true);
+        store.addRunnerDistance(new Runner("One", "Australia"), 10);
+        store.addRunnerDistance(new Runner("One", "Australia"), 20);
+
+        // AND the log, as a crash leaves it, ends with a torn record
+        File crashed = folder.newFolder();
+        File log = null;
+        for (File file : directory.listFiles()) {
+            if (file.getName().endsWith(".log")) {
+                log = new File(crashed, file.getName());
+                Files.copy(file.toPath(), log.toPath());
+            }
+        }
+        try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+            file.seek(file.length());
+            file.write(new byte[] { 1, 2, 3 });
+        }
+
+        // WHEN a store is opened on it
+        LsmRunnerStore recovered = new LsmRunnerStore(crashed, 1000, 2, false);
+
+        // THEN the complete records are replayed
+        assertEquals("Unexpected total after replay.", 30,
+                recovered.getRunnerDistance(new Runner("One", "Australia")));
+        recovered.close();
+        store.close();
+    }
+
+    @Test
+    public void shouldSkipTheLoggedAdditionsThatOverflowedWhenReplaying() throws Exception {
+        // GIVEN a store whose log has an addition refused for overflowing its total
+        File directory = folder.newFolder();
+        LsmRunnerStore store = new LsmRunnerStore(directory, 1000, 2, true);
+        store.addRunnerDistance(new Runner("One", "Australia"), Long.MAX_VALUE - 1);
+        try {
+            store.addRunnerDistance(new Runner("One", "Australia"), 2);
+            fail("Expected the total to overflow.");
+        } catch (ArithmeticException e) {
+            // Refused, but already logged.
+        }
+        store.addRunnerDistance(new Runner("Two", "Australia"), 10);
+
+        // WHEN a store is opened on a copy of the log, as a crash leaves it
+        File crashed = folder.newFolder();
+        for (File file : directory.listFiles()) {
+            if (file.getName().endsWith(".log")) {
+                Files.copy(file.toPath(), new File(crashed, file.getName()).toPath());
+            }
+        }
+        LsmRunnerStore recovered = new LsmRunnerStore(crashed, 1000, 2, false);
+
+        // THEN it opens with the totals the store had
+        assertEquals("Unexpected total of One.", Long.MAX_VALUE - 1,
+                recovered.getRunnerDistance(new Runner("One", "Australia")));
+        assertEquals("Unexpected total of Two.", 10, recovered.getRunnerDistance(new Runner("Two", "Australia")));
+        recovered.close();
+        store.close();
+    }
+
+    @Test
+    public void shouldRefuseADirectoryOpenedByAnotherStore() throws Exception {
+        // GIVEN a store
+        File directory = folder.newFolder();
+        LsmRunnerStore store = new LsmRunnerStore(directory, 4, 2, false);
+
+        // WHEN another one is opened on its directory
+        try {
+            new LsmRunnerStore(directory, 4, 2, false);
+            fail("Expected the directory to be refused.");
+        } catch (IllegalStateException e) {
+            // THEN it is refused
+            assertTrue("Unexpected message: " + e.getMessage(), e.getMessage().contains(directory.getPath()));
+        }
+
+        // AND opened once the first store is closed
+        store.close();
+        new LsmRunnerStore(directory, 4, 2, false).close();
+    }
+
+    @Test
+    public void shouldMergeFlushedTablesAndKeepTheirOrder() throws Exception {
+        // GIVEN a store that flushes every 4 new keys and keeps at most 2 tables
+        LsmRunnerStore store = new LsmRunnerStore(folder.newFolder(), 4, 2, false);
+
+        // WHEN 40 runners are added in reverse order, each twice
+        for (int round = 0; round < 2; round++) {
+            for (int i = 39; i >= 0; i--) {
+                store.addRunnerDistance(new Runner(String.format("Runner%02d", i), "Italy"), 1);
+            }
+        }
+
+        // THEN the tables have been compacted
+        assertTrue("Expected at most 2 tables but there are " + store.getTablesCount(), store.getTablesCount() <= 2);
+
+        // AND a sorted scan returns every runner once, in order, with both additions
+        final List<String> names = new ArrayList<>();
+        store.sortedScanRunners(new RunnerStore.RunnerVisitor() {
+            @Override
+            public void visit(Runner runner, long totalKm) {
+                assertEquals("Unexpected total of " + runner.getName() + ".", 2, totalKm);
+                names.add(runner.getName());
+            }
+        });
+        assertEquals("Unexpected number of runners.", 40, names.size());
+        for (int i = 0; i < 40; i++) {
+            assertEquals("Unexpected runner at " + i + ".", String.format("Runner%02d", i), names.get(i));
+        }
+        store.close();
+    }
+
+    @Test
+    public void shouldAddAndCompactWhileAScanWaitsOnItsVisitor() throws Exception {
+        // GIVEN a store that flushes every 4 new keys and keeps a single table, with 8 runners flushed
+        final LsmRunnerStore store = new LsmRunnerStore(folder.newFolder(), 4, 1, false);
+        for (int i = 0; i < 8; i++) {
+            store.addRunnerDistance(new Runner(String.format("Runner%02d", i), "Italy"), 1);
+        }
+
+        // AND a scan whose visitor waits, as an export to a slow client does
+        final CountDownLatch visiting = new CountDownLatch(1);
+        final CountDownLatch resume = new CountDownLatch(1);
+        final List<String> names = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<?> scan = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                store.sortedScanRunners(new RunnerStore.RunnerVisitor() {
+                    @Override
+                    public void visit(Runner runner, long totalKm) {
+                        visiting.countDown();
+                        Uninterruptibles.awaitUninterruptibly(resume);
+                        names.add(runner.getName());
+                    }
+                });
+                return null;
+            }
+        });
+        assertTrue("Expected the scan to visit.", visiting.await(10, TimeUnit.SECONDS));
+
+        // WHEN runners are added meanwhile, flushing and compacting the tables being scanned
+        Future<?> additions = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                for (int i = 8; i < 40; i++) {
+                    store.addRunnerDistance(new Runner(String.format("Runner%02d", i), "Italy"), 1);
+                }
+                return null;
+            }
+        });
+
+        // THEN they complete before the scan
+        additions.get(10, TimeUnit.SECONDS);
+        assertEquals("Unexpected number of tables.", 1, store.getTablesCount());
+
+        // AND the scan still reads the tables it started with
+        resume.countDown();
+        scan.get(10, TimeUnit.SECONDS);
+        for (int i = 0; i < 8; i++) {
+            assertTrue("Expected the scan to visit Runner0" + i + ".", names.contains("Runner0" + i));
+        }
+        executor.shutdown();
+        store.close();
+    }
+}
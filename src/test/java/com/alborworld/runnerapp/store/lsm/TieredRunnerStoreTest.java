@@ -0,0 +1,188 @@
+package com.alborworld.runnerapp.store.lsm;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.alborworld.runnerapp.model.Runner;
+import com.alborworld.runnerapp.store.AbstractRunnerStoreTest;
+import com.alborworld.runnerapp.store.RunnerStore;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+public class TieredRunnerStoreTest extends AbstractRunnerStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Override
+    protected RunnerStore createStore() throws Exception {
+        // Every runner idle, evicted every few milliseconds, so that the shared tests page in and compact too.
+        TieredRunnerStore store = new TieredRunnerStore(folder.newFolder());
+        store.setIdleMillis(0);
+        store.setEvictionIntervalMillis(5);
+        store.setMaxTables(2);
+        store.start();
+        return store;
+    }
+
+    @Test
+    public void shouldEvictIdleRunnersAndPageThemBackWithTheirTotals() throws Exception {
+        // GIVEN a store where every runner is idle
+        TieredRunnerStore store = new TieredRunnerStore(folder.newFolder());
+        store.setIdleMillis(0);
+        for (int i = 0; i < 1000; i++) {
+            store.addRunnerDistance(new Runner("Runner" + i, "Australia"), i);
+            store.addCountryDistance("Australia", i);
+        }
+
+        // WHEN the idle runners are evicted
+        int evicted = store.evictIdle();
+
+        // THEN none is left on the heap
+        assertEquals("Unexpected evicted runners.", 1000, evicted);
+        assertEquals("Unexpected runners on the heap.", 0, store.getHotCount());
+
+        // AND an evicted runner is paged back with its total, and added to
+        assertEquals("Unexpected total of Runner7.", 7, store.getRunnerDistance(new Runner("Runner7", "Australia")));
+        assertEquals("Unexpected total of Runner9.", 19, store.addRunnerDistance(new Runner("Runner9", "Australia"),
+                10));
+        assertEquals("Unexpected runners on the heap.", 2, store.getHotCount());
+        assertEquals("Unexpected page-ins.", 2, store.getPageIns());
+
+        // AND an unknown runner is still unknown, and not put on the heap
+        assertEquals("Unexpected total of unknown runner.", RunnerStore.ABSENT,
+                store.getRunnerDistance(new Runner("Runner7", "Italy")));
+        assertEquals("Unexpected runners on the heap.", 2, store.getHotCount());
+
+        // AND the country total is exact
+        assertEquals("Unexpected country total.", 999 * 1000 / 2, store.getCountryDistance("Australia"));
+        store.close();
+    }
+
+    @Test
+    public void shouldScanRunnersOnTheHeapAndEvictedOnceInOrder() throws Exception {
+        // GIVEN a store that keeps at most 2 tables
+        TieredRunnerStore store = new TieredRunnerStore(folder.newFolder());
+        store.setIdleMillis(0);
+        store.setMaxTables(2);
+
+        // WHEN 40 runners are evicted in four rounds, each round adding to the runners of the previous ones
+        for (int round = 0; round < 4; round++) {
+            for (int i = 0; i < 10 * (round + 1); i++) {
+                store.addRunnerDistance(new Runner(String.format("Runner%02d", i), "Italy"), 1);
+            }
+            store.evictIdle();
+        }
+
+        // AND the first ten runners are back on the heap
+        for (int i = 0; i < 10; i++) {
+            store.addRunnerDistance(new Runner(String.format("Runner%02d", i), "Italy"), 1);
+        }
+
+        // THEN the tables have been compacted
+        assertTrue("Expected at most 2 tables but there are " + store.getTablesCount(), store.getTablesCount() <= 2);
+
+        // AND a sorted scan returns every runner once, in order, with its latest total
+        final List<String> names = new ArrayList<>();
+        final List<Long> totals = new ArrayList<>();
+        store.sortedScanRunners(new RunnerStore.RunnerVisitor() {
+            @Override
+            public void visit(Runner runner, long totalKm) {
+                names.add(runner.getName());
+                totals.add(totalKm);
+            }
+        });
+        assertEquals("Unexpected number of runners.", 40, names.size());
+        for (int i = 0; i < 40; i++) {
+            assertEquals("Unexpected runner at " + i + ".", String.format("Runner%02d", i), names.get(i));
+            long expected = 4 - i / 10 + ((i < 10) ? 1 : 0);
+            assertEquals("Unexpected total of " + names.get(i) + ".", Long.valueOf(expected), totals.get(i));
+        }
+        store.close();
+    }
+
+    @Test
+    public void shouldKeepRunnersUpdatedSinceTheirIdleThreshold() throws Exception {
+        // GIVEN a store whose runners are idle after an hour
+        TieredRunnerStore store = new TieredRunnerStore(folder.newFolder());
+        store.setIdleMillis(3600000);
+        store.addRunnerDistance(new Runner("One", "Australia"), 10);
+
+        // WHEN idle runners are evicted
+        int evicted = store.evictIdle();
+
+        // THEN the active runner stays on the heap
+        assertEquals("Unexpected evicted runners.", 0, evicted);
+        assertEquals("Unexpected runners on the heap.", 1, store.getHotCount());
+        assertEquals("Unexpected tables.", 0, store.getTablesCount());
+        store.close();
+    }
+
+    @Test
+    public void shouldEvictAndPageInWhileAScanWaitsOnItsVisitor() throws Exception {
+        // GIVEN a store of idle runners, evicted in two tables and compacted into one
+        final TieredRunnerStore store = new TieredRunnerStore(folder.newFolder());
+        store.setIdleMillis(0);
+        store.setMaxTables(1);
+        for (int round = 0; round < 2; round++) {
+            store.addRunnerDistance(new Runner("Runner" + round, "Italy"), 1);
+            store.evictIdle();
+        }
+
+        // AND a scan whose visitor waits, as an export to a slow client does
+        final CountDownLatch visiting = new CountDownLatch(1);
+        final CountDownLatch resume = new CountDownLatch(1);
+        final List<String> names = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<?> scan = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                store.sortedScanRunners(new RunnerStore.RunnerVisitor() {
+                    @Override
+                    public void visit(Runner runner, long totalKm) {
+                        visiting.countDown();
+                        Uninterruptibles.awaitUninterruptibly(resume);
+                        names.add(runner.getName());
+                    }
+                });
+                return null;
+            }
+        });
+        assertTrue("Expected the scan to visit.", visiting.await(10, TimeUnit.SECONDS));
+
+        // WHEN runners are added, paged in and evicted meanwhile, compacting the table being scanned
+        Future<?> updates = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                store.addRunnerDistance(new Runner("Runner2", "Italy"), 1);
+                store.evictIdle();
+                store.addRunnerDistance(new Runner("Runner3", "Italy"), 1);
+                store.addRunnerDistance(new Runner("Runner0", "Italy"), 1);
+                return null;
+            }
+        });
+
+        // THEN they complete before the scan
+        updates.get(10, TimeUnit.SECONDS);
+        assertEquals("Unexpected total of Runner0.", 2, store.getRunnerDistance(new Runner("Runner0", "Italy")));
+
+        // AND the scan still reads the table it started with
+        resume.countDown();
+        scan.get(10, TimeUnit.SECONDS);
+        assertEquals("Unexpected runners scanned.", Arrays.asList("Runner0", "Runner1"), names);
+        executor.shutdown();
+        store.close();
+    }
+}
@@ -23,6 +23,16 @@ public class RunnerUpdateBuilder {
         return this;
     }
 
+    public RunnerUpdateBuilder withMetres(long metres) {
+        runnerUpdate.setMetres(metres);
+        return this;
+    }
+
+    public RunnerUpdateBuilder withUpdateId(String updateId) {
+        runnerUpdate.setUpdateId(updateId);
+        return this;
+    }
+
     public RunnerUpdate build() {
         return runnerUpdate;
     }